@@ -23,6 +23,7 @@ import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.UUID;
@@ -30,8 +31,10 @@ import java.util.UUID;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.errors.WakeupException;
 import org.apache.kafka.common.serialization.StringDeserializer;
+import org.hawkular.alerts.api.exception.OverloadedException;
 import org.hawkular.alerts.api.json.JsonUtil;
 import org.hawkular.alerts.api.model.data.Data;
 import org.hawkular.alerts.api.model.event.Event;
@@ -137,12 +140,11 @@ public class KafkaQuery implements Runnable {
                 while (running) {
                     ConsumerRecords<String, String> records = consumer.poll(pollTimeout);
                     for (ConsumerRecord<String, String> record : records) {
+                        Object item = null;
                         if (mappingData) {
                             Data data = new Data(tenantId, null, topic, record.timestamp(), record.value(), null);
                             log.debugf("Data %s", data);
-                            if (alerts != null) {
-                                alerts.sendData(Arrays.asList(data));
-                            }
+                            item = data;
                         } else {
                             try {
                                 Map<String, Object> json = JsonUtil.fromJson(record.value(), Map.class);
@@ -151,13 +153,31 @@ public class KafkaQuery implements Runnable {
                                 newEvent.setCtime(record.timestamp());
                                 parseEvent(newEvent, json);
                                 log.infof("Event %s", newEvent);
-                                if (alerts != null) {
-                                    alerts.sendEvents(Arrays.asList(newEvent));
-                                }
+                                item = newEvent;
                             } catch (Exception e) {
                                 log.errorf("Error parsing an event from Kafka Alerter %s", record.value(), e);
                             }
                         }
+                        if (item == null || alerts == null) {
+                            continue;
+                        }
+                        /*
+                            When the engine is overloaded the record is retried on each poll instead of being
+                            dropped. The assigned partitions are paused meanwhile, so poll() keeps the consumer in
+                            the group without fetching more records, and the backlog stays in Kafka.
+                         */
+                        boolean paused = false;
+                        while (running && !send(item)) {
+                            if (!paused) {
+                                log.debugf("Engine overloaded, pausing topic %s", topic);
+                                paused = true;
+                            }
+                            consumer.pause(consumer.assignment());
+                            rewind(consumer.poll(pollTimeout));
+                        }
+                        if (paused) {
+                            consumer.resume(consumer.assignment());
+                        }
                     }
                 }
             } catch (WakeupException e) {
@@ -169,6 +189,36 @@ public class KafkaQuery implements Runnable {
         log.debugf("Finished");
     }
 
+    /*
+        Return false if the engine has rejected the item because it is overloaded.
+     */
+    private boolean send(Object item) throws Exception {
+        try {
+            if (item instanceof Data) {
+                alerts.sendData(Arrays.asList((Data) item));
+            } else {
+                alerts.sendEvents(Arrays.asList((Event) item));
+            }
+            return true;
+        } catch (OverloadedException e) {
+            log.debugf("Engine overloaded: %s", e.getMessage());
+            return false;
+        }
+    }
+
+    /*
+        Partitions assigned by a rebalance during a paused poll() are not paused yet and may return records. They
+        are not processed now, the position is moved back so they are fetched again once the consumer is resumed.
+     */
+    private void rewind(ConsumerRecords<String, String> records) {
+        for (TopicPartition partition : records.partitions()) {
+            List<ConsumerRecord<String, String>> partitionRecords = records.records(partition);
+            if (!partitionRecords.isEmpty()) {
+                consumer.seek(partition, partitionRecords.get(0).offset());
+            }
+        }
+    }
+
     public void shutdown() {
         log.debugf("Shutting down");
         running = false;
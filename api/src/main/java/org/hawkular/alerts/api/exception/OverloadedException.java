@@ -0,0 +1,47 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.alerts.api.exception;
+
+/**
+ * Indicates that incoming data or events were rejected because the system has reached its admission limits.
+ * The caller should retry later.
+ *
+ * @author Jay Shaughnessy
+ * @author Lucas Ponce
+ */
+public class OverloadedException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final boolean tenantLimit;
+
+    public OverloadedException(String message) {
+        this(message, false);
+    }
+
+    /**
+     * @param message the detail message
+     * @param tenantLimit true if the rejection is caused by a per-tenant quota, false if it is caused by a global limit
+     */
+    public OverloadedException(String message, boolean tenantLimit) {
+        super(message);
+        this.tenantLimit = tenantLimit;
+    }
+
+    public boolean isTenantLimit() {
+        return tenantLimit;
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.alerts.api.model.event;
+
+import static com.fasterxml.jackson.annotation.JsonInclude.Include;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.hawkular.alerts.api.doc.DocModel;
+import org.hawkular.alerts.api.doc.DocModelProperty;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Number of events or alerts of a group, as returned by the count queries of the
+ * {@link org.hawkular.alerts.api.services.AlertsService}.
+ *
+ * @author Jay Shaughnessy
+ * @author Lucas Ponce
+ */
+@DocModel(description = "Number of events or alerts with the same values of the grouping fields. + \n" +
+        "A count without grouping fields holds the total of the query.")
+public class EventsCount {
+
+    /**
+     * Fields available to group the counts.
+     */
+    public enum Field {
+        TENANT_ID("tenantId"),
+        TRIGGER_ID("triggerId"),
+        EVENT_TYPE("eventType"),
+        CATEGORY("category"),
+        SEVERITY("severity"),
+        STATUS("status"),
+        DAY("day");
+
+        private String text;
+
+        Field(String text) {
+            this.text = text;
+        }
+
+        public String getText() {
+            return this.text;
+        }
+
+        /**
+         * @param text the text of the field, case insensitive
+         * @return the field, null if text does not match any field
+         */
+        public static Field getField(String text) {
+            if (text == null) {
+                return null;
+            }
+            for (Field f : values()) {
+                if (f.getText().compareToIgnoreCase(text.trim()) == 0) {
+                    return f;
+                }
+            }
+            return null;
+        }
+    }
+
+    @DocModelProperty(description = "Values of the grouping fields, by field. The day field holds the start of the " +
+            "day (UTC) in milliseconds since epoch.",
+            position = 0,
+            required = false)
+    @JsonInclude(Include.NON_EMPTY)
+    private Map<String, String> group;
+
+    @DocModelProperty(description = "Number of events or alerts of the group.",
+            position = 1)
+    private long count;
+
+    public EventsCount() {
+        this(new LinkedHashMap<>(), 0);
+    }
+
+    public EventsCount(Map<String, String> group, long count) {
+        this.group = group;
+        this.count = count;
+    }
+
+    public Map<String, String> getGroup() {
+        return group;
+    }
+
+    public void setGroup(Map<String, String> group) {
+        this.group = group;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        EventsCount that = (EventsCount) o;
+
+        if (count != that.count) return false;
+        return group != null ? group.equals(that.group) : that.group == null;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = group != null ? group.hashCode() : 0;
+        result = 31 * result + (int) (count ^ (count >>> 32));
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "EventsCount{" +
+                "group=" + group +
+                ", count=" + count +
+                '}';
+    }
+}
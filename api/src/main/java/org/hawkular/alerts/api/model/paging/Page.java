@@ -39,11 +39,17 @@ public final class Page<T> implements List<T> {
     private final List<T> wrapped;
     private final PageContext pageContext;
     private final long totalSize;
+    private final String nextCursor;
 
     public Page(List<T> wrapped, PageContext pageContext, long totalSize) {
+        this(wrapped, pageContext, totalSize, null);
+    }
+
+    public Page(List<T> wrapped, PageContext pageContext, long totalSize, String nextCursor) {
         this.wrapped = wrapped;
         this.pageContext = pageContext;
         this.totalSize = totalSize;
+        this.nextCursor = nextCursor;
     }
 
     /**
@@ -54,12 +60,22 @@ public final class Page<T> implements List<T> {
     }
 
     /**
+     * For a page selected by a cursor this is the number of results from the start of the page.
+     *
      * @return the total number of results of which this page is a subset of
      */
     public long getTotalSize() {
         return totalSize;
     }
 
+    /**
+     * @return the cursor to fetch the page after this one, null if this is the last page or the results do not
+     * support cursors
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
     @Override
     public boolean add(T t) {
         throw new UnsupportedOperationException();
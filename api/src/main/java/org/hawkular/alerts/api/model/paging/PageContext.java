@@ -30,6 +30,7 @@ public class PageContext {
     private final int pageSize;
     private final int pageNumber;
     private final List<Order> order;
+    private final String cursor;
 
     public PageContext(int pageNumber, int pageSize, Order... orders) {
         if (orders.length == 0) {
@@ -40,9 +41,14 @@ public class PageContext {
         List<Order> tmp = new ArrayList<>();
         Collections.addAll(tmp, orders);
         this.order = Collections.unmodifiableList(tmp);
+        this.cursor = null;
     }
 
     public PageContext(int pageNumber, int pageSize, Iterable<Order> orders) {
+        this(pageNumber, pageSize, null, orders);
+    }
+
+    public PageContext(int pageNumber, int pageSize, String cursor, Iterable<Order> orders) {
         this.pageNumber = pageSize >= 0 ? pageNumber : 0;
         this.pageSize = pageSize;
         List<Order> tmp = new ArrayList<>();
@@ -52,6 +58,7 @@ public class PageContext {
         }
 
         this.order = Collections.unmodifiableList(tmp);
+        this.cursor = cursor;
     }
 
     /**
@@ -104,6 +111,23 @@ public class PageContext {
         return pageSize >= 0;
     }
 
+    /**
+     * A cursor selects the results after the last element of a previous page, by the values of its ordering fields,
+     * instead of by position. An empty cursor selects the first page. The page number is ignored.
+     *
+     * @return the cursor returned as {@link Page#getNextCursor()} of the previous page, null for positional paging
+     */
+    public String getCursor() {
+        return cursor;
+    }
+
+    /**
+     * @return true if the page is selected by a cursor instead of by page number
+     */
+    public boolean isCursor() {
+        return null != cursor;
+    }
+
     /**
      * This list of ordering fields.
      *
@@ -120,7 +144,8 @@ public class PageContext {
 
         PageContext that = (PageContext) o;
 
-        return pageSize == that.pageSize && pageNumber == that.pageNumber && this.order.equals(that.order);
+        return pageSize == that.pageSize && pageNumber == that.pageNumber && this.order.equals(that.order)
+                && (cursor == null ? that.cursor == null : cursor.equals(that.cursor));
 
     }
 
@@ -133,7 +158,7 @@ public class PageContext {
 
     @Override public String toString() {
         return "PagingState[" + "order=" + order + ", pageNumber=" + pageNumber + ", pageSize=" +
-                pageSize + ']';
+                pageSize + (null == cursor ? "" : ", cursor=" + cursor) + ']';
     }
 
 }
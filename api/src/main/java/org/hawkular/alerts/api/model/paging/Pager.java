@@ -69,6 +69,15 @@ public final class Pager extends PageContext {
         super(pageNumber, pageSize, orders);
     }
 
+    /**
+     * @param cursor the cursor of the page to fetch, see {@link PageContext#getCursor()}
+     * @param pageSize the number of the elements on the page
+     * @param orders the ordering of the results required
+     */
+    public Pager(String cursor, int pageSize, Iterable<Order> orders) {
+        super(0, pageSize, cursor, orders);
+    }
+
     /**
      * If this is a limited pager ({@link #isLimited()}), returns the pager pointing to the next page of the results.
      *
@@ -105,6 +114,7 @@ public final class Pager extends PageContext {
     public static final class Builder {
         private int pageNumber;
         private int pageSize;
+        private String cursor;
         private List<Order> order = new ArrayList<>();
 
         private Builder() {
@@ -120,6 +130,11 @@ public final class Pager extends PageContext {
             return this;
         }
 
+        public Builder withCursor(String cursor) {
+            this.cursor = cursor;
+            return this;
+        }
+
         public Builder orderBy(String field, Order.Direction direction) {
             order.add(Order.by(field, direction));
             return this;
@@ -139,7 +154,7 @@ public final class Pager extends PageContext {
         }
 
         public Pager build() {
-            return new Pager(pageNumber, pageSize, order);
+            return null == cursor ? new Pager(pageNumber, pageSize, order) : new Pager(cursor, pageSize, order);
         }
     }
 }
@@ -16,6 +16,8 @@
  */
 package org.hawkular.alerts.api.services;
 
+import java.util.function.Consumer;
+
 import org.hawkular.alerts.api.model.action.Action;
 import org.hawkular.alerts.api.model.event.Event;
 import org.hawkular.alerts.api.model.paging.Page;
@@ -56,6 +58,18 @@ public interface ActionsService {
      */
     Page<Action> getActions(String tenantId, ActionsCriteria criteria, Pager pager) throws Exception;
 
+    /**
+     * Pass the actions matching the criteria to the consumer, ordered by actionPlugin, actionId, eventId and ctime.
+     * Actions are fetched in batches, so the whole result is never held in memory.
+     *
+     * @param tenantId Tenant where actions are stored
+     * @param criteria If null streams all actions for the tenant
+     * @param consumer Consumer of the actions, invoked in the calling thread
+     * @return number of actions streamed
+     * @throws Exception on any problem, including an exception thrown by the consumer
+     */
+    int streamActions(String tenantId, ActionsCriteria criteria, Consumer<Action> consumer) throws Exception;
+
     /**
      * Delete the requested Actions from the history, as described by the provided criteria.
      *
@@ -50,6 +50,7 @@ public class AlertsCriteria {
     Collection<String> triggerIds = null;
     String tagQuery = null;
     boolean thin = false;
+    boolean projection = false;
 
     public AlertsCriteria() {
         super();
@@ -294,6 +295,20 @@ public class AlertsCriteria {
         this.thin = thin;
     }
 
+    public boolean isProjection() {
+        return projection;
+    }
+
+    /**
+     * Return only the fields stored in the index, without loading the stored alerts: id, tenantId, triggerId, ctime, stime, status, severity and tags.
+     * The Trigger holds only its id, and the lifecycle of an Alert only its current status. It is cheaper than
+     * {@link #setThin(boolean)} on large results.
+     * @param projection true to return the projected alerts
+     */
+    public void setProjection(boolean projection) {
+        this.projection = projection;
+    }
+
     public boolean hasAlertIdCriteria() {
         return !isEmpty(alertId) || !isEmpty(alertIds);
     }
@@ -363,6 +378,7 @@ public class AlertsCriteria {
                 ", triggerIds=" + triggerIds +
                 ", tagQuery='" + tagQuery + '\'' +
                 ", thin=" + thin +
+                ", projection=" + projection +
                 '}';
     }
 
@@ -20,11 +20,13 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
 
 import org.hawkular.alerts.api.model.condition.ConditionEval;
 import org.hawkular.alerts.api.model.data.Data;
 import org.hawkular.alerts.api.model.event.Alert;
 import org.hawkular.alerts.api.model.event.Event;
+import org.hawkular.alerts.api.model.event.EventsCount;
 import org.hawkular.alerts.api.model.paging.Page;
 import org.hawkular.alerts.api.model.paging.Pager;
 
@@ -144,6 +146,29 @@ public interface AlertsService {
      */
     Page<Alert> getAlerts(Set<String> tenantIds, AlertsCriteria criteria, Pager pager) throws Exception;
 
+    /**
+     * Pass the alerts matching the criteria to the consumer, ordered by tenantId and alertId. Alerts are fetched in
+     * batches, so the whole result is never held in memory.
+     * @param tenantIds Collection of tenants where alerts are stored
+     * @param criteria If null streams all alerts
+     * @param consumer Consumer of the alerts, invoked in the calling thread
+     * @return number of alerts streamed
+     * @throws Exception any problem, including an exception thrown by the consumer
+     */
+    int streamAlerts(Set<String> tenantIds, AlertsCriteria criteria, Consumer<Alert> consumer) throws Exception;
+
+    /**
+     * Count the alerts matching the criteria, grouped by the values of the groupBy fields. Counts are computed from
+     * the index, the alerts are not loaded.
+     * @param tenantIds Collection of tenants where alerts are stored
+     * @param criteria If null counts all alerts
+     * @param groupBy Fields to group the counts. If empty returns a single count with the total.
+     * @return NotNull, the count of each group with at least one alert
+     * @throws Exception any problem
+     */
+    List<EventsCount> countAlerts(Set<String> tenantIds, AlertsCriteria criteria, List<EventsCount.Field> groupBy)
+            throws Exception;
+
     /**
      * @param tenantId Tenant where events are stored
      * @param eventId the Event to get.
@@ -171,6 +196,29 @@ public interface AlertsService {
      */
     Page<Event> getEvents(Set<String> tenantIds, EventsCriteria criteria, Pager pager) throws Exception;
 
+    /**
+     * Pass the events matching the criteria to the consumer, ordered by tenantId and eventId. Events are fetched in
+     * batches, so the whole result is never held in memory.
+     * @param tenantIds Collection of tenants where events are stored
+     * @param criteria If null streams all events
+     * @param consumer Consumer of the events, invoked in the calling thread
+     * @return number of events streamed
+     * @throws Exception any problem, including an exception thrown by the consumer
+     */
+    int streamEvents(Set<String> tenantIds, EventsCriteria criteria, Consumer<Event> consumer) throws Exception;
+
+    /**
+     * Count the events matching the criteria, grouped by the values of the groupBy fields. Counts are computed from
+     * the index, the events are not loaded.
+     * @param tenantIds Collection of tenants where events are stored
+     * @param criteria If null counts all events
+     * @param groupBy Fields to group the counts. If empty returns a single count with the total.
+     * @return NotNull, the count of each group with at least one event
+     * @throws Exception any problem
+     */
+    List<EventsCount> countEvents(Set<String> tenantIds, EventsCriteria criteria, List<EventsCount.Field> groupBy)
+            throws Exception;
+
     /**
      * Remove the provided tags from the specified alerts.
      * @param tenantId Tenant where alerts are stored
@@ -223,6 +271,7 @@ public interface AlertsService {
      * Send data into the alerting system for evaluation.
      *
      * @param data Not Null.  The data to be evaluated by the alerting engine.
+     * @throws org.hawkular.alerts.api.exception.OverloadedException if the engine cannot accept more load
      * @throws Exception any problem.
      */
     void sendData(Collection<Data> data) throws Exception;
@@ -232,6 +281,7 @@ public interface AlertsService {
      *
      * @param data Not Null.  The data to be evaluated by the alerting engine.
      * @param ignoreFiltering  An optimization. Set true *only* if you are sure the data is useful for evaluation.
+     * @throws org.hawkular.alerts.api.exception.OverloadedException if the engine cannot accept more load
      * @throws Exception any problem.
      */
     void sendData(Collection<Data> data, boolean ignoreFiltering) throws Exception;
@@ -241,6 +291,7 @@ public interface AlertsService {
      * The event sent are not persisted into the alerts engine.
      *
      * @param events Not null. The events to be evaluated by the alerting engine.
+     * @throws org.hawkular.alerts.api.exception.OverloadedException if the engine cannot accept more load
      * @throws Exception
      */
     void sendEvents(Collection<Event> events) throws Exception;
@@ -251,6 +302,7 @@ public interface AlertsService {
      *
      * @param events Not null. The events to be evaluated by the alerting engine.
      * @param ignoreFiltering  An optimization. Set true *only* if you are sure the data is useful for evaluation.
+     * @throws org.hawkular.alerts.api.exception.OverloadedException if the engine cannot accept more load
      * @throws Exception
      */
     void sendEvents(Collection<Event> events, boolean ignoreFiltering) throws Exception;
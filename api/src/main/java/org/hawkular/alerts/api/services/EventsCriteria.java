@@ -37,6 +37,7 @@ public class EventsCriteria {
     Collection<String> triggerIds = null;
     String tagQuery = null;
     boolean thin = false;
+    boolean projection = false;
     Integer criteriaNoQuerySize = null;
     String eventType = null;
 
@@ -172,6 +173,20 @@ public class EventsCriteria {
         this.thin = thin;
     }
 
+    public boolean isProjection() {
+        return projection;
+    }
+
+    /**
+     * Return only the fields stored in the index, without loading the stored events: id, tenantId, eventType, triggerId, ctime, category and tags.
+     * The Trigger holds only its id, and the lifecycle of an Alert only its current status. It is cheaper than
+     * {@link #setThin(boolean)} on large results.
+     * @param projection true to return the projected events
+     */
+    public void setProjection(boolean projection) {
+        this.projection = projection;
+    }
+
     public Integer getCriteriaNoQuerySize() {
         return criteriaNoQuerySize;
     }
@@ -237,6 +252,7 @@ public class EventsCriteria {
                 ", triggerIds=" + triggerIds +
                 ", tagQuery='" + tagQuery + '\'' +
                 ", thin=" + thin +
+                ", projection=" + projection +
                 ", criteriaNoQuerySize=" + criteriaNoQuerySize +
                 ", eventType='" + eventType + '\'' +
                 '}';
@@ -49,4 +49,35 @@ public interface StatusService {
      * @return Map with currentNode and members information for distributed scenarios
      */
     Map<String, String> getDistributedStatus();
+
+    /**
+     * Show information about the incoming data/events buffering:
+     *  - "incoming-pending-requests" and "incoming-pending-bytes" with the current buffered load
+     *  - "incoming-accepted-data", "incoming-accepted-events" with the number of datums/events accepted
+     *  - "incoming-rejected-data", "incoming-rejected-events" and "incoming-rejected-requests" with the load
+     *    rejected because of the admission limits
+     *
+     * @return Map with the incoming buffering counters
+     */
+    Map<String, String> getIncomingStatus();
+
+    /**
+     * Show the progress of the load of triggers into the engine:
+     *  - "reload-status" with NONE, LOADING or LOADED
+     *  - "reload-tenants-total", "reload-tenants-loaded", "reload-triggers-total" and "reload-triggers-loaded"
+     *  - "reload-elapsed-ms" and, while loading, an estimated "reload-eta-ms"
+     * In distributed scenarios triggers are loaded by the PartitionManager and are not reported here.
+     *
+     * @return Map with the reload progress
+     */
+    Map<String, String> getReloadStatus();
+
+    /**
+     * Take an on-demand snapshot of the facts loaded in the engine working memory.
+     * This is a diagnostics operation, its cost is proportional to the number of facts in the engine.
+     *
+     * @return Map of tenantId to the number of facts by type. The "*" entry holds the totals.
+     * @throws Exception if the snapshot could not be taken
+     */
+    Map<String, Map<String, Long>> getFactsSnapshot() throws Exception;
 }
@@ -16,6 +16,8 @@
  */
 package org.hawkular.alerts.engine;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
@@ -32,19 +34,29 @@ import org.hawkular.alerts.engine.impl.AlertsEngineImpl;
 import org.hawkular.alerts.engine.impl.DataDrivenGroupCacheManager;
 import org.hawkular.alerts.engine.impl.DroolsRulesEngineImpl;
 import org.hawkular.alerts.engine.impl.ExtensionsServiceImpl;
+import org.hawkular.alerts.engine.impl.FastPathRulesEngineImpl;
 import org.hawkular.alerts.engine.impl.IncomingDataManagerImpl;
 import org.hawkular.alerts.engine.impl.PartitionManagerImpl;
 import org.hawkular.alerts.engine.impl.PropertiesServiceImpl;
+import org.hawkular.alerts.engine.impl.ShardedRulesEngineImpl;
 import org.hawkular.alerts.engine.impl.StatusServiceImpl;
 import org.hawkular.alerts.engine.impl.ispn.IspnActionsServiceImpl;
 import org.hawkular.alerts.engine.impl.ispn.IspnAlertsServiceImpl;
 import org.hawkular.alerts.engine.impl.ispn.IspnDefinitionsServiceImpl;
+import org.hawkular.alerts.engine.impl.ispn.IspnTriggerStateServiceImpl;
+import org.hawkular.alerts.engine.impl.ispn.model.IspnAction;
+import org.hawkular.alerts.engine.impl.ispn.model.IspnEvent;
+import org.hawkular.alerts.engine.service.RulesEngine;
 import org.hawkular.alerts.extensions.CepEngineImpl;
 import org.hawkular.alerts.extensions.EventsAggregationExtension;
 import org.hawkular.alerts.filter.CacheClient;
 import org.hawkular.commons.log.MsgLogger;
 import org.hawkular.commons.log.MsgLogging;
 import org.hawkular.commons.properties.HawkularProperties;
+import org.infinispan.AdvancedCache;
+import org.infinispan.Cache;
+import org.infinispan.commons.util.CloseableIterator;
+import org.infinispan.context.Flag;
 import org.infinispan.manager.EmbeddedCacheManager;
 import org.infinispan.query.Search;
 import org.infinispan.query.SearchManager;
@@ -58,6 +70,8 @@ public class StandaloneAlerts {
     private static final MsgLogger log = MsgLogging.getMsgLogger(StandaloneAlerts.class);
     private static final String ISPN_BACKEND_REINDEX = "hawkular-alerts.backend-reindex";
     private static final String ISPN_BACKEND_REINDEX_DEFAULT = "false";
+    private static final String ISPN_BACKEND_REWRITE = "hawkular-alerts.backend-rewrite";
+    private static final String ISPN_BACKEND_REWRITE_DEFAULT = "false";
     private static StandaloneAlerts instance;
     private static ExecutorService executor;
     private static boolean ispnReindex;
@@ -72,7 +86,7 @@ public class StandaloneAlerts {
     private CacheClient dataIdCache;
     private CepEngineImpl cepEngineImpl;
     private DataDrivenGroupCacheManager dataDrivenGroupCacheManager;
-    private DroolsRulesEngineImpl rules;
+    private RulesEngine rules;
     private EmbeddedCacheManager cacheManager;
     private EventsAggregationExtension eventsAggregationExtension;
     private ExtensionsServiceImpl extensions;
@@ -80,6 +94,7 @@ public class StandaloneAlerts {
     private IspnActionsServiceImpl ispnActions;
     private IspnAlertsServiceImpl ispnAlerts;
     private IspnDefinitionsServiceImpl ispnDefinitions;
+    private IspnTriggerStateServiceImpl ispnTriggerStates;
     private StatusServiceImpl status;
     private PartitionManagerImpl partitionManager;
     private PropertiesServiceImpl properties;
@@ -95,7 +110,18 @@ public class StandaloneAlerts {
         }
 
         dataIdCache = new CacheClient();
-        rules = new DroolsRulesEngineImpl();
+        int rulesEngineShards = new Integer(HawkularProperties.getProperty(RulesEngine.RULES_ENGINE_SHARDS,
+                RulesEngine.RULES_ENGINE_SHARDS_ENV, RulesEngine.RULES_ENGINE_SHARDS_DEFAULT));
+        if (rulesEngineShards > 1) {
+            log.infof("Hawkular Alerting uses [%s] rules engine shards", rulesEngineShards);
+            rules = new ShardedRulesEngineImpl(rulesEngineShards);
+        } else {
+            rules = new DroolsRulesEngineImpl();
+        }
+        if (Boolean.valueOf(HawkularProperties.getProperty(RulesEngine.RULES_ENGINE_FAST_PATH,
+                RulesEngine.RULES_ENGINE_FAST_PATH_ENV, RulesEngine.RULES_ENGINE_FAST_PATH_DEFAULT))) {
+            rules = new FastPathRulesEngineImpl(rules);
+        }
         engine = new AlertsEngineImpl();
         properties = new PropertiesServiceImpl();
         alertsContext = new AlertsContext();
@@ -123,9 +149,20 @@ public class StandaloneAlerts {
             log.info("Reindexing Ispn [backend] completed in [" + (stopReindex - startReindex) + " ms]");
         }
 
+        if (HawkularProperties.getProperty(ISPN_BACKEND_REWRITE, ISPN_BACKEND_REWRITE_DEFAULT).equals("true")) {
+            log.info("Hawkular Alerting started with hawkular-alerts.backend-rewrite=true");
+            log.info("Rewriting Ispn [backend] events and actions started.");
+            long startRewrite = System.currentTimeMillis();
+            int rewritten = rewriteBackend();
+            long stopRewrite = System.currentTimeMillis();
+            log.info("Rewriting Ispn [backend] completed for [" + rewritten + "] entries in ["
+                    + (stopRewrite - startRewrite) + " ms]");
+        }
+
         ispnActions = new IspnActionsServiceImpl();
         ispnAlerts = new IspnAlertsServiceImpl();
         ispnDefinitions = new IspnDefinitionsServiceImpl();
+        ispnTriggerStates = new IspnTriggerStateServiceImpl();
 
         ispnActions.setActionsCacheManager(actionsCacheManager);
         ispnActions.setAlertsContext(alertsContext);
@@ -158,6 +195,7 @@ public class StandaloneAlerts {
         engine.setExtensionsService(extensions);
         engine.setPartitionManager(partitionManager);
         engine.setRules(rules);
+        engine.setTriggerStates(ispnTriggerStates);
 
         incoming.setAlertsEngine(engine);
         incoming.setDataDrivenGroupCacheManager(dataDrivenGroupCacheManager);
@@ -175,8 +213,11 @@ public class StandaloneAlerts {
         publishCacheManager.setProperties(properties);
         publishCacheManager.setPublishCache(cacheManager.getCache("publish"));
         publishCacheManager.setPublishDataIdsCache(cacheManager.getCache("dataIds"));
+        publishCacheManager.setDataIdCache(dataIdCache);
 
         status.setPartitionManager(partitionManager);
+        status.setIncomingDataManager(incoming);
+        status.setAlertsEngine(engine);
 
         cepEngineImpl.setAlertsService(ispnAlerts);
         cepEngineImpl.setExecutor(executor);
@@ -192,11 +233,13 @@ public class StandaloneAlerts {
         ispnAlerts.init();
         ispnDefinitions.init();
         ispnActions.init();
+        ispnTriggerStates.init();
 
         partitionManager.init();
         alertsContext.init();
         dataDrivenGroupCacheManager.init();
         actionsCacheManager.init();
+        dataIdCache.init();
         publishCacheManager.init();
         extensions.init();
         engine.initServices();
@@ -222,7 +265,10 @@ public class StandaloneAlerts {
     public static void stop() {
         if (instance != null) {
             instance.engine.shutdown();
+            instance.rules.shutdown();
+            instance.dataIdCache.shutdown();
             instance.partitionManager.shutdown();
+            instance.ispnAlerts.shutdown();
             IspnCacheManager.stop();
             instance = null;
         }
@@ -256,6 +302,37 @@ public class StandaloneAlerts {
         return instance.status;
     }
 
+    /*
+        Write again the events and actions history of the backend, so values stored before the registration of
+        IspnExternalizers are stored in its format. Values are unchanged, so they are not indexed again.
+     */
+    private static int rewriteBackend() {
+        Cache<String, Object> backend = IspnCacheManager.getCacheManager().getCache("backend");
+        AdvancedCache<String, Object> noIndexing = backend.getAdvancedCache().withFlags(Flag.SKIP_INDEXING);
+        int batchSize = new Integer(HawkularProperties.getProperty(IspnAlertsServiceImpl.BACKEND_BATCH_SIZE,
+                IspnAlertsServiceImpl.BACKEND_BATCH_SIZE_ENV, IspnAlertsServiceImpl.BACKEND_BATCH_SIZE_DEFAULT));
+        Map<String, Object> batch = new HashMap<>();
+        int rewritten = 0;
+        try (CloseableIterator<Map.Entry<String, Object>> entries = backend.entrySet().iterator()) {
+            while (entries.hasNext()) {
+                Map.Entry<String, Object> entry = entries.next();
+                if (entry.getValue() instanceof IspnEvent || entry.getValue() instanceof IspnAction) {
+                    batch.put(entry.getKey(), entry.getValue());
+                    if (batch.size() >= batchSize) {
+                        noIndexing.putAll(batch);
+                        rewritten += batch.size();
+                        batch.clear();
+                    }
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            noIndexing.putAll(batch);
+            rewritten += batch.size();
+        }
+        return rewritten;
+    }
+
     public class AlertsThreadFactory implements ThreadFactory {
         private int count = 0;
 
@@ -30,6 +30,7 @@ import org.hawkular.alerts.api.model.condition.Condition;
 import org.hawkular.alerts.api.model.trigger.TriggerKey;
 import org.hawkular.alerts.api.services.DefinitionsService;
 import org.hawkular.alerts.api.services.PropertiesService;
+import org.hawkular.alerts.filter.CacheClient;
 import org.hawkular.alerts.filter.CacheKey;
 import org.hawkular.alerts.log.AlertingLogger;
 import org.hawkular.commons.log.MsgLogging;
@@ -67,6 +68,9 @@ public class PublishCacheManager {
     // This cache is used by CacheClient to check which dataIds are published and forwarded from metrics.
     private Cache<CacheKey, Set<String>> publishCache;
 
+    // Local filter of the publishCache keys, refreshed after the updates of this node.
+    private CacheClient dataIdCache;
+
     public void setProperties(PropertiesService properties) {
         this.properties = properties;
     }
@@ -83,6 +87,10 @@ public class PublishCacheManager {
         this.publishCache = publishCache;
     }
 
+    public void setDataIdCache(CacheClient dataIdCache) {
+        this.dataIdCache = dataIdCache;
+    }
+
     public void init() {
         boolean disablePublish = Boolean.parseBoolean(properties.getProperty(DISABLE_PUBLISH_FILTERING_PROP,
                 DISABLE_PUBLISH_FILTERING_ENV, "false"));
@@ -132,6 +140,7 @@ public class PublishCacheManager {
                             publishDataIdsCache.endBatch(true);
                             publishCache.endBatch(true);
                         });
+                refreshDataIdCache();
             }, TRIGGER_CONDITION_CHANGE, TRIGGER_REMOVE);
 
         } else {
@@ -139,6 +148,12 @@ public class PublishCacheManager {
         }
     }
 
+    private void refreshDataIdCache() {
+        if (null != dataIdCache) {
+            dataIdCache.refresh();
+        }
+    }
+
     private void removePublishCache(String tenantId, String triggerId, Set<String> dataIds) {
         if (!isEmpty(dataIds)) {
             dataIds.stream().forEach(dataId -> {
@@ -202,6 +217,7 @@ public class PublishCacheManager {
             }
             publishDataIdsCache.endBatch(true);
             publishCache.endBatch(true);
+            refreshDataIdCache();
         } catch (Exception e) {
             log.error("Failed to load conditions to create Id filters. All data being forwarded to alerting!", e);
             publishDataIdsCache.endBatch(false);
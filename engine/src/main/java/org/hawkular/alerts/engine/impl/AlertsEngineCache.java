@@ -16,8 +16,12 @@
  */
 package org.hawkular.alerts.engine.impl;
 
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Auxiliary cache for AlertsEngine implementation.
@@ -44,9 +48,21 @@ public class AlertsEngineCache {
      */
     private Set<DataId> activeDataIds;
 
+    /**
+     * Flag of changes on the active dataIds since the last {@link #pollActiveDataIds()}.
+     */
+    private boolean changed;
+
+    /**
+     * Number of data and events received for each active dataId since the last {@link #pollTriggerCosts()}.
+     */
+    private Map<DataId, LongAdder> dataCounts;
+
     public AlertsEngineCache() {
         activeDataEntries = new HashSet<>();
         activeDataIds = new HashSet<>();
+        changed = true;
+        dataCounts = new ConcurrentHashMap<>();
     }
 
     /**
@@ -61,16 +77,27 @@ public class AlertsEngineCache {
         return tenantId != null && dataId != null && activeDataIds.contains(new DataId(tenantId, dataId));
     }
 
+    /**
+     * Count a data or event received for an active dataId, used to measure the cost of the triggers.
+     *
+     * @param tenantId of the data or event
+     * @param dataId of the data or event
+     */
+    public void countData(String tenantId, String dataId) {
+        dataCounts.computeIfAbsent(new DataId(tenantId, dataId), d -> new LongAdder()).increment();
+    }
+
     /**
      * Register a new DataEntry (triggerId,conditionId,dataId)
      *
      * @param dataEntry to register on this node
      */
-    public void add(DataEntry dataEntry) {
+    public synchronized void add(DataEntry dataEntry) {
         activeDataEntries.add(dataEntry);
         DataId newDataId = new DataId(dataEntry.getTenantId(), dataEntry.getDataId());
         if (!activeDataIds.contains(newDataId)) {
             activeDataIds.add(newDataId);
+            changed = true;
         }
     }
 
@@ -79,7 +106,7 @@ public class AlertsEngineCache {
      *
      * @param triggerId to remove
      */
-    public void remove(String tenantId, String triggerId) {
+    public synchronized void remove(String tenantId, String triggerId) {
         if (tenantId == null) {
             throw new IllegalArgumentException("tenantId must be not null");
         }
@@ -111,15 +138,56 @@ public class AlertsEngineCache {
                 dataIdToRemove.add(dataId);
             }
         });
-        activeDataIds.removeAll(dataIdToRemove);
+        if (activeDataIds.removeAll(dataIdToRemove)) {
+            changed = true;
+        }
     }
 
     /**
      * Clear all cache entries.
      */
-    public void clear() {
+    public synchronized void clear() {
         activeDataEntries.clear();
         activeDataIds.clear();
+        dataCounts.clear();
+        changed = true;
+    }
+
+    /**
+     * Get the active dataIds if they have changed since the previous call.
+     *
+     * @return Map of tenantId to the active dataIds of the tenant,
+     *         null if the active dataIds have not changed since the previous call
+     */
+    public synchronized Map<String, Set<String>> pollActiveDataIds() {
+        if (!changed) {
+            return null;
+        }
+        changed = false;
+        Map<String, Set<String>> dataIds = new HashMap<>();
+        for (DataId dataId : activeDataIds) {
+            dataIds.computeIfAbsent(dataId.getTenantId(), tenantId -> new HashSet<>()).add(dataId.getDataId());
+        }
+        return dataIds;
+    }
+
+    /**
+     * Get the evaluation cost of the triggers on this node since the previous call, and reset the data counts.
+     * The cost of a trigger is the number of its dataIds plus the data and events received for them.
+     *
+     * @return Map of tenantId to triggerId to the cost of the trigger
+     */
+    public synchronized Map<String, Map<String, Long>> pollTriggerCosts() {
+        Map<DataId, Long> counts = new HashMap<>();
+        dataCounts.forEach((dataId, count) -> counts.put(dataId, count.sumThenReset()));
+        dataCounts.keySet().retainAll(activeDataIds);
+        Map<String, Map<String, Long>> costs = new HashMap<>();
+        for (DataEntry entry : activeDataEntries) {
+            Long count = counts.get(new DataId(entry.getTenantId(), entry.getDataId()));
+            costs.computeIfAbsent(entry.getTenantId(), tenantId -> new HashMap<>())
+                    .merge(entry.getTriggerId(), 1L + (null == count ? 0L : count), Long::sum);
+        }
+        return costs;
     }
 
     public static class DataId {
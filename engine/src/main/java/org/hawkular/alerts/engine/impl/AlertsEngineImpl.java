@@ -19,18 +19,27 @@ package org.hawkular.alerts.engine.impl;
 import static org.hawkular.alerts.api.util.Util.isEmpty;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Queue;
 import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.hawkular.alerts.api.model.condition.CompareCondition;
 import org.hawkular.alerts.api.model.condition.Condition;
@@ -55,7 +64,11 @@ import org.hawkular.alerts.engine.service.PartitionManager;
 import org.hawkular.alerts.engine.service.PartitionManager.Operation;
 import org.hawkular.alerts.engine.service.PartitionTriggerListener;
 import org.hawkular.alerts.engine.service.RulesEngine;
+import org.hawkular.alerts.engine.service.TriggerStateService;
 import org.hawkular.alerts.engine.util.MissingState;
+import org.hawkular.alerts.engine.util.PendingTimeouts;
+import org.hawkular.alerts.engine.util.TimeoutQueue;
+import org.hawkular.alerts.engine.util.TriggerState;
 import org.hawkular.alerts.log.AlertingLogger;
 import org.hawkular.commons.log.MsgLogging;
 import org.hawkular.commons.properties.HawkularProperties;
@@ -84,21 +97,114 @@ public class AlertsEngineImpl implements AlertsEngine, PartitionTriggerListener,
      */
     private static final String ENGINE_PERIOD = "hawkular-alerts.engine-period";
 
+    /*
+        ENGINE_EVENT_DRIVEN enables the wake up of the rules invoker on incoming data/events.
+        The periodic task remains as a fallback for dampening timeouts and MissingState checks.
+     */
+    private static final String ENGINE_EVENT_DRIVEN = "hawkular-alerts.engine-event-driven";
+    private static final String ENGINE_EVENT_DRIVEN_DEFAULT = "true";
+
+    /*
+        ENGINE_BATCH_WINDOW defined in milliseconds.
+        Time the rules invoker waits after a wake up to accumulate incoming data/events into a single firing.
+     */
+    private static final String ENGINE_BATCH_WINDOW = "hawkular-alerts.engine-batch-window";
+    private static final String ENGINE_BATCH_WINDOW_DEFAULT = "50";
+
+    /*
+        ENGINE_BATCH_SIZE defined in number of pending data/events.
+        When this size is reached the rules invoker is woken up without waiting for the batch window.
+     */
+    private static final String ENGINE_BATCH_SIZE = "hawkular-alerts.engine-batch-size";
+    private static final String ENGINE_BATCH_SIZE_DEFAULT = "5000";
+
+    /*
+        ENGINE_RELOAD_BATCH_SIZE defined in number of triggers.
+        Triggers fetched on a reload() are inserted into the rules engine in chunks of this size between firings.
+     */
+    private static final String ENGINE_RELOAD_BATCH_SIZE = "hawkular-alerts.engine-reload-batch-size";
+    private static final String ENGINE_RELOAD_BATCH_SIZE_DEFAULT = "1000";
+
+    /*
+        ENGINE_RELOAD_THREADS defined in number of parallel tasks fetching tenant definitions on a reload().
+     */
+    private static final String ENGINE_RELOAD_THREADS = "hawkular-alerts.engine-reload-threads";
+    private static final String ENGINE_RELOAD_THREADS_DEFAULT = "4";
+
+    /*
+        ENGINE_CHECKPOINT_PERIOD defined in milliseconds.
+        The evaluation state of the triggers changed since the previous checkpoint is stored at this period, and
+        restored when a trigger is loaded after a restart or a partition change. 0 disables the checkpoints.
+     */
+    private static final String ENGINE_CHECKPOINT_PERIOD = "hawkular-alerts.engine-checkpoint-period";
+    private static final String ENGINE_CHECKPOINT_PERIOD_DEFAULT = "60000";
+
+    /*
+        ENGINE_COST_PERIOD defined in milliseconds.
+        In distributed mode the evaluation cost of the loaded triggers is published to the PartitionManager at this
+        period, to balance the partition by cost. 0 disables the publication.
+     */
+    private static final String ENGINE_COST_PERIOD = "hawkular-alerts.engine-cost-period";
+    private static final String ENGINE_COST_PERIOD_DEFAULT = "60000";
+
+    /*
+        Max time in seconds to wait for a task on the timer thread (trigger changes, facts snapshot, checkpoint on
+        shutdown)
+     */
+    private static final long TIMER_TASK_TIMEOUT = 30L;
+
     private int delay;
     private int period;
+    private boolean eventDriven;
+    private int batchWindow;
+    private int batchSize;
+    private int reloadBatchSize;
+    private int reloadThreads;
+    private int checkpointPeriod;
+    private long nextCheckpoint;
+    private int costPeriod;
+    private long nextCostPublish;
 
-    private TreeSet<Data> pendingData;
-    private TreeSet<Event> pendingEvents;
+    /*
+        Incoming batches are queued as received, without locking the producers. The batches are merged into a single
+        ordered TreeSet only once, by the rules invoker, when the pending data/events are drained.
+     */
+    private final Queue<Collection<Data>> pendingData;
+    private final Queue<Collection<Event>> pendingEvents;
+    private final AtomicInteger pendingDataSize;
+    private final AtomicInteger pendingEventsSize;
 
     private final List<Alert> alerts;
     private final List<Event> events;
-    private final Set<Dampening> pendingTimeouts;
+    private final PendingTimeouts pendingTimeouts;
     private final Map<Trigger, List<Set<ConditionEval>>> autoResolvedTriggers;
     private final Set<Trigger> disabledTriggers;
-    private final Set<MissingState> missingStates;
+    // tenantId:triggerId -> MissingStates of the trigger
+    private final Map<String, Set<MissingState>> missingStates;
+    // MissingStates ordered by the time their MissingCondition can next match, guarded by missingStates
+    private final TimeoutQueue<MissingState> missingChecks;
+    // tenantId:triggerId -> state handed over by the previous owner of a trigger not loaded yet on this node
+    private final Map<String, TriggerState> handoffStates;
 
     private final Timer wakeUpTimer;
-    private TimerTask rulesTask;
+    // Set by the first task of the timer, so tasks invoked from the timer thread run inline, see runOnTimer()
+    private volatile Thread timerThread;
+    private volatile RulesInvoker rulesTask;
+    private final WakeUpScheduler wakeUpScheduler;
+
+    /*
+        A reload() fetches the definitions of each tenant in parallel and queues them here. The rules invoker
+        inserts them into the rules engine in chunks between firings, so tenants already loaded are evaluated
+        while the rest are still loading. Loads from a previous reload() are discarded using the generation.
+     */
+    private final Queue<TriggersLoad> pendingTriggers;
+    private final AtomicInteger reloadGeneration;
+    private final AtomicInteger reloadTenantsTotal;
+    private final AtomicInteger reloadTenantsLoaded;
+    private final AtomicInteger reloadTriggersTotal;
+    private final AtomicInteger reloadTriggersLoaded;
+    private volatile long reloadStart;
+    private volatile long reloadEnd;
 
     /*
         All incoming Data and Events go through front-line global filtering (via IncomingDataManager)
@@ -125,22 +231,58 @@ public class AlertsEngineImpl implements AlertsEngine, PartitionTriggerListener,
 
     ExtensionsService extensionsService;
 
+    TriggerStateService triggerStates;
+
     private ExecutorService executor;
 
     public AlertsEngineImpl() {
-        pendingData = new TreeSet<>();
-        pendingEvents = new TreeSet<>();
+        pendingData = new ConcurrentLinkedQueue<>();
+        pendingEvents = new ConcurrentLinkedQueue<>();
+        pendingDataSize = new AtomicInteger(0);
+        pendingEventsSize = new AtomicInteger(0);
         alerts = new ArrayList<>();
         events = new ArrayList<>();
-        pendingTimeouts = new HashSet<>();
+        pendingTimeouts = new PendingTimeouts();
         autoResolvedTriggers = new HashMap<>();
         disabledTriggers = new HashSet<>();
-        missingStates = new HashSet<>();
+        missingStates = new HashMap<>();
+        missingChecks = new TimeoutQueue<>();
+        handoffStates = new ConcurrentHashMap<>();
 
         wakeUpTimer = new Timer("AlertsEngineImpl-Timer");
+        wakeUpTimer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                timerThread = Thread.currentThread();
+            }
+        }, 0);
+
+        pendingTriggers = new ConcurrentLinkedQueue<>();
+        reloadGeneration = new AtomicInteger(0);
+        reloadTenantsTotal = new AtomicInteger(0);
+        reloadTenantsLoaded = new AtomicInteger(0);
+        reloadTriggersTotal = new AtomicInteger(0);
+        reloadTriggersLoaded = new AtomicInteger(0);
 
         delay = new Integer(HawkularProperties.getProperty(ENGINE_DELAY, "1000"));
         period = new Integer(HawkularProperties.getProperty(ENGINE_PERIOD, "2000"));
+        eventDriven = Boolean.parseBoolean(HawkularProperties.getProperty(ENGINE_EVENT_DRIVEN,
+                ENGINE_EVENT_DRIVEN_DEFAULT));
+        batchWindow = new Integer(HawkularProperties.getProperty(ENGINE_BATCH_WINDOW, ENGINE_BATCH_WINDOW_DEFAULT));
+        batchSize = new Integer(HawkularProperties.getProperty(ENGINE_BATCH_SIZE, ENGINE_BATCH_SIZE_DEFAULT));
+        wakeUpScheduler = new WakeUpScheduler(wakeUpTimer, () -> {
+            RulesInvoker invoker = rulesTask;
+            if (invoker != null) {
+                invoker.invoke();
+            }
+        }, batchWindow, batchSize);
+        reloadBatchSize = new Integer(HawkularProperties.getProperty(ENGINE_RELOAD_BATCH_SIZE,
+                ENGINE_RELOAD_BATCH_SIZE_DEFAULT));
+        reloadThreads = new Integer(HawkularProperties.getProperty(ENGINE_RELOAD_THREADS,
+                ENGINE_RELOAD_THREADS_DEFAULT));
+        checkpointPeriod = new Integer(HawkularProperties.getProperty(ENGINE_CHECKPOINT_PERIOD,
+                ENGINE_CHECKPOINT_PERIOD_DEFAULT));
+        costPeriod = new Integer(HawkularProperties.getProperty(ENGINE_COST_PERIOD, ENGINE_COST_PERIOD_DEFAULT));
         engineExtensions = Boolean.parseBoolean(HawkularProperties.getProperty(ENGINE_EXTENSIONS, ENGINE_EXTENSIONS_ENV,
                 ENGINE_EXTENSIONS_DEFAULT));
     }
@@ -173,6 +315,10 @@ public class AlertsEngineImpl implements AlertsEngine, PartitionTriggerListener,
         this.extensionsService = extensionsService;
     }
 
+    public void setTriggerStates(TriggerStateService triggerStates) {
+        this.triggerStates = triggerStates;
+    }
+
     public void setExecutor(ExecutorService executor) {
         this.executor = executor;
     }
@@ -203,24 +349,49 @@ public class AlertsEngineImpl implements AlertsEngine, PartitionTriggerListener,
     }
 
     public void shutdown() {
-        rulesTask.cancel();
+        RulesInvoker task = rulesTask;
+        rulesTask = null;
+        if (task != null) {
+            task.cancel();
+            if (isCheckpointEnabled()) {
+                try {
+                    runOnTimer(() -> {
+                        checkpoint(true);
+                        return null;
+                    });
+                } catch (Exception e) {
+                    log.errorf("Failed to checkpoint triggers state on shutdown: %s", e.getMessage());
+                }
+            }
+        }
         wakeUpTimer.cancel();
     }
 
     @Override
     public void clear() {
-        rulesTask.cancel();
+        RulesInvoker task = rulesTask;
+        rulesTask = null;
+        if (task != null) {
+            task.cancel();
+        }
 
-        rules.clear();
+        changeOnTimer(() -> rules.clear());
 
+        reloadGeneration.incrementAndGet();
+        pendingTriggers.clear();
         pendingData.clear();
         pendingEvents.clear();
+        pendingDataSize.set(0);
+        pendingEventsSize.set(0);
         alerts.clear();
         events.clear();
         pendingTimeouts.clear();
         autoResolvedTriggers.clear();
         disabledTriggers.clear();
-        missingStates.clear();
+        synchronized (missingStates) {
+            missingStates.clear();
+            missingChecks.clear();
+        }
 
         rulesTask = new RulesInvoker();
         wakeUpTimer.schedule(rulesTask, delay, period);
@@ -229,14 +400,23 @@ public class AlertsEngineImpl implements AlertsEngine, PartitionTriggerListener,
     @Override
     public void reload() {
         log.debug("Start a full reload of the AlertsEngine");
-        rules.reset();
+        changeOnTimer(() -> rules.reset());
         if (distributed) {
             alertsEngineCache.clear();
         }
-        if (rulesTask != null) {
-            rulesTask.cancel();
+        RulesInvoker task = rulesTask;
+        rulesTask = null;
+        if (task != null) {
+            task.cancel();
         }
 
+        int generation = reloadGeneration.incrementAndGet();
+        pendingTriggers.clear();
+        reloadStart = System.currentTimeMillis();
+        reloadEnd = 0;
+        reloadTenantsLoaded.set(0);
+        reloadTriggersLoaded.set(0);
+
         Collection<Trigger> triggers = null;
         try {
             triggers = definitions.getAllTriggers();
@@ -245,8 +425,8 @@ public class AlertsEngineImpl implements AlertsEngine, PartitionTriggerListener,
             log.errorDefinitionsService("Triggers", e.getMessage());
         }
 
+        Map<String, List<Trigger>> triggersByTenant = new HashMap<>();
         if (!isEmpty(triggers)) {
-
             triggers.stream().filter(Trigger::isLoadable).forEach(t -> {
                 /*
                     In distributed scenario a reload should delegate into the PartitionManager to load the trigger on
@@ -255,10 +435,12 @@ public class AlertsEngineImpl implements AlertsEngine, PartitionTriggerListener,
                 if (distributed) {
                     partitionManager.notifyTrigger(Operation.UPDATE, t.getTenantId(), t.getId());
                 } else {
-                    reloadTrigger(t);
+                    triggersByTenant.computeIfAbsent(t.getTenantId(), tenantId -> new ArrayList<>()).add(t);
                 }
             });
         }
+        reloadTenantsTotal.set(triggersByTenant.size());
+        reloadTriggersTotal.set(triggersByTenant.values().stream().mapToInt(List::size).sum());
 
         rules.addGlobal("log", log);
         rules.addGlobal("actions", actions);
@@ -270,6 +452,142 @@ public class AlertsEngineImpl implements AlertsEngine, PartitionTriggerListener,
 
         rulesTask = new RulesInvoker();
         wakeUpTimer.schedule(rulesTask, delay, period);
+
+        if (triggersByTenant.isEmpty()) {
+            reloadEnd = System.currentTimeMillis();
+            return;
+        }
+        fetchTenants(generation, triggersByTenant);
+    }
+
+    /*
+        Conditions and dampenings are fetched with one query per tenant instead of two queries per trigger.
+        Tenants are split across reloadThreads tasks; if no executor is available the fetch runs in the caller.
+     */
+    private void fetchTenants(int generation, Map<String, List<Trigger>> triggersByTenant) {
+        List<String> tenantIds = new ArrayList<>(triggersByTenant.keySet());
+        int numTasks = executor == null ? 1 : Math.max(1, Math.min(reloadThreads, tenantIds.size()));
+        for (int i = 0; i < numTasks; i++) {
+            final int task = i;
+            Runnable fetch = () -> {
+                for (int j = task; j < tenantIds.size(); j += numTasks) {
+                    if (generation != reloadGeneration.get()) {
+                        return;
+                    }
+                    String tenantId = tenantIds.get(j);
+                    fetchTenant(generation, tenantId, triggersByTenant.get(tenantId));
+                }
+            };
+            if (executor == null) {
+                fetch.run();
+            } else {
+                executor.submit(fetch);
+            }
+        }
+    }
+
+    private void fetchTenant(int generation, String tenantId, List<Trigger> triggers) {
+        Map<String, List<Condition>> conditions = new HashMap<>();
+        Map<String, List<Dampening>> dampenings = new HashMap<>();
+        Map<String, TriggerState> states = Collections.emptyMap();
+        try {
+            for (Condition c : definitions.getConditions(tenantId)) {
+                conditions.computeIfAbsent(c.getTriggerId(), triggerId -> new ArrayList<>()).add(c);
+            }
+            for (Dampening d : definitions.getDampenings(tenantId)) {
+                dampenings.computeIfAbsent(d.getTriggerId(), triggerId -> new ArrayList<>()).add(d);
+            }
+        } catch (Exception e) {
+            log.debug(e.getMessage(), e);
+            log.errorDefinitionsService("Conditions/Dampening", e.getMessage());
+        }
+        if (isCheckpointEnabled()) {
+            try {
+                states = triggerStates.getTriggerStates(tenantId);
+            } catch (Exception e) {
+                log.debug(e.getMessage(), e);
+                log.errorf("Failed to fetch triggers state of tenant [%s]: %s", tenantId, e.getMessage());
+            }
+        }
+        pendingTriggers.offer(new TriggersLoad(generation, triggers, conditions, dampenings, states));
+        scheduleInvoke(0);
+    }
+
+    @Override
+    public Map<String, String> getReloadStatus() {
+        int tenantsTotal = reloadTenantsTotal.get();
+        int tenantsLoaded = reloadTenantsLoaded.get();
+        int triggersTotal = reloadTriggersTotal.get();
+        int triggersLoaded = reloadTriggersLoaded.get();
+        long start = reloadStart;
+        long end = reloadEnd;
+        boolean loaded = end > 0;
+        long elapsed = start == 0 ? 0 : (loaded ? end : System.currentTimeMillis()) - start;
+
+        Map<String, String> status = new HashMap<>();
+        status.put("reload-status", start == 0 ? "NONE" : (loaded ? "LOADED" : "LOADING"));
+        status.put("reload-tenants-total", String.valueOf(tenantsTotal));
+        status.put("reload-tenants-loaded", String.valueOf(tenantsLoaded));
+        status.put("reload-triggers-total", String.valueOf(triggersTotal));
+        status.put("reload-triggers-loaded", String.valueOf(triggersLoaded));
+        status.put("reload-elapsed-ms", String.valueOf(elapsed));
+        if (!loaded && triggersLoaded > 0) {
+            long eta = elapsed * (triggersTotal - triggersLoaded) / triggersLoaded;
+            status.put("reload-eta-ms", String.valueOf(eta));
+        }
+        return status;
+    }
+
+    /*
+        The snapshot runs on the timer thread, so it is never taken while the rules are firing.
+     */
+    @Override
+    public Map<String, Map<String, Long>> getFactsSnapshot() throws Exception {
+        return runOnTimer(() -> rules.getFactsSnapshot());
+    }
+
+    @Override
+    public int getPendingSize() {
+        return pendingDataSize.get() + pendingEventsSize.get();
+    }
+
+    /*
+        Run a task on the timer thread, between firings, and wait for its result. A task invoked from the timer
+        thread, or once the timer has been cancelled on shutdown, runs in the caller.
+     */
+    private <T> T runOnTimer(Callable<T> callable) throws Exception {
+        if (Thread.currentThread() == timerThread) {
+            return callable.call();
+        }
+        FutureTask<T> task = new FutureTask<>(callable);
+        try {
+            wakeUpTimer.schedule(new TimerTask() {
+                @Override
+                public void run() {
+                    task.run();
+                }
+            }, 0);
+        } catch (IllegalStateException e) {
+            return callable.call();
+        }
+        return task.get(TIMER_TASK_TIMEOUT, TimeUnit.SECONDS);
+    }
+
+    /*
+        The rules engine indexes the facts of each trigger and the engine runs the rules on the timer thread, so
+        triggers are added, removed and restored on the timer thread too, whatever thread requests the change
+        (REST, PartitionManager notifications, reload).
+     */
+    private void changeOnTimer(Runnable change) {
+        try {
+            runOnTimer(() -> {
+                change.run();
+                return null;
+            });
+        } catch (Exception e) {
+            log.debug(e.getMessage(), e);
+            log.errorf("Failed to apply trigger change on the rules engine: %s", e.toString());
+        }
     }
 
     @Override
@@ -291,7 +609,10 @@ public class AlertsEngineImpl implements AlertsEngine, PartitionTriggerListener,
                 log.debug(e.getMessage(), e);
                 log.errorDefinitionsService("Trigger", e.getMessage());
             }
-            if (trigger != null && trigger.isLoadable()) {
+            /*
+                Disabled triggers are notified too, so all the nodes index them in their bucket when enabled later
+             */
+            if (trigger != null && !trigger.isGroup()) {
                 partitionManager.notifyTrigger(Operation.ADD, trigger.getTenantId(), trigger.getId());
             }
         }
@@ -319,7 +640,8 @@ public class AlertsEngineImpl implements AlertsEngine, PartitionTriggerListener,
                 log.debug("Trigger not found for triggerId [" + triggerId + "], removing from rulebase if it exists");
             }
             Trigger doomedTrigger = new Trigger(tenantId, triggerId, "doomed");
-            removeTrigger(doomedTrigger);
+            changeOnTimer(() -> removeTrigger(doomedTrigger));
+            removeTriggerState(tenantId, triggerId);
             return;
         }
 
@@ -351,54 +673,92 @@ public class AlertsEngineImpl implements AlertsEngine, PartitionTriggerListener,
             log.debug("Reloading " + trigger);
         }
 
-        // Look for the Trigger in the rules engine, if it is there then remove everything about it
+        // The definition is fetched in the caller, only the update of the rules engine runs on the timer thread.
         // Note that removeTrigger relies only on tenatId+triggerId.
-        removeTrigger(trigger);
-
+        String tenantId = trigger.getTenantId();
+        String triggerId = trigger.getId();
+        Trigger loadedTrigger = trigger;
+        Collection<Condition> conditionSet = null;
+        Collection<Dampening> dampenings = null;
         try {
             if (distributed) {
-                trigger = definitions.getTrigger(trigger.getTenantId(), trigger.getId());
+                loadedTrigger = definitions.getTrigger(tenantId, triggerId);
             }
-            if (trigger != null && trigger.isLoadable()) {
-                Collection<Condition> conditionSet = definitions.getTriggerConditions(trigger.getTenantId(),
-                        trigger.getId(), null);
-                Collection<Dampening> dampenings = definitions.getTriggerDampenings(trigger.getTenantId(),
-                        trigger.getId(), null);
-
-                /*
-                    Cache dataId from conditions, Handle MissingCondition's MissingState
-                 */
-                for (Condition c : conditionSet) {
-                    if (distributed) {
-                        DataEntry entry = new DataEntry(c.getTenantId(), c.getTriggerId(), c.getDataId());
-                        alertsEngineCache.add(entry);
-                        if (Condition.Type.COMPARE == c.getType()) {
-                            String data2Id = ((CompareCondition) c).getData2Id();
-                            DataEntry entry2 = new DataEntry(c.getTenantId(), c.getTriggerId(), data2Id);
-                            alertsEngineCache.add(entry2);
-                        }
-                    }
-                    if (c instanceof MissingCondition) {
-                        // MissingState keeps a reference to the Trigger fact to check active trigger mode
-                        MissingState missingState = new MissingState(trigger, (MissingCondition) c);
-                        // MissingStates are modified inside the rules engine
-                        synchronized (missingStates) {
-                            missingStates.remove(missingState);
-                            missingStates.add(missingState);
-                            rules.addFact(missingState);
-                        }
-                    }
-                }
-
-                rules.addFact(trigger);
-                rules.addFacts(conditionSet);
-                if (!dampenings.isEmpty()) {
-                    rules.addFacts(dampenings);
-                }
+            if (loadedTrigger != null && loadedTrigger.isLoadable()) {
+                conditionSet = definitions.getTriggerConditions(tenantId, triggerId, null);
+                dampenings = definitions.getTriggerDampenings(tenantId, triggerId, null);
             }
         } catch (Exception e) {
             log.debug(e.getMessage(), e);
             log.errorDefinitionsService("Conditions/Dampening", e.getMessage());
+            changeOnTimer(() -> removeTrigger(trigger));
+            return;
+        }
+        if (null == conditionSet) {
+            changeOnTimer(() -> removeTrigger(trigger));
+            removeTriggerState(tenantId, triggerId);
+            return;
+        }
+
+        Trigger newTrigger = loadedTrigger;
+        Collection<Condition> newConditions = conditionSet;
+        Collection<Dampening> newDampenings = dampenings;
+        TriggerState state = getTriggerState(tenantId, triggerId);
+        changeOnTimer(() -> {
+            // Look for the Trigger in the rules engine, if it is there then remove everything about it.
+            // A trigger reloaded on the same node (e.g. updated or back to firing mode) starts a new evaluation,
+            // the checkpoint is restored only when the trigger is new on this node (restart, partition change).
+            // The state handed over by the previous owner is fresher than its checkpoint.
+            boolean loaded = removeTrigger(trigger);
+            TriggerState handoff = handoffStates.remove(triggerKey(tenantId, triggerId));
+            loadTrigger(newTrigger, newConditions, newDampenings, loaded ? null : (null != handoff ? handoff : state));
+        });
+    }
+
+    private void loadTrigger(Trigger trigger, Collection<Condition> conditionSet, Collection<Dampening> dampenings,
+            TriggerState state) {
+        /*
+            Cache dataId from conditions, Handle MissingCondition's MissingState
+         */
+        List<MissingState> triggerMissingChecks = null;
+        for (Condition c : conditionSet) {
+            if (distributed) {
+                DataEntry entry = new DataEntry(c.getTenantId(), c.getTriggerId(), c.getDataId());
+                alertsEngineCache.add(entry);
+                if (Condition.Type.COMPARE == c.getType()) {
+                    String data2Id = ((CompareCondition) c).getData2Id();
+                    DataEntry entry2 = new DataEntry(c.getTenantId(), c.getTriggerId(), data2Id);
+                    alertsEngineCache.add(entry2);
+                }
+            }
+            if (c instanceof MissingCondition) {
+                // MissingState keeps a reference to the Trigger fact to check active trigger mode
+                MissingState missingState = new MissingState(trigger, (MissingCondition) c);
+                // MissingStates are modified inside the rules engine
+                synchronized (missingStates) {
+                    Set<MissingState> triggerMissingStates = missingStates.computeIfAbsent(
+                            triggerKey(trigger.getTenantId(), trigger.getId()), k -> new HashSet<>());
+                    triggerMissingStates.remove(missingState);
+                    triggerMissingStates.add(missingState);
+                    rules.addFact(missingState);
+                }
+                if (null == triggerMissingChecks) {
+                    triggerMissingChecks = new ArrayList<>();
+                }
+                triggerMissingChecks.add(missingState);
+            }
+        }
+
+        rules.addTriggerFacts(trigger, conditionSet, dampenings);
+        if (null != state && !state.isEmpty()) {
+            log.debugf("Restoring %s", state);
+            rules.restoreTriggerState(state);
+        }
+        if (null != triggerMissingChecks) {
+            // Scheduled once restored, as the restore may set back the previousTime
+            synchronized (missingStates) {
+                scheduleMissingChecks(triggerMissingChecks);
+            }
         }
     }
 
@@ -410,7 +770,8 @@ public class AlertsEngineImpl implements AlertsEngine, PartitionTriggerListener,
 
         Trigger loadedTrigger = null;
         try {
-            loadedTrigger = (Trigger) rules.getFact(trigger);
+            // The fact indexes of the rules engine are read on the timer thread too
+            loadedTrigger = runOnTimer(() -> (Trigger) rules.getFact(trigger));
 
         } catch (Exception e) {
             log.errorf("Failed to get Trigger from engine %s: %s", trigger, e);
@@ -431,34 +792,22 @@ public class AlertsEngineImpl implements AlertsEngine, PartitionTriggerListener,
         if (distributed) {
             partitionManager.notifyTrigger(Operation.REMOVE, triggerToRemove.getTenantId(), triggerToRemove.getId());
         } else {
-            removeTrigger(triggerToRemove);
+            changeOnTimer(() -> removeTrigger(triggerToRemove));
+            removeTriggerState(tenantId, triggerId);
         }
     }
 
-    private void removeTrigger(Trigger trigger) {
+    /*
+        Removes the trigger from the engine memory, its checkpointed state is kept. It runs on the timer thread.
+        Returns true if the trigger was loaded in the rules engine.
+     */
+    private boolean removeTrigger(Trigger trigger) {
         final String tenantId = trigger.getTenantId();
         final String triggerId = trigger.getId();
 
-        // If necessary, clean up working memory
-        if (null != rules.getFact(trigger)) {
-            // Remove the Trigger fact
-            rules.removeFact(trigger);
-
-            // Remove related facts
-            rules.removeFacts(f -> {
-                if (f instanceof Dampening) {
-                    return ((Dampening) f).getTenantId().equals(tenantId)
-                            && ((Dampening) f).getTriggerId().equals(triggerId);
-                } else if (f instanceof Condition) {
-                    return ((Condition) f).getTenantId().equals(tenantId) &&
-                            ((Condition) f).getTriggerId().equals(triggerId);
-                } else if (f instanceof MissingState) {
-                    return ((MissingState) f).getTenantId().equals(tenantId) &&
-                            ((MissingState) f).getTriggerId().equals(triggerId);
-                }
-                return false;
-            });
-        } else {
+        // If necessary, clean up working memory. The Trigger and its related facts are indexed by the rules engine.
+        boolean loaded = !rules.removeTriggerFacts(tenantId, triggerId).isEmpty();
+        if (!loaded) {
             log.debugf("Trigger Fact not found. Nothing removed from rulebase %s", trigger.toString());
         }
 
@@ -468,19 +817,109 @@ public class AlertsEngineImpl implements AlertsEngine, PartitionTriggerListener,
         }
         // Remove any MissingState being managed for the trigger
         synchronized (missingStates) {
-            Iterator<MissingState> it = missingStates.iterator();
-            while (it.hasNext()) {
-                MissingState missingState = it.next();
-                if (missingState.getTenantId().equals(trigger.getTenantId()) &&
-                        missingState.getTriggerId().equals(triggerId)) {
-                    it.remove();
+            Set<MissingState> triggerMissingStates = missingStates.remove(triggerKey(tenantId, triggerId));
+            if (null != triggerMissingStates) {
+                for (MissingState missingState : triggerMissingStates) {
+                    missingChecks.cancel(missingState);
                 }
             }
         }
+        return loaded;
+    }
+
+    private boolean isCheckpointEnabled() {
+        return null != triggerStates && checkpointPeriod > 0;
+    }
+
+    private TriggerState getTriggerState(String tenantId, String triggerId) {
+        if (!isCheckpointEnabled()) {
+            return null;
+        }
+        try {
+            return triggerStates.getTriggerState(tenantId, triggerId);
+        } catch (Exception e) {
+            log.debug(e.getMessage(), e);
+            log.errorf("Failed to fetch state of trigger [%s/%s]: %s", tenantId, triggerId, e.getMessage());
+            return null;
+        }
     }
 
-    // We allow concurrent threads to make this call in order to process distributed data in parallel. We
-    // use synchronized blocks to protect pendingData.
+    /*
+        The checkpoint is removed when the trigger is deleted or disabled, a trigger enabled again starts a new
+        evaluation.
+     */
+    private void removeTriggerState(String tenantId, String triggerId) {
+        if (!isCheckpointEnabled()) {
+            return;
+        }
+        try {
+            triggerStates.removeTriggerStates(Collections.singletonMap(tenantId,
+                    Collections.singletonList(triggerId)));
+        } catch (Exception e) {
+            log.debug(e.getMessage(), e);
+            log.errorf("Failed to remove state of trigger [%s/%s]: %s", tenantId, triggerId, e.getMessage());
+        }
+    }
+
+    /*
+        Store the state of the triggers flagged as changed by the rules engine. It runs on the timer thread, between
+        firings, once every checkpointPeriod unless forced. Triggers no longer loaded keep their last checkpoint, as
+        they may have moved to a different node.
+     */
+    private void checkpoint(boolean force) {
+        if (!isCheckpointEnabled()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (!force && now < nextCheckpoint) {
+            return;
+        }
+        nextCheckpoint = now + checkpointPeriod;
+        Map<String, Set<String>> changed = rules.getAndClearChangedTriggers();
+        if (changed.isEmpty()) {
+            return;
+        }
+        List<TriggerState> states = new ArrayList<>();
+        for (Entry<String, Set<String>> entry : changed.entrySet()) {
+            for (String triggerId : entry.getValue()) {
+                TriggerState state = rules.getTriggerState(entry.getKey(), triggerId);
+                if (null != state) {
+                    states.add(state);
+                }
+            }
+        }
+        storeTriggerStates(states);
+        log.debugf("Checkpoint of [%s] triggers took [%s] ms", states.size(), System.currentTimeMillis() - now);
+    }
+
+    /*
+        Empty states are removed instead of stored, so only triggers in the middle of an evaluation take space.
+     */
+    private void storeTriggerStates(List<TriggerState> states) {
+        List<TriggerState> updated = new ArrayList<>();
+        Map<String, Collection<String>> emptied = new HashMap<>();
+        for (TriggerState state : states) {
+            if (state.isEmpty()) {
+                emptied.computeIfAbsent(state.getTenantId(), t -> new ArrayList<>()).add(state.getTriggerId());
+            } else {
+                updated.add(state);
+            }
+        }
+        try {
+            triggerStates.putTriggerStates(updated);
+            triggerStates.removeTriggerStates(emptied);
+        } catch (Exception e) {
+            log.debug(e.getMessage(), e);
+            log.errorf("Failed to checkpoint state of [%s] triggers: %s", states.size(), e.getMessage());
+        }
+    }
+
+    private static String triggerKey(String tenantId, String triggerId) {
+        return tenantId + ":" + triggerId;
+    }
+
+    // We allow concurrent threads to make this call in order to process distributed data in parallel. The
+    // pendingData queue is lock-free, the data must not be modified once sent.
     @Override
     public void sendData(TreeSet<Data> data) {
         if (data == null) {
@@ -506,10 +945,14 @@ public class AlertsEngineImpl implements AlertsEngine, PartitionTriggerListener,
             data = processDataExtensions(data);
         }
 
-        synchronized (pendingData) {
-            log.debugf("Adding [%s] to pendingData [%s]", data, pendingData);
-            pendingData.addAll(data);
+        if (data.isEmpty()) {
+            return;
         }
+
+        log.debugf("Adding [%s] to pendingData", data);
+        int pendingSize = pendingDataSize.addAndGet(data.size());
+        pendingData.offer(data);
+        wakeUp(pendingSize);
     }
 
     private TreeSet<Data> filterIncomingDataForNode(TreeSet<Data> data) {
@@ -518,6 +961,8 @@ public class AlertsEngineImpl implements AlertsEngine, PartitionTriggerListener,
             Data d = i.next();
             if (!alertsEngineCache.isDataIdActive(d.getTenantId(), d.getId())) {
                 i.remove();
+            } else {
+                alertsEngineCache.countData(d.getTenantId(), d.getId());
             }
         }
         return filteredData;
@@ -533,8 +978,8 @@ public class AlertsEngineImpl implements AlertsEngine, PartitionTriggerListener,
         return data;
     }
 
-    // We allow concurrent threads to make this call in order to process distributed data in parallel. We
-    // use synchronized blocks to protect pendingEvents.
+    // We allow concurrent threads to make this call in order to process distributed data in parallel. The
+    // pendingEvents queue is lock-free, the events must not be modified once sent.
     @Override
     public void sendEvents(TreeSet<Event> events) {
         if (events == null) {
@@ -560,10 +1005,33 @@ public class AlertsEngineImpl implements AlertsEngine, PartitionTriggerListener,
             events = processEventsExtensions(events);
         }
 
-        synchronized (pendingEvents) {
-            log.debugf("Adding [%s] to pendingEvents [%s]", events, pendingEvents);
-            pendingEvents.addAll(events);
+        if (events.isEmpty()) {
+            return;
         }
+
+        log.debugf("Adding [%s] to pendingEvents", events);
+        int pendingSize = pendingEventsSize.addAndGet(events.size());
+        pendingEvents.offer(events);
+        wakeUp(pendingSize);
+    }
+
+    /*
+        In event-driven mode new data/events schedule a one-shot invocation of the rules on the timer thread.
+        The invocation waits for the batch window to accumulate more data/events, unless the pending size has already
+        reached the batch size, see WakeUpScheduler.
+     */
+    private void wakeUp(int pendingSize) {
+        if (!eventDriven) {
+            return;
+        }
+        wakeUpScheduler.wakeUp(pendingSize);
+    }
+
+    private void scheduleInvoke(long wakeUpDelay) {
+        if (rulesTask == null) {
+            return;
+        }
+        wakeUpScheduler.schedule(wakeUpDelay);
     }
 
     private TreeSet<Event> filterIncomingEventsForNode(TreeSet<Event> events) {
@@ -572,6 +1040,8 @@ public class AlertsEngineImpl implements AlertsEngine, PartitionTriggerListener,
             Event e = i.next();
             if (!alertsEngineCache.isDataIdActive(e.getTenantId(), e.getDataId())) {
                 i.remove();
+            } else {
+                alertsEngineCache.countData(e.getTenantId(), e.getDataId());
             }
         }
         return filteredEvents;
@@ -587,27 +1057,55 @@ public class AlertsEngineImpl implements AlertsEngine, PartitionTriggerListener,
         return events;
     }
 
+    /*
+        Drain the queued batches into a single TreeSet, applying the natural ordering and removing duplicates.
+        Batches are already sorted by the producers, so the first one is copied in linear time.
+     */
     private TreeSet<Data> getAndClearPendingData() {
-        TreeSet<Data> result;
-        synchronized (pendingData) {
-            result = pendingData;
-            pendingData = new TreeSet<>();
+        TreeSet<Data> result = null;
+        int drained = 0;
+        Collection<Data> batch;
+        while ((batch = pendingData.poll()) != null) {
+            drained += batch.size();
+            if (null == result) {
+                result = new TreeSet<>(batch);
+            } else {
+                result.addAll(batch);
+            }
         }
-        return result;
+        pendingDataSize.addAndGet(-drained);
+        return null == result ? new TreeSet<>() : result;
     }
 
     private TreeSet<Event> getAndClearPendingEvents() {
-        TreeSet<Event> result;
-        synchronized (pendingEvents) {
-            result = pendingEvents;
-            pendingEvents = new TreeSet<>();
+        TreeSet<Event> result = null;
+        int drained = 0;
+        Collection<Event> batch;
+        while ((batch = pendingEvents.poll()) != null) {
+            drained += batch.size();
+            if (null == result) {
+                result = new TreeSet<>(batch);
+            } else {
+                result.addAll(batch);
+            }
         }
-        return result;
+        pendingEventsSize.addAndGet(-drained);
+        return null == result ? new TreeSet<>() : result;
     }
 
     private class RulesInvoker extends TimerTask {
         @Override
         public void run() {
+            invoke();
+        }
+
+        void invoke() {
+            loadPendingTriggers();
+
+            publishDataIds();
+
+            publishTriggerCosts();
+
             int numTimeouts = checkPendingTimeouts();
 
             int numMissingEvals = checkMissingStates();
@@ -638,6 +1136,7 @@ public class AlertsEngineImpl implements AlertsEngine, PartitionTriggerListener,
                         rules.fire();
                     }
 
+                    scheduleAutoResolveMissingChecks();
                     alertsService.addAlerts(alerts);
                     alerts.clear();
                     alertsService.persistEvents(events);
@@ -660,6 +1159,71 @@ public class AlertsEngineImpl implements AlertsEngine, PartitionTriggerListener,
                     events.clear();
                 }
             }
+
+            checkpoint(false);
+        }
+
+        /*
+            Insert at most reloadBatchSize triggers queued by a reload(), then let the rules fire. If more triggers
+            are pending a new invocation is scheduled right away.
+         */
+        private void loadPendingTriggers() {
+            if (pendingTriggers.isEmpty()) {
+                return;
+            }
+            int generation = reloadGeneration.get();
+            int numLoaded = 0;
+            TriggersLoad load;
+            while (numLoaded < reloadBatchSize && (load = pendingTriggers.peek()) != null) {
+                if (load.generation != generation) {
+                    pendingTriggers.poll();
+                    continue;
+                }
+                while (numLoaded < reloadBatchSize && load.triggers.hasNext()) {
+                    Trigger trigger = load.triggers.next();
+                    List<Condition> conditions = load.conditions.get(trigger.getId());
+                    List<Dampening> dampenings = load.dampenings.get(trigger.getId());
+                    TriggerState handoff = handoffStates.remove(triggerKey(trigger.getTenantId(), trigger.getId()));
+                    removeTrigger(trigger);
+                    loadTrigger(trigger,
+                            null == conditions ? Collections.emptyList() : conditions,
+                            null == dampenings ? Collections.emptyList() : dampenings,
+                            null != handoff ? handoff : load.states.get(trigger.getId()));
+                    numLoaded++;
+                }
+                if (!load.triggers.hasNext()) {
+                    pendingTriggers.poll();
+                    if (reloadTenantsLoaded.incrementAndGet() == reloadTenantsTotal.get()) {
+                        reloadEnd = System.currentTimeMillis();
+                        log.debugf("Reload of [%s] triggers finished in [%s] ms", reloadTriggersTotal.get(),
+                                reloadEnd - reloadStart);
+                    }
+                }
+            }
+            reloadTriggersLoaded.addAndGet(numLoaded);
+            if (!pendingTriggers.isEmpty()) {
+                scheduleInvoke(0);
+            }
+        }
+
+        /*
+            In distributed mode, publish the cost of the triggers loaded on this node once every costPeriod, so the
+            coordinator can move triggers away from an overloaded node.
+         */
+        private void publishTriggerCosts() {
+            if (!distributed || costPeriod <= 0) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            if (now < nextCostPublish) {
+                return;
+            }
+            nextCostPublish = now + costPeriod;
+            try {
+                partitionManager.notifyTriggerCosts(alertsEngineCache.pollTriggerCosts());
+            } catch (Exception e) {
+                log.debugf("Trigger costs not published: %s", e);
+            }
         }
 
         private int checkPendingTimeouts() {
@@ -667,33 +1231,21 @@ public class AlertsEngineImpl implements AlertsEngine, PartitionTriggerListener,
                 return 0;
             }
 
-            long now = System.currentTimeMillis();
-            Set<Dampening> timeouts = null;
-            for (Dampening d : pendingTimeouts) {
-                if (now < d.getTrueEvalsStartTime() + d.getEvalTimeSetting()) {
-                    continue;
-                }
-
+            // Only the expired timeouts are visited, they are removed from pendingTimeouts
+            List<Dampening> timeouts = pendingTimeouts.pollTimeouts(System.currentTimeMillis());
+            int numTimeouts = 0;
+            for (Dampening d : timeouts) {
                 d.setSatisfied(true);
                 try {
                     log.debugf("Dampening Timeout Hit! %s", d.toString());
                     rules.updateFact(d);
-                    if (null == timeouts) {
-                        timeouts = new HashSet<>();
-                    }
-                    timeouts.add(d);
+                    numTimeouts++;
                 } catch (Exception e) {
                     log.errorf(e, "Unable to update Dampening Fact on Timeout! %s", d.toString());
                 }
-
             }
 
-            if (null == timeouts) {
-                return 0;
-            }
-
-            pendingTimeouts.removeAll(timeouts);
-            return timeouts.size();
+            return numTimeouts;
         }
     }
 
@@ -743,40 +1295,88 @@ public class AlertsEngineImpl implements AlertsEngine, PartitionTriggerListener,
         }
     }
 
+    /*
+        MissingStates are checked when their MissingCondition can first match, given the previousTime known when they
+        were scheduled. The rules move previousTime forward on incoming data or events, so a due MissingState is
+        re-checked and rescheduled if it has received data in the meantime. Only the MissingStates of the current
+        mode of their trigger are scheduled, the others are scheduled when the trigger switches mode.
+     */
     private int checkMissingStates() {
-        if (missingStates.isEmpty()) {
-            return 0;
-        }
-
+        long now = System.currentTimeMillis();
         int numMatchingEvals = 0;
-        for (MissingState missingState : missingStates) {
-            if (missingState.getTriggerMode() != missingState.getTrigger().getMode()) {
-                continue;
+        synchronized (missingStates) {
+            if (missingChecks.nextDueTime() > now) {
+                return 0;
             }
 
-            long now = System.currentTimeMillis();
-            rules.removeFact(missingState);
-            missingState.setTime(now);
-            if (missingState.getCondition().match(missingState.getPreviousTime(), now)) {
-                MissingConditionEval eval = new MissingConditionEval(missingState.getCondition(),
-                        missingState.getPreviousTime(),
-                        now);
-                missingState.setPreviousTime(now);
-                rules.addFact(eval);
-                numMatchingEvals++;
+            for (MissingState missingState : missingChecks.pollDue(now)) {
+                if (missingState.getTriggerMode() != missingState.getTrigger().getMode()) {
+                    continue;
+                }
+
+                if (missingState.getCondition().match(missingState.getPreviousTime(), now)) {
+                    MissingConditionEval eval = new MissingConditionEval(missingState.getCondition(),
+                            missingState.getPreviousTime(),
+                            now);
+                    missingState.setPreviousTime(now);
+                    missingState.setTime(now);
+                    rules.updateFact(missingState);
+                    rules.addFact(eval);
+                    numMatchingEvals++;
+                }
+                scheduleMissingCheck(missingState);
             }
-            rules.addFact(missingState);
         }
 
         return numMatchingEvals;
     }
 
+    /*
+        The rules switch a trigger to AUTORESOLVE mode when it fires, its AUTORESOLVE MissingStates are scheduled from
+        then on. The switch back to FIRING mode reloads the trigger (see handleAutoResolvedTriggers()), which
+        schedules its FIRING MissingStates.
+     */
+    private void scheduleAutoResolveMissingChecks() {
+        synchronized (missingStates) {
+            if (missingStates.isEmpty()) {
+                return;
+            }
+            for (List<? extends Event> fired : Arrays.asList(alerts, events)) {
+                for (Event event : fired) {
+                    Trigger trigger = event.getTrigger();
+                    if (null != trigger && trigger.isAutoResolve()) {
+                        Set<MissingState> triggerMissingStates = missingStates.get(
+                                triggerKey(trigger.getTenantId(), trigger.getId()));
+                        if (null != triggerMissingStates) {
+                            scheduleMissingChecks(triggerMissingStates);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    // Only the MissingStates of the current mode of their trigger can match
+    private void scheduleMissingChecks(Collection<MissingState> triggerMissingStates) {
+        for (MissingState missingState : triggerMissingStates) {
+            if (missingState.getTriggerMode() == missingState.getTrigger().getMode()) {
+                scheduleMissingCheck(missingState);
+            }
+        }
+    }
+
+    // MissingCondition.match() requires (previousTime + interval) < time
+    private void scheduleMissingCheck(MissingState missingState) {
+        missingChecks.schedule(missingState,
+                missingState.getPreviousTime() + missingState.getCondition().getInterval() + 1);
+    }
+
     /*
         Data incoming from a different node.  This has already been globally filtered but not locally filtered.
         It does not need to be re-propagated.
 
-        We allow concurrent threads to make this call in order to process distributed data in parallel. We
-        use synchronized blocks to protect pendingData.
+        We allow concurrent threads to make this call in order to process distributed data in parallel. The
+        pendingData queue is lock-free.
      */
     @Override
     public void onNewData(Collection<Data> data) {
@@ -787,8 +1387,8 @@ public class AlertsEngineImpl implements AlertsEngine, PartitionTriggerListener,
         Events incoming from a different node.  This has already been globally filtered but not locally filtered.
         It does not need to be re-propagated.
 
-        We allow concurrent threads to make this call in order to process distributed data in parallel. We
-        use synchronized blocks to protect pendingEvents.
+        We allow concurrent threads to make this call in order to process distributed data in parallel. The
+        pendingEvents queue is lock-free.
      */
     @Override
     public void onNewEvents(Collection<Event> events) {
@@ -811,9 +1411,11 @@ public class AlertsEngineImpl implements AlertsEngine, PartitionTriggerListener,
                 break;
             case REMOVE:
                 Trigger removeTrigger = new Trigger(tenantId, triggerId, "remove-trigger");
-                removeTrigger(removeTrigger);
+                changeOnTimer(() -> removeTrigger(removeTrigger));
+                removeTriggerState(tenantId, triggerId);
                 break;
         }
+        schedulePublishDataIds();
     }
 
     /*
@@ -833,32 +1435,144 @@ public class AlertsEngineImpl implements AlertsEngine, PartitionTriggerListener,
 
         if (!pendingData.isEmpty() || !pendingEvents.isEmpty()) {
             if (!pendingData.isEmpty()) {
-                log.warnf("Pending Data onPartitionChange: %s.", pendingData);
+                log.warnf("Pending Data onPartitionChange: [%s] datums.", pendingDataSize.get());
             }
-            if (!!pendingEvents.isEmpty()) {
-                log.warnf("Pending Events onPartitionChange: %s.", pendingData);
+            if (!pendingEvents.isEmpty()) {
+                log.warnf("Pending Events onPartitionChange: [%s] events.", pendingEventsSize.get());
             }
         }
 
         /*
-            Removing old triggers for this node
+            Removing old triggers for this node. The state of the triggers moving to other nodes is taken on the
+            timer thread, between firings, right before they are removed, and handed over to the new owners so they
+            continue their evaluation. It is also checkpointed, for an owner that changes again before the handoff.
          */
-        for (Entry<String, List<String>> entry : removed.entrySet()) {
-            String tenantId = entry.getKey();
-            entry.getValue().stream().forEach(triggerId -> {
-                Trigger removeTrigger = new Trigger(tenantId, triggerId, "to-remove-from-alerts-engine");
-                removeTrigger(removeTrigger);
+        List<TriggerState> states = Collections.emptyList();
+        try {
+            states = runOnTimer(() -> {
+                List<TriggerState> removedStates = new ArrayList<>();
+                for (Entry<String, List<String>> entry : removed.entrySet()) {
+                    String tenantId = entry.getKey();
+                    for (String triggerId : entry.getValue()) {
+                        TriggerState state = rules.getTriggerState(tenantId, triggerId);
+                        if (null != state) {
+                            removedStates.add(state);
+                        }
+                        Trigger removeTrigger = new Trigger(tenantId, triggerId, "to-remove-from-alerts-engine");
+                        removeTrigger(removeTrigger);
+                    }
+                }
+                return removedStates;
             });
+        } catch (Exception e) {
+            log.debug(e.getMessage(), e);
+            log.errorf("Failed to apply trigger change on the rules engine: %s", e.toString());
+        }
+        if (!states.isEmpty()) {
+            partitionManager.notifyTriggerStates(states);
+            if (isCheckpointEnabled()) {
+                storeTriggerStates(states);
+            }
+        }
+        // Discard the states handed over for triggers that moved again before they were loaded
+        if (!handoffStates.isEmpty()) {
+            Set<String> owned = new HashSet<>();
+            partition.forEach((tenantId, triggerIds) -> triggerIds.forEach(t -> owned.add(triggerKey(tenantId, t))));
+            handoffStates.keySet().retainAll(owned);
         }
 
         /*
-            Reloading new triggers for this node
+            Reloading new triggers for this node. They are loaded right here, the triggers of this node are not
+            notified again through the PartitionManager.
          */
         for (Entry<String, List<String>> entry : added.entrySet()) {
             String tenantId = entry.getKey();
             entry.getValue().stream().forEach(triggerId -> {
-                reloadTrigger(tenantId, triggerId);
+                reloadTrigger(new Trigger(tenantId, triggerId, "reload-trigger"));
             });
         }
+
+        schedulePublishDataIds();
+    }
+
+    /*
+        The previous owner of the triggers gained on a partition change hands over their state, it may arrive before
+        or after this node loads them. Triggers already loaded are restored right away, the others keep the state
+        until they are loaded.
+     */
+    @Override
+    public void onTriggerStates(Collection<TriggerState> states) {
+        log.debugf("Received state of [%s] triggers", states.size());
+        changeOnTimer(() -> {
+            for (TriggerState state : states) {
+                Trigger trigger = new Trigger(state.getTenantId(), state.getTriggerId(), "handoff");
+                if (null != rules.getFact(trigger)) {
+                    restoreTriggerState(state);
+                } else {
+                    handoffStates.put(triggerKey(state.getTenantId(), state.getTriggerId()), state);
+                }
+            }
+        });
+    }
+
+    private void restoreTriggerState(TriggerState state) {
+        if (state.isEmpty()) {
+            return;
+        }
+        log.debugf("Restoring %s", state);
+        rules.restoreTriggerState(state);
+        // Rescheduled once restored, as the restore may set back the previousTime
+        synchronized (missingStates) {
+            Set<MissingState> triggerMissingStates = missingStates.get(triggerKey(state.getTenantId(),
+                    state.getTriggerId()));
+            if (null != triggerMissingStates) {
+                scheduleMissingChecks(triggerMissingStates);
+            }
+        }
+    }
+
+    /*
+        A trigger or partition change schedules a rules invocation after the batch window instead of publishing the
+        dataIds right away, so a burst of changes (i.e. the triggers gained on a partition change) is published
+        once, and data is still routed to a new trigger without waiting for the engine period.
+     */
+    private void schedulePublishDataIds() {
+        scheduleInvoke(batchWindow);
+    }
+
+    /*
+        In distributed mode, publish the dataIds of the triggers loaded on this node when they have changed, so
+        other nodes send the data and events only to the nodes owning triggers for them. It runs on each rules
+        invocation, on the timer thread, so the publications are in the order of the polls.
+     */
+    private void publishDataIds() {
+        if (!distributed) {
+            return;
+        }
+        try {
+            Map<String, Set<String>> dataIds = alertsEngineCache.pollActiveDataIds();
+            if (null != dataIds) {
+                partitionManager.notifyDataIds(dataIds);
+            }
+        } catch (Exception e) {
+            log.debugf("DataIds not published: %s", e);
+        }
+    }
+
+    private static class TriggersLoad {
+        final int generation;
+        final Iterator<Trigger> triggers;
+        final Map<String, List<Condition>> conditions;
+        final Map<String, List<Dampening>> dampenings;
+        final Map<String, TriggerState> states;
+
+        TriggersLoad(int generation, List<Trigger> triggers, Map<String, List<Condition>> conditions,
+                Map<String, List<Dampening>> dampenings, Map<String, TriggerState> states) {
+            this.generation = generation;
+            this.triggers = triggers.iterator();
+            this.conditions = conditions;
+            this.dampenings = dampenings;
+            this.states = states;
+        }
     }
 }
@@ -0,0 +1,594 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.alerts.engine.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.hawkular.alerts.log.AlertingLogger;
+import org.hawkular.commons.log.MsgLogging;
+import org.hawkular.commons.properties.HawkularProperties;
+import org.infinispan.manager.EmbeddedCacheManager;
+import org.infinispan.notifications.Listener;
+import org.infinispan.notifications.cachemanagerlistener.annotation.ViewChanged;
+import org.infinispan.notifications.cachemanagerlistener.event.ViewChangedEvent;
+import org.infinispan.remoting.transport.Address;
+import org.infinispan.util.function.SerializableFunction;
+
+/**
+ * Point to point messaging between the nodes of the cluster, used by the {@link PartitionManagerImpl} to send the
+ * trigger, data and event notifications.
+ *
+ * Messages are queued by target node and sent in batches through the Infinispan ClusterExecutor. A batch is executed
+ * on the target node, which passes its messages in order to the local receiver, and the completion of the execution
+ * acknowledges the batch. There is at most one batch in flight per target, so the messages sent to a node are
+ * delivered in the order they were sent. Batches larger than a threshold are compressed, and failed batches are
+ * retried while the target is a member of the cluster. A batch can be retried after its acknowledgement timed out
+ * even if it was delivered, so each batch carries a sequence number of its sender and the receiver discards the
+ * batches it has already delivered. The sequences of the senders that are no longer members are discarded on each
+ * view change. Messages sent to a node with too many pending messages are dropped, except control
+ * messages (i.e. trigger notifications) that are always queued, as their receiver has no other way to learn about
+ * them.
+ *
+ * @author Jay Shaughnessy
+ * @author Lucas Ponce
+ */
+public class ClusterMessenger {
+    private static final AlertingLogger log = MsgLogging.getMsgLogger(AlertingLogger.class, ClusterMessenger.class);
+
+    /*
+        MESSAGING_BATCH_SIZE defined in number of messages sent to a node in a single batch.
+     */
+    private static final String MESSAGING_BATCH_SIZE = "hawkular-alerts.messaging-batch-size";
+    private static final String MESSAGING_BATCH_SIZE_DEFAULT = "100";
+
+    /*
+        MESSAGING_BATCH_WINDOW defined in milliseconds.
+        Time a message waits to be batched with the following ones when the batch is not full.
+     */
+    private static final String MESSAGING_BATCH_WINDOW = "hawkular-alerts.messaging-batch-window";
+    private static final String MESSAGING_BATCH_WINDOW_DEFAULT = "5";
+
+    /*
+        MESSAGING_COMPRESS_THRESHOLD defined in bytes.
+        Serialized batches of this size or larger are sent compressed.
+     */
+    private static final String MESSAGING_COMPRESS_THRESHOLD = "hawkular-alerts.messaging-compress-threshold";
+    private static final String MESSAGING_COMPRESS_THRESHOLD_DEFAULT = "4096";
+
+    /*
+        MESSAGING_RETRIES defined in number of times a failed batch is sent again before its messages are dropped.
+     */
+    private static final String MESSAGING_RETRIES = "hawkular-alerts.messaging-retries";
+    private static final String MESSAGING_RETRIES_DEFAULT = "2";
+
+    /*
+        MESSAGING_TIMEOUT defined in milliseconds.
+        Time to wait for the acknowledgement of a batch before it is considered failed.
+     */
+    private static final String MESSAGING_TIMEOUT = "hawkular-alerts.messaging-timeout";
+    private static final String MESSAGING_TIMEOUT_DEFAULT = "30000";
+
+    /*
+        MESSAGING_MAX_PENDING defined in number of messages queued for a node and not sent yet.
+        Messages sent to a node with a full queue are dropped, control messages are queued anyway.
+     */
+    private static final String MESSAGING_MAX_PENDING = "hawkular-alerts.messaging-max-pending";
+    private static final String MESSAGING_MAX_PENDING_DEFAULT = "10000";
+
+    /*
+        ClusterMessengers of this JVM by node address, used by the batches to find their receiver
+     */
+    private static final Map<Address, ClusterMessenger> localMessengers = new ConcurrentHashMap<>();
+
+    private final EmbeddedCacheManager cacheManager;
+    private final Address localAddress;
+    private final Consumer<Serializable> receiver;
+    private final String senderId = UUID.randomUUID().toString();
+    private final DeliveredSequences deliveredSequences = new DeliveredSequences();
+    private final MembersListener membersListener = new MembersListener();
+
+    private final int batchSize;
+    private final int batchWindow;
+    private final int compressThreshold;
+    private final int retries;
+    private final long timeout;
+    private final int maxPending;
+
+    private final Map<Address, TargetQueue> queues = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService sender;
+    // Batches to the local node are delivered apart, so a slow receiver does not hold the batches to other nodes
+    private final ExecutorService localDelivery;
+
+    private final AtomicLong sentMessages = new AtomicLong();
+    private final AtomicLong sentBatches = new AtomicLong();
+    private final AtomicLong sentBytes = new AtomicLong();
+    private final AtomicLong compressedBatches = new AtomicLong();
+    private final AtomicLong ackedBatches = new AtomicLong();
+    private final AtomicLong retriedBatches = new AtomicLong();
+    private final AtomicLong droppedMessages = new AtomicLong();
+    private final AtomicLong receivedMessages = new AtomicLong();
+    private final AtomicLong receivedBatches = new AtomicLong();
+    private final AtomicLong duplicatedBatches = new AtomicLong();
+    private final AtomicLong ackTime = new AtomicLong();
+
+    /**
+     * @param cacheManager the clustered cache manager
+     * @param receiver invoked with each message received by this node, in the order they were sent by each node
+     */
+    public ClusterMessenger(EmbeddedCacheManager cacheManager, Consumer<Serializable> receiver) {
+        this.cacheManager = cacheManager;
+        this.localAddress = cacheManager.getAddress();
+        this.receiver = receiver;
+        batchSize = Integer.parseInt(HawkularProperties.getProperty(MESSAGING_BATCH_SIZE,
+                MESSAGING_BATCH_SIZE_DEFAULT));
+        batchWindow = Integer.parseInt(HawkularProperties.getProperty(MESSAGING_BATCH_WINDOW,
+                MESSAGING_BATCH_WINDOW_DEFAULT));
+        compressThreshold = Integer.parseInt(HawkularProperties.getProperty(MESSAGING_COMPRESS_THRESHOLD,
+                MESSAGING_COMPRESS_THRESHOLD_DEFAULT));
+        retries = Integer.parseInt(HawkularProperties.getProperty(MESSAGING_RETRIES, MESSAGING_RETRIES_DEFAULT));
+        timeout = Long.parseLong(HawkularProperties.getProperty(MESSAGING_TIMEOUT, MESSAGING_TIMEOUT_DEFAULT));
+        maxPending = Integer.parseInt(HawkularProperties.getProperty(MESSAGING_MAX_PENDING,
+                MESSAGING_MAX_PENDING_DEFAULT));
+        sender = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ClusterMessenger-Sender");
+            t.setDaemon(true);
+            return t;
+        });
+        localDelivery = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "ClusterMessenger-LocalDelivery");
+            t.setDaemon(true);
+            return t;
+        });
+        localMessengers.put(localAddress, this);
+        cacheManager.addListener(membersListener);
+    }
+
+    /**
+     * Queue a message for a node. The local node is a valid target, its messages are delivered asynchronously
+     * without serialization. The message is dropped if the queue of the node is full.
+     *
+     * @param target the address of the node
+     * @param message the message
+     */
+    public void send(Address target, Serializable message) {
+        send(target, message, false);
+    }
+
+    /**
+     * Queue a control message for a node. As {@link #send(Address, Serializable)} but the message is queued even if
+     * the queue of the node is full, so it must be used only for messages that cannot be lost.
+     *
+     * @param target the address of the node
+     * @param message the message
+     */
+    public void sendControl(Address target, Serializable message) {
+        send(target, message, true);
+    }
+
+    private void send(Address target, Serializable message, boolean control) {
+        if (null == target || null == message) {
+            throw new IllegalArgumentException("target and message must be not null");
+        }
+        TargetQueue queue = queues.computeIfAbsent(target, TargetQueue::new);
+        boolean flush = false;
+        boolean schedule = false;
+        synchronized (queue) {
+            if (!control && queue.pending.size() >= maxPending) {
+                droppedMessages.incrementAndGet();
+                log.debugf("Message to %s dropped, [%s] messages pending", target, queue.pending.size());
+                return;
+            }
+            queue.pending.add(message);
+            if (!queue.inFlight) {
+                if (queue.pending.size() >= batchSize) {
+                    flush = true;
+                } else if (!queue.flushScheduled) {
+                    queue.flushScheduled = true;
+                    schedule = true;
+                }
+            }
+        }
+        if (flush) {
+            execute(() -> flush(queue), 0);
+        } else if (schedule) {
+            execute(() -> flush(queue), batchWindow);
+        }
+    }
+
+    /**
+     * Send the pending messages and stop the messenger. Batches still in flight are not awaited.
+     */
+    public void shutdown() {
+        localMessengers.remove(localAddress);
+        cacheManager.removeListener(membersListener);
+        queues.values().forEach(this::flush);
+        sender.shutdown();
+        localDelivery.shutdown();
+    }
+
+    /**
+     * @return the delivery metrics of the messenger
+     */
+    public Map<String, String> getStatus() {
+        Map<String, String> status = new HashMap<>();
+        int pending = 0;
+        for (TargetQueue queue : queues.values()) {
+            synchronized (queue) {
+                pending += queue.pending.size();
+            }
+        }
+        long acked = ackedBatches.get();
+        status.put("messaging-pending-messages", String.valueOf(pending));
+        status.put("messaging-sent-messages", String.valueOf(sentMessages.get()));
+        status.put("messaging-sent-batches", String.valueOf(sentBatches.get()));
+        status.put("messaging-sent-bytes", String.valueOf(sentBytes.get()));
+        status.put("messaging-compressed-batches", String.valueOf(compressedBatches.get()));
+        status.put("messaging-acked-batches", String.valueOf(acked));
+        status.put("messaging-retried-batches", String.valueOf(retriedBatches.get()));
+        status.put("messaging-dropped-messages", String.valueOf(droppedMessages.get()));
+        status.put("messaging-received-messages", String.valueOf(receivedMessages.get()));
+        status.put("messaging-received-batches", String.valueOf(receivedBatches.get()));
+        status.put("messaging-duplicated-batches", String.valueOf(duplicatedBatches.get()));
+        status.put("messaging-avg-ack-time", String.valueOf(acked == 0 ? 0 : ackTime.get() / acked));
+        return status;
+    }
+
+    /**
+     * Serialize a list of messages into a batch, compressing it if the serialized size reaches the threshold.
+     *
+     * @param messages the messages of the batch
+     * @param compressThreshold size in bytes from which the batch is compressed
+     * @return the batch
+     * @throws IOException if a message cannot be serialized
+     */
+    public static MessageBatch encode(List<Serializable> messages, int compressThreshold) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(new ArrayList<>(messages));
+        }
+        if (bytes.size() < compressThreshold) {
+            return new MessageBatch(messages.size(), false, bytes.toByteArray());
+        }
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.size() / 4);
+        try (DeflaterOutputStream out = new DeflaterOutputStream(compressed)) {
+            bytes.writeTo(out);
+        }
+        return new MessageBatch(messages.size(), true, compressed.toByteArray());
+    }
+
+    /**
+     * @param batch a batch created with {@link #encode(List, int)}
+     * @return the messages of the batch in the order they were encoded
+     * @throws IOException if the batch cannot be deserialized
+     */
+    @SuppressWarnings("unchecked")
+    public static List<Serializable> decode(MessageBatch batch) throws IOException {
+        ByteArrayInputStream bytes = new ByteArrayInputStream(batch.getPayload());
+        try (ObjectInputStream in = new ObjectInputStream(batch.isCompressed() ? new InflaterInputStream(bytes)
+                : bytes)) {
+            return (List<Serializable>) in.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private void execute(Runnable task, long delay) {
+        try {
+            sender.schedule(task, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Messenger has been shut down
+            log.debugf("Messages not sent: %s", e.getMessage());
+        }
+    }
+
+    /*
+        Send the next batch of a target if there is no batch in flight. Runs on the sender thread, which only
+        serializes and submits the batches.
+     */
+    private void flush(TargetQueue queue) {
+        List<Serializable> messages;
+        long sequence;
+        synchronized (queue) {
+            queue.flushScheduled = false;
+            if (queue.inFlight || queue.pending.isEmpty()) {
+                return;
+            }
+            messages = new ArrayList<>(Math.min(batchSize, queue.pending.size()));
+            while (messages.size() < batchSize && !queue.pending.isEmpty()) {
+                messages.add(queue.pending.poll());
+            }
+            queue.inFlight = true;
+            sequence = ++queue.sequence;
+        }
+        if (localAddress.equals(queue.target)) {
+            sentMessages.addAndGet(messages.size());
+            sentBatches.incrementAndGet();
+            try {
+                localDelivery.execute(() -> {
+                    deliver(messages);
+                    ackedBatches.incrementAndGet();
+                    completed(queue);
+                });
+            } catch (RejectedExecutionException e) {
+                // Messenger has been shut down
+                log.debugf("Messages not delivered: %s", e.getMessage());
+                droppedMessages.addAndGet(messages.size());
+                completed(queue);
+            }
+            return;
+        }
+        MessageBatch batch;
+        try {
+            batch = encode(messages, compressThreshold);
+        } catch (IOException e) {
+            log.warnf("Messages to %s cannot be serialized: %s", queue.target, e.toString());
+            droppedMessages.addAndGet(messages.size());
+            completed(queue);
+            return;
+        }
+        submit(queue, new DeliverBatch(senderId, localAddress.toString(), sequence, batch), 0);
+    }
+
+    private void submit(TargetQueue queue, DeliverBatch delivery, int attempt) {
+        MessageBatch batch = delivery.batch;
+        sentBatches.incrementAndGet();
+        sentMessages.addAndGet(batch.getSize());
+        sentBytes.addAndGet(batch.getPayload().length);
+        if (batch.isCompressed()) {
+            compressedBatches.incrementAndGet();
+        }
+        long start = System.currentTimeMillis();
+        AtomicReference<Throwable> remoteError = new AtomicReference<>();
+        cacheManager.executor()
+                .filterTargets(Collections.singleton(queue.target))
+                .timeout(timeout, TimeUnit.MILLISECONDS)
+                .submitConsumer(delivery, (address, result, error) -> {
+                    if (null != error) {
+                        remoteError.set(error);
+                    }
+                })
+                .whenComplete((result, error) -> {
+                    Throwable failure = null != error ? error : remoteError.get();
+                    if (null == failure) {
+                        ackTime.addAndGet(System.currentTimeMillis() - start);
+                        ackedBatches.incrementAndGet();
+                        completed(queue);
+                    } else if (attempt < retries && cacheManager.getMembers().contains(queue.target)) {
+                        log.debugf("Retrying batch to %s: %s", queue.target, failure.toString());
+                        retriedBatches.incrementAndGet();
+                        execute(() -> submit(queue, delivery, attempt + 1), batchWindow);
+                    } else {
+                        log.warnf("Messages to %s dropped: %s", queue.target, failure.toString());
+                        droppedMessages.addAndGet(batch.getSize());
+                        completed(queue);
+                    }
+                });
+    }
+
+    /*
+        The batch in flight of a target has been acknowledged or dropped, the next one can be sent
+     */
+    private void completed(TargetQueue queue) {
+        boolean flush;
+        synchronized (queue) {
+            queue.inFlight = false;
+            flush = !queue.pending.isEmpty() && !queue.flushScheduled;
+            if (flush) {
+                queue.flushScheduled = true;
+            }
+        }
+        if (flush) {
+            execute(() -> flush(queue), 0);
+        }
+        if (!cacheManager.getMembers().contains(queue.target) && !localAddress.equals(queue.target)) {
+            queues.remove(queue.target);
+        }
+    }
+
+    private void deliver(List<Serializable> messages) {
+        receivedBatches.incrementAndGet();
+        receivedMessages.addAndGet(messages.size());
+        for (Serializable message : messages) {
+            try {
+                receiver.accept(message);
+            } catch (Exception e) {
+                log.warnf("Error processing message [%s]: %s", message, e.toString());
+            }
+        }
+    }
+
+    /*
+        A batch sent again by its sender, after an acknowledgement timeout, is discarded if it was already delivered
+     */
+    private void deliver(String sender, String senderNode, long sequence, List<Serializable> messages) {
+        if (!deliveredSequences.deliver(sender, senderNode, sequence, () -> deliver(messages))) {
+            duplicatedBatches.incrementAndGet();
+            log.debugf("Batch [%s] of %s already delivered", sequence, sender);
+        }
+    }
+
+    private static class TargetQueue {
+        private final Address target;
+        private final Queue<Serializable> pending = new ArrayDeque<>();
+        private boolean inFlight = false;
+        private boolean flushScheduled = false;
+        private long sequence = 0;
+
+        TargetQueue(Address target) {
+            this.target = target;
+        }
+    }
+
+    /*
+        Discard the delivered sequences of the senders that have left the cluster, a restarted node uses a new sender
+     */
+    @Listener
+    public class MembersListener {
+        @ViewChanged
+        public void onViewChanged(ViewChangedEvent event) {
+            deliveredSequences.retainNodes(event.getNewMembers().stream()
+                    .map(Object::toString)
+                    .collect(Collectors.toSet()));
+        }
+    }
+
+    /**
+     * Last batch sequence delivered from each sender. Deliveries of a sender are serialized, so a duplicated batch
+     * waits for the delivery of the original one, and the batches of a sender are delivered in order.
+     * Used internally in the context of the ClusterMessenger.
+     */
+    static class DeliveredSequences {
+        private final Map<String, SenderSequence> delivered = new ConcurrentHashMap<>();
+
+        /**
+         * @param sender the id of the sender of the batch
+         * @param senderNode the node of the sender of the batch
+         * @param sequence the sequence of the batch in the sender
+         * @param delivery the delivery of the batch
+         * @return true if the batch has been delivered, false if it was delivered before
+         */
+        boolean deliver(String sender, String senderNode, long sequence, Runnable delivery) {
+            SenderSequence last = delivered.computeIfAbsent(sender, s -> new SenderSequence(senderNode));
+            synchronized (last) {
+                if (sequence <= last.sequence) {
+                    return false;
+                }
+                last.sequence = sequence;
+                delivery.run();
+                return true;
+            }
+        }
+
+        /**
+         * @param nodes the nodes of the current members
+         */
+        void retainNodes(Set<String> nodes) {
+            delivered.values().removeIf(last -> !nodes.contains(last.node));
+        }
+
+        /**
+         * @return the number of senders tracked
+         */
+        int size() {
+            return delivered.size();
+        }
+
+        private static class SenderSequence {
+            private final String node;
+            private long sequence = 0;
+
+            SenderSequence(String node) {
+                this.node = node;
+            }
+        }
+    }
+
+    /**
+     * Auxiliary class to carry a batch of serialized messages between nodes.
+     * Used internally in the context of the ClusterMessenger.
+     */
+    public static class MessageBatch implements Serializable {
+        private int size;
+        private boolean compressed;
+        private byte[] payload;
+
+        public MessageBatch(int size, boolean compressed, byte[] payload) {
+            this.size = size;
+            this.compressed = compressed;
+            this.payload = payload;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public boolean isCompressed() {
+            return compressed;
+        }
+
+        public byte[] getPayload() {
+            return payload;
+        }
+
+        @Override
+        public String toString() {
+            return "MessageBatch" + '[' +
+                    "size=" + size +
+                    ", compressed=" + compressed +
+                    ", bytes=" + payload.length +
+                    ']';
+        }
+    }
+
+    /**
+     * Auxiliary class to deliver a batch on the node it is sent to.
+     * Used internally in the context of the ClusterMessenger.
+     */
+    public static class DeliverBatch implements SerializableFunction<EmbeddedCacheManager, Void> {
+        private String sender;
+        private String senderNode;
+        private long sequence;
+        private MessageBatch batch;
+
+        public DeliverBatch(String sender, String senderNode, long sequence, MessageBatch batch) {
+            this.sender = sender;
+            this.senderNode = senderNode;
+            this.sequence = sequence;
+            this.batch = batch;
+        }
+
+        @Override
+        public Void apply(EmbeddedCacheManager cacheManager) {
+            ClusterMessenger messenger = localMessengers.get(cacheManager.getAddress());
+            if (null == messenger) {
+                throw new IllegalStateException("No messenger on " + cacheManager.getAddress());
+            }
+            try {
+                messenger.deliver(sender, senderNode, sequence, decode(batch));
+            } catch (IOException e) {
+                throw new IllegalStateException("Batch cannot be decoded: " + e.getMessage(), e);
+            }
+            return null;
+        }
+    }
+}
@@ -16,20 +16,46 @@
  */
 package org.hawkular.alerts.engine.impl;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.TreeSet;
 import java.util.function.Predicate;
 
 import org.drools.core.event.DebugAgendaEventListener;
 import org.drools.core.event.DebugRuleRuntimeEventListener;
+import org.hawkular.alerts.api.model.condition.CompareCondition;
+import org.hawkular.alerts.api.model.condition.Condition;
+import org.hawkular.alerts.api.model.condition.ConditionEval;
+import org.hawkular.alerts.api.model.condition.NelsonCondition;
+import org.hawkular.alerts.api.model.condition.RateCondition;
+import org.hawkular.alerts.api.model.dampening.Dampening;
 import org.hawkular.alerts.api.model.data.Data;
 import org.hawkular.alerts.api.model.event.Event;
+import org.hawkular.alerts.api.model.trigger.Trigger;
 import org.hawkular.alerts.engine.service.RulesEngine;
+import org.hawkular.alerts.engine.util.CompareData;
+import org.hawkular.alerts.engine.util.MissingState;
+import org.hawkular.alerts.engine.util.NelsonData;
+import org.hawkular.alerts.engine.util.RateData;
+import org.hawkular.alerts.engine.util.TriggerState;
+import org.hawkular.alerts.engine.util.TriggerState.DampeningState;
 import org.hawkular.commons.log.MsgLogger;
 import org.hawkular.commons.log.MsgLogging;
 import org.hawkular.commons.properties.HawkularProperties;
 import org.kie.api.KieServices;
+import org.kie.api.event.rule.AfterMatchFiredEvent;
+import org.kie.api.event.rule.DefaultAgendaEventListener;
+import org.kie.api.event.rule.ObjectDeletedEvent;
+import org.kie.api.event.rule.ObjectInsertedEvent;
+import org.kie.api.event.rule.ObjectUpdatedEvent;
+import org.kie.api.event.rule.RuleRuntimeEventListener;
 import org.kie.api.runtime.KieContainer;
 import org.kie.api.runtime.KieSession;
 import org.kie.api.runtime.ObjectFilter;
@@ -41,7 +67,8 @@ import org.kie.api.runtime.rule.FactHandle;
  * This implementations has an approach of fixed rules based on filesystem.
  *
  * The RulesEngine is invoked only by the AlertsEngine impl and is not invoked concurrently, so
- * single-threading is a fair assumption.
+ * single-threading is a fair assumption. The AlertsEngine fires the rules and adds, removes and restores the
+ * triggers on its timer thread, the trigger fact indexes below are not thread safe.
  *
  * @author Jay Shaughnessy
  * @author Lucas Ponce
@@ -63,11 +90,34 @@ public class DroolsRulesEngineImpl implements RulesEngine {
     TreeSet<Data> pendingData = new TreeSet<>();
     TreeSet<Event> pendingEvents = new TreeSet<>();
 
+    // tenantId:triggerId -> handles of the Trigger, Condition, Dampening, MissingState and NelsonData facts of the
+    // trigger. It is maintained by a session listener, so facts inserted or retracted by the rules are also tracked.
+    private final Map<String, Set<FactHandle>> triggerFacts = new HashMap<>();
+
+    // tenantId:source:dataId -> handle of the RateData and CompareData facts, shared by the triggers using the dataId
+    private final Map<String, FactHandle> rateFacts = new HashMap<>();
+    private final Map<String, FactHandle> compareFacts = new HashMap<>();
+
+    // tenantId -> triggerIds with an evaluation state changed since the last getAndClearChangedTriggers()
+    private Map<String, Set<String>> changedTriggers = new HashMap<>();
+    private final TriggerFactsListener triggerFactsListener = new TriggerFactsListener();
+
+    private double traceSample;
+    private TriggerTraceListener triggerTraceListener;
+
     public DroolsRulesEngineImpl() {
         log.debug("Creating instance.");
         ks = KieServices.Factory.get();
         kc = ks.getKieClasspathContainer();
         kSession = kc.newKieSession(SESSION_NAME);
+        kSession.addEventListener(triggerFactsListener);
+
+        traceSample = new Double(HawkularProperties.getProperty(RULES_ENGINE_TRACE_SAMPLE,
+                RULES_ENGINE_TRACE_SAMPLE_ENV, RULES_ENGINE_TRACE_SAMPLE_DEFAULT));
+        if (traceSample > 0) {
+            triggerTraceListener = new TriggerTraceListener();
+            kSession.addEventListener(triggerTraceListener);
+        }
 
         if (log.isTraceEnabled()) {
             kSession.addEventListener(new DebugAgendaEventListener());
@@ -91,15 +141,7 @@ public class DroolsRulesEngineImpl implements RulesEngine {
             throw new IllegalArgumentException(fact.toString());
         }
         kSession.insert(fact);
-        if (log.isDebugEnabled()) {
-            log.debugf("addFact( %s )", fact.toString());
-            log.debug("==> Begin Dump");
-            for (FactHandle f : kSession.getFactHandles()) {
-                Object sessionObject = kSession.getObject(f);
-                log.debugf("Fact:  %s", sessionObject.toString());
-            }
-            log.debug("==> End Dump");
-        }
+        log.debugf("addFact( %s )", fact);
     }
 
     @Override
@@ -115,15 +157,7 @@ public class DroolsRulesEngineImpl implements RulesEngine {
             }
             kSession.insert(fact);
         }
-        if (log.isDebugEnabled()) {
-            log.debugf("addFacts( %s )", facts.toString());
-            log.debug("==> Begin Dump");
-            for (FactHandle f : kSession.getFactHandles()) {
-                Object sessionObject = kSession.getObject(f);
-                log.debugf("Fact:  %s", sessionObject.toString());
-            }
-            log.debug("==> End Dump");
-        }
+        log.debugf("addFacts( [%s] facts )", facts.size());
     }
 
     @Override
@@ -167,13 +201,7 @@ public class DroolsRulesEngineImpl implements RulesEngine {
             batchData();
             batchEvents();
 
-            if (log.isTraceEnabled()) {
-                log.tracef("Firing cycle [%s] - with these facts: ", fireCycle);
-                for (FactHandle fact : kSession.getFactHandles()) {
-                    Object o = kSession.getObject(fact);
-                    log.tracef("Fact: %s", o);
-                }
-            }
+            log.tracef("Firing cycle [%s] - with [%s] facts", fireCycle, kSession.getFactCount());
 
             kSession.fireAllRules();
             fireCycle++;
@@ -268,15 +296,7 @@ public class DroolsRulesEngineImpl implements RulesEngine {
         if (null != factHandle) {
             result = kSession.getObject(factHandle);
         }
-        if (log.isDebugEnabled()) {
-            log.debugf("getFact( %s )", o.toString());
-            log.debug("==> Begin Dump");
-            for (FactHandle fact : kSession.getFactHandles()) {
-                Object sessionObject = kSession.getObject(fact);
-                log.debugf("Fact:  %s", sessionObject.toString());
-            }
-            log.debug("==> End Dump");
-        }
+        log.debugf("getFact( %s )", o);
         return result;
     }
 
@@ -287,15 +307,7 @@ public class DroolsRulesEngineImpl implements RulesEngine {
             log.debugf("Delete %s", factHandle);
             kSession.delete(factHandle);
         }
-        if (log.isDebugEnabled()) {
-            log.debugf("removeFact( %s )", fact.toString());
-            log.debug("==> Begin Dump");
-            for (FactHandle f : kSession.getFactHandles()) {
-                Object sessionObject = kSession.getObject(f);
-                log.debugf("Fact:  %s", sessionObject.toString());
-            }
-            log.debug("==> End Dump");
-        }
+        log.debugf("removeFact( %s )", fact);
     }
 
     @Override
@@ -305,15 +317,7 @@ public class DroolsRulesEngineImpl implements RulesEngine {
             log.debugf("Update %s", factHandle);
             kSession.update(factHandle, fact);
         }
-        if (log.isDebugEnabled()) {
-            log.debugf("updateFact( %s )", fact.toString());
-            log.debug("==> Begin Dump");
-            for (FactHandle f : kSession.getFactHandles()) {
-                Object sessionObject = kSession.getObject(f);
-                log.debugf("Fact:  %s", sessionObject.toString());
-            }
-            log.debug("==> End Dump");
-        }
+        log.debugf("updateFact( %s )", fact);
     }
 
     @Override
@@ -337,10 +341,163 @@ public class DroolsRulesEngineImpl implements RulesEngine {
         }
 
         for (FactHandle h : handles) {
-            removeFact(h);
+            log.debugf("Delete %s", h);
+            kSession.delete(h);
+        }
+    }
+
+    @Override
+    public Collection<Object> removeTriggerFacts(String tenantId, String triggerId) {
+        Set<FactHandle> handles = triggerFacts.remove(triggerKey(tenantId, triggerId));
+        if (null == handles) {
+            return Collections.emptyList();
+        }
+        List<Object> removed = new ArrayList<>(handles.size());
+        for (FactHandle h : handles) {
+            Object fact = kSession.getObject(h);
+            if (null != fact) {
+                log.debugf("Delete %s", h);
+                kSession.delete(h);
+                removed.add(fact);
+            }
+        }
+        return removed;
+    }
+
+    @Override
+    public TriggerState getTriggerState(String tenantId, String triggerId) {
+        Set<FactHandle> handles = triggerFacts.get(triggerKey(tenantId, triggerId));
+        if (null == handles) {
+            return null;
+        }
+        Trigger trigger = null;
+        TriggerState state = new TriggerState(tenantId, triggerId);
+        List<Condition> dataConditions = new ArrayList<>();
+        for (FactHandle h : handles) {
+            Object fact = kSession.getObject(h);
+            if (fact instanceof Trigger) {
+                trigger = (Trigger) fact;
+            } else if (fact instanceof Dampening) {
+                Dampening d = (Dampening) fact;
+                if (d.getNumEvals() > 0 || !d.getCurrentEvals().isEmpty()) {
+                    state.getDampenings().put(d.getDampeningId(), new DampeningState(d));
+                }
+            } else if (fact instanceof MissingState) {
+                MissingState ms = (MissingState) fact;
+                state.getMissingTimes().put(ms.getCondition().getConditionId(), ms.getPreviousTime());
+            } else if (fact instanceof NelsonData) {
+                NelsonData nd = (NelsonData) fact;
+                if (!nd.getViolationsData().isEmpty()) {
+                    state.getNelsonData().put(nd.getCondition().getConditionId(), new NelsonData(nd));
+                }
+            } else if (fact instanceof RateCondition || fact instanceof CompareCondition) {
+                dataConditions.add((Condition) fact);
+            }
+        }
+        if (null == trigger) {
+            return null;
+        }
+        for (Condition c : dataConditions) {
+            if (c instanceof RateCondition) {
+                putData(state.getRateData(), rateFacts, tenantId, trigger.getSource(), c.getDataId());
+            } else {
+                putData(state.getCompareData(), compareFacts, tenantId, trigger.getSource(), c.getDataId());
+                putData(state.getCompareData(), compareFacts, tenantId, trigger.getSource(),
+                        ((CompareCondition) c).getData2Id());
+            }
+        }
+        return state;
+    }
+
+    private void putData(Map<String, Data> stateData, Map<String, FactHandle> dataFacts, String tenantId,
+            String source, String dataId) {
+        FactHandle h = dataFacts.get(dataKey(tenantId, source, dataId));
+        Object fact = null == h ? null : kSession.getObject(h);
+        if (fact instanceof RateData) {
+            stateData.put(dataId, ((RateData) fact).getData());
+        } else if (fact instanceof CompareData) {
+            stateData.put(dataId, ((CompareData) fact).getData());
+        }
+    }
+
+    @Override
+    public void restoreTriggerState(TriggerState state) {
+        Set<FactHandle> handles = triggerFacts.get(triggerKey(state.getTenantId(), state.getTriggerId()));
+        if (null == handles) {
+            return;
+        }
+        Set<String> nelsonConditions = new HashSet<>();
+        List<NelsonCondition> missingNelsonData = new ArrayList<>();
+        // Copy the handles, as inserted facts are added to the index
+        for (FactHandle h : new ArrayList<>(handles)) {
+            Object fact = kSession.getObject(h);
+            if (fact instanceof Dampening) {
+                Dampening d = (Dampening) fact;
+                DampeningState ds = state.getDampenings().get(d.getDampeningId());
+                if (null != ds && ds.restore(d)) {
+                    kSession.update(h, d);
+                }
+            } else if (fact instanceof MissingState) {
+                MissingState ms = (MissingState) fact;
+                Long previousTime = state.getMissingTimes().get(ms.getCondition().getConditionId());
+                if (null != previousTime) {
+                    ms.setPreviousTime(previousTime);
+                    kSession.update(h, ms);
+                }
+            } else if (fact instanceof NelsonData) {
+                nelsonConditions.add(((NelsonData) fact).getCondition().getConditionId());
+            } else if (fact instanceof NelsonCondition) {
+                missingNelsonData.add((NelsonCondition) fact);
+            } else if (fact instanceof RateCondition) {
+                restoreData(state.getRateData().get(((Condition) fact).getDataId()), rateFacts);
+            } else if (fact instanceof CompareCondition) {
+                restoreData(state.getCompareData().get(((Condition) fact).getDataId()), compareFacts);
+                restoreData(state.getCompareData().get(((CompareCondition) fact).getData2Id()), compareFacts);
+            }
+        }
+        for (NelsonCondition c : missingNelsonData) {
+            NelsonData nd = state.getNelsonData().get(c.getConditionId());
+            if (null != nd && !nelsonConditions.contains(c.getConditionId())
+                    && nd.getCondition().getSampleSize() == c.getSampleSize()) {
+                kSession.insert(new NelsonData(nd));
+            }
         }
     }
 
+    /*
+        RateData and CompareData are shared by the triggers using the same dataId, so they are only restored
+        when they are not already in the working memory.
+     */
+    private void restoreData(Data data, Map<String, FactHandle> dataFacts) {
+        if (null == data || dataFacts.containsKey(dataKey(data.getTenantId(), data.getSource(), data.getId()))) {
+            return;
+        }
+        kSession.insert(dataFacts == rateFacts ? new RateData(data) : new CompareData(data));
+    }
+
+    @Override
+    public Map<String, Set<String>> getAndClearChangedTriggers() {
+        Map<String, Set<String>> changed = changedTriggers;
+        changedTriggers = new HashMap<>();
+        return changed;
+    }
+
+    @Override
+    public Map<String, Map<String, Long>> getFactsSnapshot() {
+        Map<String, Map<String, Long>> snapshot = new HashMap<>();
+        Map<String, Long> totals = new HashMap<>();
+        snapshot.put(FACTS_TOTAL, totals);
+        for (Object fact : kSession.getObjects()) {
+            String type = fact.getClass().getSimpleName();
+            totals.merge(type, 1L, Long::sum);
+            String tenantId = tenantOf(fact);
+            if (null != tenantId) {
+                snapshot.computeIfAbsent(tenantId, t -> new HashMap<>()).merge(type, 1L, Long::sum);
+            }
+        }
+        return snapshot;
+    }
+
     @Override
     public void removeGlobal(String name) {
         log.debugf("Remove Global %s", name);
@@ -351,6 +508,152 @@ public class DroolsRulesEngineImpl implements RulesEngine {
     public void reset() {
         log.debug("Reset session");
         kSession.dispose();
+        triggerFacts.clear();
+        rateFacts.clear();
+        compareFacts.clear();
+        changedTriggers.clear();
         kSession = kc.newKieSession(SESSION_NAME);
+        kSession.addEventListener(triggerFactsListener);
+        if (null != triggerTraceListener) {
+            kSession.addEventListener(triggerTraceListener);
+        }
+    }
+
+    private static String tenantOf(Object fact) {
+        if (fact instanceof Data) {
+            return ((Data) fact).getTenantId();
+        } else if (fact instanceof Event) {
+            return ((Event) fact).getTenantId();
+        } else if (fact instanceof Trigger) {
+            return ((Trigger) fact).getTenantId();
+        } else if (fact instanceof Condition) {
+            return ((Condition) fact).getTenantId();
+        } else if (fact instanceof Dampening) {
+            return ((Dampening) fact).getTenantId();
+        } else if (fact instanceof MissingState) {
+            return ((MissingState) fact).getTenantId();
+        } else if (fact instanceof ConditionEval) {
+            return ((ConditionEval) fact).getTenantId();
+        } else if (fact instanceof RateData) {
+            return ((RateData) fact).getData().getTenantId();
+        } else if (fact instanceof CompareData) {
+            return ((CompareData) fact).getData().getTenantId();
+        } else if (fact instanceof NelsonData) {
+            return ((NelsonData) fact).getCondition().getTenantId();
+        }
+        return null;
+    }
+
+    private static String triggerKey(Object fact) {
+        if (fact instanceof Trigger) {
+            return triggerKey(((Trigger) fact).getTenantId(), ((Trigger) fact).getId());
+        } else if (fact instanceof Condition) {
+            return triggerKey(((Condition) fact).getTenantId(), ((Condition) fact).getTriggerId());
+        } else if (fact instanceof Dampening) {
+            return triggerKey(((Dampening) fact).getTenantId(), ((Dampening) fact).getTriggerId());
+        } else if (fact instanceof MissingState) {
+            return triggerKey(((MissingState) fact).getTenantId(), ((MissingState) fact).getTriggerId());
+        } else if (fact instanceof NelsonData) {
+            Condition c = ((NelsonData) fact).getCondition();
+            return triggerKey(c.getTenantId(), c.getTriggerId());
+        }
+        return null;
+    }
+
+    private static String triggerKey(String tenantId, String triggerId) {
+        return tenantId + ":" + triggerId;
+    }
+
+    private static String dataKey(String tenantId, String source, String dataId) {
+        return tenantId + ":" + source + ":" + dataId;
+    }
+
+    private static String dataKey(Data data) {
+        return dataKey(data.getTenantId(), data.getSource(), data.getId());
+    }
+
+    private void changed(String tenantId, String triggerId) {
+        changedTriggers.computeIfAbsent(tenantId, t -> new HashSet<>()).add(triggerId);
+    }
+
+    /*
+        Logs the rules fired for a sample of triggers, so evaluations can be followed under real load without
+        enabling debug for the whole engine.
+     */
+    private class TriggerTraceListener extends DefaultAgendaEventListener {
+
+        @Override
+        public void afterMatchFired(AfterMatchFiredEvent event) {
+            List<? extends Object> objects = event.getMatch().getObjects();
+            for (Object o : objects) {
+                String key = o instanceof ConditionEval
+                        ? triggerKey(((ConditionEval) o).getTenantId(), ((ConditionEval) o).getTriggerId())
+                        : triggerKey(o);
+                if (null != key) {
+                    if ((key.hashCode() & Integer.MAX_VALUE) % 10000 < traceSample * 10000) {
+                        log.infof("Trace [%s] rule [%s] facts %s", key, event.getMatch().getRule().getName(),
+                                objects);
+                    }
+                    return;
+                }
+            }
+        }
+    }
+
+    private class TriggerFactsListener implements RuleRuntimeEventListener {
+
+        @Override
+        public void objectInserted(ObjectInsertedEvent event) {
+            Object fact = event.getObject();
+            if (fact instanceof ConditionEval) {
+                changed(((ConditionEval) fact).getTenantId(), ((ConditionEval) fact).getTriggerId());
+                return;
+            } else if (fact instanceof RateData) {
+                rateFacts.put(dataKey(((RateData) fact).getData()), event.getFactHandle());
+                return;
+            } else if (fact instanceof CompareData) {
+                compareFacts.put(dataKey(((CompareData) fact).getData()), event.getFactHandle());
+                return;
+            } else if (fact instanceof Trigger) {
+                changed(((Trigger) fact).getTenantId(), ((Trigger) fact).getId());
+            }
+            String key = triggerKey(fact);
+            if (null != key) {
+                triggerFacts.computeIfAbsent(key, k -> new HashSet<>()).add(event.getFactHandle());
+            }
+        }
+
+        @Override
+        public void objectUpdated(ObjectUpdatedEvent event) {
+            // The handle is kept on updates, RateData keeps the same dataId
+            Object fact = event.getObject();
+            if (fact instanceof Dampening) {
+                changed(((Dampening) fact).getTenantId(), ((Dampening) fact).getTriggerId());
+            } else if (fact instanceof MissingState) {
+                changed(((MissingState) fact).getTenantId(), ((MissingState) fact).getTriggerId());
+            }
+        }
+
+        @Override
+        public void objectDeleted(ObjectDeletedEvent event) {
+            Object fact = event.getOldObject();
+            if (fact instanceof RateData) {
+                rateFacts.remove(dataKey(((RateData) fact).getData()), event.getFactHandle());
+                return;
+            } else if (fact instanceof CompareData) {
+                compareFacts.remove(dataKey(((CompareData) fact).getData()), event.getFactHandle());
+                return;
+            }
+            String key = triggerKey(fact);
+            if (null != key) {
+                Set<FactHandle> handles = triggerFacts.get(key);
+                if (null != handles) {
+                    handles.remove(event.getFactHandle());
+                    if (handles.isEmpty()) {
+                        triggerFacts.remove(key);
+                    }
+                }
+            }
+        }
     }
 }
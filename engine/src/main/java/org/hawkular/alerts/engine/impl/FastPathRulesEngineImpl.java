@@ -0,0 +1,634 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.alerts.engine.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+
+import org.hawkular.alerts.api.model.condition.AvailabilityCondition;
+import org.hawkular.alerts.api.model.condition.AvailabilityConditionEval;
+import org.hawkular.alerts.api.model.condition.CompareCondition;
+import org.hawkular.alerts.api.model.condition.Condition;
+import org.hawkular.alerts.api.model.condition.ConditionEval;
+import org.hawkular.alerts.api.model.condition.ThresholdCondition;
+import org.hawkular.alerts.api.model.condition.ThresholdConditionEval;
+import org.hawkular.alerts.api.model.condition.ThresholdRangeCondition;
+import org.hawkular.alerts.api.model.condition.ThresholdRangeConditionEval;
+import org.hawkular.alerts.api.model.dampening.Dampening;
+import org.hawkular.alerts.api.model.data.AvailabilityType;
+import org.hawkular.alerts.api.model.data.Data;
+import org.hawkular.alerts.api.model.event.Alert;
+import org.hawkular.alerts.api.model.event.Event;
+import org.hawkular.alerts.api.model.event.EventType;
+import org.hawkular.alerts.api.model.trigger.Mode;
+import org.hawkular.alerts.api.model.trigger.Trigger;
+import org.hawkular.alerts.api.services.ActionsService;
+import org.hawkular.alerts.engine.service.RulesEngine;
+import org.hawkular.alerts.engine.util.TriggerState;
+import org.hawkular.commons.log.MsgLogger;
+import org.hawkular.commons.log.MsgLogging;
+import org.hawkular.commons.properties.HawkularProperties;
+
+/**
+ * An implementation of RulesEngine that evaluates the simplest and most common triggers without a rules engine and
+ * delegates the rest of the triggers to another RulesEngine (i.e. {@link DroolsRulesEngineImpl}).
+ *
+ * A trigger is evaluated on the fast path when it has a single FIRING mode Threshold, ThresholdRange or Availability
+ * condition, default STRICT(1) dampening, and AutoResolve disabled. Its Data is looked up by tenantId:source:dataId
+ * and checked against the condition with a primitive comparison. Only a matching Data creates a ConditionEval, that
+ * satisfies the dampening and generates the Alert or Event, as the AlertOnSatisfiedDampening rule does. Generated
+ * Alerts and Events are passed to the delegate, so chained triggers are still evaluated.
+ *
+ * Data and Events are passed to the delegate only if it holds conditions for their dataId.
+ *
+ * The trigger and dataId indexes are plain maps iterated by {@link #fire()}, so they must be modified only from the
+ * thread firing the rules. As with DroolsRulesEngineImpl, this is invoked only by the AlertsEngine impl, that fires
+ * the rules and adds, removes and restores the triggers on its timer thread, whatever thread requests the change.
+ *
+ * @author Jay Shaughnessy
+ * @author Lucas Ponce
+ */
+public class FastPathRulesEngineImpl implements RulesEngine {
+    private final MsgLogger log = MsgLogging.getMsgLogger(FastPathRulesEngineImpl.class);
+
+    private final RulesEngine delegate;
+
+    // tenantId:triggerId -> fast path trigger
+    private final Map<String, FastTrigger> triggers;
+
+    // tenantId:source:dataId -> fast path triggers evaluating the dataId
+    private final Map<String, List<FastTrigger>> dataTriggers;
+
+    // tenantId:dataId -> number of conditions referencing the dataId on the delegate
+    private final Map<String, Integer> delegateDataIds;
+
+    // tenantId -> fast path triggers loaded since the last getAndClearChangedTriggers()
+    private Map<String, Set<String>> changedTriggers;
+
+    private TreeSet<Data> pendingData;
+
+    private int minReportingIntervalData;
+
+    private ActionsService actions;
+    private List<Alert> alerts;
+    private List<Event> events;
+    private Set<Trigger> disabledTriggers;
+
+    public FastPathRulesEngineImpl(RulesEngine delegate) {
+        if (null == delegate) {
+            throw new IllegalArgumentException("Delegate RulesEngine must be not null");
+        }
+        log.debug("Creating instance.");
+        this.delegate = delegate;
+        triggers = new HashMap<>();
+        dataTriggers = new HashMap<>();
+        delegateDataIds = new HashMap<>();
+        changedTriggers = new HashMap<>();
+        pendingData = new TreeSet<>();
+
+        minReportingIntervalData = new Integer(
+                HawkularProperties.getProperty(MIN_REPORTING_INTERVAL_DATA,
+                        MIN_REPORTING_INTERVAL_DATA_ENV,
+                        MIN_REPORTING_INTERVAL_DATA_DEFAULT));
+    }
+
+    public RulesEngine getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * @return the number of triggers evaluated on the fast path
+     */
+    public int getNumFastTriggers() {
+        return triggers.size();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void addGlobal(String name, Object global) {
+        switch (name) {
+            case "actions":
+                actions = (ActionsService) global;
+                break;
+            case "alerts":
+                alerts = (List<Alert>) global;
+                break;
+            case "events":
+                events = (List<Event>) global;
+                break;
+            case "disabledTriggers":
+                disabledTriggers = (Set<Trigger>) global;
+                break;
+            default:
+                break;
+        }
+        delegate.addGlobal(name, global);
+    }
+
+    @Override
+    public void removeGlobal(String name) {
+        switch (name) {
+            case "actions":
+                actions = null;
+                break;
+            case "alerts":
+                alerts = null;
+                break;
+            case "events":
+                events = null;
+                break;
+            case "disabledTriggers":
+                disabledTriggers = null;
+                break;
+            default:
+                break;
+        }
+        delegate.removeGlobal(name);
+    }
+
+    @Override
+    public void addTriggerFacts(Trigger trigger, Collection<Condition> conditions,
+            Collection<Dampening> dampenings) {
+        FastTrigger fastTrigger = FastTrigger.of(trigger, conditions, dampenings);
+        if (null == fastTrigger) {
+            delegate.addTriggerFacts(trigger, conditions, dampenings);
+            indexConditions(conditions, 1);
+            return;
+        }
+        log.debugf("Fast path %s", trigger);
+        removeFastTrigger(fastTrigger.key);
+        triggers.put(fastTrigger.key, fastTrigger);
+        dataTriggers.computeIfAbsent(fastTrigger.dataKey, k -> new ArrayList<>(1)).add(fastTrigger);
+        changedTriggers.computeIfAbsent(trigger.getTenantId(), t -> new HashSet<>()).add(trigger.getId());
+    }
+
+    @Override
+    public void addFact(Object fact) {
+        delegate.addFact(fact);
+        if (fact instanceof Condition) {
+            indexCondition((Condition) fact, 1);
+        }
+    }
+
+    @Override
+    public void addFacts(Collection facts) {
+        delegate.addFacts(facts);
+        for (Object fact : facts) {
+            if (fact instanceof Condition) {
+                indexCondition((Condition) fact, 1);
+            }
+        }
+    }
+
+    @Override
+    public Object getFact(Object fact) {
+        FastTrigger fastTrigger = fastTriggerOf(fact);
+        if (null != fastTrigger) {
+            for (Object fastFact : fastTrigger.facts()) {
+                if (fastFact.equals(fact)) {
+                    return fastFact;
+                }
+            }
+        }
+        return delegate.getFact(fact);
+    }
+
+    @Override
+    public void removeFact(Object fact) {
+        FastTrigger fastTrigger = fastTriggerOf(fact);
+        if (null != fastTrigger && fact instanceof Trigger) {
+            removeFastTrigger(fastTrigger.key);
+            return;
+        }
+        if (fact instanceof Condition && null != delegate.getFact(fact)) {
+            indexCondition((Condition) fact, -1);
+        }
+        delegate.removeFact(fact);
+    }
+
+    @Override
+    public void updateFact(Object fact) {
+        delegate.updateFact(fact);
+    }
+
+    @Override
+    public void removeFacts(Collection facts) {
+        for (Object fact : facts) {
+            removeFact(fact);
+        }
+    }
+
+    @Override
+    public void removeFacts(Predicate<Object> factFilter) {
+        for (FastTrigger fastTrigger : new ArrayList<>(triggers.values())) {
+            if (fastTrigger.facts().stream().anyMatch(factFilter)) {
+                removeFastTrigger(fastTrigger.key);
+            }
+        }
+        delegate.removeFacts(f -> {
+            if (!factFilter.test(f)) {
+                return false;
+            }
+            if (f instanceof Condition) {
+                indexCondition((Condition) f, -1);
+            }
+            return true;
+        });
+    }
+
+    @Override
+    public Collection<Object> removeTriggerFacts(String tenantId, String triggerId) {
+        FastTrigger fastTrigger = removeFastTrigger(triggerKey(tenantId, triggerId));
+        if (null != fastTrigger) {
+            return fastTrigger.facts();
+        }
+        Collection<Object> removed = delegate.removeTriggerFacts(tenantId, triggerId);
+        for (Object fact : removed) {
+            if (fact instanceof Condition) {
+                indexCondition((Condition) fact, -1);
+            }
+        }
+        return removed;
+    }
+
+    /*
+        The STRICT(1) dampening of a fast path trigger is reset after every evaluation, so there is no evaluation
+        state to checkpoint or restore.
+     */
+    @Override
+    public TriggerState getTriggerState(String tenantId, String triggerId) {
+        if (triggers.containsKey(triggerKey(tenantId, triggerId))) {
+            return new TriggerState(tenantId, triggerId);
+        }
+        return delegate.getTriggerState(tenantId, triggerId);
+    }
+
+    @Override
+    public void restoreTriggerState(TriggerState state) {
+        if (!triggers.containsKey(triggerKey(state.getTenantId(), state.getTriggerId()))) {
+            delegate.restoreTriggerState(state);
+        }
+    }
+
+    @Override
+    public Map<String, Set<String>> getAndClearChangedTriggers() {
+        Map<String, Set<String>> changed = delegate.getAndClearChangedTriggers();
+        changedTriggers.forEach((tenantId, triggerIds) -> {
+            changed.computeIfAbsent(tenantId, t -> new HashSet<>()).addAll(triggerIds);
+        });
+        changedTriggers = new HashMap<>();
+        return changed;
+    }
+
+    @Override
+    public void addData(TreeSet<Data> data) {
+        pendingData.addAll(data);
+    }
+
+    @Override
+    public void addEvents(TreeSet<Event> events) {
+        TreeSet<Event> delegateEvents = delegateEvents(events);
+        if (!delegateEvents.isEmpty()) {
+            delegate.addEvents(delegateEvents);
+        }
+    }
+
+    @Override
+    public void fire() {
+        TreeSet<Data> batchData = pendingData;
+        pendingData = new TreeSet<>();
+
+        TreeSet<Data> delegateData = new TreeSet<>();
+        TreeSet<Event> generatedEvents = new TreeSet<>();
+        List<FastTrigger> disabled = null;
+
+        // pendingData is sorted by (id ASC, timestamp ASC), the same dataId is evaluated in time order
+        Data previousData = null;
+        for (Data d : batchData) {
+            if (delegateDataIds.containsKey(dataIdKey(d.getTenantId(), d.getId()))) {
+                delegateData.add(d);
+            }
+            List<FastTrigger> fastTriggers = dataTriggers.get(dataKey(d.getTenantId(), d.getSource(), d.getId()));
+            if (null == fastTriggers) {
+                continue;
+            }
+            // As DroolsRulesEngineImpl, discard Data violating the minReportingInterval
+            if (d.same(previousData)
+                    && (d.getTimestamp() - previousData.getTimestamp()) < minReportingIntervalData) {
+                log.tracef("MinReportingInterval violation, prev: %s, removed: %s", previousData, d);
+                continue;
+            }
+            previousData = d;
+            for (FastTrigger fastTrigger : fastTriggers) {
+                Event newEvent = evaluate(fastTrigger, d);
+                if (null == newEvent) {
+                    continue;
+                }
+                generatedEvents.add(newEvent);
+                if (fastTrigger.trigger.isAutoDisable()) {
+                    if (null == disabled) {
+                        disabled = new ArrayList<>();
+                    }
+                    disabled.add(fastTrigger);
+                }
+            }
+            if (null != disabled) {
+                // The autoDisable trigger handling will result in a trigger reload, where it will not get loaded
+                for (FastTrigger fastTrigger : disabled) {
+                    log.debugf("Setting Trigger Disabled! %s", fastTrigger.trigger);
+                    if (null != disabledTriggers) {
+                        disabledTriggers.add(fastTrigger.trigger);
+                    }
+                    removeFastTrigger(fastTrigger.key);
+                }
+                disabled = null;
+            }
+        }
+
+        // Generated Events are inserted on the delegate to allow chained conditions
+        TreeSet<Event> delegateEvents = delegateEvents(generatedEvents);
+        if (!delegateData.isEmpty()) {
+            delegate.addData(delegateData);
+        }
+        if (!delegateEvents.isEmpty()) {
+            delegate.addEvents(delegateEvents);
+        }
+        if (delegateData.isEmpty() && delegateEvents.isEmpty()) {
+            // Process the facts manually manipulated since the last firing, if any
+            delegate.fireNoData();
+        } else {
+            delegate.fire();
+        }
+    }
+
+    /*
+        Returns the Alert or Event generated by the trigger, or null if the Data does not match the condition.
+     */
+    private Event evaluate(FastTrigger fastTrigger, Data d) {
+        boolean match;
+        try {
+            match = fastTrigger.match(d);
+        } catch (IllegalArgumentException e) {
+            log.debugf("Invalid value for %s: %s", fastTrigger.condition, d);
+            return null;
+        }
+        // A non-matching eval resets the STRICT(1) dampening, that is already reset after every alert
+        if (!match) {
+            return null;
+        }
+
+        Trigger t = fastTrigger.trigger;
+        Dampening dampening = fastTrigger.dampening;
+        dampening.perform(t.getMatch(), Collections.singleton(fastTrigger.eval(d)));
+        if (!dampening.isSatisfied()) {
+            return null;
+        }
+
+        Event newEvent;
+        if (t.getEventType() == EventType.ALERT) {
+            log.debugf("Alert! Dampening Satisfied! %s", dampening.log());
+            newEvent = new Alert(t.getTenantId(), t, dampening, dampening.getSatisfyingEvals());
+            if (null != alerts) {
+                alerts.add((Alert) newEvent);
+            }
+        } else {
+            log.debugf("Event! Dampening Satisfied! %s", dampening.log());
+            newEvent = new Event(t.getTenantId(), t, dampening, dampening.getSatisfyingEvals());
+            if (null != events) {
+                events.add(newEvent);
+            }
+        }
+        if (null != actions) {
+            actions.send(t, newEvent);
+        }
+        dampening.reset();
+        return newEvent;
+    }
+
+    @Override
+    public void fireNoData() {
+        delegate.fireNoData();
+    }
+
+    @Override
+    public Map<String, Map<String, Long>> getFactsSnapshot() {
+        Map<String, Map<String, Long>> snapshot = delegate.getFactsSnapshot();
+        Map<String, Long> totals = snapshot.computeIfAbsent(FACTS_TOTAL, t -> new HashMap<>());
+        for (FastTrigger fastTrigger : triggers.values()) {
+            Map<String, Long> counts = snapshot.computeIfAbsent(fastTrigger.trigger.getTenantId(),
+                    t -> new HashMap<>());
+            for (Object fact : fastTrigger.facts()) {
+                String type = fact.getClass().getSimpleName();
+                totals.merge(type, 1L, Long::sum);
+                counts.merge(type, 1L, Long::sum);
+            }
+        }
+        return snapshot;
+    }
+
+    @Override
+    public void clear() {
+        clearFastPath();
+        delegate.clear();
+    }
+
+    @Override
+    public void reset() {
+        clearFastPath();
+        delegate.reset();
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    private void clearFastPath() {
+        triggers.clear();
+        dataTriggers.clear();
+        delegateDataIds.clear();
+        changedTriggers.clear();
+        pendingData.clear();
+    }
+
+    private FastTrigger removeFastTrigger(String key) {
+        FastTrigger fastTrigger = triggers.remove(key);
+        if (null == fastTrigger) {
+            return null;
+        }
+        List<FastTrigger> fastTriggers = dataTriggers.get(fastTrigger.dataKey);
+        if (null != fastTriggers) {
+            fastTriggers.remove(fastTrigger);
+            if (fastTriggers.isEmpty()) {
+                dataTriggers.remove(fastTrigger.dataKey);
+            }
+        }
+        return fastTrigger;
+    }
+
+    private FastTrigger fastTriggerOf(Object fact) {
+        if (triggers.isEmpty()) {
+            return null;
+        }
+        if (fact instanceof Trigger) {
+            return triggers.get(triggerKey(((Trigger) fact).getTenantId(), ((Trigger) fact).getId()));
+        } else if (fact instanceof Condition) {
+            return triggers.get(triggerKey(((Condition) fact).getTenantId(), ((Condition) fact).getTriggerId()));
+        } else if (fact instanceof Dampening) {
+            return triggers.get(triggerKey(((Dampening) fact).getTenantId(), ((Dampening) fact).getTriggerId()));
+        }
+        return null;
+    }
+
+    private TreeSet<Event> delegateEvents(Collection<Event> events) {
+        TreeSet<Event> delegateEvents = new TreeSet<>();
+        for (Event e : events) {
+            if (delegateDataIds.containsKey(dataIdKey(e.getTenantId(), e.getDataId()))) {
+                delegateEvents.add(e);
+            }
+        }
+        return delegateEvents;
+    }
+
+    private void indexConditions(Collection<Condition> conditions, int delta) {
+        for (Condition c : conditions) {
+            indexCondition(c, delta);
+        }
+    }
+
+    private void indexCondition(Condition c, int delta) {
+        indexDataId(c.getTenantId(), c.getDataId(), delta);
+        if (c instanceof CompareCondition) {
+            indexDataId(c.getTenantId(), ((CompareCondition) c).getData2Id(), delta);
+        }
+    }
+
+    private void indexDataId(String tenantId, String dataId, int delta) {
+        delegateDataIds.compute(dataIdKey(tenantId, dataId), (key, refs) -> {
+            int updated = (null == refs ? 0 : refs) + delta;
+            return updated > 0 ? updated : null;
+        });
+    }
+
+    private static String triggerKey(String tenantId, String triggerId) {
+        return tenantId + ":" + triggerId;
+    }
+
+    private static String dataIdKey(String tenantId, String dataId) {
+        return tenantId + ":" + dataId;
+    }
+
+    private static String dataKey(String tenantId, String source, String dataId) {
+        return tenantId + ":" + source + ":" + dataId;
+    }
+
+    private static class FastTrigger {
+        private final String key;
+        private final String dataKey;
+        private final Trigger trigger;
+        private final Condition condition;
+        private final Dampening dampening;
+
+        private FastTrigger(Trigger trigger, Condition condition, Dampening dampening) {
+            this.key = triggerKey(trigger.getTenantId(), trigger.getId());
+            this.dataKey = dataKey(trigger.getTenantId(), trigger.getSource(), condition.getDataId());
+            this.trigger = trigger;
+            this.condition = condition;
+            this.dampening = dampening;
+        }
+
+        /*
+            Returns the FastTrigger for a trigger definition that can be evaluated on the fast path, null otherwise.
+         */
+        static FastTrigger of(Trigger trigger, Collection<Condition> conditions, Collection<Dampening> dampenings) {
+            if (trigger.isAutoResolve() || Mode.FIRING != trigger.getMode() || conditions.size() != 1) {
+                return null;
+            }
+            Condition condition = conditions.iterator().next();
+            if (Mode.FIRING != condition.getTriggerMode()) {
+                return null;
+            }
+            switch (condition.getType()) {
+                case THRESHOLD:
+                case RANGE:
+                case AVAILABILITY:
+                    break;
+                default:
+                    return null;
+            }
+            Dampening dampening;
+            if (dampenings.isEmpty()) {
+                // As the ProvideDefaultDampening rule
+                dampening = Dampening.forStrict(trigger.getTenantId(), trigger.getId(), Mode.FIRING, 1);
+            } else if (dampenings.size() == 1) {
+                dampening = dampenings.iterator().next();
+                if (Mode.FIRING != dampening.getTriggerMode() || Dampening.Type.STRICT != dampening.getType()
+                        || dampening.getEvalTrueSetting() != 1) {
+                    return null;
+                }
+            } else {
+                return null;
+            }
+            return new FastTrigger(trigger, condition, dampening);
+        }
+
+        // Data without a value cannot match
+        boolean match(Data d) {
+            if (null == d.getValue()) {
+                return false;
+            }
+            switch (condition.getType()) {
+                case THRESHOLD:
+                    return ((ThresholdCondition) condition).match(Double.parseDouble(d.getValue()));
+                case RANGE:
+                    return ((ThresholdRangeCondition) condition).match(Double.parseDouble(d.getValue()));
+                case AVAILABILITY:
+                    return ((AvailabilityCondition) condition).match(AvailabilityType.valueOf(d.getValue()));
+                default:
+                    throw new IllegalStateException("Unexpected condition " + condition);
+            }
+        }
+
+        ConditionEval eval(Data d) {
+            switch (condition.getType()) {
+                case THRESHOLD:
+                    return new ThresholdConditionEval((ThresholdCondition) condition, d);
+                case RANGE:
+                    return new ThresholdRangeConditionEval((ThresholdRangeCondition) condition, d);
+                case AVAILABILITY:
+                    return new AvailabilityConditionEval((AvailabilityCondition) condition, d);
+                default:
+                    throw new IllegalStateException("Unexpected condition " + condition);
+            }
+        }
+
+        List<Object> facts() {
+            return Arrays.asList(trigger, condition, dampening);
+        }
+    }
+}
@@ -19,11 +19,19 @@ package org.hawkular.alerts.engine.impl;
 import static org.hawkular.alerts.api.util.Util.isEmpty;
 
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.hawkular.alerts.api.exception.OverloadedException;
 import org.hawkular.alerts.api.model.data.Data;
 import org.hawkular.alerts.api.model.event.Event;
 import org.hawkular.alerts.api.services.DefinitionsService;
@@ -37,15 +45,67 @@ import org.hawkular.commons.log.MsgLogging;
 import org.hawkular.commons.properties.HawkularProperties;
 
 /**
+ * Incoming data and events are buffered for asynchronous processing under bounded admission limits: number of
+ * buffered requests, estimated bytes of buffered data/events, buffered data/events per tenant and data/events
+ * handed to the AlertsEngine but not yet evaluated. When a limit is reached the request is rejected with an
+ * {@link OverloadedException} so callers can back off.
+ *
  * @author Jay Shaughnessy
  * @author Lucas Ponce
  */
 public class IncomingDataManagerImpl implements IncomingDataManager {
     private final MsgLogger log = MsgLogging.getMsgLogger(IncomingDataManagerImpl.class);
 
+    /*
+        INCOMING_MAX_PENDING defined in number of buffered requests (<= 0 disables the limit)
+     */
+    private static final String INCOMING_MAX_PENDING = "hawkular-alerts.incoming-max-pending";
+    private static final String INCOMING_MAX_PENDING_ENV = "HAWKULAR_INCOMING_MAX_PENDING";
+    private static final String INCOMING_MAX_PENDING_DEFAULT = "10000";
+
+    /*
+        INCOMING_MAX_BYTES defined in estimated bytes of buffered data/events (<= 0 disables the limit)
+     */
+    private static final String INCOMING_MAX_BYTES = "hawkular-alerts.incoming-max-bytes";
+    private static final String INCOMING_MAX_BYTES_ENV = "HAWKULAR_INCOMING_MAX_BYTES";
+    private static final String INCOMING_MAX_BYTES_DEFAULT = "134217728";
+
+    /*
+        INCOMING_MAX_TENANT defined in number of buffered datums/events per tenant (<= 0 disables the limit)
+     */
+    private static final String INCOMING_MAX_TENANT = "hawkular-alerts.incoming-max-tenant";
+    private static final String INCOMING_MAX_TENANT_ENV = "HAWKULAR_INCOMING_MAX_TENANT";
+    private static final String INCOMING_MAX_TENANT_DEFAULT = "0";
+
+    /*
+        INCOMING_MAX_ENGINE_PENDING defined in number of data/events sent to the AlertsEngine and not yet drained by
+        the rules (<= 0 disables the limit)
+     */
+    private static final String INCOMING_MAX_ENGINE_PENDING = "hawkular-alerts.incoming-max-engine-pending";
+    private static final String INCOMING_MAX_ENGINE_PENDING_ENV = "HAWKULAR_INCOMING_MAX_ENGINE_PENDING";
+    private static final String INCOMING_MAX_ENGINE_PENDING_DEFAULT = "100000";
+
+    private static final long OBJECT_SIZE = 64L;
+    private static final long STRING_SIZE = 40L;
+
     private int minReportingIntervalData;
     private int minReportingIntervalEvents;
 
+    private int maxPending;
+    private long maxBytes;
+    private long maxTenant;
+    private int maxEnginePending;
+
+    private final AtomicInteger pendingRequests = new AtomicInteger(0);
+    private final AtomicLong pendingBytes = new AtomicLong(0);
+    private final Map<String, Long> pendingByTenant = new ConcurrentHashMap<>();
+
+    private final AtomicLong acceptedData = new AtomicLong(0);
+    private final AtomicLong acceptedEvents = new AtomicLong(0);
+    private final AtomicLong rejectedData = new AtomicLong(0);
+    private final AtomicLong rejectedEvents = new AtomicLong(0);
+    private final AtomicLong rejectedRequests = new AtomicLong(0);
+
     private ExecutorService executor;
 
     DataDrivenGroupCacheManager dataDrivenGroupCacheManager;
@@ -58,6 +118,17 @@ public class IncomingDataManagerImpl implements IncomingDataManager {
 
     CacheClient dataIdCache;
 
+    public IncomingDataManagerImpl() {
+        maxPending = new Integer(HawkularProperties.getProperty(INCOMING_MAX_PENDING, INCOMING_MAX_PENDING_ENV,
+                INCOMING_MAX_PENDING_DEFAULT));
+        maxBytes = new Long(HawkularProperties.getProperty(INCOMING_MAX_BYTES, INCOMING_MAX_BYTES_ENV,
+                INCOMING_MAX_BYTES_DEFAULT));
+        maxTenant = new Long(HawkularProperties.getProperty(INCOMING_MAX_TENANT, INCOMING_MAX_TENANT_ENV,
+                INCOMING_MAX_TENANT_DEFAULT));
+        maxEnginePending = new Integer(HawkularProperties.getProperty(INCOMING_MAX_ENGINE_PENDING,
+                INCOMING_MAX_ENGINE_PENDING_ENV, INCOMING_MAX_ENGINE_PENDING_DEFAULT));
+    }
+
     public void setExecutor(ExecutorService executor) {
         this.executor = executor;
     }
@@ -103,16 +174,161 @@ public class IncomingDataManagerImpl implements IncomingDataManager {
 
     @Override
     public void bufferData(IncomingData incomingData) {
-        executor.submit(() -> {
-            processData(incomingData);
-        });
+        Collection<Data> data = incomingData.getIncomingData();
+        Map<String, Long> tenants = new HashMap<>();
+        long bytes = 0;
+        for (Data d : data) {
+            tenants.merge(String.valueOf(d.getTenantId()), 1L, Long::sum);
+            bytes += estimateSize(d);
+        }
+        try {
+            admit(tenants, bytes);
+        } catch (OverloadedException e) {
+            rejectedData.addAndGet(data.size());
+            throw e;
+        }
+        final long admittedBytes = bytes;
+        try {
+            executor.submit(() -> {
+                try {
+                    processData(incomingData);
+                } finally {
+                    release(tenants, admittedBytes);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            release(tenants, admittedBytes);
+            rejectedData.addAndGet(data.size());
+            throw new OverloadedException("Incoming data rejected: " + e.getMessage());
+        }
+        acceptedData.addAndGet(data.size());
     }
 
     @Override
     public void bufferEvents(IncomingEvents incomingEvents) {
-        executor.submit(() -> {
-            processEvents(incomingEvents);
-        });
+        Collection<Event> events = incomingEvents.getIncomingEvents();
+        Map<String, Long> tenants = new HashMap<>();
+        long bytes = 0;
+        for (Event e : events) {
+            tenants.merge(String.valueOf(e.getTenantId()), 1L, Long::sum);
+            bytes += estimateSize(e);
+        }
+        try {
+            admit(tenants, bytes);
+        } catch (OverloadedException e) {
+            rejectedEvents.addAndGet(events.size());
+            throw e;
+        }
+        final long admittedBytes = bytes;
+        try {
+            executor.submit(() -> {
+                try {
+                    processEvents(incomingEvents);
+                } finally {
+                    release(tenants, admittedBytes);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            release(tenants, admittedBytes);
+            rejectedEvents.addAndGet(events.size());
+            throw new OverloadedException("Incoming events rejected: " + e.getMessage());
+        }
+        acceptedEvents.addAndGet(events.size());
+    }
+
+    @Override
+    public Map<String, String> getStatus() {
+        Map<String, String> status = new HashMap<>();
+        status.put("incoming-pending-requests", String.valueOf(pendingRequests.get()));
+        status.put("incoming-pending-bytes", String.valueOf(pendingBytes.get()));
+        status.put("incoming-engine-pending", String.valueOf(null == alertsEngine ? 0 :
+                alertsEngine.getPendingSize()));
+        status.put("incoming-accepted-data", String.valueOf(acceptedData.get()));
+        status.put("incoming-accepted-events", String.valueOf(acceptedEvents.get()));
+        status.put("incoming-rejected-data", String.valueOf(rejectedData.get()));
+        status.put("incoming-rejected-events", String.valueOf(rejectedEvents.get()));
+        status.put("incoming-rejected-requests", String.valueOf(rejectedRequests.get()));
+        return status;
+    }
+
+    /*
+        Reserve the request in the admission counters or throw an OverloadedException if any limit is exceeded.
+        A single request larger than the byte budget is admitted when nothing else is pending, so it is not
+        rejected forever. A request is released once handed to the AlertsEngine, so the data/events waiting for the
+        rules in the engine are checked too, otherwise a slow rules evaluation would let them grow without limit.
+     */
+    private void admit(Map<String, Long> tenants, long bytes) {
+        int requests = pendingRequests.incrementAndGet();
+        long totalBytes = pendingBytes.addAndGet(bytes);
+        String exceededTenant = null;
+        for (Entry<String, Long> tenant : tenants.entrySet()) {
+            Long pending = pendingByTenant.merge(tenant.getKey(), tenant.getValue(), IncomingDataManagerImpl::sum);
+            if (maxTenant > 0 && pending != null && pending > maxTenant) {
+                exceededTenant = tenant.getKey();
+            }
+        }
+
+        int enginePending = (maxEnginePending > 0 && null != alertsEngine) ? alertsEngine.getPendingSize() : 0;
+
+        String reason = null;
+        boolean tenantLimit = false;
+        if (maxPending > 0 && requests > maxPending) {
+            reason = "[" + requests + "] pending requests exceed the limit of [" + maxPending + "]";
+        } else if (maxEnginePending > 0 && enginePending > maxEnginePending) {
+            reason = "[" + enginePending + "] data/events pending on the engine exceed the limit of ["
+                    + maxEnginePending + "]";
+        } else if (maxBytes > 0 && totalBytes > maxBytes && requests > 1) {
+            reason = "[" + totalBytes + "] pending bytes exceed the limit of [" + maxBytes + "]";
+        } else if (exceededTenant != null) {
+            reason = "Pending data for tenant [" + exceededTenant + "] exceeds the limit of [" + maxTenant + "]";
+            tenantLimit = true;
+        }
+        if (reason != null) {
+            release(tenants, bytes);
+            rejectedRequests.incrementAndGet();
+            log.debugf("Rejecting incoming request: %s", reason);
+            throw new OverloadedException(reason, tenantLimit);
+        }
+    }
+
+    private void release(Map<String, Long> tenants, long bytes) {
+        for (Entry<String, Long> tenant : tenants.entrySet()) {
+            pendingByTenant.merge(tenant.getKey(), -tenant.getValue(), IncomingDataManagerImpl::sum);
+        }
+        pendingBytes.addAndGet(-bytes);
+        pendingRequests.decrementAndGet();
+    }
+
+    // Remove the entry when there is nothing pending for the tenant
+    private static Long sum(Long a, Long b) {
+        long result = a + b;
+        return result <= 0 ? null : result;
+    }
+
+    private static long estimateSize(Data d) {
+        return OBJECT_SIZE + estimateSize(d.getTenantId()) + estimateSize(d.getSource()) + estimateSize(d.getId())
+                + estimateSize(d.getValue()) + estimateSize(d.getContext());
+    }
+
+    private static long estimateSize(Event e) {
+        return OBJECT_SIZE + estimateSize(e.getTenantId()) + estimateSize(e.getId()) + estimateSize(e.getDataId())
+                + estimateSize(e.getDataSource()) + estimateSize(e.getCategory()) + estimateSize(e.getText())
+                + estimateSize(e.getContext()) + estimateSize(e.getTags());
+    }
+
+    private static long estimateSize(String s) {
+        return null == s ? 0 : STRING_SIZE + 2L * s.length();
+    }
+
+    private static long estimateSize(Map<String, String> map) {
+        if (null == map || map.isEmpty()) {
+            return 0;
+        }
+        long size = OBJECT_SIZE;
+        for (Entry<String, String> entry : map.entrySet()) {
+            size += OBJECT_SIZE + estimateSize(entry.getKey()) + estimateSize(entry.getValue());
+        }
+        return size;
     }
 
     private void processData(IncomingData incomingData) {
@@ -21,6 +21,7 @@ import static org.hawkular.alerts.api.util.Util.isEmpty;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -28,7 +29,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import org.hawkular.alerts.api.model.data.Data;
@@ -39,6 +44,7 @@ import org.hawkular.alerts.cache.IspnCacheManager;
 import org.hawkular.alerts.engine.service.PartitionDataListener;
 import org.hawkular.alerts.engine.service.PartitionManager;
 import org.hawkular.alerts.engine.service.PartitionTriggerListener;
+import org.hawkular.alerts.engine.util.TriggerState;
 import org.hawkular.alerts.log.AlertingLogger;
 import org.hawkular.commons.log.MsgLogging;
 import org.hawkular.commons.properties.HawkularProperties;
@@ -48,55 +54,53 @@ import org.infinispan.manager.EmbeddedCacheManager;
 import org.infinispan.notifications.Listener;
 import org.infinispan.notifications.cachelistener.annotation.CacheEntryCreated;
 import org.infinispan.notifications.cachelistener.annotation.CacheEntryModified;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryRemoved;
 import org.infinispan.notifications.cachelistener.event.CacheEntryCreatedEvent;
 import org.infinispan.notifications.cachelistener.event.CacheEntryModifiedEvent;
+import org.infinispan.notifications.cachelistener.event.CacheEntryRemovedEvent;
 import org.infinispan.notifications.cachemanagerlistener.annotation.ViewChanged;
 import org.infinispan.notifications.cachemanagerlistener.event.ViewChangedEvent;
+import org.infinispan.remoting.transport.Address;
 
-import com.google.common.hash.HashFunction;
 import com.google.common.hash.Hashing;
 
 /**
  * Implementation of {@link PartitionManager} services based on Infinispan cache.
  *
  * This implementation uses a consistent hashing strategy {@see https://en.wikipedia.org/wiki/Consistent_hashing}
- * as a method to partition triggers across nodes.
+ * to place triggers into a fixed number of buckets, and distributes the buckets across nodes. Only the table of
+ * bucket owners is replicated, and a topology change moves only the buckets of the nodes that have left and the
+ * buckets needed to balance the nodes that have joined.
  *
- * It needs three caches added into Wildfly/JBoss configuration files.
+ * It needs a "partition" cache added into Wildfly/JBoss configuration files.
  *
  * standalone.xml:
  * [...]
- *       <cache-container name="hawkular-alerts" default-cache="triggers" statistics-enabled="true">
+ *       <cache-container name="hawkular-alerts" default-cache="partition" statistics-enabled="true">
  *          <local-cache name="partition"/>
- *          <local-cache name="triggers"/>
- *          <local-cache name="data"/>
  *       </cache-container>
  * [...]
  *
  * Wildfly
  * standalone-ha.xml:
  * [...]
- *       <cache-container name="hawkular-alerts" default-cache="triggers" statistics-enabled="true">
+ *       <cache-container name="hawkular-alerts" default-cache="partition" statistics-enabled="true">
  *          <transport lock-timeout="60000"/>
  *          <replicated-cache name="partition" mode="SYNC">
  *              <transaction mode="BATCH"/>
  *          </replicated-cache>
- *          <replicated-cache name="triggers" mode="ASYNC">
- *              <transaction mode="BATCH"/>
- *          </replicated-cache>
- *          <replicated-cache name="data" mode="ASYNC">
- *              <transaction mode="BATCH"/>
- *          </replicated-cache>
  *       </cache-container>
  * [...]
  *
+ * Trigger, data and event notifications are sent between nodes with a {@link ClusterMessenger}.
+ *
  * @author Jay Shaughnessy
  * @author Lucas Ponce
  */
 public class PartitionManagerImpl implements PartitionManager {
 
     /**
-     * Used to clean triggers and data cache
+     * Used to clean the partition change flag
      */
     private static final String LIFESPAN_PROPERTY = "hawkular-alerts.partition-lifespan";
     private static final int LIFESPAN = Integer.parseInt(HawkularProperties.getProperty(LIFESPAN_PROPERTY, "100"));
@@ -105,11 +109,57 @@ public class PartitionManagerImpl implements PartitionManager {
     private static final String ALERTS_DISTRIBUTED_ENV = "HAWKULAR_ALERTS_DISTRIBUTED";
     private static final String ALERTS_DISTRIBUTED_DEFAULT = "false";
 
+    /*
+        PARTITION_REBALANCE_PERIOD defined in milliseconds.
+        The coordinator checks at this period the cost of the nodes published by the AlertsEngine, and moves triggers
+        from the most to the least loaded nodes when they are skewed. 0 disables the rebalance.
+     */
+    private static final String PARTITION_REBALANCE_PERIOD = "hawkular-alerts.partition-rebalance-period";
+    private static final String PARTITION_REBALANCE_PERIOD_DEFAULT = "60000";
+
+    /*
+        PARTITION_REBALANCE_SKEW defined as the ratio between the cost of the most loaded node and the mean cost.
+        The partition is rebalanced when it is exceeded.
+     */
+    private static final String PARTITION_REBALANCE_SKEW = "hawkular-alerts.partition-rebalance-skew";
+    private static final String PARTITION_REBALANCE_SKEW_DEFAULT = "1.5";
+
+    /*
+        PARTITION_REBALANCE_MAX_MOVES defined in number of buckets moved to a different node on a single rebalance.
+        All the triggers of a moved bucket change of node.
+     */
+    private static final String PARTITION_REBALANCE_MAX_MOVES = "hawkular-alerts.partition-rebalance-max-moves";
+    private static final String PARTITION_REBALANCE_MAX_MOVES_DEFAULT = "100";
+
+    /*
+        PARTITION_BUCKETS defined in number of buckets the triggers are hashed to. Buckets are the unit of
+        distribution, so it must be the same on all the nodes and much larger than the number of nodes.
+     */
+    private static final String PARTITION_BUCKETS = "hawkular-alerts.partition-buckets";
+    private static final String PARTITION_BUCKETS_DEFAULT = "1024";
+
+    /*
+        PARTITION_RECONCILE_PERIOD defined in milliseconds.
+        Each node checks at this period its index of triggers by bucket against the definitions, to recover from
+        trigger notifications lost in the cluster. 0 disables the reconcile.
+     */
+    private static final String PARTITION_RECONCILE_PERIOD = "hawkular-alerts.partition-reconcile-period";
+    private static final String PARTITION_RECONCILE_PERIOD_DEFAULT = "600000";
+
     public static final String BUCKETS = "buckets";
-    public static final String PREVIOUS = "previousPartition";
-    public static final String CURRENT = "currentPartition";
     public static final String PARTITION_CHANGE = "partitionChangeFlag";
 
+    /*
+        Prefix of the "partition" cache keys holding the dataIds published by each node, the node follows the prefix
+     */
+    public static final String DATA_IDS = "dataIds-";
+
+    /*
+        Prefix of the "partition" cache keys holding the trigger costs published by each node, the node follows the
+        prefix
+     */
+    public static final String COSTS = "costs-";
+
     private static final AlertingLogger log = MsgLogging.getMsgLogger(AlertingLogger.class, PartitionManagerImpl.class);
 
     DefinitionsService definitionsService;
@@ -120,7 +170,10 @@ public class PartitionManagerImpl implements PartitionManager {
      */
     private boolean distributed = IspnCacheManager.isDistributed();
 
-    private final Map<String, String> status = new HashMap<>();
+    /**
+     * Written by the rebalance timer and by the status requests, read by the status requests.
+     */
+    private final Map<String, String> status = new ConcurrentHashMap<>();
 
     /**
      * Access to the manager of the caches used for the partition services.
@@ -129,28 +182,43 @@ public class PartitionManagerImpl implements PartitionManager {
     private EmbeddedCacheManager cacheManager;
 
     /**
-     * This cache will keep the table between nodes and buckets used for partition calculation.
-     * A node is represented with the Address.hashCode meanwhile a bucket is an integer whitin range 0 - (n -1) nodes.
+     * This cache will keep the table between buckets and nodes used for partition calculation.
+     * A node is represented with the Address.hashCode meanwhile a bucket is an integer whitin range 0 - (n -1)
+     * buckets. A trigger belongs to the node owning the bucket its PartitionEntry is hashed to.
      *
-     * This cache will also hold the partition, a map to indicate where a Trigger is distributed.
-     * Internally a trigger is represented by a PartitionEntry.hashCode which will be the key of the map.
-     * The value will be the Address.hashCode value after calculated the distribution.
+     * Each node calculates the buckets it has gained or lost from the last table it has seen.
      *
      * Partition cache is modified by cluster coordinator.
      */
     private Cache partitionCache;
 
     /**
-     * This cache will be used to propagate a trigger across nodes.
-     * It will hold listeners to notify the change.
+     * Number of buckets of the partition.
      */
-    private Cache triggersCache;
+    private int numBuckets;
 
     /**
-     * This cache will be used to propagate a data or event across nodes.
-     * It will hold listeners to notify the change.
+     * Local index of the triggers of all the nodes by bucket, used to find the triggers of a bucket when it changes
+     * of owner. It is built from the trigger notifications, sent to all the nodes on every reload, and periodically
+     * reconciled with the definitions. It is not replicated.
      */
-    private Cache dataCache;
+    private final Map<Integer, Set<PartitionEntry>> bucketEntries = new ConcurrentHashMap<>();
+
+    /**
+     * Buckets table seen by this node on the last partition change, used to calculate the buckets gained or lost.
+     */
+    private volatile Map<Integer, Integer> localBuckets = null;
+
+    /**
+     * Used to send the trigger, data and event notifications to other nodes.
+     */
+    private ClusterMessenger messenger;
+
+    /**
+     * Routing table of data and events, a map of tenantId to dataId to the nodes that own triggers for the dataId.
+     * It is calculated from the dataIds published by the nodes, null until a node has published its dataIds.
+     */
+    private volatile Map<String, Map<String, Set<Integer>>> dataIdOwners = null;
 
     /**
      * Representation of the current node in a cluster environment.
@@ -158,6 +226,22 @@ public class PartitionManagerImpl implements PartitionManager {
      */
     private Integer currentNode = null;
 
+    private int rebalancePeriod;
+    private double rebalanceSkew;
+    private int rebalanceMaxMoves;
+
+    /**
+     * Used by the coordinator to check periodically the balance of the partition.
+     */
+    private Timer rebalanceTimer;
+
+    private int reconcilePeriod;
+
+    /**
+     * Used by each node to reconcile periodically its index of triggers by bucket.
+     */
+    private Timer reconcileTimer;
+
     /**
      * Listeners used to interact with the triggers partition events
      */
@@ -170,8 +254,6 @@ public class PartitionManagerImpl implements PartitionManager {
 
     private TopologyChangeListener topologyChangeListener = new TopologyChangeListener();
     private PartitionChangeListener partitionChangeListener = new PartitionChangeListener();
-    private NewTriggerListener newTriggerListener = new NewTriggerListener();
-    private NewDataListener newDataListener = new NewDataListener();
 
 
     public void setDefinitionsService(DefinitionsService definitionsService) {
@@ -192,6 +274,7 @@ public class PartitionManagerImpl implements PartitionManager {
             status.put("members", cacheManager.getMembers().stream()
                     .map(Object::toString)
                     .collect(Collectors.joining(", ")));
+            status.putAll(messenger.getStatus());
         }
         return status;
     }
@@ -202,32 +285,63 @@ public class PartitionManagerImpl implements PartitionManager {
         } else {
             cacheManager = IspnCacheManager.getCacheManager();
             partitionCache = cacheManager.getCache("partition");
-            triggersCache = cacheManager.getCache("triggers");
-            dataCache = cacheManager.getCache("data");
             status.put("currentNode", cacheManager.getAddress().toString());
             currentNode = cacheManager.getAddress().hashCode();
+            numBuckets = Integer.parseInt(HawkularProperties.getProperty(PARTITION_BUCKETS,
+                    PARTITION_BUCKETS_DEFAULT));
+            messenger = new ClusterMessenger(cacheManager, this::processMessage);
+            rebalancePeriod = Integer.parseInt(HawkularProperties.getProperty(PARTITION_REBALANCE_PERIOD,
+                    PARTITION_REBALANCE_PERIOD_DEFAULT));
+            rebalanceSkew = Double.parseDouble(HawkularProperties.getProperty(PARTITION_REBALANCE_SKEW,
+                    PARTITION_REBALANCE_SKEW_DEFAULT));
+            rebalanceMaxMoves = Integer.parseInt(HawkularProperties.getProperty(PARTITION_REBALANCE_MAX_MOVES,
+                    PARTITION_REBALANCE_MAX_MOVES_DEFAULT));
+            reconcilePeriod = Integer.parseInt(HawkularProperties.getProperty(PARTITION_RECONCILE_PERIOD,
+                    PARTITION_RECONCILE_PERIOD_DEFAULT));
             cacheManager.addListener(topologyChangeListener);
             partitionCache.addListener(partitionChangeListener);
-            triggersCache.addListener(newTriggerListener);
-            dataCache.addListener(newDataListener);
+            updateDataIdOwners();
             /*
                 Initial partition
              */
             log.debugf("Initial partition for node: %s",currentNode);
             processTopologyChange();
+            if (rebalancePeriod > 0) {
+                rebalanceTimer = new Timer("PartitionManagerImpl-Rebalance", true);
+                rebalanceTimer.schedule(new TimerTask() {
+                    @Override
+                    public void run() {
+                        processRebalance();
+                    }
+                }, rebalancePeriod, rebalancePeriod);
+            }
+            if (reconcilePeriod > 0) {
+                reconcileTimer = new Timer("PartitionManagerImpl-Reconcile", true);
+                reconcileTimer.schedule(new TimerTask() {
+                    @Override
+                    public void run() {
+                        processReconcile();
+                    }
+                }, reconcilePeriod, reconcilePeriod);
+            }
             log.infoPartitionManagerEnabled();
         }
     }
 
     public void shutdown() {
         if (distributed) {
+            if (null != rebalanceTimer) {
+                rebalanceTimer.cancel();
+            }
+            if (null != reconcileTimer) {
+                reconcileTimer.cancel();
+            }
+            partitionCache.remove(DATA_IDS + currentNode);
+            partitionCache.remove(COSTS + currentNode);
+            messenger.shutdown();
             cacheManager.removeListener(topologyChangeListener);
             partitionCache.removeListener(partitionChangeListener);
-            triggersCache.removeListener(newTriggerListener);
-            dataCache.removeListener(newDataListener);
 
-            dataCache.stop();
-            triggersCache.stop();
             partitionCache.stop();
             cacheManager.stop();
         }
@@ -238,11 +352,43 @@ public class PartitionManagerImpl implements PartitionManager {
     public void notifyTrigger(Operation operation, String tenantId, String triggerId) {
         if (distributed) {
             PartitionEntry newEntry = new PartitionEntry(tenantId, triggerId);
-            int toNode = calculateNewEntry(newEntry, (Map<Integer, Integer>)partitionCache.get(BUCKETS));
+            int toNode = calculateNewEntry(newEntry, (Map<Integer, Integer>) partitionCache.get(BUCKETS));
             NotifyTrigger nTrigger = new NotifyTrigger(currentNode, toNode, operation, tenantId, triggerId);
-            Integer key = nTrigger.hashCode();
-            triggersCache.getAdvancedCache().withFlags(Flag.IGNORE_RETURN_VALUES)
-                    .putAsync(key, nTrigger, LIFESPAN, TimeUnit.MILLISECONDS);
+            log.debugf("Sending trigger [%s]", nTrigger);
+            /*
+                Trigger notifications are sent to all nodes to keep their bucket index updated, only the owner of
+                the trigger processes them. They are control messages, never dropped for a full queue.
+             */
+            for (Address member : cacheManager.getMembers()) {
+                messenger.sendControl(member, nTrigger);
+            }
+        }
+    }
+
+    /*
+        States are sent to the owner of each trigger on the current buckets table, as control messages
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    public void notifyTriggerStates(Collection<TriggerState> states) {
+        if (distributed && !isEmpty(states)) {
+            Map<Integer, Integer> buckets = (Map<Integer, Integer>) partitionCache.get(BUCKETS);
+            if (isEmpty(buckets)) {
+                return;
+            }
+            Map<Integer, List<TriggerState>> nodeStates = new HashMap<>();
+            for (TriggerState state : states) {
+                Integer node = calculateNewEntry(new PartitionEntry(state.getTenantId(), state.getTriggerId()),
+                        buckets);
+                if (null != node && !node.equals(currentNode)) {
+                    nodeStates.computeIfAbsent(node, n -> new ArrayList<>()).add(state);
+                }
+            }
+            nodeStates.forEach((node, toNode) -> {
+                NotifyTriggerStates nStates = new NotifyTriggerStates(currentNode, toNode);
+                log.debugf("Sending trigger states [%s]", nStates);
+                sendTo(node, nStates, true);
+            });
         }
     }
 
@@ -252,26 +398,58 @@ public class PartitionManagerImpl implements PartitionManager {
     }
 
     @Override
-    @SuppressWarnings("unchecked")
     public void notifyData(Collection<Data> data) {
         if (distributed) {
+            Map<String, Map<String, Set<Integer>>> owners = dataIdOwners;
+            if (null != owners) {
+                Map<Integer, List<Data>> routes = routeByOwner(data, owners, Data::getTenantId, Data::getId);
+                routes.remove(currentNode);
+                routes.forEach((node, nodeData) -> sendTo(node, new NotifyData(currentNode, nodeData, Data.class)));
+                return;
+            }
             NotifyData nData = new NotifyData(currentNode, data, Data.class);
-            Integer key = nData.hashCode();
             log.debugf("Sending data [%s]", nData);
-            dataCache.getAdvancedCache().withFlags(Flag.IGNORE_RETURN_VALUES)
-                    .putAsync(key, nData, LIFESPAN, TimeUnit.MILLISECONDS);
+            sendToOthers(nData);
         }
     }
 
     @Override
-    @SuppressWarnings("unchecked")
     public void notifyEvents(Collection<Event> events) {
         if (distributed) {
+            Map<String, Map<String, Set<Integer>>> owners = dataIdOwners;
+            if (null != owners) {
+                Map<Integer, List<Event>> routes = routeByOwner(events, owners, Event::getTenantId,
+                        Event::getDataId);
+                routes.remove(currentNode);
+                routes.forEach((node, nodeEvents) -> sendTo(node,
+                        new NotifyData(currentNode, nodeEvents, Event.class)));
+                return;
+            }
             NotifyData nEvent = new NotifyData(currentNode, events, Event.class);
-            Integer key = nEvent.hashCode();
             log.debugf("Sending events [%s]", nEvent);
-            dataCache.getAdvancedCache().withFlags(Flag.IGNORE_RETURN_VALUES)
-                    .putAsync(key, nEvent, LIFESPAN, TimeUnit.MILLISECONDS);
+            sendToOthers(nEvent);
+        }
+    }
+
+    @Override
+    public void notifyDataIds(Map<String, Set<String>> dataIds) {
+        if (distributed) {
+            HashMap<String, Set<String>> nodeDataIds = new HashMap<>();
+            dataIds.forEach((tenantId, tenantDataIds) -> nodeDataIds.put(tenantId, new HashSet<>(tenantDataIds)));
+            log.debugf("Publishing dataIds of node %s: %s", currentNode, nodeDataIds);
+            partitionCache.getAdvancedCache().withFlags(Flag.IGNORE_RETURN_VALUES)
+                    .put(DATA_IDS + currentNode, nodeDataIds);
+        }
+    }
+
+    @Override
+    public void notifyTriggerCosts(Map<String, Map<String, Long>> costs) {
+        if (distributed) {
+            HashMap<String, Map<String, Long>> nodeCosts = new HashMap<>();
+            costs.forEach((tenantId, tenantCosts) -> nodeCosts.put(tenantId, new HashMap<>(tenantCosts)));
+            log.debugf("Publishing trigger costs of node %s", currentNode);
+            partitionCache.getAdvancedCache().withFlags(Flag.IGNORE_RETURN_VALUES)
+                    .put(COSTS + currentNode, nodeCosts);
         }
     }
 
@@ -281,23 +459,164 @@ public class PartitionManagerImpl implements PartitionManager {
     }
 
     /*
-        Calculate a new partition based on the current topology.
+        Send a notification to a single node, it is discarded if the node is not a member of the cluster.
+     */
+    private void sendTo(Integer node, Serializable message) {
+        sendTo(node, message, false);
+    }
+
+    private void sendTo(Integer node, Serializable message, boolean control) {
+        for (Address member : cacheManager.getMembers()) {
+            if (member.hashCode() == node) {
+                if (control) {
+                    messenger.sendControl(member, message);
+                } else {
+                    messenger.send(member, message);
+                }
+                return;
+            }
+        }
+        log.debugf("Node %s is not a member, discarding [%s]", node, message);
+    }
+
+    /*
+        Send a notification to all the nodes of the cluster except the current one.
+     */
+    private void sendToOthers(Serializable message) {
+        for (Address member : cacheManager.getMembers()) {
+            if (member.hashCode() != currentNode) {
+                messenger.send(member, message);
+            }
+        }
+    }
+
+    /*
+        Invoked by the ClusterMessenger with each notification received by the current node.
+     */
+    private void processMessage(Serializable message) {
+        if (message instanceof NotifyTrigger) {
+            processNotifyTrigger((NotifyTrigger) message);
+        } else if (message instanceof NotifyData) {
+            processNotifyData((NotifyData) message);
+        } else if (message instanceof NotifyTriggerStates) {
+            Collection<TriggerState> states = ((NotifyTriggerStates) message).getStates();
+            triggerListeners.stream().forEach(triggerListener -> triggerListener.onTriggerStates(states));
+        } else {
+            log.warnf("Unknown message [%s]", message);
+        }
+    }
+
+    /*
+        Rebuild the routing table from the dataIds published by the nodes on the "partition" cache.
+     */
+    @SuppressWarnings("unchecked")
+    private void updateDataIdOwners() {
+        Map<Integer, Map<String, Set<String>>> nodeDataIds = new HashMap<>();
+        for (Object key : new ArrayList<>(partitionCache.keySet())) {
+            Integer node = keyNode(DATA_IDS, key);
+            if (null != node) {
+                Map<String, Set<String>> dataIds = (Map<String, Set<String>>) partitionCache.get(key);
+                if (null != dataIds) {
+                    nodeDataIds.put(node, dataIds);
+                }
+            }
+        }
+        dataIdOwners = nodeDataIds.isEmpty() ? null : calculateOwners(nodeDataIds);
+        if (log.isDebugEnabled()) {
+            log.debugf("DataId owners: %s", dataIdOwners);
+        }
+    }
+
+    /*
+        The node of a "partition" cache key holding values published by each node with the prefix, null for other
+        keys.
+     */
+    private Integer keyNode(String prefix, Object key) {
+        if (key instanceof String && ((String) key).startsWith(prefix)) {
+            try {
+                return Integer.valueOf(((String) key).substring(prefix.length()));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /*
+        Reconcile the index of triggers by bucket with the definitions, off the partition change path.
+        Triggers missing from the index, or indexed but no longer defined, have lost a notification. If they belong
+        to this node the listeners are notified as the lost notification would have done.
+     */
+    private void processReconcile() {
+        /*
+            The index is taken before the definitions, so a trigger added meanwhile is not taken as removed
+         */
+        Set<PartitionEntry> indexed = new HashSet<>();
+        bucketEntries.values().forEach(indexed::addAll);
+        Set<PartitionEntry> defined = new HashSet<>();
+        try {
+            for (Trigger trigger : definitionsService.getAllTriggers()) {
+                if (!trigger.isGroup()) {
+                    defined.add(new PartitionEntry(trigger.getTenantId(), trigger.getId()));
+                }
+            }
+        } catch (Exception e) {
+            log.debug(e.getMessage(), e);
+            log.warnf("Index of triggers by bucket not reconciled: %s", e.toString());
+            return;
+        }
+        Map<PartitionEntry, Operation> lost = new HashMap<>();
+        for (PartitionEntry entry : indexed) {
+            if (!defined.remove(entry)) {
+                lost.put(entry, Operation.REMOVE);
+            }
+        }
+        defined.forEach(entry -> lost.put(entry, Operation.UPDATE));
+        if (lost.isEmpty()) {
+            return;
+        }
+        log.debugf("Reconciling [%s] triggers of the index by bucket", lost.size());
+        Map<Integer, Integer> buckets = localBuckets;
+        lost.forEach((entry, operation) -> {
+            if (operation == Operation.REMOVE) {
+                removeBucketEntry(entry);
+            } else {
+                addBucketEntry(entry);
+            }
+            if (null != buckets && currentNode.equals(buckets.get(calculateBucket(entry, numBuckets)))) {
+                triggerListeners.stream().forEach(triggerListener -> triggerListener.onTriggerChange(operation,
+                        entry.getTenantId(), entry.getTriggerId()));
+            }
+        });
+    }
+
+    private void addBucketEntry(PartitionEntry entry) {
+        bucketEntries.computeIfAbsent(calculateBucket(entry, numBuckets), b -> ConcurrentHashMap.newKeySet())
+                .add(entry);
+    }
+
+    private void removeBucketEntry(PartitionEntry entry) {
+        Set<PartitionEntry> entries = bucketEntries.get(calculateBucket(entry, numBuckets));
+        if (null != entries) {
+            entries.remove(entry);
+        }
+    }
+
+    /*
+        Calculate the new owners of the buckets based on the current topology.
         It should be invoked as a result of a topology event and it is executed by the coordinator node.
-        It updated the new and old partition state on the "partition" cache.
-        This can take some time, avoid timeouts by allowing longer waits for pending client calls
+        Only the buckets of the nodes that have left, and the buckets needed to balance the nodes that have joined,
+        change of owner. It updated the new and old buckets table on the "partition" cache.
      */
     @SuppressWarnings("unchecked")
-    private void processTopologyChange() {
+    private synchronized void processTopologyChange() {
         if (distributed && cacheManager.isCoordinator()) {
-            /*
-                Process nodes/buckets map
-             */
-            Map<Integer, Integer> oldBuckets = (Map<Integer, Integer>)partitionCache.get(BUCKETS);
-            List<Integer> members = new ArrayList();
+            Map<Integer, Integer> oldBuckets = (Map<Integer, Integer>) partitionCache.get(BUCKETS);
+            List<Integer> members = new ArrayList<>();
             cacheManager.getMembers().stream().forEach(a -> {
                 members.add(a.hashCode());
             });
-            Map<Integer, Integer> newBuckets = updateBuckets(oldBuckets, members);
+            Map<Integer, Integer> newBuckets = updateBuckets(oldBuckets, members, numBuckets, getBucketCosts());
             if (log.isDebugEnabled()) {
                 log.debug("Processing Topology Change");
                 log.debugf("Old buckets: %s", oldBuckets);
@@ -305,104 +624,172 @@ public class PartitionManagerImpl implements PartitionManager {
             }
 
             /*
-                Process partition map
+                Remove the dataIds and costs published by the nodes that have left
              */
-            final List<PartitionEntry> entries = new ArrayList<>();
-            Map<PartitionEntry, Integer> oldPartition = (Map<PartitionEntry, Integer>)partitionCache.get(CURRENT);
-            Map<PartitionEntry, Integer> newPartition;
-            if (oldPartition == null) {
-                // Initial load of all triggers
-                Collection<Trigger> triggers;
-                try {
-                    triggers = definitionsService.getAllTriggers();
-                    triggers.stream().forEach(t -> {
-                        PartitionEntry entry = new PartitionEntry(t.getTenantId(), t.getId());
-                        entries.add(entry);
-                    });
-                } catch(Exception e) {
-                    log.errorCannotInitializePartitionManager(e.toString());
+            for (Object key : new ArrayList<>(partitionCache.keySet())) {
+                Integer node = keyNode(DATA_IDS, key);
+                if (null == node) {
+                    node = keyNode(COSTS, key);
+                }
+                if (null != node && !members.contains(node)) {
+                    partitionCache.remove(key);
                 }
-            } else {
-                oldPartition.keySet().stream().forEach(e -> {
-                    entries.add(e);
-                });
             }
 
-            newPartition = calculatePartition(entries, newBuckets);
-            if (log.isDebugEnabled()) {
-                log.debugf("Old partition: %s", oldPartition);
-                log.debugf("New partition: %s", newPartition);
+            putBuckets(newBuckets);
+        }
+    }
+
+    /*
+        Move buckets from the most to the least loaded nodes when the cost of the nodes is skewed.
+        It is executed periodically by the coordinator node, the costs are published by each node.
+     */
+    @SuppressWarnings("unchecked")
+    private synchronized void processRebalance() {
+        if (!distributed || !cacheManager.isCoordinator()) {
+            return;
+        }
+        try {
+            Map<Integer, Integer> buckets = (Map<Integer, Integer>) partitionCache.get(BUCKETS);
+            if (isEmpty(buckets)) {
+                return;
+            }
+            Map<Integer, Long> costs = getBucketCosts();
+            Set<Integer> nodes = new HashSet<>(buckets.values());
+            double skew = calculateSkew(buckets, costs, nodes);
+            status.put("skew", String.format("%.2f", skew));
+            if (skew <= rebalanceSkew) {
+                return;
             }
+            Map<Integer, Integer> newBuckets = balancePartition(buckets, costs, nodes, rebalanceSkew,
+                    rebalanceMaxMoves);
+            if (newBuckets.equals(buckets)) {
+                return;
+            }
+            log.debugf("Rebalancing buckets with skew %s", skew);
+            putBuckets(newBuckets);
+        } catch (Exception e) {
+            log.warnf("Partition not rebalanced: %s", e.toString());
+        }
+    }
+
+    /*
+        Publish a new buckets table, the nodes are notified with the partition change flag.
+     */
+    private void putBuckets(Map<Integer, Integer> newBuckets) {
+        partitionCache.put(BUCKETS, newBuckets);
+        partitionCache.put(PARTITION_CHANGE, new Date(), LIFESPAN, TimeUnit.MILLISECONDS);
+    }
 
-            partitionCache.startBatch();
-            partitionCache.put(BUCKETS, newBuckets);
-            if (oldPartition != null) {
-                partitionCache.put(PREVIOUS, oldPartition);
+    /*
+        The cost of a bucket is 1 plus the cost of its triggers published by the nodes, a trigger without cost
+        counts 1. Empty buckets count, so they are spread across the nodes for the triggers to come.
+     */
+    @SuppressWarnings("unchecked")
+    private Map<Integer, Long> getBucketCosts() {
+        Map<PartitionEntry, Long> costs = new HashMap<>();
+        for (Object key : new ArrayList<>(partitionCache.keySet())) {
+            if (null != keyNode(COSTS, key)) {
+                Map<String, Map<String, Long>> nodeCosts = (Map<String, Map<String, Long>>) partitionCache.get(key);
+                if (null != nodeCosts) {
+                    /*
+                        A trigger recently moved may be reported by two nodes
+                     */
+                    nodeCosts.forEach((tenantId, tenantCosts) -> tenantCosts.forEach((triggerId, cost) ->
+                            costs.merge(new PartitionEntry(tenantId, triggerId), cost, Math::max)));
+                }
             }
-            partitionCache.put(CURRENT, newPartition);
-            partitionCache.endBatch(true);
-            partitionCache.put(PARTITION_CHANGE, new Date(), LIFESPAN, TimeUnit.MILLISECONDS);
         }
+        Map<Integer, Long> bucketCosts = new HashMap<>();
+        bucketEntries.forEach((bucket, entries) -> {
+            long cost = 1;
+            for (PartitionEntry entry : entries) {
+                Long entryCost = costs.get(entry);
+                cost += null == entryCost ? 1L : entryCost;
+            }
+            bucketCosts.put(bucket, cost);
+        });
+        return bucketCosts;
     }
 
     /**
-     * Update a nodes table.
+     * Update a buckets table.
      * This table is represented as a Map<Integer, Integer> where:
-     *  - key is an index within [0, n-1] being n the number of nodes.
+     *  - key is a bucket within [0, n-1] being n the number of buckets.
      *  - value is the code that represents a node, it is calculated from Address.hashCode
      *
      *  This method re-calculate a new table from an old table and with a new list with new members.
-     *  The algorithm minimizes the changes across topology changes.
+     *  The buckets of the nodes that have left are placed on the least loaded members, then buckets are moved from
+     *  the most to the least loaded members until no move reduces the load of the most loaded member, so only the
+     *  buckets needed change of owner.
      *
      * @param oldBuckets the old table used as input for the calculation
      * @param members a new list of members
-     * @return a new table of nodes
+     * @param numBuckets the number of buckets
+     * @param costs the cost of the buckets, buckets without cost have cost 1
+     * @return a new table of buckets
      */
-    public Map<Integer, Integer> updateBuckets(Map<Integer, Integer> oldBuckets, List<Integer> members) {
+    public Map<Integer, Integer> updateBuckets(Map<Integer, Integer> oldBuckets, List<Integer> members,
+                                              int numBuckets, Map<Integer, Long> costs) {
         if (isEmpty(members)) {
             throw new IllegalArgumentException("newMembers must be not null");
         }
+        if (numBuckets < 1) {
+            throw new IllegalArgumentException("numBuckets must be positive");
+        }
+        if (costs == null) {
+            throw new IllegalArgumentException("costs must be not null");
+        }
+        Map<Integer, Integer> newBuckets = new HashMap<>();
         /*
-            Create a new map
+            Create a new table, members are sorted so the result does not depend on the order of the view
          */
-        if (isEmpty(oldBuckets)) {
-            Map<Integer, Integer> newBuckets = new HashMap<>();
-            for (int i = 0; i < members.size(); i++) {
-                newBuckets.put(i, members.get(i));
+        if (isEmpty(oldBuckets) || oldBuckets.size() != numBuckets) {
+            List<Integer> sortedMembers = new ArrayList<>(members);
+            Collections.sort(sortedMembers);
+            for (int bucket = 0; bucket < numBuckets; bucket++) {
+                newBuckets.put(bucket, sortedMembers.get(bucket % sortedMembers.size()));
             }
             return newBuckets;
         }
 
-        Map<Integer, Integer> newBuckets = new HashMap<>();
-        int newBucket = 0;
-        while (newBucket < members.size()) {
-            int bucket = 0;
-            boolean placed = false;
-            while (bucket < oldBuckets.size() && !placed) {
-                Integer oldMember = oldBuckets.get(bucket);
-                if (!newBuckets.containsValue(oldMember)
-                        && members.contains(oldMember)
-                        && (bucket == newBucket || bucket >= members.size())) {
-                    newBuckets.put(newBucket, oldMember);
-                    placed = true;
-                } else {
-                    bucket++;
-                }
-            }
-            if (bucket == oldBuckets.size() && !placed) {
-                newBuckets.put(newBucket, members.get(newBucket));
+        Map<Integer, Long> loads = new HashMap<>();
+        members.forEach(member -> loads.put(member, 0L));
+        List<Integer> orphans = new ArrayList<>();
+        for (int bucket = 0; bucket < numBuckets; bucket++) {
+            Integer oldMember = oldBuckets.get(bucket);
+            if (loads.containsKey(oldMember)) {
+                newBuckets.put(bucket, oldMember);
+                loads.put(oldMember, loads.get(oldMember) + cost(bucket, costs));
+            } else {
+                orphans.add(bucket);
             }
-            newBucket++;
         }
-        return newBuckets;
+        orphans.sort((b1, b2) -> Long.compare(cost(b2, costs), cost(b1, costs)));
+        for (Integer bucket : orphans) {
+            Integer member = Collections.min(loads.entrySet(), Entry.comparingByValue()).getKey();
+            newBuckets.put(bucket, member);
+            loads.put(member, loads.get(member) + cost(bucket, costs));
+        }
+        return balancePartition(newBuckets, costs, members, 1.0, numBuckets);
+    }
+
+    /**
+     * Calculate the bucket of an entry.
+     *
+     * @param entry the entry
+     * @param numBuckets the number of buckets
+     * @return a bucket within [0, numBuckets - 1]
+     */
+    public int calculateBucket(PartitionEntry entry, int numBuckets) {
+        return Hashing.consistentHash(Hashing.md5().hashInt(entry.hashCode()), numBuckets);
     }
 
     /**
-     * Distribute triggers on nodes using a consistent hashing strategy.
-     * This strategy allows to scale and minimize changes and re-distribution when cluster changes.
+     * Distribute triggers on nodes placing each trigger on the owner of its bucket.
      *
      * @param entries a list of entries to distribute
-     * @param buckets a table of nodes
+     * @param buckets a table of buckets
      * @return a map of entries distributed across nodes
      */
     public Map<PartitionEntry, Integer> calculatePartition(List<PartitionEntry> entries,
@@ -413,20 +800,18 @@ public class PartitionManagerImpl implements PartitionManager {
         if (isEmpty(buckets)) {
             throw new IllegalArgumentException("entries must be not null");
         }
-        HashFunction md5 = Hashing.md5();
-        int numBuckets = buckets.size();
         Map<PartitionEntry, Integer> newPartition = new HashMap<>();
         for (PartitionEntry entry : entries) {
-            newPartition.put(entry, buckets.get(Hashing.consistentHash(md5.hashInt(entry.hashCode()), numBuckets)));
+            newPartition.put(entry, buckets.get(calculateBucket(entry, buckets.size())));
         }
         return newPartition;
     }
 
     /**
-     * Distribute a new entry across buckets using a consistent hashing strategy.
+     * Place a new entry on the owner of its bucket.
      *
      * @param newEntry the new entry to distribute
-     * @param buckets a table of nodes
+     * @param buckets a table of buckets
      * @return a code of the node which the new entry is placed
      */
     public Integer calculateNewEntry(PartitionEntry newEntry, Map<Integer, Integer> buckets) {
@@ -436,110 +821,247 @@ public class PartitionManagerImpl implements PartitionManager {
         if (isEmpty(buckets)) {
             throw new IllegalArgumentException("buckets must be not null");
         }
-        HashFunction md5 = Hashing.md5();
-        int numBuckets = buckets.size();
-        return buckets.get(Hashing.consistentHash(md5.hashInt(newEntry.hashCode()), numBuckets));
+        return buckets.get(calculateBucket(newEntry, buckets.size()));
     }
 
     /**
-     * Return the entries assigned for a node into a partition.
-     * The returned entries are represented by a Map<String, List<String>> where:
-     *  - key is a tenantId
-     *  - value is a List of triggersId assigned to the tenant
+     * Calculate the skew of a partition, the ratio between the cost of the most loaded node and the mean cost.
      *
-     * @param partition the partition used internally
-     * @param node the node to filter
-     * @return a map representing the entries for given node
-     */
-    public Map<String, List<String>> getNodePartition(Map<PartitionEntry, Integer> partition, Integer node) {
-        Map<String, List<String>> nodePartition = new HashMap<>();
-        if (partition != null) {
-            for (Entry<PartitionEntry, Integer> entry : partition.entrySet()) {
-                if (entry.getValue().equals(node)) {
-                    add(nodePartition, entry.getKey());
+     * @param partition a map of entry (PartitionEntry or bucket) to node
+     * @param costs the cost of the entries, entries without cost have cost 1
+     * @param nodes the nodes of the partition
+     * @param <K> PartitionEntry or bucket
+     * @return the skew, 1.0 for a balanced or empty partition
+     */
+    public <K> double calculateSkew(Map<K, Integer> partition, Map<K, Long> costs, Collection<Integer> nodes) {
+        if (partition == null || costs == null) {
+            throw new IllegalArgumentException("partition and costs must be not null");
+        }
+        if (isEmpty(nodes)) {
+            throw new IllegalArgumentException("nodes must be not null");
+        }
+        Map<Integer, Long> loads = calculateLoads(partition, costs, nodes);
+        long total = loads.values().stream().mapToLong(Long::longValue).sum();
+        if (total == 0) {
+            return 1.0;
+        }
+        long max = loads.values().stream().mapToLong(Long::longValue).max().getAsLong();
+        return (double) max * loads.size() / total;
+    }
+
+    /**
+     * Move entries from the most to the least loaded nodes until the skew of the partition is under the
+     * maximum, or no move reduces the load of the most loaded node, or the maximum number of moves is reached.
+     * On each move the entry whose cost is closest to half of the difference between the two nodes is chosen.
+     *
+     * @param partition a map of entry (PartitionEntry or bucket) to node
+     * @param costs the cost of the entries, entries without cost have cost 1
+     * @param nodes the nodes of the partition
+     * @param maxSkew the skew to reach, see {@link #calculateSkew(Map, Map, Collection)}
+     * @param maxMoves the maximum number of entries moved to a different node
+     * @param <K> PartitionEntry or bucket
+     * @return a new partition
+     */
+    public <K> Map<K, Integer> balancePartition(Map<K, Integer> partition, Map<K, Long> costs,
+                                                Collection<Integer> nodes, double maxSkew, int maxMoves) {
+        if (partition == null || costs == null) {
+            throw new IllegalArgumentException("partition and costs must be not null");
+        }
+        if (isEmpty(nodes)) {
+            throw new IllegalArgumentException("nodes must be not null");
+        }
+        Map<K, Integer> newPartition = new HashMap<>(partition);
+        Map<Integer, Long> loads = calculateLoads(newPartition, costs, nodes);
+        long total = loads.values().stream().mapToLong(Long::longValue).sum();
+        double maxLoad = maxSkew * total / loads.size();
+        Map<Integer, List<K>> nodeEntries = new HashMap<>();
+        newPartition.forEach((entry, node) -> {
+            if (loads.containsKey(node)) {
+                nodeEntries.computeIfAbsent(node, n -> new ArrayList<>()).add(entry);
+            }
+        });
+        for (int moves = 0; moves < maxMoves; moves++) {
+            Integer heavy = null;
+            Integer light = null;
+            for (Entry<Integer, Long> load : loads.entrySet()) {
+                if (null == heavy || load.getValue() > loads.get(heavy)) {
+                    heavy = load.getKey();
+                }
+                if (null == light || load.getValue() < loads.get(light)) {
+                    light = load.getKey();
+                }
+            }
+            long gap = loads.get(heavy) - loads.get(light);
+            if (loads.get(heavy) <= maxLoad || !nodeEntries.containsKey(heavy)) {
+                break;
+            }
+            K best = null;
+            long bestCost = 0;
+            for (K entry : nodeEntries.get(heavy)) {
+                long cost = cost(entry, costs);
+                if (cost < gap && (null == best || Math.abs(gap - 2 * cost) < Math.abs(gap - 2 * bestCost))) {
+                    best = entry;
+                    bestCost = cost;
                 }
             }
+            if (null == best) {
+                break;
+            }
+            nodeEntries.get(heavy).remove(best);
+            nodeEntries.computeIfAbsent(light, n -> new ArrayList<>()).add(best);
+            loads.put(heavy, loads.get(heavy) - bestCost);
+            loads.put(light, loads.get(light) + bestCost);
+            newPartition.put(best, light);
         }
-        return nodePartition;
+        return newPartition;
     }
 
-    /*
-        Auxiliary function to transform a PartitionEntry object into a plain map representation.
-     */
-    private void add(Map<String, List<String>> partition, PartitionEntry entry) {
-        String tenantId = entry.getTenantId();
-        String triggerId = entry.getTriggerId();
-        if (partition.get(tenantId) == null) {
-            partition.put(tenantId, new ArrayList<>());
+    private <K> Map<Integer, Long> calculateLoads(Map<K, Integer> partition, Map<K, Long> costs,
+                                                  Collection<Integer> nodes) {
+        Map<Integer, Long> loads = new HashMap<>();
+        for (Integer node : nodes) {
+            loads.put(node, 0L);
         }
-        partition.get(tenantId).add(triggerId);
+        partition.forEach((entry, node) -> {
+            if (loads.containsKey(node)) {
+                loads.put(node, loads.get(node) + cost(entry, costs));
+            }
+        });
+        return loads;
     }
 
-    /*
-        Calculated the added and removed entries for a node given a current and a previous partition maps.
-        It return a map with two fixed entries under keys "added" and "removed".
+    private <K> long cost(K entry, Map<K, Long> costs) {
+        Long cost = costs.get(entry);
+        return null == cost ? 1L : cost;
+    }
+
+    /**
+     * Invert the dataIds published by the nodes into a routing table of data and events.
+     *
+     * @param nodeDataIds a map of node code to the dataIds (tenantId to dataIds) of the triggers loaded on the node
+     * @return a map of tenantId to dataId to the codes of the nodes that own triggers for the dataId
      */
-    @SuppressWarnings("unchecked")
-    protected Map<String, Map<String, List<String>>> getAddedRemovedPartition(Map<PartitionEntry, Integer> previous,
-                                                                            Map<PartitionEntry, Integer> current,
-                                                                            Integer node) {
-        Map<String, Map<String, List<String>>> output = new HashMap<>();
-        output.put("added", new HashMap<>());
-        output.put("removed", new HashMap<>());
-
-        if (isEmpty(previous)) {
-            current.entrySet().stream().forEach(entry -> {
-                add(output.get("added"), entry.getKey());
-            });
-        } else {
-            List<PartitionEntry> previousNode = new ArrayList();
-            for (Entry<PartitionEntry, Integer> entry : previous.entrySet()) {
-                if (entry.getValue().equals(node)) {
-                    previousNode.add(entry.getKey());
-                }
+    public Map<String, Map<String, Set<Integer>>> calculateOwners(Map<Integer, Map<String, Set<String>>> nodeDataIds) {
+        if (nodeDataIds == null) {
+            throw new IllegalArgumentException("nodeDataIds must be not null");
+        }
+        Map<String, Map<String, Set<Integer>>> owners = new HashMap<>();
+        nodeDataIds.forEach((node, dataIds) -> dataIds.forEach((tenantId, tenantDataIds) -> {
+            Map<String, Set<Integer>> tenantOwners = owners.computeIfAbsent(tenantId, t -> new HashMap<>());
+            for (String dataId : tenantDataIds) {
+                tenantOwners.computeIfAbsent(dataId, d -> new HashSet<>()).add(node);
             }
-            List<PartitionEntry> currentNode = new ArrayList();
-            for (Entry<PartitionEntry, Integer> entry : current.entrySet()) {
-                if (entry.getValue().equals(node)) {
-                    currentNode.add(entry.getKey());
+        }));
+        return owners;
+    }
+
+    /**
+     * Split a collection of data or events by the nodes that own triggers for their dataIds.
+     * Items without owner are discarded, and an item with several owners is placed on all of them.
+     *
+     * @param items the data or events to route
+     * @param owners a routing table as calculated by {@link #calculateOwners(Map)}
+     * @param tenantId function to get the tenantId of an item
+     * @param dataId function to get the dataId of an item
+     * @param <T> Data or Event
+     * @return a map of node code to the items to send to the node, in the order of the collection
+     */
+    public <T> Map<Integer, List<T>> routeByOwner(Collection<T> items, Map<String, Map<String, Set<Integer>>> owners,
+                                                  Function<T, String> tenantId, Function<T, String> dataId) {
+        Map<Integer, List<T>> routes = new HashMap<>();
+        for (T item : items) {
+            Map<String, Set<Integer>> tenantOwners = owners.get(tenantId.apply(item));
+            Set<Integer> nodes = null == tenantOwners ? null : tenantOwners.get(dataId.apply(item));
+            if (null != nodes) {
+                for (Integer node : nodes) {
+                    routes.computeIfAbsent(node, n -> new ArrayList<>()).add(item);
                 }
             }
-            for (PartitionEntry entry : previousNode) {
-                if (!currentNode.contains(entry)) {
-                    add(output.get("removed"), entry);
+        }
+        return routes;
+    }
+
+    /**
+     * Return the buckets assigned for a node.
+     *
+     * @param buckets the buckets table
+     * @param node the node
+     * @return the buckets of the node
+     */
+    public Set<Integer> getNodeBuckets(Map<Integer, Integer> buckets, Integer node) {
+        Set<Integer> nodeBuckets = new HashSet<>();
+        if (buckets != null) {
+            for (Entry<Integer, Integer> entry : buckets.entrySet()) {
+                if (entry.getValue().equals(node)) {
+                    nodeBuckets.add(entry.getKey());
                 }
             }
-            for (PartitionEntry entry : currentNode) {
-                if (!previousNode.contains(entry)) {
-                    add(output.get("added"), entry);
+        }
+        return nodeBuckets;
+    }
+
+    /*
+        Calculated the added and removed buckets for a node given a current and a previous buckets tables.
+        It return a map with two fixed entries under keys "added" and "removed".
+     */
+    protected Map<String, Set<Integer>> getAddedRemovedBuckets(Map<Integer, Integer> previous,
+                                                               Map<Integer, Integer> current,
+                                                               Integer node) {
+        Map<String, Set<Integer>> output = new HashMap<>();
+        Set<Integer> previousNode = getNodeBuckets(previous, node);
+        Set<Integer> currentNode = getNodeBuckets(current, node);
+        Set<Integer> removed = new HashSet<>(previousNode);
+        removed.removeAll(currentNode);
+        Set<Integer> added = new HashSet<>(currentNode);
+        added.removeAll(previousNode);
+        output.put("added", added);
+        output.put("removed", removed);
+        return output;
+    }
+
+    /*
+        Auxiliary function to transform the entries of a set of buckets into a plain map representation.
+     */
+    private Map<String, List<String>> getBucketsPartition(Set<Integer> buckets) {
+        Map<String, List<String>> partition = new HashMap<>();
+        for (Integer bucket : buckets) {
+            Set<PartitionEntry> entries = bucketEntries.get(bucket);
+            if (null != entries) {
+                for (PartitionEntry entry : entries) {
+                    partition.computeIfAbsent(entry.getTenantId(), t -> new ArrayList<>()).add(entry.getTriggerId());
                 }
             }
         }
-        return output;
+        return partition;
     }
 
     /*
-        Invoke PartitionTriggerListener with local, added and removed partition
+        Invoke PartitionTriggerListener with local, added and removed partition.
+        Only the triggers of the buckets gained or lost since the previous invocation are added or removed.
      */
     @SuppressWarnings("unchecked")
-    private void invokePartitionChangeListener() {
+    private synchronized void invokePartitionChangeListener() {
+        Map<Integer, Integer> current = (Map<Integer, Integer>) partitionCache.get(BUCKETS);
+        if (null == current) {
+            return;
+        }
+        Map<Integer, Integer> previous = localBuckets;
+        localBuckets = current;
         if (!triggerListeners.isEmpty()) {
-            Map<PartitionEntry, Integer> current = (Map<PartitionEntry, Integer>) partitionCache.get(CURRENT);
-            Map<PartitionEntry, Integer> previous = (Map<PartitionEntry, Integer>) partitionCache.get(PREVIOUS);
-
-            Map<String, List<String>> partition = getNodePartition(current, currentNode);
-            Map<String, Map<String, List<String>>> addedRemoved =
-                    getAddedRemovedPartition(previous, current, currentNode);
+            Map<String, Set<Integer>> addedRemoved = getAddedRemovedBuckets(previous, current, currentNode);
+            Map<String, List<String>> partition = getBucketsPartition(getNodeBuckets(current, currentNode));
+            Map<String, List<String>> added = getBucketsPartition(addedRemoved.get("added"));
+            Map<String, List<String>> removed = getBucketsPartition(addedRemoved.get("removed"));
             if (log.isDebugEnabled()) {
                 log.debug("Invoke a Change Listener");
-                log.debugf("Previous: %s", previous);
-                log.debugf("Current: %s", current);
+                log.debugf("Added buckets: %s", addedRemoved.get("added"));
+                log.debugf("Removed buckets: %s", addedRemoved.get("removed"));
                 log.debugf("Partition: %s", partition);
-                log.debugf("Added: %s", addedRemoved.get("added"));
-                log.debugf("Removed: %s", addedRemoved.get("removed"));
+                log.debugf("Added: %s", added);
+                log.debugf("Removed: %s", removed);
             }
             triggerListeners.stream().forEach(triggerListener -> {
-                triggerListener.onPartitionChange(partition, addedRemoved.get("removed"), addedRemoved.get("added"));
+                triggerListener.onPartitionChange(partition, removed, added);
             });
         }
     }
@@ -573,177 +1095,87 @@ public class PartitionManagerImpl implements PartitionManager {
              */
             if (cacheEvent.getKey().equals(PARTITION_CHANGE)) {
                 invokePartitionChangeListener();
+            } else if (null != keyNode(DATA_IDS, cacheEvent.getKey())) {
+                updateDataIdOwners();
             }
         }
-    }
-
-    @Listener
-    public class NewTriggerListener {
-
-        @CacheEntryCreated
-        public void onNewNotifyTrigger(CacheEntryCreatedEvent cacheEvent) {
-            if (cacheEvent.isPre()) {
-                if (log.isDebugEnabled()) {
-                    log.debug("Discarding pre onNewNotifyTrigger(@CacheEntryCreated) event");
-                }
-                return;
-            }
-            NotifyTrigger notifyTrigger = (NotifyTrigger)triggersCache.get(cacheEvent.getKey());
-            if (log.isDebugEnabled()) {
-                log.debugf("onNewNotifyTrigger(@CacheEntryCreated) received on %s", currentNode);
-                log.debugf("CacheEvent: %s", cacheEvent);
-                log.debugf("NotifyTrigger: %s", notifyTrigger);
-            }
-            processNotifyTrigger(notifyTrigger);
-        }
 
         @CacheEntryModified
-        public void onModifiedNotifyTrigger(CacheEntryModifiedEvent cacheEvent) {
+        public void onDataIdsModified(CacheEntryModifiedEvent cacheEvent) {
             if (cacheEvent.isPre()) {
-                if (log.isDebugEnabled()) {
-                    log.debug("Discarding pre onModifiedNotifyTrigger(@CacheEntryModified) event");
-                }
                 return;
             }
-            NotifyTrigger notifyTrigger = (NotifyTrigger)triggersCache.get(cacheEvent.getKey());
-            if (log.isDebugEnabled()) {
-                log.debugf("onModifiedNotifyTrigger(@CacheEntryModified) received on %s", currentNode);
-                log.debugf("CacheEvent: %s", cacheEvent);
-                log.debugf("NotifyTrigger: %s", notifyTrigger);
-            }
-            processNotifyTrigger(notifyTrigger);
-        }
-
-        /*
-            When a trigger is added, updated or removed it should be notified on the PartitionManager.
-            PartitionManager adds an entry on "triggers" cache to fire an event that will place the trigger
-            on the partition and invoke PartitionTriggerListener previously registered to process the event.
-         */
-        @SuppressWarnings("unchecked")
-        private void processNotifyTrigger(NotifyTrigger notifyTrigger) {
             /*
-                A trigger should be processed on the target node
+                The flag of a previous change may not have expired yet
              */
-            if (null != notifyTrigger.toNode && null != currentNode && notifyTrigger.toNode.equals(currentNode)) {
-                /*
-                    Update partition
-                 */
-                Map<PartitionEntry, Integer> current = (Map) partitionCache.get(CURRENT);
-                PartitionEntry newEntry = new PartitionEntry(notifyTrigger.getTenantId(),
-                        notifyTrigger.getTriggerId());
-                boolean exist = current.containsKey(newEntry);
-                if (exist) {
-                    Integer partitionNode = current.get(newEntry);
-                    switch (notifyTrigger.getOperation()) {
-                        case ADD:
-                        case UPDATE:
-                            /*
-                                Partition is updated if information is outdated
-                             */
-                            if (!partitionNode.equals(currentNode)) {
-                                modifyPartition(newEntry, current, notifyTrigger.getOperation());
-                            }
-                            break;
-                        case REMOVE:
-                            modifyPartition(newEntry, current, notifyTrigger.getOperation());
-                            break;
-                    }
-                } else {
-                    if (!notifyTrigger.getOperation().equals(Operation.REMOVE)) {
-                        modifyPartition(newEntry, current, notifyTrigger.getOperation());
-                    }
-                }
-                /*
-                    Finally invoke listener
-                 */
-                if (!triggerListeners.isEmpty()) {
-                    triggerListeners.stream().forEach(triggerListener -> {
-                        triggerListener.onTriggerChange(notifyTrigger.getOperation(), notifyTrigger.getTenantId(),
-                                notifyTrigger.getTriggerId());
-                    });
-                }
+            if (cacheEvent.getKey().equals(PARTITION_CHANGE)) {
+                invokePartitionChangeListener();
+            } else if (null != keyNode(DATA_IDS, cacheEvent.getKey())) {
+                updateDataIdOwners();
             }
         }
 
-        @SuppressWarnings("unchecked")
-        private void modifyPartition(PartitionEntry entry, Map<PartitionEntry, Integer> current, Operation operation) {
-            Map<PartitionEntry, Integer> newPartition= new HashMap<>(current);
-            if (operation.equals(Operation.REMOVE)) {
-                newPartition.remove(entry);
-            } else {
-                newPartition.put(entry, currentNode);
-            }
-            partitionCache.startBatch();
-            partitionCache.put(PREVIOUS, current);
-            partitionCache.put(CURRENT, newPartition);
-            partitionCache.endBatch(true);
-            if (log.isDebugEnabled()) {
-                log.debug("modifyPartition()");
-                log.debugf("Previous: %s", current);
-                log.debugf("Current: %s", newPartition);
+        @CacheEntryRemoved
+        public void onDataIdsRemoved(CacheEntryRemovedEvent cacheEvent) {
+            if (!cacheEvent.isPre() && null != keyNode(DATA_IDS, cacheEvent.getKey())) {
+                updateDataIdOwners();
             }
         }
-
     }
 
-    @Listener
-    public class NewDataListener {
-
-        @CacheEntryCreated
-        public void onNewNotifyData(CacheEntryCreatedEvent cacheEvent) {
-            if (cacheEvent.isPre()) {
-                log.debug("Discarding pre onNewNotifyData(@CacheEntryCreated) event");
-                return;
-            }
-            NotifyData notifyData = (NotifyData)dataCache.get(cacheEvent.getKey());
-            if (log.isDebugEnabled()) {
-                log.debug("onNewNotifyData(@CacheEntryCreated) received.");
-                log.debugf("NotifyData: %s", notifyData);
-            }
-            processNotifyData(notifyData);
-        }
-
-        @CacheEntryModified
-        public void onModifiedNotifyData(CacheEntryModifiedEvent cacheEvent) {
-            if (cacheEvent.isPre()) {
-                log.debug("Discarding pre onModifiedNotifyData(@CacheEntryModified) event");
-                return;
-            }
-            NotifyData notifyData = (NotifyData)dataCache.get(cacheEvent.getKey());
-            if (log.isDebugEnabled()) {
-                log.debug("onModifiedNotifyData(@CacheEntryModified) received.");
-                log.debugf("NotifyData: %s", notifyData);
-            }
-            processNotifyData(notifyData);
+    /*
+        When a trigger is added, updated or removed it should be notified on the PartitionManager.
+        PartitionManager sends it to all the nodes to update their bucket index, and the owner of the bucket of the
+        trigger will invoke PartitionTriggerListener previously registered to process the event.
+     */
+    private void processNotifyTrigger(NotifyTrigger notifyTrigger) {
+        PartitionEntry entry = new PartitionEntry(notifyTrigger.getTenantId(), notifyTrigger.getTriggerId());
+        if (notifyTrigger.getOperation().equals(Operation.REMOVE)) {
+            removeBucketEntry(entry);
+        } else {
+            addBucketEntry(entry);
         }
-
+        /*
+            A trigger should be processed on the target node
+         */
+        if (null != notifyTrigger.toNode && null != currentNode && notifyTrigger.toNode.equals(currentNode)) {
             /*
-                When a new data/event is added it should be notified on the PartitionManager.
-                PartitionManager adds an entry on "data" cache to fire an event that will propagate the
-                across the nodes invoking previously registered PartitionDataListener.
+                Finally invoke listener
              */
+            if (!triggerListeners.isEmpty()) {
+                triggerListeners.stream().forEach(triggerListener -> {
+                    triggerListener.onTriggerChange(notifyTrigger.getOperation(), notifyTrigger.getTenantId(),
+                            notifyTrigger.getTriggerId());
+                });
+            }
+        }
+    }
 
-        private void processNotifyData(NotifyData notifyData) {
-            /*
-                Finally invoke listener on non-sender nodes
-             */
-            if (!dataListeners.isEmpty() && notifyData.getFromNode() != currentNode) {
-                if (notifyData.getDataCollection() != null) {
-                    dataListeners.stream().forEach(dataListener -> {
-                        log.debugf("processNotifyData [%s]", notifyData);
-                        dataListener.onNewData(notifyData.getDataCollection());
-                    });
-                } else if (notifyData.getEventCollection() != null) {
-                    dataListeners.stream().forEach(dataListener -> {
-                        dataListener.onNewEvents(notifyData.getEventCollection());
-                    });
-                }
+    /*
+        When a new data/event is added it should be notified on the PartitionManager.
+        PartitionManager sends it to the nodes owning triggers for its dataIds, or to all the nodes if the dataIds of
+        the nodes are not known yet, invoking previously registered PartitionDataListener.
+     */
+    private void processNotifyData(NotifyData notifyData) {
+        /*
+            Finally invoke listener on non-sender nodes
+         */
+        if (!dataListeners.isEmpty() && !currentNode.equals(notifyData.getFromNode())) {
+            if (notifyData.getDataCollection() != null) {
+                dataListeners.stream().forEach(dataListener -> {
+                    log.debugf("processNotifyData [%s]", notifyData);
+                    dataListener.onNewData(notifyData.getDataCollection());
+                });
+            } else if (notifyData.getEventCollection() != null) {
+                dataListeners.stream().forEach(dataListener -> {
+                    dataListener.onNewEvents(notifyData.getEventCollection());
+                });
             }
         }
     }
 
     /**
-     * Auxiliary class to store in the cache an operation for a Trigger.
+     * Auxiliary class to send an operation for a Trigger.
      * Used internally in the context of the PartitionManager services.
      */
     public static class NotifyTrigger implements Serializable {
@@ -839,7 +1271,37 @@ public class PartitionManagerImpl implements PartitionManager {
     }
 
     /**
-     * Auxiliary class to store in the cache an operation for a Data/Event
+     * Auxiliary class to send the evaluation state of triggers to their new owner.
+     * Used internally in the context of the PartitionManager services.
+     */
+    public static class NotifyTriggerStates implements Serializable {
+        private Integer fromNode;
+        private Collection<TriggerState> states;
+
+        public NotifyTriggerStates(Integer fromNode, Collection<TriggerState> states) {
+            this.fromNode = fromNode;
+            this.states = states;
+        }
+
+        public Integer getFromNode() {
+            return fromNode;
+        }
+
+        public Collection<TriggerState> getStates() {
+            return states;
+        }
+
+        @Override
+        public String toString() {
+            return "NotifyTriggerStates" + '[' +
+                    "fromNode=" + fromNode +
+                    ", states=" + (null == states ? 0 : states.size()) +
+                    ']';
+        }
+    }
+
+    /**
+     * Auxiliary class to send a collection of Data/Event
      * Used internally in the context of the PartitionManager services.
      */
     public static class NotifyData implements Serializable {
@@ -0,0 +1,542 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.alerts.engine.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
+
+import org.hawkular.alerts.api.model.condition.CompareCondition;
+import org.hawkular.alerts.api.model.condition.Condition;
+import org.hawkular.alerts.api.model.condition.ConditionEval;
+import org.hawkular.alerts.api.model.dampening.Dampening;
+import org.hawkular.alerts.api.model.data.Data;
+import org.hawkular.alerts.api.model.event.Event;
+import org.hawkular.alerts.api.model.trigger.Trigger;
+import org.hawkular.alerts.engine.service.RulesEngine;
+import org.hawkular.alerts.engine.util.MissingState;
+import org.hawkular.alerts.engine.util.NelsonData;
+import org.hawkular.alerts.engine.util.TriggerState;
+import org.hawkular.commons.log.MsgLogger;
+import org.hawkular.commons.log.MsgLogging;
+import org.hawkular.commons.properties.HawkularProperties;
+
+/**
+ * An implementation of RulesEngine that partitions the triggers across several independent
+ * {@link DroolsRulesEngineImpl} sessions (shards), each one with its own pending Data/Event buffers and its own
+ * firing thread.
+ *
+ * Trigger related facts are placed on a shard by a hash of its tenantId/triggerId. Data and Events are routed only
+ * to the shards holding conditions for their dataId. Events generated on a shard are routed to the rest of the shards
+ * in a subsequent round of the same firing, so chained triggers are evaluated as in a single session.
+ *
+ * Collection globals (alerts, events, pendingTimeouts, autoResolvedTriggers, disabledTriggers) are kept per shard
+ * and merged into the collections provided via {@link #addGlobal(String, Object)} once all shards have fired, so the
+ * caller never sees them modified concurrently.
+ *
+ * As with DroolsRulesEngineImpl, this is invoked only by the AlertsEngine impl and is not invoked concurrently.
+ *
+ * @author Jay Shaughnessy
+ * @author Lucas Ponce
+ */
+public class ShardedRulesEngineImpl implements RulesEngine {
+    private final MsgLogger log = MsgLogging.getMsgLogger(ShardedRulesEngineImpl.class);
+
+    private final DroolsRulesEngineImpl[] shards;
+    private final ExecutorService[] firingThreads;
+    private final boolean[] pendingShards;
+
+    // Globals as provided by the caller and their per shard copies
+    private final Map<String, Object> globals;
+    private final List<Map<String, Object>> shardGlobals;
+
+    // tenantId:dataId -> number of conditions referencing the dataId on each shard
+    private final Map<String, int[]> dataIdShards;
+
+    public ShardedRulesEngineImpl() {
+        this(new Integer(HawkularProperties.getProperty(RULES_ENGINE_SHARDS, RULES_ENGINE_SHARDS_ENV,
+                RULES_ENGINE_SHARDS_DEFAULT)));
+    }
+
+    public ShardedRulesEngineImpl(int numShards) {
+        if (numShards < 1) {
+            throw new IllegalArgumentException("Number of shards must be greater than 0");
+        }
+        log.debugf("Creating instance with [%s] shards.", numShards);
+        shards = new DroolsRulesEngineImpl[numShards];
+        firingThreads = new ExecutorService[numShards];
+        pendingShards = new boolean[numShards];
+        shardGlobals = new ArrayList<>(numShards);
+        for (int i = 0; i < numShards; i++) {
+            final int shard = i;
+            shards[i] = new DroolsRulesEngineImpl();
+            firingThreads[i] = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "ShardedRulesEngineImpl-Shard-" + shard);
+                t.setDaemon(true);
+                return t;
+            });
+            shardGlobals.add(new HashMap<>());
+        }
+        globals = new HashMap<>();
+        dataIdShards = new ConcurrentHashMap<>();
+    }
+
+    public int getNumShards() {
+        return shards.length;
+    }
+
+    @Override
+    public void addGlobal(String name, Object global) {
+        log.debugf("Add Global %s = %s ", name, global);
+        globals.put(name, global);
+        for (int i = 0; i < shards.length; i++) {
+            Object shardGlobal = global;
+            if (global instanceof List) {
+                shardGlobal = new ArrayList<>();
+            } else if (global instanceof Set) {
+                shardGlobal = new HashSet<>();
+            } else if (global instanceof Map) {
+                shardGlobal = new HashMap<>();
+            }
+            shardGlobals.get(i).put(name, shardGlobal);
+            shards[i].addGlobal(name, shardGlobal);
+        }
+    }
+
+    @Override
+    public void removeGlobal(String name) {
+        log.debugf("Remove Global %s", name);
+        globals.remove(name);
+        for (int i = 0; i < shards.length; i++) {
+            shardGlobals.get(i).remove(name);
+            shards[i].removeGlobal(name);
+        }
+    }
+
+    @Override
+    public void addFact(Object fact) {
+        if (fact instanceof Data || fact instanceof Event) {
+            throw new IllegalArgumentException(fact.toString());
+        }
+        int shard = shardOf(fact);
+        shards[shard].addFact(fact);
+        if (fact instanceof Condition) {
+            indexCondition((Condition) fact, shard, 1);
+        }
+    }
+
+    @Override
+    public void addFacts(Collection facts) {
+        Map<Integer, List<Object>> factsByShard = new HashMap<>();
+        for (Object fact : facts) {
+            if (fact instanceof Data || fact instanceof Event) {
+                throw new IllegalArgumentException(fact.toString());
+            }
+            factsByShard.computeIfAbsent(shardOf(fact), s -> new ArrayList<>()).add(fact);
+        }
+        for (Entry<Integer, List<Object>> entry : factsByShard.entrySet()) {
+            int shard = entry.getKey();
+            shards[shard].addFacts(entry.getValue());
+            for (Object fact : entry.getValue()) {
+                if (fact instanceof Condition) {
+                    indexCondition((Condition) fact, shard, 1);
+                }
+            }
+        }
+    }
+
+    @Override
+    public Object getFact(Object fact) {
+        return shards[shardOf(fact)].getFact(fact);
+    }
+
+    @Override
+    public void removeFact(Object fact) {
+        int shard = shardOf(fact);
+        if (fact instanceof Condition && null != shards[shard].getFact(fact)) {
+            indexCondition((Condition) fact, shard, -1);
+        }
+        shards[shard].removeFact(fact);
+    }
+
+    @Override
+    public void updateFact(Object fact) {
+        shards[shardOf(fact)].updateFact(fact);
+    }
+
+    @Override
+    public void removeFacts(Collection facts) {
+        for (Object fact : facts) {
+            removeFact(fact);
+        }
+    }
+
+    @Override
+    public void removeFacts(Predicate<Object> factFilter) {
+        for (int i = 0; i < shards.length; i++) {
+            final int shard = i;
+            shards[i].removeFacts(f -> {
+                if (!factFilter.test(f)) {
+                    return false;
+                }
+                if (f instanceof Condition) {
+                    indexCondition((Condition) f, shard, -1);
+                }
+                return true;
+            });
+        }
+    }
+
+    @Override
+    public Collection<Object> removeTriggerFacts(String tenantId, String triggerId) {
+        int shard = shardOf(tenantId, triggerId);
+        Collection<Object> removed = shards[shard].removeTriggerFacts(tenantId, triggerId);
+        for (Object fact : removed) {
+            if (fact instanceof Condition) {
+                indexCondition((Condition) fact, shard, -1);
+            }
+        }
+        return removed;
+    }
+
+    @Override
+    public TriggerState getTriggerState(String tenantId, String triggerId) {
+        return shards[shardOf(tenantId, triggerId)].getTriggerState(tenantId, triggerId);
+    }
+
+    @Override
+    public void restoreTriggerState(TriggerState state) {
+        shards[shardOf(state.getTenantId(), state.getTriggerId())].restoreTriggerState(state);
+    }
+
+    @Override
+    public Map<String, Set<String>> getAndClearChangedTriggers() {
+        Map<String, Set<String>> changed = new HashMap<>();
+        for (DroolsRulesEngineImpl shard : shards) {
+            shard.getAndClearChangedTriggers().forEach((tenantId, triggerIds) -> {
+                changed.computeIfAbsent(tenantId, t -> new HashSet<>()).addAll(triggerIds);
+            });
+        }
+        return changed;
+    }
+
+    @Override
+    public void addData(TreeSet<Data> data) {
+        List<TreeSet<Data>> dataByShard = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            dataByShard.add(null);
+        }
+        // TreeSet iteration keeps the (id ASC, timestamp ASC) order on every shard
+        for (Data d : data) {
+            int[] refs = dataIdShards.get(dataIdKey(d.getTenantId(), d.getId()));
+            if (null == refs) {
+                log.tracef("No shard evaluates %s", d);
+                continue;
+            }
+            for (int i = 0; i < refs.length; i++) {
+                if (refs[i] > 0) {
+                    if (null == dataByShard.get(i)) {
+                        dataByShard.set(i, new TreeSet<>());
+                    }
+                    dataByShard.get(i).add(d);
+                }
+            }
+        }
+        for (int i = 0; i < shards.length; i++) {
+            if (null != dataByShard.get(i)) {
+                shards[i].addData(dataByShard.get(i));
+                pendingShards[i] = true;
+            }
+        }
+    }
+
+    @Override
+    public void addEvents(TreeSet<Event> events) {
+        addEvents(events, -1);
+    }
+
+    private void addEvents(Collection<Event> events, int originShard) {
+        List<TreeSet<Event>> eventsByShard = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            eventsByShard.add(null);
+        }
+        for (Event e : events) {
+            int[] refs = dataIdShards.get(dataIdKey(e.getTenantId(), e.getDataId()));
+            if (null == refs) {
+                log.tracef("No shard evaluates %s", e);
+                continue;
+            }
+            for (int i = 0; i < refs.length; i++) {
+                // Events generated on a shard have already been inserted on its own session
+                if (refs[i] > 0 && i != originShard) {
+                    if (null == eventsByShard.get(i)) {
+                        eventsByShard.set(i, new TreeSet<>());
+                    }
+                    eventsByShard.get(i).add(e);
+                }
+            }
+        }
+        for (int i = 0; i < shards.length; i++) {
+            if (null != eventsByShard.get(i)) {
+                shards[i].addEvents(eventsByShard.get(i));
+                pendingShards[i] = true;
+            }
+        }
+    }
+
+    @Override
+    public void fire() {
+        long startFiring = System.currentTimeMillis();
+        int round = 0;
+        boolean pending = true;
+        while (pending) {
+            log.debugf("Firing shards... round [%s]", round);
+            List<List<Event>> generatedEvents = fireShards();
+            pending = false;
+            for (int i = 0; i < shards.length; i++) {
+                if (!generatedEvents.get(i).isEmpty()) {
+                    addEvents(generatedEvents.get(i), i);
+                }
+            }
+            for (int i = 0; i < shards.length; i++) {
+                pending |= pendingShards[i];
+            }
+            round++;
+        }
+        log.debugf("Firing [%s] shards took [%s] ms in [%s] rounds", shards.length,
+                System.currentTimeMillis() - startFiring, round);
+    }
+
+    @Override
+    public void fireNoData() {
+        fire();
+    }
+
+    /*
+        Fire all shards in parallel, shards without pending data or events only process the facts manually
+        manipulated since the last firing. Returns the events (and alerts) generated on each shard.
+     */
+    private List<List<Event>> fireShards() {
+        syncGlobals();
+
+        List<Future<?>> firings = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            final DroolsRulesEngineImpl shard = shards[i];
+            final boolean withData = pendingShards[i];
+            pendingShards[i] = false;
+            firings.add(firingThreads[i].submit(() -> {
+                if (withData) {
+                    shard.fire();
+                } else {
+                    shard.fireNoData();
+                }
+            }));
+        }
+
+        RuntimeException error = null;
+        for (int i = 0; i < firings.size(); i++) {
+            try {
+                firings.get(i).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                error = new IllegalStateException("Interrupted firing shard [" + i + "]", e);
+            } catch (ExecutionException e) {
+                log.errorf("Error firing shard [%s]: %s", i, e.getCause());
+                error = new IllegalStateException("Error firing shard [" + i + "]", e.getCause());
+            }
+        }
+
+        // Merge results even on error, as the AlertsEngine cleans them up after a failed firing
+        List<List<Event>> generatedEvents = mergeGlobals();
+        if (null != error) {
+            throw error;
+        }
+        return generatedEvents;
+    }
+
+    /*
+        Sets and Maps are shared state between the caller and the rules (i.e. pendingTimeouts). The caller only
+        removes entries between firings, so before firing the shards drop what the caller has removed.
+     */
+    @SuppressWarnings("unchecked")
+    private void syncGlobals() {
+        for (Entry<String, Object> global : globals.entrySet()) {
+            Object value = global.getValue();
+            for (int i = 0; i < shards.length; i++) {
+                Object shardValue = shardGlobals.get(i).get(global.getKey());
+                if (value instanceof Set) {
+                    ((Set) shardValue).retainAll((Set) value);
+                } else if (value instanceof Map) {
+                    ((Map) shardValue).keySet().retainAll(((Map) value).keySet());
+                }
+            }
+        }
+    }
+
+    /*
+        Lists are drained into the caller's list. Sets and Maps are rebuilt as the union of all the shards. Sets are
+        updated in place, rather than cleared and refilled, as the caller's Set may keep per-entry state (i.e. the
+        due times of pendingTimeouts).
+     */
+    @SuppressWarnings("unchecked")
+    private List<List<Event>> mergeGlobals() {
+        List<List<Event>> generatedEvents = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            generatedEvents.add(new ArrayList<>());
+        }
+        for (Entry<String, Object> global : globals.entrySet()) {
+            Object value = global.getValue();
+            if (value instanceof Set) {
+                Set union = new HashSet();
+                for (int i = 0; i < shards.length; i++) {
+                    union.addAll((Set) shardGlobals.get(i).get(global.getKey()));
+                }
+                ((Set) value).retainAll(union);
+                ((Set) value).addAll(union);
+                continue;
+            } else if (value instanceof Map) {
+                ((Map) value).clear();
+            }
+            for (int i = 0; i < shards.length; i++) {
+                Object shardValue = shardGlobals.get(i).get(global.getKey());
+                if (value instanceof List) {
+                    for (Object o : (List) shardValue) {
+                        if (o instanceof Event) {
+                            generatedEvents.get(i).add((Event) o);
+                        }
+                    }
+                    ((List) value).addAll((List) shardValue);
+                    ((List) shardValue).clear();
+                } else if (value instanceof Map) {
+                    ((Map) value).putAll((Map) shardValue);
+                }
+            }
+        }
+        return generatedEvents;
+    }
+
+    @Override
+    public Map<String, Map<String, Long>> getFactsSnapshot() {
+        Map<String, Map<String, Long>> snapshot = new HashMap<>();
+        for (DroolsRulesEngineImpl shard : shards) {
+            for (Entry<String, Map<String, Long>> tenant : shard.getFactsSnapshot().entrySet()) {
+                Map<String, Long> counts = snapshot.computeIfAbsent(tenant.getKey(), t -> new HashMap<>());
+                tenant.getValue().forEach((type, count) -> counts.merge(type, count, Long::sum));
+            }
+        }
+        return snapshot;
+    }
+
+    @Override
+    public void clear() {
+        for (DroolsRulesEngineImpl shard : shards) {
+            shard.clear();
+        }
+        dataIdShards.clear();
+    }
+
+    @Override
+    public void reset() {
+        log.debug("Reset sessions");
+        for (int i = 0; i < shards.length; i++) {
+            shards[i].reset();
+            shardGlobals.get(i).clear();
+            pendingShards[i] = false;
+        }
+        globals.clear();
+        dataIdShards.clear();
+    }
+
+    @Override
+    public void shutdown() {
+        for (ExecutorService firingThread : firingThreads) {
+            firingThread.shutdown();
+        }
+    }
+
+    /*
+        Facts not related to a specific trigger are not expected, they are placed on the first shard.
+     */
+    private int shardOf(Object fact) {
+        String tenantId;
+        String triggerId;
+        if (fact instanceof Trigger) {
+            tenantId = ((Trigger) fact).getTenantId();
+            triggerId = ((Trigger) fact).getId();
+        } else if (fact instanceof Condition) {
+            tenantId = ((Condition) fact).getTenantId();
+            triggerId = ((Condition) fact).getTriggerId();
+        } else if (fact instanceof Dampening) {
+            tenantId = ((Dampening) fact).getTenantId();
+            triggerId = ((Dampening) fact).getTriggerId();
+        } else if (fact instanceof MissingState) {
+            tenantId = ((MissingState) fact).getTenantId();
+            triggerId = ((MissingState) fact).getTriggerId();
+        } else if (fact instanceof ConditionEval) {
+            tenantId = ((ConditionEval) fact).getTenantId();
+            triggerId = ((ConditionEval) fact).getTriggerId();
+        } else if (fact instanceof NelsonData) {
+            tenantId = ((NelsonData) fact).getCondition().getTenantId();
+            triggerId = ((NelsonData) fact).getCondition().getTriggerId();
+        } else {
+            log.debugf("Fact %s not related to a trigger, using shard 0", fact);
+            return 0;
+        }
+        return shardOf(tenantId, triggerId);
+    }
+
+    int shardOf(String tenantId, String triggerId) {
+        int hash = 31 * (null == tenantId ? 0 : tenantId.hashCode()) + (null == triggerId ? 0 : triggerId.hashCode());
+        return (hash & Integer.MAX_VALUE) % shards.length;
+    }
+
+    private void indexCondition(Condition c, int shard, int delta) {
+        indexDataId(c.getTenantId(), c.getDataId(), shard, delta);
+        if (c instanceof CompareCondition) {
+            indexDataId(c.getTenantId(), ((CompareCondition) c).getData2Id(), shard, delta);
+        }
+    }
+
+    private void indexDataId(String tenantId, String dataId, int shard, int delta) {
+        dataIdShards.compute(dataIdKey(tenantId, dataId), (key, refs) -> {
+            int[] updated = null == refs ? new int[shards.length] : refs.clone();
+            updated[shard] = Math.max(0, updated[shard] + delta);
+            for (int ref : updated) {
+                if (ref > 0) {
+                    return updated;
+                }
+            }
+            return null;
+        });
+    }
+
+    private static String dataIdKey(String tenantId, String dataId) {
+        return tenantId + ":" + dataId;
+    }
+}
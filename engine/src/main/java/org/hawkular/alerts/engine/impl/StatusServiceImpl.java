@@ -16,9 +16,12 @@
  */
 package org.hawkular.alerts.engine.impl;
 
+import java.util.Collections;
 import java.util.Map;
 
 import org.hawkular.alerts.api.services.StatusService;
+import org.hawkular.alerts.engine.service.AlertsEngine;
+import org.hawkular.alerts.engine.service.IncomingDataManager;
 import org.hawkular.alerts.engine.service.PartitionManager;
 
 /**
@@ -31,10 +34,22 @@ public class StatusServiceImpl implements StatusService {
 
     PartitionManager partitionManager;
 
+    IncomingDataManager incomingDataManager;
+
+    AlertsEngine alertsEngine;
+
     public void setPartitionManager(PartitionManager partitionManager) {
         this.partitionManager = partitionManager;
     }
 
+    public void setIncomingDataManager(IncomingDataManager incomingDataManager) {
+        this.incomingDataManager = incomingDataManager;
+    }
+
+    public void setAlertsEngine(AlertsEngine alertsEngine) {
+        this.alertsEngine = alertsEngine;
+    }
+
     @Override
     public boolean isStarted() {
         // TODO [lponce] this test is quite simple and with a different backend perhaps it doesnt give enough info
@@ -52,4 +67,19 @@ public class StatusServiceImpl implements StatusService {
     public Map<String, String> getDistributedStatus() {
         return partitionManager.getStatus();
     }
+
+    @Override
+    public Map<String, String> getIncomingStatus() {
+        return incomingDataManager == null ? Collections.emptyMap() : incomingDataManager.getStatus();
+    }
+
+    @Override
+    public Map<String, String> getReloadStatus() {
+        return alertsEngine == null ? Collections.emptyMap() : alertsEngine.getReloadStatus();
+    }
+
+    @Override
+    public Map<String, Map<String, Long>> getFactsSnapshot() throws Exception {
+        return alertsEngine == null ? Collections.emptyMap() : alertsEngine.getFactsSnapshot();
+    }
 }
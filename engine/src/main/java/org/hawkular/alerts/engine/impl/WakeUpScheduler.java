@@ -0,0 +1,114 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.alerts.engine.impl;
+
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.hawkular.alerts.log.AlertingLogger;
+import org.hawkular.commons.log.MsgLogging;
+
+/**
+ * Schedules the one-shot invocations of the rules in event-driven mode, see {@link AlertsEngineImpl}.
+ *
+ * An invocation waits for the batch window to accumulate more data/events, unless the pending size has reached the
+ * batch size. Only one wake up is pending at a time. A pending wake up waiting for the batch window is cancelled and
+ * replaced by an immediate one when the batch size is reached. All the invocations run on the single timer thread,
+ * so they are never concurrent.
+ *
+ * @author Jay Shaughnessy
+ * @author Lucas Ponce
+ */
+class WakeUpScheduler {
+    private final AlertingLogger log = MsgLogging.getMsgLogger(AlertingLogger.class, WakeUpScheduler.class);
+
+    private final Timer timer;
+    private final Runnable invoker;
+    private final int batchWindow;
+    private final int batchSize;
+
+    private final AtomicReference<WakeUp> pending = new AtomicReference<>();
+
+    WakeUpScheduler(Timer timer, Runnable invoker, int batchWindow, int batchSize) {
+        this.timer = timer;
+        this.invoker = invoker;
+        this.batchWindow = batchWindow;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @param pendingSize the number of data/events waiting for the rules
+     */
+    void wakeUp(int pendingSize) {
+        if (pendingSize <= 0) {
+            return;
+        }
+        schedule(pendingSize >= batchSize ? 0 : batchWindow);
+    }
+
+    /**
+     * Schedule an invocation after <code>delay</code> ms, unless one is already pending that will run no later.
+     * @param delay the delay in ms, 0 for an immediate invocation
+     */
+    void schedule(long delay) {
+        while (true) {
+            WakeUp current = pending.get();
+            if (null != current && (delay > 0 || current.immediate)) {
+                return;
+            }
+            WakeUp next = new WakeUp(delay == 0);
+            if (!pending.compareAndSet(current, next)) {
+                continue;
+            }
+            if (null != current) {
+                // No effect if it has just started, the extra invocation finds little or nothing pending
+                current.cancel();
+            }
+            try {
+                timer.schedule(next, delay);
+            } catch (IllegalStateException e) {
+                // Timer has been cancelled on shutdown
+                pending.compareAndSet(next, null);
+                log.debugf("Wake up not scheduled: %s", e.getMessage());
+            }
+            return;
+        }
+    }
+
+    /**
+     * @return true if a wake up is pending
+     */
+    boolean isPending() {
+        return null != pending.get();
+    }
+
+    private class WakeUp extends TimerTask {
+        private final boolean immediate;
+
+        WakeUp(boolean immediate) {
+            this.immediate = immediate;
+        }
+
+        @Override
+        public void run() {
+            // Allow data/events arriving from now on to schedule a new wake up
+            pending.compareAndSet(this, null);
+            invoker.run();
+        }
+    }
+}
@@ -25,6 +25,8 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import org.hawkular.alerts.api.model.action.Action;
@@ -48,8 +50,10 @@ import org.hawkular.alerts.engine.impl.ispn.model.IspnAction;
 import org.hawkular.alerts.engine.util.ActionsValidator;
 import org.hawkular.alerts.log.AlertingLogger;
 import org.hawkular.commons.log.MsgLogging;
+import org.hawkular.commons.properties.HawkularProperties;
 import org.infinispan.Cache;
 import org.infinispan.query.Search;
+import org.infinispan.query.dsl.Query;
 import org.infinispan.query.dsl.QueryFactory;
 
 /**
@@ -74,6 +78,8 @@ public class IspnActionsServiceImpl implements ActionsService {
 
     QueryFactory queryFactory;
 
+    int batchSize;
+
     public void init() {
         backend = IspnCacheManager.getCacheManager().getCache("backend");
         if (backend == null) {
@@ -81,6 +87,8 @@ public class IspnActionsServiceImpl implements ActionsService {
             throw new RuntimeException("backend cache not found");
         }
         queryFactory = Search.getQueryFactory(backend);
+        batchSize = new Integer(HawkularProperties.getProperty(IspnAlertsServiceImpl.BACKEND_BATCH_SIZE,
+                IspnAlertsServiceImpl.BACKEND_BATCH_SIZE_ENV, IspnAlertsServiceImpl.BACKEND_BATCH_SIZE_DEFAULT));
     }
 
     public void setAlertsContext(AlertsContext alertsContext) {
@@ -150,23 +158,75 @@ public class IspnActionsServiceImpl implements ActionsService {
         if (isEmpty(tenantId)) {
             throw new IllegalArgumentException("TenantId must be not null");
         }
+        if (null != pager && pager.isCursor()) {
+            throw new IllegalArgumentException("Cursor paging is not supported for actions");
+        }
+        List<IspnAction> ispnActions = actionsQuery(tenantId, criteria).build(queryFactory).list();
+        return prepareActionsPage(ispnActions.stream().map(toAction(criteria)).collect(Collectors.toList()), pager);
+    }
+
+    /*
+        Fetch the results in batches of batchSize ordered by the key of the action in the tenant (actionPlugin,
+        actionId, eventId and ctime). Each batch starts after the last key of the previous one, so the index does not
+        collect the skipped results of an offset, and actions with the same ctime are neither skipped nor repeated.
+     */
+    @Override
+    public int streamActions(String tenantId, ActionsCriteria criteria, Consumer<Action> consumer)
+            throws Exception {
+        if (isEmpty(tenantId)) {
+            throw new IllegalArgumentException("TenantId must be not null");
+        }
+        if (null == consumer) {
+            throw new IllegalArgumentException("Consumer must be not null");
+        }
+        IspnQuery query = actionsQuery(tenantId, criteria);
+        Function<IspnAction, Action> toAction = toAction(criteria);
+        int streamed = 0;
+        IspnAction last = null;
+        while (true) {
+            IspnQuery batchQuery = new IspnQuery(query);
+            if (null != last) {
+                batchQuery.append("and (actionPlugin > ").param(last.getActionPlugin())
+                        .append("or (actionPlugin = ").param(last.getActionPlugin())
+                        .append("and (actionId > ").param(last.getActionId())
+                        .append("or (actionId = ").param(last.getActionId())
+                        .append("and (eventId > ").param(last.getEventId())
+                        .append("or (eventId = ").param(last.getEventId())
+                        .append("and ctime > ").param(last.getCtime()).append("))))))) ");
+            }
+            Query batch = batchQuery.append("order by actionPlugin asc, actionId asc, eventId asc, ctime asc")
+                    .build(queryFactory);
+            batch.maxResults(batchSize);
+            List<IspnAction> ispnActions = batch.list();
+            for (IspnAction ispnAction : ispnActions) {
+                consumer.accept(toAction.apply(ispnAction));
+            }
+            streamed += ispnActions.size();
+            if (ispnActions.size() < batchSize) {
+                return streamed;
+            }
+            last = ispnActions.get(ispnActions.size() - 1);
+        }
+    }
+
+    private IspnQuery actionsQuery(String tenantId, ActionsCriteria criteria) {
         boolean filter = (null != criteria && criteria.hasCriteria());
         if (filter) {
             log.debugf("getActions criteria: %s", criteria);
         }
 
-        StringBuilder query = new StringBuilder("from org.hawkular.alerts.engine.impl.ispn.model.IspnAction where");
-        query.append(String.format(" tenantId = '%s'", tenantId));
+        IspnQuery query = new IspnQuery(IspnAction.class);
+        query.append("tenantId = ").param(tenantId);
 
         if (filter) {
             if (criteria.hasCTimeCriteria()) {
                 if (criteria.hasRangeCriteria()) {
-                    query.append(String.format(" and ctime between %d and %d", criteria.getStartTime(),
-                            criteria.getEndTime()));
+                    query.append("and ctime between ").param(criteria.getStartTime())
+                            .append("and ").param(criteria.getEndTime());
                 } else if (criteria.hasStartCriteria()) {
-                    query.append(String.format(" and ctime >= %d", criteria.getStartTime()));
+                    query.append("and ctime >= ").param(criteria.getStartTime());
                 } else {
-                    query.append(String.format(" and ctime <= %d", criteria.getEndTime()));
+                    query.append("and ctime <= ").param(criteria.getEndTime());
                 }
             }
             if (criteria.hasActionIdCriteria()) {
@@ -178,7 +238,7 @@ public class IspnActionsServiceImpl implements ActionsService {
                     actionIds.add(criteria.getActionId());
                 }
 
-                query.append(inClause("actionId", actionIds));
+                query.append("and ").in("actionId", actionIds);
             }
             if (criteria.hasActionPluginCriteria()) {
                 Set<String> actionPlugins = new HashSet<>();
@@ -188,7 +248,7 @@ public class IspnActionsServiceImpl implements ActionsService {
                 if (null != criteria.getActionPlugin()) {
                     actionPlugins.add(criteria.getActionPlugin());
                 }
-                query.append(inClause("actionPlugin", actionPlugins));
+                query.append("and ").in("actionPlugin", actionPlugins);
             }
             if (criteria.hasEventIdCriteria()) {
                 Set<String> eventIds = new HashSet<>();
@@ -198,7 +258,7 @@ public class IspnActionsServiceImpl implements ActionsService {
                 if (null != criteria.getEventId()) {
                     eventIds.add(criteria.getEventId());
                 }
-                query.append(inClause("eventId", eventIds));
+                query.append("and ").in("eventId", eventIds);
             }
             if (criteria.hasResultCriteria()) {
                 Set<String> results = new HashSet<>();
@@ -208,32 +268,22 @@ public class IspnActionsServiceImpl implements ActionsService {
                 if (null != criteria.getResult()) {
                     results.add(criteria.getResult());
                 }
-                query.append(inClause("result", results));
+                query.append("and ").in("result", results);
             }
         }
 
-        List<IspnAction> ispnActions = queryFactory.create(query.toString()).list();
-        return prepareActionsPage(ispnActions.stream().map(ispnAction -> {
+        return query;
+    }
+
+    private Function<IspnAction, Action> toAction(ActionsCriteria criteria) {
+        return ispnAction -> {
             if (criteria != null && criteria.isThin()) {
                 Action action = new Action(ispnAction.getAction());
                 action.setEvent(null);
                 return action;
             }
             return ispnAction.getAction();
-        }).collect(Collectors.toList()), pager);
-    }
-
-    // An exploded "in" clause because the actual one seems not to work
-    private String inClause(String field, Set<String> values) {
-        String separator = "";
-        StringBuffer sb = new StringBuffer(" and (");
-        for (String v : values) {
-            sb.append(separator);
-            sb.append(String.format("%s = '%s'", field, v));
-            separator = " or ";
-        }
-        sb.append(")");
-        return sb.toString();
+        };
     }
 
     @Override
@@ -19,6 +19,7 @@ package org.hawkular.alerts.engine.impl.ispn;
 import static org.hawkular.alerts.api.util.Util.isEmpty;
 import static org.hawkular.alerts.engine.impl.ispn.IspnPk.pk;
 import static org.hawkular.alerts.engine.impl.ispn.IspnPk.pkFromEventId;
+import static org.hawkular.alerts.engine.impl.ispn.IspnPk.pkFromTriggerSnapshot;
 import static org.hawkular.alerts.engine.tags.ExpressionTagQueryParser.ExpressionTagResolver.EQ;
 import static org.hawkular.alerts.engine.tags.ExpressionTagQueryParser.ExpressionTagResolver.NEQ;
 import static org.hawkular.alerts.engine.util.Utils.extractAlertIds;
@@ -28,22 +29,34 @@ import static org.hawkular.alerts.engine.util.Utils.extractSeverity;
 import static org.hawkular.alerts.engine.util.Utils.extractStatus;
 import static org.hawkular.alerts.engine.util.Utils.extractTriggerIds;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.EnumSet;
-import java.util.Iterator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import org.hawkular.alerts.api.model.Severity;
 import org.hawkular.alerts.api.model.condition.ConditionEval;
+import org.hawkular.alerts.api.model.dampening.Dampening;
 import org.hawkular.alerts.api.model.data.Data;
 import org.hawkular.alerts.api.model.event.Alert;
 import org.hawkular.alerts.api.model.event.Alert.Status;
 import org.hawkular.alerts.api.model.event.Event;
 import org.hawkular.alerts.api.model.event.EventType;
+import org.hawkular.alerts.api.model.event.EventsCount;
 import org.hawkular.alerts.api.model.paging.AlertComparator;
 import org.hawkular.alerts.api.model.paging.EventComparator;
 import org.hawkular.alerts.api.model.paging.Order;
@@ -60,15 +73,22 @@ import org.hawkular.alerts.api.services.PropertiesService;
 import org.hawkular.alerts.cache.IspnCacheManager;
 import org.hawkular.alerts.engine.impl.IncomingDataManagerImpl;
 import org.hawkular.alerts.engine.impl.ispn.model.IspnEvent;
+import org.hawkular.alerts.engine.impl.ispn.model.IspnTriggerSnapshot;
 import org.hawkular.alerts.engine.impl.ispn.model.TagsBridge;
 import org.hawkular.alerts.engine.service.AlertsEngine;
 import org.hawkular.alerts.engine.service.IncomingDataManager;
+import org.hawkular.alerts.engine.util.PageCursor;
 import org.hawkular.alerts.log.AlertingLogger;
 import org.hawkular.commons.log.MsgLogging;
+import org.hawkular.commons.properties.HawkularProperties;
 import org.infinispan.Cache;
+import org.infinispan.context.Flag;
 import org.infinispan.query.Search;
+import org.infinispan.query.dsl.Query;
 import org.infinispan.query.dsl.QueryFactory;
 
+import com.google.common.util.concurrent.Striped;
+
 /**
  * @author Jay Shaughnessy
  * @author Lucas Ponce
@@ -76,6 +96,59 @@ import org.infinispan.query.dsl.QueryFactory;
 public class IspnAlertsServiceImpl implements AlertsService {
     private static final AlertingLogger log = MsgLogging.getMsgLogger(AlertingLogger.class, IspnAlertsServiceImpl.class);
 
+    /*
+        Number of events or alerts committed in a single batch by bulk writes, and fetched in a single batch by
+        streaming reads. The backend rewrite on startup also commits its entries in batches of this size.
+     */
+    public static final String BACKEND_BATCH_SIZE = "hawkular-alerts.backend-batch-size";
+    public static final String BACKEND_BATCH_SIZE_ENV = "HAWKULAR_BACKEND_BATCH_SIZE";
+    public static final String BACKEND_BATCH_SIZE_DEFAULT = "1000";
+
+    /*
+        Days of events and alerts kept in the backend, older daily buckets are dropped in the background.
+        0 keeps them forever.
+     */
+    private static final String BACKEND_RETENTION_DAYS = "hawkular-alerts.backend-retention-days";
+    private static final String BACKEND_RETENTION_DAYS_ENV = "HAWKULAR_BACKEND_RETENTION_DAYS";
+    private static final String BACKEND_RETENTION_DAYS_DEFAULT = "0";
+
+    /*
+        Period in milliseconds of the check for expired buckets.
+     */
+    private static final String BACKEND_RETENTION_PERIOD = "hawkular-alerts.backend-retention-period";
+    private static final String BACKEND_RETENTION_PERIOD_ENV = "HAWKULAR_BACKEND_RETENTION_PERIOD";
+    private static final String BACKEND_RETENTION_PERIOD_DEFAULT = "3600000";
+
+    /*
+        Comparator fields with the same order in the index, sorted by the query. The rest (i.e. severity or status,
+        compared by enum ordinal) are sorted in memory.
+     */
+    private static final Map<AlertComparator.Field, String> ALERT_SORT_FIELDS =
+            new EnumMap<>(AlertComparator.Field.class);
+    private static final Map<EventComparator.Field, String> EVENT_SORT_FIELDS =
+            new EnumMap<>(EventComparator.Field.class);
+
+    /*
+        Index fields of the count groups, the day of an event is its daily bucket.
+     */
+    private static final Map<EventsCount.Field, String> COUNT_FIELDS = new EnumMap<>(EventsCount.Field.class);
+
+    static {
+        ALERT_SORT_FIELDS.put(AlertComparator.Field.ALERT_ID, "id");
+        ALERT_SORT_FIELDS.put(AlertComparator.Field.CTIME, "ctime");
+        ALERT_SORT_FIELDS.put(AlertComparator.Field.STIME, "stime");
+        ALERT_SORT_FIELDS.put(AlertComparator.Field.TRIGGER_ID, "triggerId");
+        EVENT_SORT_FIELDS.put(EventComparator.Field.ID, "id");
+        EVENT_SORT_FIELDS.put(EventComparator.Field.CTIME, "ctime");
+        COUNT_FIELDS.put(EventsCount.Field.TENANT_ID, "tenantId");
+        COUNT_FIELDS.put(EventsCount.Field.TRIGGER_ID, "triggerId");
+        COUNT_FIELDS.put(EventsCount.Field.EVENT_TYPE, "eventType");
+        COUNT_FIELDS.put(EventsCount.Field.CATEGORY, "category");
+        COUNT_FIELDS.put(EventsCount.Field.SEVERITY, "severity");
+        COUNT_FIELDS.put(EventsCount.Field.STATUS, "status");
+        COUNT_FIELDS.put(EventsCount.Field.DAY, "bucket");
+    }
+
     AlertsEngine alertsEngine;
 
     DefinitionsService definitionsService;
@@ -92,6 +165,15 @@ public class IspnAlertsServiceImpl implements AlertsService {
 
     IspnExpressionTagQueryParser parser;
 
+    int batchSize;
+
+    private Timer retentionTimer;
+
+    /*
+        Serializes the removal of an unused trigger snapshot with the writers of events referencing it.
+     */
+    private final Striped<Lock> snapshotLocks = Striped.lock(64);
+
     public void init() {
         backend = IspnCacheManager.getCacheManager().getCache("backend");
         if (backend == null) {
@@ -99,6 +181,26 @@ public class IspnAlertsServiceImpl implements AlertsService {
             throw new RuntimeException("backend cache not found");
         }
         queryFactory = Search.getQueryFactory(backend);
+        batchSize = new Integer(HawkularProperties.getProperty(BACKEND_BATCH_SIZE, BACKEND_BATCH_SIZE_ENV,
+                BACKEND_BATCH_SIZE_DEFAULT));
+        int retentionDays = new Integer(HawkularProperties.getProperty(BACKEND_RETENTION_DAYS,
+                BACKEND_RETENTION_DAYS_ENV, BACKEND_RETENTION_DAYS_DEFAULT));
+        if (retentionDays > 0) {
+            long retentionPeriod = new Long(HawkularProperties.getProperty(BACKEND_RETENTION_PERIOD,
+                    BACKEND_RETENTION_PERIOD_ENV, BACKEND_RETENTION_PERIOD_DEFAULT));
+            retentionTimer = new Timer("IspnAlertsServiceImpl-Retention", true);
+            retentionTimer.schedule(new TimerTask() {
+                @Override
+                public void run() {
+                    try {
+                        dropBuckets(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(retentionDays));
+                    } catch (Exception e) {
+                        log.errorf("Failed to drop expired buckets: %s", e.getMessage());
+                    }
+                }
+            }, retentionPeriod, retentionPeriod);
+            log.infof("Events and alerts retention of [%s] days", retentionDays);
+        }
         parser = new IspnExpressionTagQueryParser((tokens, query) -> {
             if (tokens != null) {
                 String tag;
@@ -184,6 +286,12 @@ public class IspnAlertsServiceImpl implements AlertsService {
         });
     }
 
+    public void shutdown() {
+        if (null != retentionTimer) {
+            retentionTimer.cancel();
+        }
+    }
+
     public void setAlertsEngine(AlertsEngine alertsEngine) {
         this.alertsEngine = alertsEngine;
     }
@@ -227,9 +335,8 @@ public class IspnAlertsServiceImpl implements AlertsService {
         for (Alert alert : alertsToAck) {
             alert.addNote(ackBy, ackNotes);
             alert.addLifecycle(Status.ACKNOWLEDGED, ackBy, System.currentTimeMillis());
-            backend.put(pk(alert), new IspnEvent(alert));
-            sendAction(alert);
         }
+        putEvents(alertsToAck, this::sendAction);
     }
 
     @Override
@@ -241,9 +348,7 @@ public class IspnAlertsServiceImpl implements AlertsService {
             return;
         }
         log.debugf("Adding %s alerts", alerts.size());
-        for (Alert alert : alerts) {
-            backend.put(pk(alert), new IspnEvent(alert));
-        }
+        putEvents(alerts, null);
     }
 
     @Override
@@ -264,8 +369,8 @@ public class IspnAlertsServiceImpl implements AlertsService {
 
         for (Alert alert : existingAlerts) {
             tags.entrySet().stream().forEach(tag -> alert.addTag(tag.getKey(), tag.getValue()));
-            backend.put(pk(alert), new IspnEvent(alert));
         }
+        putEvents(existingAlerts, null);
     }
 
     @Override
@@ -295,8 +400,8 @@ public class IspnAlertsServiceImpl implements AlertsService {
 
         for (Event event : existingEvents) {
             tags.entrySet().stream().forEach(tag -> event.addTag(tag.getKey(), tag.getValue()));
-            backend.put(pk(event), new IspnEvent(event));
         }
+        putEvents(existingEvents, null);
     }
 
     @Override
@@ -308,9 +413,7 @@ public class IspnAlertsServiceImpl implements AlertsService {
             return;
         }
         log.debugf("Adding %s events", events.size());
-        for (Event event : events) {
-            backend.put(pk(event), new IspnEvent(event));
-        }
+        putEvents(events, null);
     }
 
     @Override
@@ -332,7 +435,9 @@ public class IspnAlertsServiceImpl implements AlertsService {
 
         alert.addNote(user, text);
 
-        backend.put(pk(alert), new IspnEvent(alert));
+        Map<String, IspnTriggerSnapshot> snapshots = new HashMap<>();
+        backend.put(pk(alert), toIspnEvent(alert, snapshots));
+        keepSnapshots(snapshots);
     }
 
     @Override
@@ -343,16 +448,17 @@ public class IspnAlertsServiceImpl implements AlertsService {
         if (null == criteria) {
             throw new IllegalArgumentException("Criteria must be not null");
         }
-        // no need to fetch the evalSets to perform the necessary deletes
-        criteria.setThin(true);
-        List<Alert> alertsToDelete = getAlerts(tenantId, criteria, null);
+        // only the keys are needed to perform the deletes, no need to load the alerts
+        IspnQuery query = alertsQuery(Collections.singleton(tenantId), criteria);
+        List<Event> alertsToDelete = getThinEvents(query);
 
         if (alertsToDelete.isEmpty()) {
             return 0;
         }
+        Set<String> snapshotIds = getSnapshotIds(query);
         try {
             backend.startBatch();
-            for (Alert alert : alertsToDelete) {
+            for (Event alert : alertsToDelete) {
                 backend.remove(pk(alert));
             }
             backend.endBatch(true);
@@ -360,6 +466,7 @@ public class IspnAlertsServiceImpl implements AlertsService {
             backend.endBatch(false);
             throw e;
         }
+        removeUnusedSnapshots(tenantId, snapshotIds);
         return alertsToDelete.size();
     }
 
@@ -371,13 +478,14 @@ public class IspnAlertsServiceImpl implements AlertsService {
         if (null == criteria) {
             throw new IllegalArgumentException("Criteria must be not null");
         }
-        // no need to fetch the evalSets to perform the necessary deletes
-        criteria.setThin(true);
-        List<Event> eventsToDelete = getEvents(tenantId, criteria, null);
+        // only the keys are needed to perform the deletes, no need to load the events
+        IspnQuery query = eventsQuery(Collections.singleton(tenantId), criteria);
+        List<Event> eventsToDelete = getThinEvents(query);
 
         if (eventsToDelete.isEmpty()) {
             return 0;
         }
+        Set<String> snapshotIds = getSnapshotIds(query);
         try {
             backend.startBatch();
             for (Event event : eventsToDelete) {
@@ -388,6 +496,7 @@ public class IspnAlertsServiceImpl implements AlertsService {
             backend.endBatch(false);
             throw e;
         }
+        removeUnusedSnapshots(tenantId, snapshotIds);
         return eventsToDelete.size();
     }
 
@@ -402,7 +511,8 @@ public class IspnAlertsServiceImpl implements AlertsService {
 
         String pk = pkFromEventId(tenantId, alertId);
         IspnEvent ispnEvent = (IspnEvent) backend.get(pk);
-        return ispnEvent != null && ispnEvent.getEvent() instanceof Alert ? (Alert) ispnEvent.getEvent() : null;
+        return ispnEvent != null && EventType.ALERT.name().equals(ispnEvent.getEventType())
+                ? (Alert) toEvent(ispnEvent) : null;
     }
 
     @Override
@@ -415,143 +525,23 @@ public class IspnAlertsServiceImpl implements AlertsService {
         if (isEmpty(tenantIds)) {
             throw new IllegalArgumentException("TenantIds must be not null");
         }
-        boolean filter = (null != criteria && criteria.hasCriteria());
-        if (filter) {
-            log.debugf("getAlerts criteria: %s", criteria.toString());
-        }
+        IspnQuery query = alertsQuery(tenantIds, criteria);
+        boolean projection = criteria != null && criteria.isProjection();
 
-        StringBuilder query = new StringBuilder("from org.hawkular.alerts.engine.impl.ispn.model.IspnEvent where ");
-        query.append("eventType = 'ALERT' and ");
-        query.append("(");
-        Iterator<String> iter = tenantIds.iterator();
-        while (iter.hasNext()) {
-            String tenantId = iter.next();
-            query.append("tenantId = '").append(tenantId).append("' ");
-            if (iter.hasNext()) {
-                query.append("or ");
-            }
+        Function<IspnEvent, Alert> toAlert = toAlert(criteria);
+        Function<String, String> sortFields = field -> ALERT_SORT_FIELDS.get(AlertComparator.Field.getField(field));
+        pager = defaultOrder(pager, AlertComparator.Field.ALERT_ID.getText());
+        if (null != pager && pager.isCursor()) {
+            return cursorPage(query, projection, pager, sortFields, toAlert);
+        }
+        String orderBy = orderBy(pager, AlertComparator.Field.ALERT_ID.getText(), sortFields);
+        if (null != orderBy) {
+            return queryPage(query.append(orderBy), projection, pager, AlertComparator.Field.ALERT_ID.getText(),
+                    toAlert);
         }
-        query.append(") ");
 
-        if (filter) {
-           if (criteria.hasAlertIdCriteria()) {
-               query.append("and (");
-               iter = extractAlertIds(criteria).iterator();
-               while (iter.hasNext()) {
-                   String alertId = iter.next();
-                   query.append("id = '").append(alertId).append("' ");
-                   if (iter.hasNext()) {
-                       query.append("or ");
-                   }
-               }
-               query.append(") ");
-           }
-           if (criteria.hasTagQueryCriteria()) {
-               query.append("and (tags : ");
-               parseTagQuery(criteria.getTagQuery(), query);
-               query.append(") ");
-           }
-           if (criteria.hasTriggerIdCriteria()) {
-                query.append("and (");
-                iter = extractTriggerIds(criteria).iterator();
-                while (iter.hasNext()) {
-                    String triggerId = iter.next();
-                    query.append("triggerId = '").append(triggerId).append("' ");
-                    if (iter.hasNext()) {
-                        query.append("or ");
-                    }
-                }
-                query.append(") ");
-           }
-           if (criteria.hasCTimeCriteria()) {
-                query.append("and (");
-                if (criteria.getStartTime() != null) {
-                    query.append("ctime >= ").append(criteria.getStartTime()).append(" ");
-                }
-                if (criteria.getEndTime() != null) {
-                    if (criteria.getStartTime() != null) {
-                        query.append("and ");
-                    }
-                    query.append("ctime <= ").append(criteria.getEndTime()).append(" ");
-                }
-                query.append(") ");
-           }
-           if (criteria.hasResolvedTimeCriteria()) {
-               query.append("and (status = '").append(Status.RESOLVED.name()).append("' and ");
-               if (criteria.getStartResolvedTime() != null) {
-                   query.append("stime >= ").append(criteria.getStartResolvedTime()).append(" ");
-               }
-               if (criteria.getEndResolvedTime() != null) {
-                   if (criteria.getStartResolvedTime() != null) {
-                       query.append("and ");
-                   }
-                   query.append("stime <= ").append(criteria.getEndResolvedTime()).append(" ");
-               }
-               query.append(") ");
-           }
-           if (criteria.hasAckTimeCriteria()) {
-               query.append("and (status = '").append(Status.ACKNOWLEDGED.name()).append("' and ");
-               if (criteria.getStartAckTime() != null) {
-                   query.append("stime >= ").append(criteria.getStartAckTime()).append(" ");
-               }
-               if (criteria.getEndAckTime() != null) {
-                   if (criteria.getStartAckTime() != null) {
-                       query.append("and ");
-                   }
-                   query.append("stime <= ").append(criteria.getEndAckTime()).append(" ");
-               }
-               query.append(") ");
-           }
-           if (criteria.hasStatusTimeCriteria()) {
-               query.append("and (");
-               if (criteria.getStartStatusTime() != null) {
-                   query.append("stime >= ").append(criteria.getStartStatusTime()).append(" ");
-               }
-               if (criteria.getEndTime() != null) {
-                   if (criteria.getStartTime() != null) {
-                       query.append("and ");
-                   }
-                   query.append("stime <= ").append(criteria.getEndStatusTime()).append(" ");
-               }
-               query.append(") ");
-           }
-           if (criteria.hasSeverityCriteria()) {
-               query.append("and (");
-                Iterator<Severity> iterSev = extractSeverity(criteria).iterator();
-               while (iterSev.hasNext()) {
-                   Severity severity = iterSev.next();
-                   query.append("severity = '").append(severity.name()).append("' ");
-                   if (iterSev.hasNext()) {
-                       query.append(" or ");
-                   }
-               }
-               query.append(") ");
-           }
-           if (criteria.hasStatusCriteria()) {
-               query.append("and (");
-               Iterator<Status> iterStatus = extractStatus(criteria).iterator();
-               while (iterStatus.hasNext()) {
-                   Status status = iterStatus.next();
-                   query.append("status = '").append(status.name()).append("' ");
-                   if (iterStatus.hasNext()) {
-                       query.append(" or ");
-                   }
-               }
-               query.append(") ");
-           }
-        }
-
-        List<IspnEvent> ispnEvents = queryFactory.create(query.toString()).list();
-        List<Alert> alerts = ispnEvents.stream().map(ispnEvent -> {
-            if (criteria != null && criteria.isThin()) {
-                Alert alert = new Alert((Alert) ispnEvent.getEvent());
-                alert.setDampening(null);
-                alert.setEvalSets(null);
-                alert.setResolvedEvalSets(null);
-                return alert;
-            }
-            return (Alert) ispnEvent.getEvent();
-        }).collect(Collectors.toList());
+        List<IspnEvent> ispnEvents = list(build(query, projection), projection);
+        List<Alert> alerts = ispnEvents.stream().map(toAlert).collect(Collectors.toList());
         if (alerts.isEmpty()) {
             return new Page<>(alerts, pager, 0);
         } else {
@@ -559,6 +549,28 @@ public class IspnAlertsServiceImpl implements AlertsService {
         }
     }
 
+    @Override
+    public int streamAlerts(Set<String> tenantIds, AlertsCriteria criteria, Consumer<Alert> consumer)
+            throws Exception {
+        if (isEmpty(tenantIds)) {
+            throw new IllegalArgumentException("TenantIds must be not null");
+        }
+        if (null == consumer) {
+            throw new IllegalArgumentException("Consumer must be not null");
+        }
+        return streamQuery(alertsQuery(tenantIds, criteria), criteria != null && criteria.isProjection(),
+                toAlert(criteria), consumer);
+    }
+
+    @Override
+    public List<EventsCount> countAlerts(Set<String> tenantIds, AlertsCriteria criteria,
+            List<EventsCount.Field> groupBy) throws Exception {
+        if (isEmpty(tenantIds)) {
+            throw new IllegalArgumentException("TenantIds must be not null");
+        }
+        return countQuery(alertsQuery(tenantIds, criteria), groupBy);
+    }
+
     @Override
     public Event getEvent(String tenantId, String eventId, boolean thin) throws Exception {
         if (isEmpty(tenantId)) {
@@ -570,7 +582,7 @@ public class IspnAlertsServiceImpl implements AlertsService {
 
         String pk = pkFromEventId(tenantId, eventId);
         IspnEvent ispnEvent = (IspnEvent) backend.get(pk);
-        return ispnEvent != null ? ispnEvent.getEvent() : null;
+        return ispnEvent != null ? toEvent(ispnEvent) : null;
     }
 
     @Override
@@ -583,90 +595,22 @@ public class IspnAlertsServiceImpl implements AlertsService {
         if (isEmpty(tenantIds)) {
             throw new IllegalArgumentException("TenantIds must be not null");
         }
-        boolean filter = (null != criteria && criteria.hasCriteria());
-        if (filter) {
-            log.debugf("getEvents criteria: %s", criteria.toString());
-        }
+        IspnQuery query = eventsQuery(tenantIds, criteria);
+        boolean projection = criteria != null && criteria.isProjection();
 
-        StringBuilder query = new StringBuilder("from org.hawkular.alerts.engine.impl.ispn.model.IspnEvent where ");
-        query.append("(");
-        Iterator<String> iter = tenantIds.iterator();
-        while (iter.hasNext()) {
-            String tenantId = iter.next();
-            query.append("tenantId = '").append(tenantId).append("' ");
-            if (iter.hasNext()) {
-                query.append("or ");
-            }
+        Function<String, String> sortFields = field -> EVENT_SORT_FIELDS.get(EventComparator.Field.getField(field));
+        pager = defaultOrder(pager, EventComparator.Field.ID.getName());
+        if (null != pager && pager.isCursor()) {
+            return cursorPage(query, projection, pager, sortFields, toEvent());
         }
-        query.append(") ");
-
-        if (filter) {
-            if (criteria.hasEventTypeCriteria()) {
-                try {
-                    EventType eventType = EventType.valueOf(criteria.getEventType());
-                    query.append("and eventType = '").append(eventType.name()).append("' ");
-                } catch (Exception e) {
-                    log.debugf("EventType [%s] is not valid, ignoring this criteria", criteria.getEventType());
-                }
-            }
-            if (criteria.hasEventIdCriteria()) {
-                query.append("and (");
-                iter = extractEventIds(criteria).iterator();
-                while (iter.hasNext()) {
-                    String eventId = iter.next();
-                    query.append("id = '").append(eventId).append("' ");
-                    if (iter.hasNext()) {
-                        query.append("or ");
-                    }
-                }
-                query.append(") ");
-            }
-            if (criteria.hasTagQueryCriteria()) {
-                query.append("and (tags : ");
-                parseTagQuery(criteria.getTagQuery(), query);
-                query.append(") ");
-            }
-            if (criteria.hasTriggerIdCriteria()) {
-                query.append("and (");
-                iter = extractTriggerIds(criteria).iterator();
-                while (iter.hasNext()) {
-                    String triggerId = iter.next();
-                    query.append("triggerId = '").append(triggerId).append("' ");
-                    if (iter.hasNext()) {
-                        query.append("or ");
-                    }
-                }
-                query.append(") ");
-            }
-            if (criteria.hasCTimeCriteria()) {
-                query.append("and (");
-                if (criteria.getStartTime() != null) {
-                    query.append("ctime >= ").append(criteria.getStartTime()).append(" ");
-                }
-                if (criteria.getEndTime() != null) {
-                    if (criteria.getStartTime() != null) {
-                        query.append("and ");
-                    }
-                    query.append("ctime <= ").append(criteria.getEndTime()).append(" ");
-                }
-                query.append(") ");
-            }
-            if (criteria.hasCategoryCriteria()) {
-                query.append("and (");
-                iter = extractCategories(criteria).iterator();
-                while (iter.hasNext()) {
-                    String category = iter.next();
-                    query.append("category = '").append(category).append("' ");
-                    if (iter.hasNext()) {
-                        query.append(" or ");
-                    }
-                }
-                query.append(") ");
-            }
+        String orderBy = orderBy(pager, EventComparator.Field.ID.getName(), sortFields);
+        if (null != orderBy) {
+            return queryPage(query.append(orderBy), projection, pager, EventComparator.Field.ID.getName(),
+                    toEvent());
         }
 
-        List<IspnEvent> ispnEvents = queryFactory.create(query.toString()).list();
-        List<Event> events = ispnEvents.stream().map(e -> e.getEvent()).collect(Collectors.toList());
+        List<IspnEvent> ispnEvents = list(build(query, projection), projection);
+        List<Event> events = ispnEvents.stream().map(toEvent()).collect(Collectors.toList());
         if (events.isEmpty()) {
             return new Page<>(events, pager, 0);
         } else {
@@ -674,6 +618,28 @@ public class IspnAlertsServiceImpl implements AlertsService {
         }
     }
 
+    @Override
+    public int streamEvents(Set<String> tenantIds, EventsCriteria criteria, Consumer<Event> consumer)
+            throws Exception {
+        if (isEmpty(tenantIds)) {
+            throw new IllegalArgumentException("TenantIds must be not null");
+        }
+        if (null == consumer) {
+            throw new IllegalArgumentException("Consumer must be not null");
+        }
+        return streamQuery(eventsQuery(tenantIds, criteria), criteria != null && criteria.isProjection(),
+                toEvent(), consumer);
+    }
+
+    @Override
+    public List<EventsCount> countEvents(Set<String> tenantIds, EventsCriteria criteria,
+            List<EventsCount.Field> groupBy) throws Exception {
+        if (isEmpty(tenantIds)) {
+            throw new IllegalArgumentException("TenantIds must be not null");
+        }
+        return countQuery(eventsQuery(tenantIds, criteria), groupBy);
+    }
+
     @Override
     public void removeAlertTags(String tenantId, Collection<String> alertIds, Collection<String> tags) throws Exception {
         if (isEmpty(tenantId)) {
@@ -691,6 +657,7 @@ public class IspnAlertsServiceImpl implements AlertsService {
         criteria.setAlertIds(alertIds);
         Page<Alert> existingAlerts = getAlerts(tenantId, criteria, null);
 
+        List<Alert> modifiedAlerts = new ArrayList<>();
         for (Alert alert : existingAlerts) {
             boolean modified = false;
             for (String tag : tags) {
@@ -700,9 +667,10 @@ public class IspnAlertsServiceImpl implements AlertsService {
                 }
             }
             if (modified) {
-                backend.put(pk(alert), new IspnEvent(alert));
+                modifiedAlerts.add(alert);
             }
         }
+        putEvents(modifiedAlerts, null);
     }
 
     @Override
@@ -722,6 +690,7 @@ public class IspnAlertsServiceImpl implements AlertsService {
         criteria.setEventIds(eventIds);
         Page<Event> existingEvents = getEvents(tenantId, criteria, null);
 
+        List<Event> modifiedEvents = new ArrayList<>();
         for (Event event : existingEvents) {
             boolean modified = false;
             for (String tag : tags) {
@@ -731,9 +700,10 @@ public class IspnAlertsServiceImpl implements AlertsService {
                 }
             }
             if (modified) {
-                backend.put(pk(event), new IspnEvent(event));
+                modifiedEvents.add(event);
             }
         }
+        putEvents(modifiedEvents, null);
     }
 
     @Override
@@ -761,9 +731,8 @@ public class IspnAlertsServiceImpl implements AlertsService {
             alert.addNote(resolvedBy, resolvedNotes);
             alert.setResolvedEvalSets(resolvedEvalSets);
             alert.addLifecycle(Status.RESOLVED, resolvedBy, System.currentTimeMillis());
-            backend.put(pk(alert), new IspnEvent(alert));
-            sendAction(alert);
         }
+        putEvents(alertsToResolve, this::sendAction);
 
         // gather the triggerIds of the triggers we need to check for resolve options
         Set<String> triggerIds = alertsToResolve.stream().map(alert -> alert.getTriggerId()).collect(Collectors.toSet());
@@ -798,9 +767,8 @@ public class IspnAlertsServiceImpl implements AlertsService {
             alert.addNote(resolvedBy, resolvedNotes);
             alert.setResolvedEvalSets(resolvedEvalSets);
             alert.addLifecycle(Status.RESOLVED, resolvedBy, System.currentTimeMillis());
-            backend.put(pk(alert), new IspnEvent(alert));
-            sendAction(alert);
         }
+        putEvents(alertsToResolve, this::sendAction);
 
         handleResolveOptions(tenantId, triggerId, false);
 
@@ -850,6 +818,614 @@ public class IspnAlertsServiceImpl implements AlertsService {
 
     // Private methods
 
+    private IspnQuery alertsQuery(Set<String> tenantIds, AlertsCriteria criteria) throws Exception {
+        boolean filter = (null != criteria && criteria.hasCriteria());
+        if (filter) {
+            log.debugf("getAlerts criteria: %s", criteria.toString());
+        }
+
+        IspnQuery query = new IspnQuery(IspnEvent.class);
+        query.append("eventType = 'ALERT' and ");
+        query.in("tenantId", tenantIds);
+
+        if (filter) {
+            if (criteria.hasAlertIdCriteria()) {
+                query.append("and ").in("id", extractAlertIds(criteria));
+            }
+            if (criteria.hasTagQueryCriteria()) {
+                query.append("and (tags : ").append(tagQuery(criteria.getTagQuery())).append(") ");
+            }
+            if (criteria.hasTriggerIdCriteria()) {
+                query.append("and ").in("triggerId", extractTriggerIds(criteria));
+            }
+            if (criteria.hasCTimeCriteria()) {
+                cTimeQuery(criteria.getStartTime(), criteria.getEndTime(), query);
+            }
+            if (criteria.hasResolvedTimeCriteria()) {
+                query.append("and (status = '").append(Status.RESOLVED.name()).append("' and ");
+                if (criteria.getStartResolvedTime() != null) {
+                    query.append("stime >= ").param(criteria.getStartResolvedTime());
+                }
+                if (criteria.getEndResolvedTime() != null) {
+                    if (criteria.getStartResolvedTime() != null) {
+                        query.append("and ");
+                    }
+                    query.append("stime <= ").param(criteria.getEndResolvedTime());
+                }
+                query.append(") ");
+            }
+            if (criteria.hasAckTimeCriteria()) {
+                query.append("and (status = '").append(Status.ACKNOWLEDGED.name()).append("' and ");
+                if (criteria.getStartAckTime() != null) {
+                    query.append("stime >= ").param(criteria.getStartAckTime());
+                }
+                if (criteria.getEndAckTime() != null) {
+                    if (criteria.getStartAckTime() != null) {
+                        query.append("and ");
+                    }
+                    query.append("stime <= ").param(criteria.getEndAckTime());
+                }
+                query.append(") ");
+            }
+            if (criteria.hasStatusTimeCriteria()) {
+                query.append("and (");
+                if (criteria.getStartStatusTime() != null) {
+                    query.append("stime >= ").param(criteria.getStartStatusTime());
+                }
+                if (criteria.getEndTime() != null) {
+                    if (criteria.getStartTime() != null) {
+                        query.append("and ");
+                    }
+                    query.append("stime <= ").param(criteria.getEndStatusTime());
+                }
+                query.append(") ");
+            }
+            if (criteria.hasSeverityCriteria()) {
+                query.append("and ").in("severity", extractSeverity(criteria).stream()
+                        .map(Severity::name)
+                        .collect(Collectors.toList()));
+            }
+            if (criteria.hasStatusCriteria()) {
+                query.append("and ").in("status", extractStatus(criteria).stream()
+                        .map(Status::name)
+                        .collect(Collectors.toList()));
+            }
+        }
+        return query;
+    }
+
+    private IspnQuery eventsQuery(Set<String> tenantIds, EventsCriteria criteria) throws Exception {
+        boolean filter = (null != criteria && criteria.hasCriteria());
+        if (filter) {
+            log.debugf("getEvents criteria: %s", criteria.toString());
+        }
+
+        IspnQuery query = new IspnQuery(IspnEvent.class);
+        query.in("tenantId", tenantIds);
+
+        if (filter) {
+            if (criteria.hasEventTypeCriteria()) {
+                try {
+                    EventType eventType = EventType.valueOf(criteria.getEventType());
+                    query.append("and eventType = '").append(eventType.name()).append("' ");
+                } catch (Exception e) {
+                    log.debugf("EventType [%s] is not valid, ignoring this criteria", criteria.getEventType());
+                }
+            }
+            if (criteria.hasEventIdCriteria()) {
+                query.append("and ").in("id", extractEventIds(criteria));
+            }
+            if (criteria.hasTagQueryCriteria()) {
+                query.append("and (tags : ").append(tagQuery(criteria.getTagQuery())).append(") ");
+            }
+            if (criteria.hasTriggerIdCriteria()) {
+                query.append("and ").in("triggerId", extractTriggerIds(criteria));
+            }
+            if (criteria.hasCTimeCriteria()) {
+                cTimeQuery(criteria.getStartTime(), criteria.getEndTime(), query);
+            }
+            if (criteria.hasCategoryCriteria()) {
+                query.append("and ").in("category", extractCategories(criteria));
+            }
+        }
+        return query;
+    }
+
+    private Function<IspnEvent, Alert> toAlert(AlertsCriteria criteria) {
+        Function<IspnEvent, Event> toEvent = toEvent();
+        return ispnEvent -> {
+            if (criteria != null && criteria.isThin() && !criteria.isProjection()) {
+                // toEvent() already returns a copy
+                Alert alert = (Alert) toEvent.apply(ispnEvent);
+                alert.setDampening(null);
+                alert.setEvalSets(null);
+                alert.setResolvedEvalSets(null);
+                return alert;
+            }
+            return (Alert) toEvent.apply(ispnEvent);
+        };
+    }
+
+    /*
+        Grouping and counting run on the stored index fields, no value is loaded.
+     */
+    private List<EventsCount> countQuery(IspnQuery query, List<EventsCount.Field> groupBy) {
+        List<EventsCount.Field> fields = null == groupBy ? Collections.emptyList()
+                : groupBy.stream().distinct().collect(Collectors.toList());
+        String groupFields = fields.stream().map(COUNT_FIELDS::get).collect(Collectors.joining(", "));
+        Query count;
+        if (fields.isEmpty()) {
+            count = query.build(queryFactory, "count(id)");
+        } else {
+            count = query.append("group by " + groupFields).build(queryFactory, groupFields + ", count(id)");
+        }
+        List<Object[]> rows = count.list();
+        List<EventsCount> counts = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            long rowCount = ((Number) row[fields.size()]).longValue();
+            if (0 == rowCount) {
+                continue;
+            }
+            Map<String, String> group = new LinkedHashMap<>();
+            for (int i = 0; i < fields.size(); i++) {
+                group.put(fields.get(i).getText(), null == row[i] ? null : String.valueOf(row[i]));
+            }
+            counts.add(new EventsCount(group, rowCount));
+        }
+        return counts;
+    }
+
+    /*
+        Fetch the results in batches of batchSize ordered by tenantId and id. Each batch starts after the last key
+        of the previous one, so only a batch is held in memory and the index does not collect the skipped results
+        of an offset.
+     */
+    private <T> int streamQuery(IspnQuery query, boolean projection, Function<IspnEvent, T> mapper,
+            Consumer<T> consumer) {
+        int streamed = 0;
+        IspnEvent last = null;
+        while (true) {
+            IspnQuery batchQuery = new IspnQuery(query);
+            if (null != last) {
+                batchQuery.append("and (tenantId > ").param(last.getTenantId())
+                        .append("or (tenantId = ").param(last.getTenantId())
+                        .append("and id > ").param(last.getId()).append(")) ");
+            }
+            Query batch = build(batchQuery.append("order by tenantId asc, id asc"), projection);
+            batch.maxResults(batchSize);
+            List<IspnEvent> ispnEvents = list(batch, projection);
+            for (IspnEvent ispnEvent : ispnEvents) {
+                consumer.accept(mapper.apply(ispnEvent));
+            }
+            streamed += ispnEvents.size();
+            if (ispnEvents.size() < batchSize) {
+                return streamed;
+            }
+            last = ispnEvents.get(ispnEvents.size() - 1);
+        }
+    }
+
+    /*
+        The bucket restriction limits the ctime range comparison to the documents of the overlapping buckets.
+     */
+    private void cTimeQuery(Long startTime, Long endTime, IspnQuery query) {
+        query.append("and (");
+        if (startTime != null) {
+            query.append("bucket >= ").param(IspnEvent.bucket(startTime));
+            query.append("and ctime >= ").param(startTime);
+        }
+        if (endTime != null) {
+            if (startTime != null) {
+                query.append("and ");
+            }
+            query.append("bucket <= ").param(IspnEvent.bucket(endTime));
+            query.append("and ctime <= ").param(endTime);
+        }
+        query.append(") ");
+    }
+
+    /*
+        The tag expression is translated by the parser into a Lucene query, it is kept as a literal.
+     */
+    private String tagQuery(String tagQuery) throws Exception {
+        StringBuilder query = new StringBuilder();
+        parseTagQuery(tagQuery, query);
+        return query.toString();
+    }
+
+    /*
+        Remove the events and alerts of the buckets ending before the cutoff time, oldest bucket first. A bucket is
+        dropped whole in batches of batchSize, its entries are found by the bucket field without any other criteria.
+     */
+    int dropBuckets(long cutoff) throws Exception {
+        long lastBucket = IspnEvent.bucket(cutoff) - IspnEvent.BUCKET_SIZE;
+        int dropped = 0;
+        Long bucket;
+        while (null != (bucket = oldestBucket(lastBucket))) {
+            int bucketDropped = dropBucket(bucket);
+            if (0 == bucketDropped) {
+                log.warnf("Bucket [%s] found in the index but no entry was dropped", bucket);
+                break;
+            }
+            dropped += bucketDropped;
+        }
+        return dropped;
+    }
+
+    private Long oldestBucket(long lastBucket) {
+        Query query = new IspnQuery(IspnEvent.class)
+                .append("bucket <= ").param(lastBucket)
+                .append("order by bucket asc")
+                .build(queryFactory, "bucket");
+        query.maxResults(1);
+        List<Object[]> rows = query.list();
+        return rows.isEmpty() ? null : (Long) rows.get(0)[0];
+    }
+
+    private int dropBucket(long bucket) throws Exception {
+        IspnQuery query = new IspnQuery(IspnEvent.class).append("bucket = ").param(bucket);
+        Map<String, Set<String>> snapshotIds = new HashMap<>();
+        Set<String> previous = Collections.emptySet();
+        int dropped = 0;
+        while (true) {
+            Query page = query.build(queryFactory, "tenantId, id, snapshotId");
+            page.maxResults(batchSize);
+            List<Object[]> rows = page.list();
+            Set<String> pks = new HashSet<>();
+            for (Object[] row : rows) {
+                pks.add(pkFromEventId((String) row[0], (String) row[1]));
+                if (null != row[2]) {
+                    snapshotIds.computeIfAbsent((String) row[0], tenantId -> new HashSet<>()).add((String) row[2]);
+                }
+            }
+            // an index not yet updated would return the same page again
+            if (pks.isEmpty() || pks.equals(previous)) {
+                break;
+            }
+            try {
+                backend.startBatch();
+                for (String pk : pks) {
+                    backend.getAdvancedCache().withFlags(Flag.IGNORE_RETURN_VALUES).remove(pk);
+                }
+                backend.endBatch(true);
+            } catch (Exception e) {
+                backend.endBatch(false);
+                throw e;
+            }
+            dropped += pks.size();
+            previous = pks;
+        }
+        snapshotIds.forEach(this::removeUnusedSnapshots);
+        log.infof("Dropped bucket [%s] with [%s] events and alerts", bucket, dropped);
+        return dropped;
+    }
+
+    /*
+        Bulk writes are committed every batchSize events, so each batch is a single transaction for the store and
+        the index. The committed callback runs for each event once its batch is committed.
+     */
+    private <T extends Event> void putEvents(Collection<T> events, Consumer<T> committed) throws Exception {
+        List<T> batch = new ArrayList<>(Math.min(events.size(), batchSize));
+        int written = 0;
+        for (T event : events) {
+            batch.add(event);
+            if (batch.size() == batchSize) {
+                written += putBatch(batch, committed);
+                log.debugf("Written %s of %s events", written, events.size());
+            }
+        }
+        if (!batch.isEmpty()) {
+            putBatch(batch, committed);
+        }
+    }
+
+    private <T extends Event> int putBatch(List<T> batch, Consumer<T> committed) throws Exception {
+        Map<String, IspnTriggerSnapshot> snapshots = new HashMap<>();
+        try {
+            backend.startBatch();
+            for (T event : batch) {
+                backend.put(pk(event), toIspnEvent(event, snapshots));
+            }
+            backend.endBatch(true);
+        } catch (Exception e) {
+            backend.endBatch(false);
+            throw e;
+        }
+        keepSnapshots(snapshots);
+        if (null != committed) {
+            batch.forEach(committed);
+        }
+        int size = batch.size();
+        batch.clear();
+        return size;
+    }
+
+    /*
+        Store the Trigger and Dampening of the event in a shared snapshot, identified by its content. Events and
+        alerts of the same trigger version only store the snapshotId. The written snapshots are collected by pk, so
+        a batch writes each snapshot once.
+     */
+    private IspnEvent toIspnEvent(Event event, Map<String, IspnTriggerSnapshot> snapshots) {
+        if (null == event.getTrigger()) {
+            return new IspnEvent(event);
+        }
+        IspnTriggerSnapshot snapshot = new IspnTriggerSnapshot(event.getTenantId(), event.getTrigger(),
+                event.getDampening());
+        String snapshotPk = pk(snapshot);
+        if (null == snapshots.putIfAbsent(snapshotPk, snapshot)) {
+            backend.putIfAbsent(snapshotPk, snapshot);
+        }
+        return new IspnEvent(event, snapshot.getSnapshotId());
+    }
+
+    /*
+        A snapshot can be removed by removeUnusedSnapshots while an event referencing it is not committed yet. Once
+        the events are committed their snapshots are checked under the same lock as the removal, so either the
+        removal finds the committed events or the snapshot is stored again here.
+     */
+    private void keepSnapshots(Map<String, IspnTriggerSnapshot> snapshots) {
+        for (Map.Entry<String, IspnTriggerSnapshot> snapshot : snapshots.entrySet()) {
+            Lock lock = snapshotLocks.get(snapshot.getKey());
+            lock.lock();
+            try {
+                backend.putIfAbsent(snapshot.getKey(), snapshot.getValue());
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /*
+        Mapper for list and stream reads, the snapshots are fetched once per call instead of once per event.
+     */
+    private Function<IspnEvent, Event> toEvent() {
+        Map<String, IspnTriggerSnapshot> snapshots = new HashMap<>();
+        return ispnEvent -> toEvent(ispnEvent, snapshots);
+    }
+
+    private Event toEvent(IspnEvent ispnEvent) {
+        return toEvent(ispnEvent, new HashMap<>(1));
+    }
+
+    /*
+        A copy of the stored event, with the Trigger and Dampening restored from its snapshot.
+     */
+    private Event toEvent(IspnEvent ispnEvent, Map<String, IspnTriggerSnapshot> snapshots) {
+        Event event = ispnEvent.getEvent();
+        if (null != ispnEvent.getSnapshotId()) {
+            IspnTriggerSnapshot snapshot = snapshots.computeIfAbsent(ispnEvent.getSnapshotId(),
+                    snapshotId -> (IspnTriggerSnapshot) backend
+                            .get(pkFromTriggerSnapshot(ispnEvent.getTenantId(), snapshotId)));
+            if (null == snapshot) {
+                log.warnf("Trigger snapshot [%s] not found for [%s]", ispnEvent.getSnapshotId(), pk(event));
+            } else {
+                event.setTrigger(snapshot.getTrigger());
+                event.setDampening(null == snapshot.getDampening() ? null : new Dampening(snapshot.getDampening()));
+            }
+        }
+        return event;
+    }
+
+    private Set<String> getSnapshotIds(IspnQuery query) {
+        List<Object[]> rows = query.build(queryFactory, "snapshotId").list();
+        return rows.stream()
+                .filter(row -> null != row[0])
+                .map(row -> (String) row[0])
+                .collect(Collectors.toSet());
+    }
+
+    /*
+        Snapshots are removed with the last event or alert referencing them. The check and the removal run under the
+        snapshot lock, see keepSnapshots.
+     */
+    private void removeUnusedSnapshots(String tenantId, Set<String> snapshotIds) {
+        for (String snapshotId : snapshotIds) {
+            String snapshotPk = pkFromTriggerSnapshot(tenantId, snapshotId);
+            Lock lock = snapshotLocks.get(snapshotPk);
+            lock.lock();
+            try {
+                Query query = new IspnQuery(IspnEvent.class)
+                        .append("tenantId = ").param(tenantId)
+                        .append("and snapshotId = ").param(snapshotId)
+                        .build(queryFactory);
+                query.maxResults(1);
+                if (query.list().isEmpty()) {
+                    backend.remove(snapshotPk);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private Query build(IspnQuery query, boolean projection) {
+        return query.build(queryFactory, projection ? IspnEvent.PROJECTION : null);
+    }
+
+    /*
+        Projection rows are returned as IspnEvents holding only the index fields, see IspnEvent.ofProjection.
+     */
+    private List<IspnEvent> list(Query query, boolean projection) {
+        if (!projection) {
+            return query.list();
+        }
+        List<Object[]> rows = query.list();
+        return rows.stream().map(IspnEvent::ofProjection).collect(Collectors.toList());
+    }
+
+    /*
+        Thin Events and Alerts built from the stored index fields, the values are not loaded.
+     */
+    private List<Event> getThinEvents(IspnQuery query) {
+        List<Object[]> rows = query.build(queryFactory, IspnEvent.PROJECTION).list();
+        return rows.stream().map(IspnEvent::fromProjection).collect(Collectors.toList());
+    }
+
+    /*
+        Same default as preparePage: a first order clause without field means ordering by id descending.
+     */
+    private Pager defaultOrder(Pager pager, String idField) {
+        if (pager != null
+                && pager.getOrder() != null
+                && !pager.getOrder().isEmpty()
+                && pager.getOrder().get(0).getField() == null) {
+            return Pager.builder()
+                    .withPageSize(pager.getPageSize())
+                    .withStartPage(pager.getPageNumber())
+                    .withCursor(pager.getCursor())
+                    .orderBy(idField, Order.Direction.DESCENDING).build();
+        }
+        return pager;
+    }
+
+    /*
+        Translate the order of the pager into an Ickle order by clause, or null if any field is not sortable in the
+        index and the results must be sorted in memory.
+        preparePage sorts once per order clause with a stable sort, so the last clause is the primary order, and
+        the comparators order by tenantId before the field.
+     */
+    private String orderBy(Pager pager, String idField, Function<String, String> indexFields) {
+        List<Order> orders;
+        if (null == pager) {
+            orders = Collections.singletonList(Order.by(idField, Order.Direction.ASCENDING));
+        } else if (null == pager.getOrder()) {
+            return "";
+        } else {
+            orders = pager.getOrder().stream()
+                    .filter(o -> o.getField() != null && o.getDirection() != null)
+                    .collect(Collectors.toList());
+        }
+        if (orders.isEmpty()) {
+            return "";
+        }
+        StringBuilder orderBy = new StringBuilder("order by tenantId ")
+                .append(direction(orders.get(orders.size() - 1)));
+        for (int i = orders.size() - 1; i >= 0; i--) {
+            String indexField = indexFields.apply(orders.get(i).getField());
+            if (null == indexField) {
+                return null;
+            }
+            orderBy.append(", ").append(indexField).append(" ").append(direction(orders.get(i)));
+        }
+        return orderBy.toString();
+    }
+
+    private String direction(Order order) {
+        return order.isAscending() ? "asc" : "desc";
+    }
+
+    /*
+        Only the requested page is fetched from the index, the total is the result size of the query. A page out of
+        range is empty.
+     */
+    private <T> Page<T> queryPage(IspnQuery ispnQuery, boolean projection, Pager pager, String idField,
+            Function<IspnEvent, T> mapper) {
+        Query query = build(ispnQuery, projection);
+        boolean limited = null != pager && pager.isLimited();
+        if (limited) {
+            query.startOffset(pager.getStart());
+            query.maxResults(pager.getPageSize());
+        }
+        List<IspnEvent> ispnEvents = list(query, projection);
+        int total = query.getResultSize();
+        if (0 == total) {
+            return new Page<>(new ArrayList<>(), pager, 0);
+        }
+        if (null == pager) {
+            pager = Pager.builder().withPageSize(total).orderBy(idField, Order.Direction.ASCENDING).build();
+        } else if (!limited) {
+            pager = new Pager(0, total, pager.getOrder());
+        }
+        return new Page<>(ispnEvents.stream().map(mapper).collect(Collectors.toList()), pager, total);
+    }
+
+    /*
+        Keyset paging: the results are ordered by tenantId, the pager fields and id, and the page starts after the
+        key held by the cursor, so the index does not collect the results before the page and inserts do not shift
+        the pages. The total is the number of results from the start of the page.
+     */
+    private <T> Page<T> cursorPage(IspnQuery ispnQuery, boolean projection, Pager pager,
+            Function<String, String> indexFields, Function<IspnEvent, T> mapper) {
+        List<Order> orders = pager.getOrder().stream()
+                .filter(o -> o.getField() != null && o.getDirection() != null)
+                .collect(Collectors.toList());
+        Map<String, Boolean> key = new LinkedHashMap<>();
+        key.put("tenantId", orders.isEmpty() || orders.get(orders.size() - 1).isAscending());
+        for (int i = orders.size() - 1; i >= 0; i--) {
+            String indexField = indexFields.apply(orders.get(i).getField());
+            if (null == indexField) {
+                throw new IllegalArgumentException("Cursor paging does not support order by "
+                        + orders.get(i).getField());
+            }
+            key.putIfAbsent(indexField, orders.get(i).isAscending());
+        }
+        key.putIfAbsent("id", true);
+        List<String> fields = new ArrayList<>(key.keySet());
+
+        IspnQuery query = new IspnQuery(ispnQuery);
+        Map<String, String> cursor = PageCursor.decode(pager.getCursor(), fields);
+        if (null != cursor) {
+            query.append("and (");
+            for (int i = 0; i < fields.size(); i++) {
+                query.append(i == 0 ? "(" : "or (");
+                for (int j = 0; j < i; j++) {
+                    query.append(fields.get(j) + " = ").param(keyValue(fields.get(j), cursor)).append("and ");
+                }
+                query.append(fields.get(i) + (key.get(fields.get(i)) ? " > " : " < "))
+                        .param(keyValue(fields.get(i), cursor)).append(") ");
+            }
+            query.append(") ");
+        }
+        query.append("order by " + fields.stream()
+                .map(f -> f + (key.get(f) ? " asc" : " desc"))
+                .collect(Collectors.joining(", ")));
+
+        Query page = build(query, projection);
+        if (pager.isLimited()) {
+            page.maxResults(pager.getPageSize());
+        }
+        List<IspnEvent> ispnEvents = list(page, projection);
+        int total = page.getResultSize();
+        String nextCursor = null;
+        if (pager.isLimited() && !ispnEvents.isEmpty() && total > ispnEvents.size()) {
+            IspnEvent last = ispnEvents.get(ispnEvents.size() - 1);
+            Map<String, String> lastKey = new LinkedHashMap<>();
+            fields.forEach(f -> lastKey.put(f, keyValue(f, last)));
+            nextCursor = PageCursor.encode(lastKey);
+        }
+        return new Page<>(ispnEvents.stream().map(mapper).collect(Collectors.toList()), pager, total, nextCursor);
+    }
+
+    private String keyValue(String field, IspnEvent ispnEvent) {
+        switch (field) {
+            case "ctime":
+                return String.valueOf(ispnEvent.getCtime());
+            case "stime":
+                return String.valueOf(ispnEvent.getStime());
+            case "triggerId":
+                return ispnEvent.getTriggerId();
+            case "tenantId":
+                return ispnEvent.getTenantId();
+            default:
+                return ispnEvent.getId();
+        }
+    }
+
+    private Object keyValue(String field, Map<String, String> cursor) {
+        String value = cursor.get(field);
+        if (null == value) {
+            throw new IllegalArgumentException("Invalid cursor, " + field + " must be not null");
+        }
+        if ("ctime".equals(field) || "stime".equals(field)) {
+            try {
+                return Long.valueOf(value);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid cursor, " + field + " must be a number");
+            }
+        }
+        return value;
+    }
+
     private Page<Alert> preparePage(List<Alert> alerts, Pager pager) {
         if (pager != null) {
             if (pager.getOrder() != null
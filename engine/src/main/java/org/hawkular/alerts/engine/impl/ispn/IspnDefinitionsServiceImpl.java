@@ -29,9 +29,11 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -41,6 +43,7 @@ import java.util.stream.Collectors;
 import org.hawkular.alerts.api.exception.FoundException;
 import org.hawkular.alerts.api.exception.NotFoundException;
 import org.hawkular.alerts.api.json.GroupMemberInfo;
+import org.hawkular.alerts.api.model.Severity;
 import org.hawkular.alerts.api.model.action.ActionDefinition;
 import org.hawkular.alerts.api.model.condition.AvailabilityCondition;
 import org.hawkular.alerts.api.model.condition.CompareCondition;
@@ -81,6 +84,7 @@ import org.hawkular.alerts.engine.impl.ispn.model.IspnDampening;
 import org.hawkular.alerts.engine.impl.ispn.model.IspnTrigger;
 import org.hawkular.alerts.engine.impl.ispn.model.TagsBridge;
 import org.hawkular.alerts.engine.service.AlertsEngine;
+import org.hawkular.alerts.engine.util.PageCursor;
 import org.hawkular.alerts.log.AlertingLogger;
 import org.hawkular.commons.log.MsgLogging;
 import org.infinispan.Cache;
@@ -723,21 +727,10 @@ public class IspnDefinitionsServiceImpl implements DefinitionsService {
 
         List<IspnTrigger> triggers;
         if (filter) {
-            StringBuilder query = new StringBuilder(
-                    "from org.hawkular.alerts.engine.impl.ispn.model.IspnTrigger where ");
-            query.append("tenantId = '").append(tenantId).append("' and ");
+            IspnQuery query = new IspnQuery(IspnTrigger.class);
+            query.append("tenantId = ").param(tenantId).append("and ");
             if (criteria.hasTriggerIdCriteria()) {
-                Set<String> triggerIds = filterByTriggers(criteria);
-                query.append("(");
-                Iterator<String> iter = triggerIds.iterator();
-                while (iter.hasNext()) {
-                    String triggerId = iter.next();
-                    query.append("triggerId = '").append(triggerId).append("' ");
-                    if (iter.hasNext()) {
-                        query.append("or ");
-                    }
-                }
-                query.append(") ");
+                query.in("triggerId", filterByTriggers(criteria));
                 if (criteria.hasTagCriteria()) {
                     query.append("and ");
                 }
@@ -748,24 +741,18 @@ public class IspnDefinitionsServiceImpl implements DefinitionsService {
                 Iterator<Map.Entry<String, String>> iter = tags.entrySet().iterator();
                 while (iter.hasNext()) {
                     Map.Entry<String, String> tag = iter.next();
-                    query.append("tags like '")
-                            .append(tag.getKey())
-                            .append(TagsBridge.VALUE)
-                            .append(tag.getValue().equals("*") ? "%" : tag.getValue())
-                            .append("' ");
+                    query.append("tags like '").append(tagLike(tag.getKey(), tag.getValue())).append("' ");
                     if (iter.hasNext()) {
                         query.append("or ");
                     }
                 }
                 query.append(") ");
             }
-            triggers = queryFactory.create(query.toString()).list();
+            triggers = query.build(queryFactory).list();
         } else {
-            triggers = queryFactory.from(IspnTrigger.class)
-                    .having("tenantId")
-                    .eq(tenantId)
-                    .build()
-                    .list();
+            triggers = new IspnQuery(IspnTrigger.class)
+                    .append("tenantId = ").param(tenantId)
+                    .build(queryFactory).list();
         }
         return prepareTriggersPage(triggers.stream().map(t -> t.getTrigger()).collect(Collectors.toList()), pager);
     }
@@ -773,10 +760,10 @@ public class IspnDefinitionsServiceImpl implements DefinitionsService {
     @Override
     public Collection<Trigger> getMemberTriggers(String tenantId, String groupId, boolean includeOrphans)
             throws Exception {
-        Collection<IspnTrigger> ispnTriggers = queryFactory.from(IspnTrigger.class)
-                .having("tenantId").eq(tenantId).and()
-                .having("memberOf").eq(groupId)
-                .build().list();
+        Collection<IspnTrigger> ispnTriggers = new IspnQuery(IspnTrigger.class)
+                .append("tenantId = ").param(tenantId)
+                .append("and memberOf = ").param(groupId)
+                .build(queryFactory).list();
         return ispnTriggers.stream()
                 .map(t -> t.getTrigger())
                 .filter(t -> includeOrphans || TriggerType.MEMBER == t.getType())
@@ -799,13 +786,9 @@ public class IspnDefinitionsServiceImpl implements DefinitionsService {
         if (isEmpty(value)) {
             throw new IllegalArgumentException("value must be not null (use '*' for all");
         }
-        StringBuilder query = new StringBuilder(
-                "from org.hawkular.alerts.engine.impl.ispn.model.IspnTrigger where tags like '")
-                        .append(name)
-                        .append(TagsBridge.VALUE)
-                        .append(value.equals("*") ? "%" : value)
-                        .append("'");
-        List<IspnTrigger> triggers = queryFactory.create(query.toString()).list();
+        List<IspnTrigger> triggers = new IspnQuery(IspnTrigger.class)
+                .append("tags like '").append(tagLike(name, value)).append("'")
+                .build(queryFactory).list();
         return triggers.stream().map(t -> t.getTrigger()).collect(Collectors.toList());
     }
 
@@ -1894,6 +1877,14 @@ public class IspnDefinitionsServiceImpl implements DefinitionsService {
         return trigger;
     }
 
+    /*
+        Pattern of a tags like comparison, a "*" value matches any value of the tag name. Ickle does not accept a
+        parameter in a like comparison, so the pattern is appended as a literal.
+     */
+    private String tagLike(String name, String value) {
+        return name + TagsBridge.VALUE + (value.equals("*") ? "%" : value);
+    }
+
     private Set<String> filterByTriggers(TriggersCriteria criteria) {
         Set<String> result = Collections.emptySet();
         if (isEmpty(criteria.getTriggerIds())) {
@@ -1916,8 +1907,12 @@ public class IspnDefinitionsServiceImpl implements DefinitionsService {
                 pager = Pager.builder()
                         .withPageSize(pager.getPageSize())
                         .withStartPage(pager.getPageNumber())
+                        .withCursor(pager.getCursor())
                         .orderBy(TriggerComparator.Field.NAME.getName(), Order.Direction.DESCENDING).build();
             }
+            if (pager.isCursor()) {
+                return cursorTriggersPage(triggers, pager);
+            }
             List<Trigger> ordered = triggers;
             if (pager.getOrder() != null) {
                 pager.getOrder()
@@ -1943,6 +1938,110 @@ public class IspnDefinitionsServiceImpl implements DefinitionsService {
         }
     }
 
+    /*
+        Triggers are sorted in memory, the cursor holds the values of the order fields and the id of the last trigger
+        of the page, and the next page starts after those values even if triggers were added or removed since.
+        The total is the number of triggers from the start of the page.
+     */
+    private Page<Trigger> cursorTriggersPage(List<Trigger> triggers, Pager pager) {
+        List<Order> orders = pager.getOrder().stream()
+                .filter(o -> o.getField() != null && o.getDirection() != null)
+                .collect(Collectors.toList());
+        Comparator<Trigger> comparator = null;
+        List<String> fields = new ArrayList<>();
+        for (int i = orders.size() - 1; i >= 0; i--) {
+            Order order = orders.get(i);
+            TriggerComparator byField = new TriggerComparator(order.getField(), order.getDirection());
+            comparator = null == comparator ? byField : comparator.thenComparing(byField);
+            if (!fields.contains(order.getField())) {
+                fields.add(order.getField());
+            }
+        }
+        TriggerComparator byId = new TriggerComparator(TriggerComparator.Field.ID.getName(),
+                Order.Direction.ASCENDING);
+        comparator = null == comparator ? byId : comparator.thenComparing(byId);
+        String idField = TriggerComparator.Field.ID.getName();
+        fields.remove(idField);
+        fields.add(idField);
+
+        List<Trigger> ordered = new ArrayList<>(triggers);
+        Collections.sort(ordered, comparator);
+        int start = 0;
+        Map<String, String> cursor = PageCursor.decode(pager.getCursor(), fields);
+        if (null != cursor) {
+            Trigger last = cursorTrigger(cursor);
+            while (start < ordered.size() && comparator.compare(ordered.get(start), last) <= 0) {
+                start++;
+            }
+        }
+        int end = pager.isLimited() ? Math.min(ordered.size(), start + pager.getPageSize()) : ordered.size();
+        String nextCursor = null;
+        if (end < ordered.size() && end > start) {
+            Trigger last = ordered.get(end - 1);
+            Map<String, String> lastKey = new LinkedHashMap<>();
+            fields.forEach(f -> lastKey.put(f, cursorValue(f, last)));
+            nextCursor = PageCursor.encode(lastKey);
+        }
+        return new Page<>(new ArrayList<>(ordered.subList(start, end)), pager, ordered.size() - start, nextCursor);
+    }
+
+    private String cursorValue(String field, Trigger trigger) {
+        switch (TriggerComparator.Field.getField(field)) {
+            case ID:
+                return trigger.getId();
+            case DESCRIPTION:
+                return trigger.getDescription();
+            case ENABLED:
+                return String.valueOf(trigger.isEnabled());
+            case SEVERITY:
+                return null == trigger.getSeverity() ? null : trigger.getSeverity().name();
+            case CONTEXT:
+                return null == trigger.getContext() ? null
+                        : trigger.getContext().get(TriggerComparator.Field.getContextKey(field));
+            default:
+                return trigger.getName();
+        }
+    }
+
+    /*
+        A trigger holding the values of the cursor, to compare it with the ordered triggers.
+     */
+    private Trigger cursorTrigger(Map<String, String> cursor) {
+        String idField = TriggerComparator.Field.ID.getName();
+        if (isEmpty(cursor.get(idField))) {
+            throw new IllegalArgumentException("Invalid cursor, id must be not null");
+        }
+        Trigger trigger = new Trigger(null, cursor.get(idField), null, new HashMap<>());
+        for (Entry<String, String> entry : cursor.entrySet()) {
+            String value = entry.getValue();
+            switch (TriggerComparator.Field.getField(entry.getKey())) {
+                case DESCRIPTION:
+                    trigger.setDescription(value);
+                    break;
+                case ENABLED:
+                    trigger.setEnabled(Boolean.parseBoolean(value));
+                    break;
+                case SEVERITY:
+                    try {
+                        trigger.setSeverity(null == value ? null : Severity.valueOf(value));
+                    } catch (IllegalArgumentException e) {
+                        throw new IllegalArgumentException("Invalid cursor, unknown severity " + value);
+                    }
+                    break;
+                case CONTEXT:
+                    if (null != value) {
+                        trigger.getContext().put(TriggerComparator.Field.getContextKey(entry.getKey()), value);
+                    }
+                    break;
+                case NAME:
+                    trigger.setName(value);
+                    break;
+                default:
+            }
+        }
+        return trigger;
+    }
+
     private Trigger copyGroupTrigger(Trigger group, Trigger member, boolean isNewMember) {
         member.setActions(group.getActions());
         member.setAutoDisable(group.isAutoDisable());
@@ -22,6 +22,7 @@ import org.hawkular.alerts.api.model.condition.Condition;
 import org.hawkular.alerts.api.model.dampening.Dampening;
 import org.hawkular.alerts.api.model.event.Event;
 import org.hawkular.alerts.api.model.trigger.Trigger;
+import org.hawkular.alerts.engine.impl.ispn.model.IspnTriggerSnapshot;
 
 /**
  * @author Jay Shaughnessy
@@ -143,4 +144,33 @@ public class IspnPk {
                 .append(eventId)
                 .toString();
     }
+
+    public static String pkFromTriggerState(String tenantId, String triggerId) {
+        if (tenantId == null || triggerId == null) {
+            return null;
+        }
+        return new StringBuilder("TriggerState-")
+                .append(tenantId)
+                .append("-")
+                .append(triggerId)
+                .toString();
+    }
+
+    public static String pk(IspnTriggerSnapshot snapshot) {
+        if (snapshot == null) {
+            return null;
+        }
+        return pkFromTriggerSnapshot(snapshot.getTenantId(), snapshot.getSnapshotId());
+    }
+
+    public static String pkFromTriggerSnapshot(String tenantId, String snapshotId) {
+        if (tenantId == null || snapshotId == null) {
+            return null;
+        }
+        return new StringBuilder("TriggerSnapshot-")
+                .append(tenantId)
+                .append("-")
+                .append(snapshotId)
+                .toString();
+    }
 }
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.alerts.engine.impl.ispn;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.infinispan.query.dsl.Query;
+import org.infinispan.query.dsl.QueryFactory;
+
+/**
+ * Builder of Ickle queries where the values are passed as named parameters instead of concatenated literals.
+ *
+ * The text of a query only depends on its shape (fields, operators and number of values), so Infinispan can reuse
+ * the parsed query from its query cache across calls with different values. Query instances are not reused as they
+ * hold the parameters and the paging of a single execution.
+ *
+ * @author Jay Shaughnessy
+ * @author Lucas Ponce
+ */
+class IspnQuery {
+
+    private final StringBuilder ickle;
+
+    private final Map<String, Object> params = new LinkedHashMap<>();
+
+    IspnQuery(Class<?> entity) {
+        ickle = new StringBuilder("from ").append(entity.getName()).append(" where ");
+    }
+
+    /**
+     * A copy of the query, to be extended without modifying the original.
+     * @param query the query to copy
+     */
+    IspnQuery(IspnQuery query) {
+        ickle = new StringBuilder(query.ickle);
+        params.putAll(query.params);
+    }
+
+    IspnQuery append(String text) {
+        ickle.append(text);
+        return this;
+    }
+
+    /**
+     * Append a named parameter holding the value.
+     * @param value the value of the parameter
+     * @return this query
+     */
+    IspnQuery param(Object value) {
+        String name = "p" + params.size();
+        params.put(name, value);
+        ickle.append(":").append(name).append(" ");
+        return this;
+    }
+
+    /**
+     * Append "(field = :p0 or field = :p1 ...) ", an exploded "in" clause as the actual one seems not to work.
+     * @param field the field to compare
+     * @param values the values, not empty
+     * @return this query
+     */
+    IspnQuery in(String field, Collection<?> values) {
+        ickle.append("(");
+        Iterator<?> iter = values.iterator();
+        while (iter.hasNext()) {
+            ickle.append(field).append(" = ");
+            param(iter.next());
+            if (iter.hasNext()) {
+                ickle.append("or ");
+            }
+        }
+        ickle.append(") ");
+        return this;
+    }
+
+    String getIckle() {
+        return ickle.toString();
+    }
+
+    Map<String, Object> getParams() {
+        return params;
+    }
+
+    Query build(QueryFactory queryFactory) {
+        return build(queryFactory, null);
+    }
+
+    /**
+     * @param queryFactory the factory of the cache to query
+     * @param select projection of the query, or null to return the entities
+     * @return a new query with the parameters set
+     */
+    Query build(QueryFactory queryFactory, String select) {
+        Query query = queryFactory.create(null == select ? ickle.toString() : "select " + select + " " + ickle);
+        params.forEach(query::setParameter);
+        return query;
+    }
+
+    @Override
+    public String toString() {
+        return "IspnQuery [ickle=" + ickle + ", params=" + params + "]";
+    }
+}
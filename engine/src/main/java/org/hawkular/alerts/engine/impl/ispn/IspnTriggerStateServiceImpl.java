@@ -0,0 +1,124 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.alerts.engine.impl.ispn;
+
+import static org.hawkular.alerts.api.util.Util.isEmpty;
+import static org.hawkular.alerts.engine.impl.ispn.IspnPk.pkFromTriggerState;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.hawkular.alerts.cache.IspnCacheManager;
+import org.hawkular.alerts.engine.impl.ispn.model.IspnTriggerState;
+import org.hawkular.alerts.engine.service.TriggerStateService;
+import org.hawkular.alerts.engine.util.TriggerState;
+import org.hawkular.alerts.log.AlertingLogger;
+import org.hawkular.commons.log.MsgLogging;
+import org.infinispan.Cache;
+import org.infinispan.query.Search;
+import org.infinispan.query.dsl.QueryFactory;
+
+/**
+ * Infinispan implementation of {@link org.hawkular.alerts.engine.service.TriggerStateService}.
+ *
+ * @author Jay Shaughnessy
+ * @author Lucas Ponce
+ */
+public class IspnTriggerStateServiceImpl implements TriggerStateService {
+    private final AlertingLogger log = MsgLogging.getMsgLogger(AlertingLogger.class,
+            IspnTriggerStateServiceImpl.class);
+
+    Cache<String, Object> backend;
+
+    QueryFactory queryFactory;
+
+    public void init() {
+        backend = IspnCacheManager.getCacheManager().getCache("backend");
+        if (backend == null) {
+            log.error("Ispn backend cache not found. Check configuration.");
+            throw new RuntimeException("backend cache not found");
+        }
+        queryFactory = Search.getQueryFactory(backend);
+    }
+
+    @Override
+    public Map<String, TriggerState> getTriggerStates(String tenantId) throws Exception {
+        if (isEmpty(tenantId)) {
+            throw new IllegalArgumentException("TenantId must be not null");
+        }
+        List<IspnTriggerState> ispnTriggerStates = queryFactory.from(IspnTriggerState.class)
+                .having("tenantId").eq(tenantId)
+                .build().list();
+        Map<String, TriggerState> states = new HashMap<>();
+        for (IspnTriggerState ispnTriggerState : ispnTriggerStates) {
+            states.put(ispnTriggerState.getTriggerId(), ispnTriggerState.getTriggerState());
+        }
+        return states;
+    }
+
+    @Override
+    public TriggerState getTriggerState(String tenantId, String triggerId) throws Exception {
+        if (isEmpty(tenantId)) {
+            throw new IllegalArgumentException("TenantId must be not null");
+        }
+        if (isEmpty(triggerId)) {
+            throw new IllegalArgumentException("TriggerId must be not null");
+        }
+        IspnTriggerState ispnTriggerState = (IspnTriggerState) backend.get(pkFromTriggerState(tenantId, triggerId));
+        return null == ispnTriggerState ? null : ispnTriggerState.getTriggerState();
+    }
+
+    @Override
+    public void putTriggerStates(Collection<TriggerState> states) throws Exception {
+        if (isEmpty(states)) {
+            return;
+        }
+        try {
+            backend.startBatch();
+            for (TriggerState state : states) {
+                backend.put(pkFromTriggerState(state.getTenantId(), state.getTriggerId()),
+                        new IspnTriggerState(state));
+            }
+            backend.endBatch(true);
+        } catch (Exception e) {
+            backend.endBatch(false);
+            throw e;
+        }
+    }
+
+    @Override
+    public void removeTriggerStates(Map<String, Collection<String>> triggerIds) throws Exception {
+        if (isEmpty(triggerIds)) {
+            return;
+        }
+        try {
+            backend.startBatch();
+            for (Entry<String, Collection<String>> entry : triggerIds.entrySet()) {
+                for (String triggerId : entry.getValue()) {
+                    backend.remove(pkFromTriggerState(entry.getKey(), triggerId));
+                }
+            }
+            backend.endBatch(true);
+        } catch (Exception e) {
+            backend.endBatch(false);
+            throw e;
+        }
+    }
+}
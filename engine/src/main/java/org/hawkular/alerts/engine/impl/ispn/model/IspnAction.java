@@ -34,15 +34,19 @@ import org.hibernate.search.annotations.Store;
 @Indexed(index = "action")
 public class IspnAction implements Serializable {
     @Field(store = Store.YES, analyze = Analyze.NO)
+    @SortableField
     private String tenantId;
 
     @Field(store = Store.YES, analyze = Analyze.NO)
+    @SortableField
     private String actionPlugin;
 
     @Field(store = Store.YES, analyze = Analyze.NO)
+    @SortableField
     private String actionId;
 
     @Field(store = Store.YES, analyze = Analyze.NO)
+    @SortableField
     private String eventId;
 
     @Field(store = Store.YES, analyze = Analyze.NO)
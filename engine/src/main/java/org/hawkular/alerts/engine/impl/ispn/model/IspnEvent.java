@@ -17,16 +17,27 @@
 package org.hawkular.alerts.engine.impl.ispn.model;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
+import org.hawkular.alerts.api.json.JsonUtil;
+import org.hawkular.alerts.api.model.Severity;
 import org.hawkular.alerts.api.model.event.Alert;
+import org.hawkular.alerts.api.model.event.Alert.LifeCycle;
+import org.hawkular.alerts.api.model.event.Alert.Status;
 import org.hawkular.alerts.api.model.event.Event;
+import org.hawkular.alerts.api.model.event.EventType;
+import org.hawkular.alerts.api.model.trigger.Trigger;
 import org.hibernate.search.annotations.Analyze;
 import org.hibernate.search.annotations.Analyzer;
 import org.hibernate.search.annotations.Field;
 import org.hibernate.search.annotations.FieldBridge;
+import org.hibernate.search.annotations.Index;
 import org.hibernate.search.annotations.Indexed;
+import org.hibernate.search.annotations.SortableField;
 import org.hibernate.search.annotations.Store;
 
 /**
@@ -36,13 +47,27 @@ import org.hibernate.search.annotations.Store;
 @Indexed(index = "event")
 public class IspnEvent implements Serializable {
 
+    /**
+     * Stored index fields read by projection queries, see {@link #fromProjection(Object[])}.
+     */
+    public static final String PROJECTION = "tenantId, id, eventType, triggerId, ctime, category, status, stime, "
+            + "severity, projectedTags";
+
+    /**
+     * Events and alerts are grouped in daily buckets by ctime. Retention drops whole buckets, and queries on a ctime
+     * range are restricted to the overlapping buckets.
+     */
+    public static final long BUCKET_SIZE = TimeUnit.DAYS.toMillis(1);
+
     @Field(store = Store.YES, analyze = Analyze.NO)
     private String eventType;
 
     @Field(store = Store.YES, analyze = Analyze.NO)
+    @SortableField
     private String tenantId;
 
     @Field(store = Store.YES, analyze = Analyze.NO)
+    @SortableField
     private String id;
 
     @Field(store = Store.YES, analyze = Analyze.YES)
@@ -51,15 +76,22 @@ public class IspnEvent implements Serializable {
     private Map<String, String> tags;
 
     @Field(store = Store.YES, analyze = Analyze.NO)
+    @SortableField
     private String triggerId;
 
     @Field(store = Store.YES, analyze = Analyze.NO)
+    @SortableField
     private long ctime;
 
+    @Field(store = Store.YES, analyze = Analyze.NO)
+    @SortableField
+    private long bucket;
+
     @Field(store = Store.YES, analyze = Analyze.NO)
     private String status;
 
     @Field(store = Store.YES, analyze = Analyze.NO)
+    @SortableField
     private long stime;
 
     @Field(store = Store.YES, analyze = Analyze.NO)
@@ -68,6 +100,16 @@ public class IspnEvent implements Serializable {
     @Field(store = Store.YES, analyze = Analyze.NO)
     private String category;
 
+    @Field(store = Store.YES, analyze = Analyze.NO)
+    private String snapshotId;
+
+    /*
+        The tags field is indexed as one token per tag, so the tags are also stored, not indexed, as a single json
+        value to be read by projections.
+     */
+    @Field(store = Store.YES, index = Index.NO, analyze = Analyze.NO)
+    private String projectedTags;
+
     private Event event;
 
     public IspnEvent() {
@@ -77,6 +119,89 @@ public class IspnEvent implements Serializable {
         updateEvent(event);
     }
 
+    /**
+     * Store the event without its Trigger and Dampening, referencing instead a shared {@link IspnTriggerSnapshot}.
+     * The index fields are still taken from the full event. {@link #getEvent()} returns the event without Trigger
+     * and Dampening until they are restored from the snapshot.
+     * @param event the event
+     * @param snapshotId the snapshotId of the IspnTriggerSnapshot holding the Trigger and Dampening of the event
+     */
+    public IspnEvent(Event event, String snapshotId) {
+        updateEvent(event);
+        if (null != snapshotId) {
+            this.snapshotId = snapshotId;
+            this.event.setTrigger(null);
+            this.event.setDampening(null);
+        }
+    }
+
+    /**
+     * Build a thin Event or Alert from a {@link #PROJECTION} row, without loading the stored value.
+     * Only tenantId, id, trigger id, ctime, category, tags and, for Alerts, status, stime and severity are set. The
+     * Trigger holds only its id, and the lifecycle of an Alert only its current status.
+     * @param row the projected fields
+     * @return the thin Event or Alert
+     */
+    public static Event fromProjection(Object[] row) {
+        String tenantId = (String) row[0];
+        Event event;
+        if (EventType.ALERT.name().equals(row[2])) {
+            Alert alert = new Alert();
+            Status status = Status.valueOf((String) row[6]);
+            alert.setLifecycle(new ArrayList<>(Collections.singletonList(
+                    new LifeCycle(status, null, (Long) row[7]))));
+            alert.setStatus(status);
+            alert.setSeverity(Severity.valueOf((String) row[8]));
+            event = alert;
+        } else {
+            event = new Event();
+        }
+        event.setTenantId(tenantId);
+        event.setId((String) row[1]);
+        event.setEventType((String) row[2]);
+        if (null != row[3]) {
+            event.setTrigger(new Trigger(tenantId, (String) row[3], (String) null));
+        }
+        event.setCtime((Long) row[4]);
+        event.setCategory((String) row[5]);
+        if (null != row[9]) {
+            event.setTags(JsonUtil.fromJson((String) row[9], Map.class));
+        }
+        return event;
+    }
+
+    /**
+     * Build an IspnEvent holding the index fields and the thin Event or Alert of a {@link #PROJECTION} row, see
+     * {@link #fromProjection(Object[])}. It has no snapshotId, so the thin event is returned as is.
+     * @param row the projected fields
+     * @return the IspnEvent of the row
+     */
+    public static IspnEvent ofProjection(Object[] row) {
+        IspnEvent ispnEvent = new IspnEvent();
+        ispnEvent.event = fromProjection(row);
+        ispnEvent.tenantId = (String) row[0];
+        ispnEvent.id = (String) row[1];
+        ispnEvent.eventType = (String) row[2];
+        ispnEvent.triggerId = (String) row[3];
+        ispnEvent.ctime = (Long) row[4];
+        ispnEvent.bucket = bucket(ispnEvent.ctime);
+        ispnEvent.category = (String) row[5];
+        ispnEvent.status = (String) row[6];
+        ispnEvent.stime = null == row[7] ? 0 : (Long) row[7];
+        ispnEvent.severity = (String) row[8];
+        ispnEvent.tags = ispnEvent.event.getTags();
+        ispnEvent.projectedTags = (String) row[9];
+        return ispnEvent;
+    }
+
+    /**
+     * @param ctime the ctime of an event
+     * @return the start time of the bucket holding the events with this ctime
+     */
+    public static long bucket(long ctime) {
+        return ctime - Math.floorMod(ctime, BUCKET_SIZE);
+    }
+
     private void updateEvent(Event event) {
         if (event == null) {
             throw new IllegalArgumentException("event must be not null");
@@ -93,9 +218,12 @@ public class IspnEvent implements Serializable {
         this.eventType = event.getEventType();
         this.tenantId = event.getTenantId();
         this.tags = new HashMap<>(this.event.getTags());
+        this.projectedTags = this.tags.isEmpty() ? null : JsonUtil.toJson(this.tags);
         this.triggerId = event.getTrigger() != null ? event.getTrigger().getId() : null;
         this.ctime = event.getCtime();
+        this.bucket = bucket(ctime);
         this.category = event.getCategory();
+        this.snapshotId = null;
     }
 
     public String getEventType() {
@@ -120,6 +248,7 @@ public class IspnEvent implements Serializable {
 
     public void setTags(Map<String, String> tags) {
         this.tags = new HashMap<>(tags);
+        this.projectedTags = this.tags.isEmpty() ? null : JsonUtil.toJson(this.tags);
     }
 
     public String getId() {
@@ -141,6 +270,13 @@ public class IspnEvent implements Serializable {
         updateEvent(event);
     }
 
+    /*
+        The stored instance, not a copy, for the externalizer.
+     */
+    Event getStoredEvent() {
+        return event;
+    }
+
     public String getTriggerId() {
         return triggerId;
     }
@@ -155,6 +291,11 @@ public class IspnEvent implements Serializable {
 
     public void setCtime(long ctime) {
         this.ctime = ctime;
+        this.bucket = bucket(ctime);
+    }
+
+    public long getBucket() {
+        return bucket;
     }
 
     public String getStatus() {
@@ -189,6 +330,14 @@ public class IspnEvent implements Serializable {
         this.category = category;
     }
 
+    public String getSnapshotId() {
+        return snapshotId;
+    }
+
+    public void setSnapshotId(String snapshotId) {
+        this.snapshotId = snapshotId;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -206,6 +355,8 @@ public class IspnEvent implements Serializable {
         if (status != null ? !status.equals(ispnEvent.status) : ispnEvent.status != null) return false;
         if (severity != null ? !severity.equals(ispnEvent.severity) : ispnEvent.severity != null) return false;
         if (category != null ? !category.equals(ispnEvent.category) : ispnEvent.category != null) return false;
+        if (snapshotId != null ? !snapshotId.equals(ispnEvent.snapshotId) : ispnEvent.snapshotId != null)
+            return false;
         return event != null ? event.equals(ispnEvent.event) : ispnEvent.event == null;
     }
 
@@ -221,6 +372,7 @@ public class IspnEvent implements Serializable {
         result = 31 * result + (int) (stime ^ (stime >>> 32));
         result = 31 * result + (severity != null ? severity.hashCode() : 0);
         result = 31 * result + (category != null ? category.hashCode() : 0);
+        result = 31 * result + (snapshotId != null ? snapshotId.hashCode() : 0);
         result = 31 * result + (event != null ? event.hashCode() : 0);
         return result;
     }
@@ -234,10 +386,12 @@ public class IspnEvent implements Serializable {
                 ", tags=" + tags +
                 ", triggerId='" + triggerId + '\'' +
                 ", ctime=" + ctime +
+                ", bucket=" + bucket +
                 ", status='" + status + '\'' +
                 ", stime=" + stime +
                 ", severity='" + severity + '\'' +
                 ", category='" + category + '\'' +
+                ", snapshotId='" + snapshotId + '\'' +
                 ", event=" + event +
                 '}';
     }
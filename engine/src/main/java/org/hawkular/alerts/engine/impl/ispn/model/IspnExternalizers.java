@@ -0,0 +1,172 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.alerts.engine.impl.ispn.model;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.Collections;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import org.hawkular.alerts.api.json.JsonUtil;
+import org.hawkular.alerts.api.model.action.Action;
+import org.hawkular.alerts.api.model.event.Event;
+import org.infinispan.commons.io.UnsignedNumeric;
+import org.infinispan.commons.marshall.AbstractExternalizer;
+
+/**
+ * Infinispan externalizers for the high volume values of the backend cache: events, alerts and actions history.
+ *
+ * Values are written as a format version followed by the deflated JSON representation of the wrapped Event or
+ * Action, the same representation used by the REST API, instead of the Java serialization of the whole object graph.
+ * The nested Trigger, Dampening and evaluations repeat the same structure in every value, so they compress well.
+ * The index fields are derived from the wrapped value when it is read.
+ *
+ * Externalizers are registered in the serialization section of the cache container configuration. Values written
+ * before the registration are still read with the default marshaller, and can be rewritten in this format with
+ * the hawkular-alerts.backend-rewrite option.
+ *
+ * @author Jay Shaughnessy
+ * @author Lucas Ponce
+ */
+public class IspnExternalizers {
+
+    /*
+        1: deflated json of the wrapped value
+        2: IspnEvent adds its snapshotId and triggerId, as the stored event may not hold its Trigger
+     */
+    public static final int FORMAT_VERSION = 2;
+
+    public static final int ISPN_EVENT_ID = 20100;
+    public static final int ISPN_ACTION_ID = 20101;
+
+    public static class IspnEventExternalizer extends AbstractExternalizer<IspnEvent> {
+
+        @Override
+        public Set<Class<? extends IspnEvent>> getTypeClasses() {
+            return Collections.singleton(IspnEvent.class);
+        }
+
+        @Override
+        public Integer getId() {
+            return ISPN_EVENT_ID;
+        }
+
+        @Override
+        public void writeObject(ObjectOutput output, IspnEvent ispnEvent) throws IOException {
+            output.writeByte(FORMAT_VERSION);
+            writeString(output, ispnEvent.getSnapshotId());
+            writeString(output, ispnEvent.getTriggerId());
+            writeJson(output, JsonUtil.toJson(ispnEvent.getStoredEvent()));
+        }
+
+        @Override
+        public IspnEvent readObject(ObjectInput input) throws IOException, ClassNotFoundException {
+            int version = readVersion(input, IspnEvent.class);
+            if (version == 1) {
+                return new IspnEvent(JsonUtil.fromJson(readJson(input), Event.class));
+            }
+            String snapshotId = readString(input);
+            String triggerId = readString(input);
+            IspnEvent ispnEvent = new IspnEvent(JsonUtil.fromJson(readJson(input), Event.class));
+            ispnEvent.setSnapshotId(snapshotId);
+            ispnEvent.setTriggerId(triggerId);
+            return ispnEvent;
+        }
+    }
+
+    public static class IspnActionExternalizer extends AbstractExternalizer<IspnAction> {
+
+        @Override
+        public Set<Class<? extends IspnAction>> getTypeClasses() {
+            return Collections.singleton(IspnAction.class);
+        }
+
+        @Override
+        public Integer getId() {
+            return ISPN_ACTION_ID;
+        }
+
+        @Override
+        public void writeObject(ObjectOutput output, IspnAction ispnAction) throws IOException {
+            output.writeByte(FORMAT_VERSION);
+            writeJson(output, JsonUtil.toJson(ispnAction.getAction()));
+        }
+
+        @Override
+        public IspnAction readObject(ObjectInput input) throws IOException, ClassNotFoundException {
+            readVersion(input, IspnAction.class);
+            return new IspnAction(JsonUtil.fromJson(readJson(input), Action.class));
+        }
+    }
+
+    private static int readVersion(ObjectInput input, Class<?> type) throws IOException {
+        int version = input.readUnsignedByte();
+        if (version < 1 || version > FORMAT_VERSION) {
+            throw new IOException("Unsupported format version [" + version + "] for " + type.getSimpleName());
+        }
+        return version;
+    }
+
+    private static void writeString(ObjectOutput output, String value) throws IOException {
+        output.writeBoolean(null != value);
+        if (null != value) {
+            output.writeUTF(value);
+        }
+    }
+
+    private static String readString(ObjectInput input) throws IOException {
+        return input.readBoolean() ? input.readUTF() : null;
+    }
+
+    private static void writeJson(ObjectOutput output, String json) throws IOException {
+        byte[] bytes = json.getBytes(UTF_8);
+        ByteArrayOutputStream deflated = new ByteArrayOutputStream(bytes.length / 4 + 16);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (DeflaterOutputStream out = new DeflaterOutputStream(deflated, deflater)) {
+            out.write(bytes);
+        } finally {
+            deflater.end();
+        }
+        UnsignedNumeric.writeUnsignedInt(output, bytes.length);
+        UnsignedNumeric.writeUnsignedInt(output, deflated.size());
+        output.write(deflated.toByteArray());
+    }
+
+    private static String readJson(ObjectInput input) throws IOException {
+        byte[] bytes = new byte[UnsignedNumeric.readUnsignedInt(input)];
+        byte[] deflated = new byte[UnsignedNumeric.readUnsignedInt(input)];
+        input.readFully(deflated);
+        Inflater inflater = new Inflater();
+        try (DataInputStream in = new DataInputStream(
+                new InflaterInputStream(new ByteArrayInputStream(deflated), inflater))) {
+            in.readFully(bytes);
+        } finally {
+            inflater.end();
+        }
+        return new String(bytes, UTF_8);
+    }
+}
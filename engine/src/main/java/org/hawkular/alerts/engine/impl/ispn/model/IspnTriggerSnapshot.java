@@ -0,0 +1,137 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.alerts.engine.impl.ispn.model;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.Serializable;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.hawkular.alerts.api.json.JsonUtil;
+import org.hawkular.alerts.api.model.dampening.Dampening;
+import org.hawkular.alerts.api.model.trigger.Trigger;
+import org.hibernate.search.annotations.Analyze;
+import org.hibernate.search.annotations.Field;
+import org.hibernate.search.annotations.Indexed;
+import org.hibernate.search.annotations.Store;
+
+/**
+ * A Trigger and Dampening as they were when an Event or Alert was generated. Events and Alerts generated by the
+ * same version of a trigger share a single snapshot, referenced by its snapshotId, a hash of its content.
+ *
+ * @author Jay Shaughnessy
+ * @author Lucas Ponce
+ */
+@Indexed(index = "triggerSnapshot")
+public class IspnTriggerSnapshot implements Serializable {
+
+    @Field(store = Store.YES, analyze = Analyze.NO)
+    private String tenantId;
+
+    @Field(store = Store.YES, analyze = Analyze.NO)
+    private String triggerId;
+
+    @Field(store = Store.YES, analyze = Analyze.NO)
+    private String snapshotId;
+
+    private Trigger trigger;
+
+    private Dampening dampening;
+
+    public IspnTriggerSnapshot() {
+    }
+
+    public IspnTriggerSnapshot(String tenantId, Trigger trigger, Dampening dampening) {
+        if (null == trigger) {
+            throw new IllegalArgumentException("trigger must be not null");
+        }
+        this.tenantId = tenantId;
+        this.triggerId = trigger.getId();
+        this.trigger = trigger;
+        this.dampening = dampening;
+        this.snapshotId = snapshotId(trigger, dampening);
+    }
+
+    /*
+        The mode of the trigger is not part of its json representation.
+     */
+    private static String snapshotId(Trigger trigger, Dampening dampening) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(JsonUtil.toJson(trigger).getBytes(UTF_8));
+            digest.update(String.valueOf(trigger.getMode()).getBytes(UTF_8));
+            if (null != dampening) {
+                digest.update(JsonUtil.toJson(dampening).getBytes(UTF_8));
+            }
+            byte[] hash = digest.digest();
+            StringBuilder id = new StringBuilder();
+            for (int i = 0; i < 16; i++) {
+                id.append(String.format("%02x", hash[i]));
+            }
+            return id.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public String getTenantId() {
+        return tenantId;
+    }
+
+    public void setTenantId(String tenantId) {
+        this.tenantId = tenantId;
+    }
+
+    public String getTriggerId() {
+        return triggerId;
+    }
+
+    public void setTriggerId(String triggerId) {
+        this.triggerId = triggerId;
+    }
+
+    public String getSnapshotId() {
+        return snapshotId;
+    }
+
+    public void setSnapshotId(String snapshotId) {
+        this.snapshotId = snapshotId;
+    }
+
+    public Trigger getTrigger() {
+        return trigger;
+    }
+
+    public void setTrigger(Trigger trigger) {
+        this.trigger = trigger;
+    }
+
+    public Dampening getDampening() {
+        return dampening;
+    }
+
+    public void setDampening(Dampening dampening) {
+        this.dampening = dampening;
+    }
+
+    @Override
+    public String toString() {
+        return "IspnTriggerSnapshot [tenantId=" + tenantId + ", triggerId=" + triggerId + ", snapshotId="
+                + snapshotId + "]";
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.alerts.engine.impl.ispn.model;
+
+import java.io.Serializable;
+
+import org.hawkular.alerts.engine.util.TriggerState;
+import org.hibernate.search.annotations.Analyze;
+import org.hibernate.search.annotations.Field;
+import org.hibernate.search.annotations.Indexed;
+import org.hibernate.search.annotations.Store;
+
+/**
+ * @author Jay Shaughnessy
+ * @author Lucas Ponce
+ */
+@Indexed(index = "triggerState")
+public class IspnTriggerState implements Serializable {
+
+    @Field(store = Store.YES, analyze = Analyze.NO)
+    private String tenantId;
+
+    @Field(store = Store.YES, analyze = Analyze.NO)
+    private String triggerId;
+
+    private TriggerState triggerState;
+
+    public IspnTriggerState() {
+    }
+
+    public IspnTriggerState(TriggerState triggerState) {
+        if (null == triggerState) {
+            throw new IllegalArgumentException("triggerState must be not null");
+        }
+        this.triggerState = triggerState;
+        this.tenantId = triggerState.getTenantId();
+        this.triggerId = triggerState.getTriggerId();
+    }
+
+    public String getTenantId() {
+        return tenantId;
+    }
+
+    public void setTenantId(String tenantId) {
+        this.tenantId = tenantId;
+    }
+
+    public String getTriggerId() {
+        return triggerId;
+    }
+
+    public void setTriggerId(String triggerId) {
+        this.triggerId = triggerId;
+    }
+
+    public TriggerState getTriggerState() {
+        return triggerState;
+    }
+
+    public void setTriggerState(TriggerState triggerState) {
+        this.triggerState = triggerState;
+    }
+
+    @Override
+    public String toString() {
+        return "IspnTriggerState [tenantId=" + tenantId + ", triggerId=" + triggerId + ", triggerState="
+                + triggerState + "]";
+    }
+}
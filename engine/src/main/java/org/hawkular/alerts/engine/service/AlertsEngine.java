@@ -16,6 +16,7 @@
  */
 package org.hawkular.alerts.engine.service;
 
+import java.util.Map;
 import java.util.TreeSet;
 
 import org.hawkular.alerts.api.model.data.Data;
@@ -44,6 +45,7 @@ public interface AlertsEngine {
 
     /**
      * Send data into the alerting system for evaluation. This method has LockType.READ.
+     * The data is buffered by reference, it must not be modified after this call.
      *
      * @param data Not Null.  The data to be evaluated by the alerting engine.
      * @throws Exception any problem.
@@ -52,7 +54,7 @@ public interface AlertsEngine {
 
     /**
      * Send event into the alerting system for evaluation. Events are persisted after inference.
-     * This method has LockType.READ.
+     * This method has LockType.READ. The events are buffered by reference, they must not be modified after this call.
      *
      * @param events Not Null. The events to be evaluated and persisted by the alerting engine.
      * @throws Exception any problem
@@ -61,9 +63,30 @@ public interface AlertsEngine {
 
     /**
      * Reload all Triggers.
+     * Triggers are loaded asynchronously by tenant, the engine evaluates the tenants already loaded while the rest
+     * are still loading. Progress is available via {@link #getReloadStatus()}.
      */
     void reload();
 
+    /**
+     * @return Map with the progress of the last reload: "reload-status" (NONE, LOADING or LOADED), totals and loaded
+     *         counters of tenants and triggers, "reload-elapsed-ms" and, while loading, an estimated "reload-eta-ms"
+     */
+    Map<String, String> getReloadStatus();
+
+    /**
+     * Take a snapshot of the facts loaded in the rules engine. The snapshot is taken between rules firings.
+     *
+     * @return Map of tenantId to the number of facts by type, see {@link RulesEngine#getFactsSnapshot()}
+     * @throws Exception if the snapshot could not be taken
+     */
+    Map<String, Map<String, Long>> getFactsSnapshot() throws Exception;
+
+    /**
+     * @return Number of data and events sent to the engine and not yet drained by the rules invoker
+     */
+    int getPendingSize();
+
     /**
      * Notify AlertsEngine that a new trigger is going to be loaded.
      * This method is used for distributed scenarios, where the AlertsEngine can distribute the trigger on a node.
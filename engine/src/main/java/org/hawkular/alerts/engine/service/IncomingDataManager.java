@@ -16,6 +16,8 @@
  */
 package org.hawkular.alerts.engine.service;
 
+import java.util.Map;
+
 import org.hawkular.alerts.engine.impl.IncomingDataManagerImpl.IncomingData;
 import org.hawkular.alerts.engine.impl.IncomingDataManagerImpl.IncomingEvents;
 
@@ -27,8 +29,21 @@ import org.hawkular.alerts.engine.impl.IncomingDataManagerImpl.IncomingEvents;
  */
 public interface IncomingDataManager {
 
+    /**
+     * @param incomingData Data to be processed asynchronously
+     * @throws org.hawkular.alerts.api.exception.OverloadedException if the admission limits are reached
+     */
     void bufferData(IncomingData incomingData);
 
+    /**
+     * @param incomingEvents Events to be processed asynchronously
+     * @throws org.hawkular.alerts.api.exception.OverloadedException if the admission limits are reached
+     */
     void bufferEvents(IncomingEvents incomingEvents);
 
+    /**
+     * @return Map with the buffering counters: pending requests and bytes, accepted and rejected data/events
+     */
+    Map<String, String> getStatus();
+
 }
@@ -18,9 +18,11 @@ package org.hawkular.alerts.engine.service;
 
 import java.util.Collection;
 import java.util.Map;
+import java.util.Set;
 
 import org.hawkular.alerts.api.model.data.Data;
 import org.hawkular.alerts.api.model.event.Event;
+import org.hawkular.alerts.engine.util.TriggerState;
 
 /**
  * Interface that defines an abstract API with the clustering services used by the engine.
@@ -94,6 +96,15 @@ public interface PartitionManager {
      */
     void notifyTrigger(Operation operation, String tenantId, String triggerId);
 
+    /**
+     * Hand the evaluation state of the triggers removed from this node on a partition change to their new owners,
+     * which continue the evaluation where this node stopped.
+     * {@see PartitionTriggerListener#onTriggerStates}
+     *
+     * @param states the evaluation state of the triggers removed from this node
+     */
+    void notifyTriggerStates(Collection<TriggerState> states);
+
     /**
      * Register a listener to process partition events linked with triggers.
      *
@@ -103,6 +114,7 @@ public interface PartitionManager {
 
     /**
      * Notify partition manager when a new collection of data has been received.
+     * The data is sent to the other nodes owning triggers for its dataIds, see {@link #notifyDataIds(Map)}.
      *
      * @param data the new data received by the engine
      */
@@ -110,11 +122,28 @@ public interface PartitionManager {
 
     /**
      * Notify partition manager when a new collection of events has been received.
+     * The events are sent to the other nodes owning triggers for their dataIds, see {@link #notifyDataIds(Map)}.
      *
      * @param events the new events received by the engine
      */
     void notifyEvents(Collection<Event> events);
 
+    /**
+     * Publish the dataIds used by the triggers loaded on this node.
+     * Data and events are sent only to the nodes that have published their dataIds, instead of to all nodes.
+     *
+     * @param dataIds Map of tenantId to the dataIds of the triggers loaded on this node
+     */
+    void notifyDataIds(Map<String, Set<String>> dataIds);
+
+    /**
+     * Publish the evaluation cost of the triggers loaded on this node since the previous call.
+     * The coordinator moves triggers between nodes when the cost of the nodes is skewed.
+     *
+     * @param costs Map of tenantId to triggerId to the cost of the trigger
+     */
+    void notifyTriggerCosts(Map<String, Map<String, Long>> costs);
+
     /**
      * Register a listener to process partition events linked with data or events.
      *
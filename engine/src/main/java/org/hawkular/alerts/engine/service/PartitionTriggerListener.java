@@ -16,10 +16,12 @@
  */
 package org.hawkular.alerts.engine.service;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
 import org.hawkular.alerts.engine.service.PartitionManager.Operation;
+import org.hawkular.alerts.engine.util.TriggerState;
 
 /**
  * A listener for reacting to partition events related to triggers.
@@ -65,4 +67,13 @@ public interface PartitionTriggerListener {
      */
     void onPartitionChange(Map<String, List<String>> partition, Map<String, List<String>> removed,
                            Map<String, List<String>> added);
+
+    /**
+     * Invoked on the new owner of triggers moved by a partition change, with the evaluation state taken by their
+     * previous owner when it removed them. See {@link PartitionManager#notifyTriggerStates(Collection)}.
+     *
+     * @param states the evaluation state of the moved triggers
+     */
+    default void onTriggerStates(Collection<TriggerState> states) {
+    }
 }
@@ -17,11 +17,17 @@
 package org.hawkular.alerts.engine.service;
 
 import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
 import java.util.TreeSet;
 import java.util.function.Predicate;
 
+import org.hawkular.alerts.api.model.condition.Condition;
+import org.hawkular.alerts.api.model.dampening.Dampening;
 import org.hawkular.alerts.api.model.data.Data;
 import org.hawkular.alerts.api.model.event.Event;
+import org.hawkular.alerts.api.model.trigger.Trigger;
+import org.hawkular.alerts.engine.util.TriggerState;
 
 /**
  * Interface that defines an abstract API with the rules engine implementation. This is for internal use by the
@@ -40,6 +46,31 @@ public interface RulesEngine {
     String MIN_REPORTING_INTERVAL_EVENTS_ENV = "HAWKULAR_MIN_REPORTING_INTERVAL_EVENTS";
     String MIN_REPORTING_INTERVAL_EVENTS_DEFAULT = "0";
 
+    String RULES_ENGINE_SHARDS = "hawkular-alerts.rules-engine-shards";
+    String RULES_ENGINE_SHARDS_ENV = "HAWKULAR_RULES_ENGINE_SHARDS";
+    String RULES_ENGINE_SHARDS_DEFAULT = "1";
+
+    /*
+        Fraction [0.0, 1.0] of triggers whose rule firings are traced in the log. The sample is taken by trigger,
+        so all the evaluations of a traced trigger are logged.
+     */
+    String RULES_ENGINE_TRACE_SAMPLE = "hawkular-alerts.rules-engine-trace-sample";
+    String RULES_ENGINE_TRACE_SAMPLE_ENV = "HAWKULAR_RULES_ENGINE_TRACE_SAMPLE";
+    String RULES_ENGINE_TRACE_SAMPLE_DEFAULT = "0";
+
+    /*
+        Triggers with a single Threshold, ThresholdRange or Availability condition and default dampening are
+        evaluated without the rules engine, see FastPathRulesEngineImpl.
+     */
+    String RULES_ENGINE_FAST_PATH = "hawkular-alerts.rules-engine-fast-path";
+    String RULES_ENGINE_FAST_PATH_ENV = "HAWKULAR_RULES_ENGINE_FAST_PATH";
+    String RULES_ENGINE_FAST_PATH_DEFAULT = "true";
+
+    /**
+     * Key of the facts snapshot entry holding the totals of all tenants.
+     */
+    String FACTS_TOTAL = "*";
+
     void addGlobal(String name, Object global);
 
     void removeGlobal(String name);
@@ -92,6 +123,53 @@ public interface RulesEngine {
      */
     void removeFacts(Predicate<Object> factFilter);
 
+    /**
+     * Insert the definition of a trigger: the Trigger, its Conditions and its Dampenings. Implementations may use
+     * the whole definition to decide how the trigger is evaluated.
+     * @param trigger the trigger
+     * @param conditions the conditions of the trigger
+     * @param dampenings the dampenings of the trigger, empty for default dampening
+     */
+    default void addTriggerFacts(Trigger trigger, Collection<Condition> conditions,
+            Collection<Dampening> dampenings) {
+        addFact(trigger);
+        addFacts(conditions);
+        if (!dampenings.isEmpty()) {
+            addFacts(dampenings);
+        }
+    }
+
+    /**
+     * Deletes the facts related to a trigger: the Trigger, its Conditions, Dampenings, MissingStates and NelsonData.
+     * Facts are located using a per-trigger index, so the cost depends on the number of facts of the trigger and
+     * not on the size of the working memory.
+     * @param tenantId the tenantId of the trigger
+     * @param triggerId the triggerId of the trigger
+     * @return the removed facts, empty if no fact was found for the trigger
+     */
+    Collection<Object> removeTriggerFacts(String tenantId, String triggerId);
+
+    /**
+     * Take a copy of the evaluation state of a loaded trigger, see {@link TriggerState}.
+     * @param tenantId the tenantId of the trigger
+     * @param triggerId the triggerId of the trigger
+     * @return the state of the trigger, null if the trigger is not loaded
+     */
+    TriggerState getTriggerState(String tenantId, String triggerId);
+
+    /**
+     * Restore a checkpointed evaluation state on the facts of a loaded trigger. Dampening counters are discarded
+     * if the dampening settings have changed, and NelsonData samples if the sample size has changed.
+     * @param state the state of the trigger
+     */
+    void restoreTriggerState(TriggerState state);
+
+    /**
+     * Triggers are flagged as changed when they are loaded and when the rules update their evaluation state.
+     * @return Map of tenantId to the triggerIds changed since the previous call
+     */
+    Map<String, Set<String>> getAndClearChangedTriggers();
+
     /**
      * Add to the accumulated <code>Data</code> to be processed the next time {@link #fire()} is called. After the
      * rules are fired on the accumulated <code>Data</code> it will be cleared.
@@ -117,6 +195,14 @@ public interface RulesEngine {
      */
     void fireNoData();
 
+    /**
+     * Count the facts in the rules engine by type and by tenant. This iterates the whole working memory, it is
+     * intended for on-demand diagnostics and must not be invoked concurrently with {@link #fire()}.
+     * @return Map of tenantId to the number of facts by type (simple class name). The {@link #FACTS_TOTAL} entry
+     *         holds the totals, including facts not related to a tenant.
+     */
+    Map<String, Map<String, Long>> getFactsSnapshot();
+
     /**
      * Deletes all Facts from the rules engine.
      */
@@ -126,4 +212,10 @@ public interface RulesEngine {
      * Completely reset the rules engine session. Disposes of any existing session before creating a new session.
      */
     void reset();
+
+    /**
+     * Release the resources held by the rules engine, i.e. threads. It is not used after the shutdown.
+     */
+    default void shutdown() {
+    }
 }
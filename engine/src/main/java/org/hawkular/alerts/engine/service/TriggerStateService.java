@@ -0,0 +1,63 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.alerts.engine.service;
+
+import java.util.Collection;
+import java.util.Map;
+
+import org.hawkular.alerts.engine.util.TriggerState;
+
+/**
+ * Storage of the checkpoints of the evaluation state of the triggers loaded in the AlertsEngine.
+ *
+ * Checkpoints are written periodically by the node holding the trigger and read when the trigger is loaded, so
+ * evaluation continues after a restart or on the node that takes over the trigger after a partition change.
+ *
+ * @author Jay Shaughnessy
+ * @author Lucas Ponce
+ */
+public interface TriggerStateService {
+
+    /**
+     * @param tenantId the tenantId of the triggers
+     * @return Map of triggerId to the last checkpointed state of the tenant triggers
+     * @throws Exception on any problem
+     */
+    Map<String, TriggerState> getTriggerStates(String tenantId) throws Exception;
+
+    /**
+     * @param tenantId the tenantId of the trigger
+     * @param triggerId the triggerId of the trigger
+     * @return the last checkpointed state of the trigger, null if it does not exist
+     * @throws Exception on any problem
+     */
+    TriggerState getTriggerState(String tenantId, String triggerId) throws Exception;
+
+    /**
+     * Store the states in a single batch, replacing the previous checkpoints of the same triggers.
+     * @param states the states to store
+     * @throws Exception on any problem
+     */
+    void putTriggerStates(Collection<TriggerState> states) throws Exception;
+
+    /**
+     * Remove the checkpoints of the triggers in a single batch.
+     * @param triggerIds Map of tenantId to the triggerIds to remove
+     * @throws Exception on any problem
+     */
+    void removeTriggerStates(Map<String, Collection<String>> triggerIds) throws Exception;
+}
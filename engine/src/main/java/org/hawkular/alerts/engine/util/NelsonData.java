@@ -16,6 +16,7 @@
  */
 package org.hawkular.alerts.engine.util;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedList;
@@ -39,7 +40,10 @@ import org.hawkular.alerts.api.model.data.Data;
  * @author Jay Shaughnessy
  * @author Lucas Ponce
  */
-public class NelsonData {
+public class NelsonData implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
     private NelsonCondition condition;
 
     // Currently violated rules for the currently ruleData
@@ -74,6 +78,34 @@ public class NelsonData {
         this.condition = condition;
     }
 
+    /**
+     * Copy the samples and rule counters of a NelsonData, used to checkpoint the evaluation state.
+     */
+    public NelsonData(NelsonData nelsonData) {
+        this.condition = nelsonData.condition;
+        this.violations = new ArrayList<>(nelsonData.violations);
+        this.violationsData = new LinkedList<>(nelsonData.violationsData);
+        this.mean = nelsonData.mean.copy();
+        this.standardDeviation = nelsonData.standardDeviation.copy();
+        this.oneDeviation = nelsonData.oneDeviation;
+        this.twoDeviations = nelsonData.twoDeviations;
+        this.threeDeviations = nelsonData.threeDeviations;
+        this.rule2Count = nelsonData.rule2Count;
+        this.rule3Count = nelsonData.rule3Count;
+        this.rule3PreviousSample = nelsonData.rule3PreviousSample;
+        this.rule4Count = nelsonData.rule4Count;
+        this.rule4PreviousSample = nelsonData.rule4PreviousSample;
+        this.rule4PreviousDirection = nelsonData.rule4PreviousDirection;
+        this.rule5LastThree = new LinkedList<>(nelsonData.rule5LastThree);
+        this.rule5Above = nelsonData.rule5Above;
+        this.rule5Below = nelsonData.rule5Below;
+        this.rule6LastFive = new LinkedList<>(nelsonData.rule6LastFive);
+        this.rule6Above = nelsonData.rule6Above;
+        this.rule6Below = nelsonData.rule6Below;
+        this.rule7Count = nelsonData.rule7Count;
+        this.rule8Count = nelsonData.rule8Count;
+    }
+
     public void clear() {
         mean.clear();
         standardDeviation.clear();
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.alerts.engine.util;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import static org.hawkular.alerts.api.util.Util.isEmpty;
+
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hawkular.alerts.api.json.JsonUtil;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+
+/**
+ * Codec of the cursors of keyset paging, see {@link org.hawkular.alerts.api.model.paging.PageContext#getCursor()}.
+ *
+ * A cursor holds the values of the ordering fields of the last element of a page, so the next page is selected by
+ * those values instead of by an offset. It is opaque for clients: the fields and values are encoded as url safe
+ * base64 JSON.
+ *
+ * @author Jay Shaughnessy
+ * @author Lucas Ponce
+ */
+public class PageCursor {
+
+    private static final TypeReference<LinkedHashMap<String, String>> KEY_TYPE =
+            new TypeReference<LinkedHashMap<String, String>>() {};
+
+    /**
+     * @param key the ordering fields and their values for the last element of the page, in order
+     * @return the cursor of the page after the element
+     */
+    public static String encode(Map<String, String> key) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(JsonUtil.toJson(key).getBytes(UTF_8));
+    }
+
+    /**
+     * @param cursor the cursor to decode
+     * @param fields the ordering fields of the page, in order
+     * @return the values of the ordering fields, null for an empty cursor (the first page)
+     * @throws IllegalArgumentException if the cursor is not valid or it was taken with a different order
+     */
+    public static Map<String, String> decode(String cursor, List<String> fields) {
+        if (isEmpty(cursor)) {
+            return null;
+        }
+        Map<String, String> key;
+        try {
+            key = JsonUtil.getMapper().readValue(Base64.getUrlDecoder().decode(cursor), KEY_TYPE);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Invalid cursor [" + cursor + "]");
+        }
+        if (!new ArrayList<>(key.keySet()).equals(fields)) {
+            throw new IllegalArgumentException("Cursor [" + cursor + "] does not match the order " + fields);
+        }
+        return key;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.alerts.engine.util;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.List;
+
+import org.hawkular.alerts.api.model.dampening.Dampening;
+
+/**
+ * The STRICT_TIMEOUT Dampenings posted by the rules when their timer starts (see the DampeningTimeoutAdd and
+ * DampeningTimeoutRemove rules). The Set is ordered by timeout, so the AlertsEngine only visits the expired ones.
+ *
+ * @author Jay Shaughnessy
+ * @author Lucas Ponce
+ */
+public class PendingTimeouts extends AbstractSet<Dampening> {
+
+    private final TimeoutQueue<Dampening> timeouts = new TimeoutQueue<>();
+
+    /**
+     * Remove and return the Dampenings whose timeout has expired. The timeout is re-checked on the Dampening, as
+     * the rules may have restarted its timer since it was posted.
+     * @param now the current time
+     * @return the expired Dampenings, empty if none has expired
+     */
+    public List<Dampening> pollTimeouts(long now) {
+        List<Dampening> expired = timeouts.pollDue(now);
+        for (Iterator<Dampening> i = expired.iterator(); i.hasNext();) {
+            Dampening d = i.next();
+            if (now < timeout(d)) {
+                timeouts.schedule(d, timeout(d));
+                i.remove();
+            }
+        }
+        return expired;
+    }
+
+    @Override
+    public boolean add(Dampening d) {
+        boolean added = !timeouts.contains(d);
+        timeouts.schedule(d, timeout(d));
+        return added;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        return timeouts.cancel(o);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return timeouts.contains(o);
+    }
+
+    @Override
+    public Iterator<Dampening> iterator() {
+        return timeouts.items().iterator();
+    }
+
+    @Override
+    public int size() {
+        return timeouts.size();
+    }
+
+    @Override
+    public void clear() {
+        timeouts.clear();
+    }
+
+    private static long timeout(Dampening d) {
+        return d.getTrueEvalsStartTime() + d.getEvalTimeSetting();
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.alerts.engine.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * A queue of items ordered by due time. A check polls only the items that are due, so its cost depends on the
+ * number of due items and not on the number of scheduled items.
+ *
+ * Items are identified by equals(). Rescheduling or cancelling an item does not search the heap, the outdated entry
+ * is discarded when it reaches the head of the queue. The heap is rebuilt when outdated entries outnumber the
+ * scheduled items.
+ *
+ * This class is not thread safe.
+ *
+ * @author Jay Shaughnessy
+ * @author Lucas Ponce
+ */
+public class TimeoutQueue<T> {
+    private static final int MIN_COMPACT_SIZE = 64;
+
+    private final PriorityQueue<Entry<T>> queue = new PriorityQueue<>();
+    private final Map<T, Entry<T>> entries = new HashMap<>();
+
+    /**
+     * Schedule the item, replacing any previous schedule of an equal item.
+     * @param item the item
+     * @param dueTime the time at which the item is due
+     */
+    public void schedule(T item, long dueTime) {
+        Entry<T> entry = entries.get(item);
+        if (null != entry && entry.item == item && entry.dueTime == dueTime) {
+            return;
+        }
+        if (null != entry) {
+            // keep the latest instance as key
+            entries.remove(item);
+        }
+        entry = new Entry<>(item, dueTime);
+        entries.put(item, entry);
+        queue.offer(entry);
+        compact();
+    }
+
+    /**
+     * @param item the item
+     * @return true if the item was scheduled
+     */
+    public boolean cancel(Object item) {
+        boolean cancelled = null != entries.remove(item);
+        compact();
+        return cancelled;
+    }
+
+    /**
+     * Remove and return the items due at <code>now</code>, in due time order.
+     * @param now the current time
+     * @return the items with a due time lower or equal than <code>now</code>, empty if none is due
+     */
+    public List<T> pollDue(long now) {
+        List<T> due = Collections.emptyList();
+        while (!queue.isEmpty() && queue.peek().dueTime <= now) {
+            Entry<T> entry = queue.poll();
+            if (entries.get(entry.item) != entry) {
+                continue;
+            }
+            entries.remove(entry.item);
+            if (due.isEmpty()) {
+                due = new ArrayList<>();
+            }
+            due.add(entry.item);
+        }
+        return due;
+    }
+
+    /**
+     * @return the earliest due time, Long.MAX_VALUE if the queue is empty
+     */
+    public long nextDueTime() {
+        while (!queue.isEmpty() && entries.get(queue.peek().item) != queue.peek()) {
+            queue.poll();
+        }
+        return queue.isEmpty() ? Long.MAX_VALUE : queue.peek().dueTime;
+    }
+
+    public boolean contains(Object item) {
+        return entries.containsKey(item);
+    }
+
+    /**
+     * @return a view of the scheduled items, removing an item from the view cancels it
+     */
+    public Set<T> items() {
+        return entries.keySet();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    public void clear() {
+        entries.clear();
+        queue.clear();
+    }
+
+    private void compact() {
+        if (queue.size() > MIN_COMPACT_SIZE && queue.size() > 2 * entries.size()) {
+            queue.clear();
+            queue.addAll(entries.values());
+        }
+    }
+
+    private static class Entry<T> implements Comparable<Entry<T>> {
+        private final T item;
+        private final long dueTime;
+
+        Entry(T item, long dueTime) {
+            this.item = item;
+            this.dueTime = dueTime;
+        }
+
+        @Override
+        public int compareTo(Entry<T> o) {
+            return Long.compare(dueTime, o.dueTime);
+        }
+    }
+}
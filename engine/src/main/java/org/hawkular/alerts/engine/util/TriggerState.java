@@ -0,0 +1,173 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.alerts.engine.util;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.hawkular.alerts.api.model.condition.ConditionEval;
+import org.hawkular.alerts.api.model.dampening.Dampening;
+import org.hawkular.alerts.api.model.data.Data;
+
+/**
+ * A checkpoint of the in-flight evaluation state of a loaded trigger: the Dampening counters, the MissingState
+ * times, the NelsonData samples and the previous Data used by Rate and Compare conditions.  It is taken from the
+ * rules engine working memory and restored when the trigger is loaded again, on the same node after a restart or on
+ * a different node after a partition change.
+ *
+ * Only the state differing from a freshly loaded trigger is kept, so most triggers have an empty state.
+ *
+ * @author Jay Shaughnessy
+ * @author Lucas Ponce
+ */
+public class TriggerState implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String tenantId;
+    private String triggerId;
+    private long ctime;
+
+    // dampeningId -> Dampening counters
+    private Map<String, DampeningState> dampenings = new HashMap<>();
+
+    // conditionId -> MissingState previousTime
+    private Map<String, Long> missingTimes = new HashMap<>();
+
+    // conditionId -> NelsonData samples
+    private Map<String, NelsonData> nelsonData = new HashMap<>();
+
+    // dataId -> previous Data of a RateCondition
+    private Map<String, Data> rateData = new HashMap<>();
+
+    // dataId -> last Data of a CompareCondition
+    private Map<String, Data> compareData = new HashMap<>();
+
+    public TriggerState(String tenantId, String triggerId) {
+        this.tenantId = tenantId;
+        this.triggerId = triggerId;
+        this.ctime = System.currentTimeMillis();
+    }
+
+    public String getTenantId() {
+        return tenantId;
+    }
+
+    public String getTriggerId() {
+        return triggerId;
+    }
+
+    public long getCtime() {
+        return ctime;
+    }
+
+    public Map<String, DampeningState> getDampenings() {
+        return dampenings;
+    }
+
+    public Map<String, Long> getMissingTimes() {
+        return missingTimes;
+    }
+
+    public Map<String, NelsonData> getNelsonData() {
+        return nelsonData;
+    }
+
+    public Map<String, Data> getRateData() {
+        return rateData;
+    }
+
+    public Map<String, Data> getCompareData() {
+        return compareData;
+    }
+
+    public boolean isEmpty() {
+        return dampenings.isEmpty() && missingTimes.isEmpty() && nelsonData.isEmpty() && rateData.isEmpty()
+                && compareData.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "TriggerState [tenantId=" + tenantId + ", triggerId=" + triggerId + ", ctime=" + ctime
+                + ", dampenings=" + dampenings + ", missingTimes=" + missingTimes + ", nelsonData="
+                + nelsonData.keySet() + ", rateData=" + rateData + ", compareData=" + compareData + "]";
+    }
+
+    /**
+     * The runtime counters of a Dampening, which are transient in the Dampening definition.
+     */
+    public static class DampeningState implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        // The definition, to discard the counters if the dampening settings are changed
+        private Dampening dampening;
+        private int numTrueEvals;
+        private int numEvals;
+        private long trueEvalsStartTime;
+        private Map<Integer, ConditionEval> currentEvals;
+        private List<Set<ConditionEval>> satisfyingEvals;
+
+        public DampeningState(Dampening dampening) {
+            this.dampening = new Dampening(dampening);
+            this.numTrueEvals = dampening.getNumTrueEvals();
+            this.numEvals = dampening.getNumEvals();
+            this.trueEvalsStartTime = dampening.getTrueEvalsStartTime();
+            this.currentEvals = new HashMap<>(dampening.getCurrentEvals());
+            this.satisfyingEvals = new ArrayList<>(dampening.getSatisfyingEvals().size());
+            for (Set<ConditionEval> evals : dampening.getSatisfyingEvals()) {
+                this.satisfyingEvals.add(new HashSet<>(evals));
+            }
+        }
+
+        public Dampening getDampening() {
+            return dampening;
+        }
+
+        /**
+         * @param target a Dampening loaded in the rules engine
+         * @return true if the counters were restored, false if the target has different settings
+         */
+        public boolean restore(Dampening target) {
+            if (!dampening.isSame(target)) {
+                return false;
+            }
+            target.setNumTrueEvals(numTrueEvals);
+            target.setNumEvals(numEvals);
+            target.setTrueEvalsStartTime(trueEvalsStartTime);
+            target.getCurrentEvals().clear();
+            target.getCurrentEvals().putAll(currentEvals);
+            List<Set<ConditionEval>> targetSatisfyingEvals = new ArrayList<>(satisfyingEvals.size());
+            for (Set<ConditionEval> evals : satisfyingEvals) {
+                targetSatisfyingEvals.add(new HashSet<>(evals));
+            }
+            target.setSatisfyingEvals(targetSatisfyingEvals);
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return "DampeningState [dampeningId=" + dampening.getDampeningId() + ", numTrueEvals=" + numTrueEvals
+                    + ", numEvals=" + numEvals + ", trueEvalsStartTime=" + trueEvalsStartTime + "]";
+        }
+    }
+}
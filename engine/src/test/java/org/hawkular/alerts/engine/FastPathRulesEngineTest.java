@@ -0,0 +1,243 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.alerts.engine;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+import org.hawkular.alerts.api.model.condition.AvailabilityCondition;
+import org.hawkular.alerts.api.model.condition.Condition;
+import org.hawkular.alerts.api.model.condition.ConditionEval;
+import org.hawkular.alerts.api.model.condition.EventCondition;
+import org.hawkular.alerts.api.model.condition.ThresholdCondition;
+import org.hawkular.alerts.api.model.condition.ThresholdConditionEval;
+import org.hawkular.alerts.api.model.condition.ThresholdRangeCondition;
+import org.hawkular.alerts.api.model.dampening.Dampening;
+import org.hawkular.alerts.api.model.data.AvailabilityType;
+import org.hawkular.alerts.api.model.data.Data;
+import org.hawkular.alerts.api.model.event.Alert;
+import org.hawkular.alerts.api.model.event.Event;
+import org.hawkular.alerts.api.model.event.EventType;
+import org.hawkular.alerts.api.model.trigger.Match;
+import org.hawkular.alerts.api.model.trigger.Mode;
+import org.hawkular.alerts.api.model.trigger.Trigger;
+import org.hawkular.alerts.engine.impl.DroolsRulesEngineImpl;
+import org.hawkular.alerts.engine.impl.FastPathRulesEngineImpl;
+import org.hawkular.commons.log.MsgLogger;
+import org.hawkular.commons.log.MsgLogging;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Basic test of the fast path RulesEngine implementation.
+ *
+ * @author Jay Shaughnessy
+ * @author Lucas Ponce
+ */
+public class FastPathRulesEngineTest {
+    private static final MsgLogger log = MsgLogging.getMsgLogger(FastPathRulesEngineTest.class);
+
+    FastPathRulesEngineImpl rulesEngine = new FastPathRulesEngineImpl(new DroolsRulesEngineImpl());
+    List<Alert> alerts = new ArrayList<>();
+    Set<Dampening> pendingTimeouts = new HashSet<>();
+    Map<Trigger, List<Set<ConditionEval>>> autoResolvedTriggers = new HashMap<>();
+    Set<Trigger> disabledTriggers = new CopyOnWriteArraySet<>();
+    TreeSet<Data> datums = new TreeSet<Data>();
+    List<Event> outputEvents = new ArrayList<>();
+
+    @Before
+    public void before() {
+        rulesEngine.addGlobal("log", log);
+        rulesEngine.addGlobal("alerts", alerts);
+        rulesEngine.addGlobal("events", outputEvents);
+        rulesEngine.addGlobal("pendingTimeouts", pendingTimeouts);
+        rulesEngine.addGlobal("autoResolvedTriggers", autoResolvedTriggers);
+        rulesEngine.addGlobal("disabledTriggers", disabledTriggers);
+    }
+
+    @After
+    public void after() {
+        rulesEngine.reset();
+        alerts.clear();
+        pendingTimeouts.clear();
+        disabledTriggers.clear();
+        datums.clear();
+        outputEvents.clear();
+    }
+
+    @Test
+    public void simpleTriggersTest() {
+        Trigger t1 = trigger("trigger-1");
+        ThresholdCondition t1c1 = new ThresholdCondition("tenant", "trigger-1", "NumericData-01",
+                ThresholdCondition.Operator.GT, 10.0);
+        Trigger t2 = trigger("trigger-2");
+        ThresholdRangeCondition t2c1 = new ThresholdRangeCondition("tenant", "trigger-2", "NumericData-01",
+                ThresholdRangeCondition.Operator.INCLUSIVE, ThresholdRangeCondition.Operator.INCLUSIVE,
+                10.0, 15.0, true);
+        Trigger t3 = trigger("trigger-3");
+        AvailabilityCondition t3c1 = new AvailabilityCondition("tenant", "trigger-3", "AvailData-01",
+                AvailabilityCondition.Operator.NOT_UP);
+        Dampening t3d = Dampening.forStrict("tenant", "trigger-3", Mode.FIRING, 1);
+
+        rulesEngine.addTriggerFacts(t1, singletonList(t1c1), emptyList());
+        rulesEngine.addTriggerFacts(t2, singletonList(t2c1), emptyList());
+        rulesEngine.addTriggerFacts(t3, singletonList(t3c1), singletonList(t3d));
+        assertEquals(3, rulesEngine.getNumFastTriggers());
+        assertTrue(rulesEngine.getFact(t1) == t1);
+
+        datums.add(Data.forNumeric("tenant", "NumericData-01", 1000, 5.0));
+        datums.add(Data.forNumeric("tenant", "NumericData-01", 2000, 12.0));
+        datums.add(Data.forNumeric("tenant", "NumericData-01", 3000, 20.0));
+        datums.add(Data.forAvailability("tenant", "AvailData-01", 1000, AvailabilityType.UP));
+        datums.add(Data.forAvailability("tenant", "AvailData-01", 2000, AvailabilityType.DOWN));
+        rulesEngine.addData(datums);
+        rulesEngine.fire();
+
+        // trigger-1 on 12.0 and 20.0, trigger-2 on 12.0, trigger-3 on DOWN
+        assertEquals(alerts.toString(), 4, alerts.size());
+        List<Double> t1Values = new ArrayList<>();
+        for (Alert a : alerts) {
+            assertEquals(1, a.getEvalSets().size());
+            if ("trigger-1".equals(a.getTriggerId())) {
+                t1Values.add(((ThresholdConditionEval) a.getEvalSets().get(0).iterator().next()).getValue());
+            }
+        }
+        assertEquals(Arrays.asList(12.0, 20.0), t1Values);
+
+        assertEquals(1, rulesEngine.removeTriggerFacts("tenant", "trigger-1").stream()
+                .filter(f -> f instanceof Trigger).count());
+        assertNull(rulesEngine.getFact(t1));
+        assertEquals(2, rulesEngine.getNumFastTriggers());
+    }
+
+    @Test
+    public void missingValueTest() {
+        Trigger t1 = trigger("trigger-1");
+        ThresholdCondition t1c1 = new ThresholdCondition("tenant", "trigger-1", "NumericData-01",
+                ThresholdCondition.Operator.GT, 10.0);
+        Trigger t2 = trigger("trigger-2");
+        AvailabilityCondition t2c1 = new AvailabilityCondition("tenant", "trigger-2", "AvailData-01",
+                AvailabilityCondition.Operator.NOT_UP);
+
+        rulesEngine.addTriggerFacts(t1, singletonList(t1c1), emptyList());
+        rulesEngine.addTriggerFacts(t2, singletonList(t2c1), emptyList());
+        assertEquals(2, rulesEngine.getNumFastTriggers());
+
+        datums.add(Data.forString("tenant", "NumericData-01", 1000, null));
+        datums.add(Data.forNumeric("tenant", "NumericData-01", 2000, 12.0));
+        datums.add(Data.forString("tenant", "AvailData-01", 1000, null));
+        rulesEngine.addData(datums);
+        rulesEngine.fire();
+
+        // Data without a value does not match, nor stops the evaluation of the rest
+        assertEquals(alerts.toString(), 1, alerts.size());
+        assertEquals("trigger-1", alerts.get(0).getTriggerId());
+    }
+
+    @Test
+    public void complexTriggersDelegatedTest() {
+        // Two conditions
+        Trigger t1 = trigger("trigger-1");
+        t1.setFiringMatch(Match.ALL);
+        ThresholdCondition t1c1 = new ThresholdCondition("tenant", "trigger-1", 2, 1, "NumericData-01",
+                ThresholdCondition.Operator.GT, 10.0);
+        ThresholdCondition t1c2 = new ThresholdCondition("tenant", "trigger-1", 2, 2, "NumericData-02",
+                ThresholdCondition.Operator.GT, 10.0);
+        // Non default dampening
+        Trigger t2 = trigger("trigger-2");
+        ThresholdCondition t2c1 = new ThresholdCondition("tenant", "trigger-2", "NumericData-01",
+                ThresholdCondition.Operator.GT, 10.0);
+        Dampening t2d = Dampening.forStrict("tenant", "trigger-2", Mode.FIRING, 2);
+
+        rulesEngine.addTriggerFacts(t1, Arrays.asList(t1c1, t1c2), emptyList());
+        rulesEngine.addTriggerFacts(t2, singletonList(t2c1), singletonList(t2d));
+        assertEquals(0, rulesEngine.getNumFastTriggers());
+
+        datums.add(Data.forNumeric("tenant", "NumericData-01", 1000, 15.0));
+        datums.add(Data.forNumeric("tenant", "NumericData-02", 1000, 15.0));
+        datums.add(Data.forNumeric("tenant", "NumericData-01", 2000, 15.0));
+        rulesEngine.addData(datums);
+        rulesEngine.fire();
+
+        Set<String> alerted = new HashSet<>();
+        alerts.forEach(a -> alerted.add(a.getTriggerId()));
+        assertEquals(alerts.toString(), new HashSet<>(Arrays.asList("trigger-1", "trigger-2")), alerted);
+    }
+
+    @Test
+    public void chainedEventsTest() {
+        Trigger t1 = trigger("trigger-1");
+        t1.setEventType(EventType.EVENT);
+        ThresholdCondition t1c1 = new ThresholdCondition("tenant", "trigger-1", "NumericData-01",
+                ThresholdCondition.Operator.GT, 10.0);
+
+        // Evaluated on the delegate, on the events generated by trigger-1
+        Trigger t2 = trigger("trigger-2");
+        EventCondition t2c1 = new EventCondition("tenant", "trigger-2", Mode.FIRING, "trigger-1");
+
+        rulesEngine.addTriggerFacts(t1, singletonList(t1c1), emptyList());
+        rulesEngine.addTriggerFacts(t2, singletonList((Condition) t2c1), emptyList());
+        assertEquals(1, rulesEngine.getNumFastTriggers());
+
+        datums.add(Data.forNumeric("tenant", "NumericData-01", 1000, 15.0));
+        rulesEngine.addData(datums);
+        rulesEngine.fire();
+
+        assertEquals(outputEvents.toString(), 1, outputEvents.size());
+        assertEquals(alerts.toString(), 1, alerts.size());
+        assertEquals("trigger-2", alerts.get(0).getTriggerId());
+    }
+
+    @Test
+    public void autoDisableTest() {
+        Trigger t1 = trigger("trigger-1");
+        t1.setAutoDisable(true);
+        ThresholdCondition t1c1 = new ThresholdCondition("tenant", "trigger-1", "NumericData-01",
+                ThresholdCondition.Operator.GT, 10.0);
+        rulesEngine.addTriggerFacts(t1, singletonList(t1c1), emptyList());
+
+        datums.add(Data.forNumeric("tenant", "NumericData-01", 1000, 15.0));
+        datums.add(Data.forNumeric("tenant", "NumericData-01", 2000, 15.0));
+        rulesEngine.addData(datums);
+        rulesEngine.fire();
+
+        assertEquals(alerts.toString(), 1, alerts.size());
+        assertTrue(disabledTriggers.contains(t1));
+        assertEquals(0, rulesEngine.getNumFastTriggers());
+        assertNull(rulesEngine.getTriggerState("tenant", "trigger-1"));
+    }
+
+    private Trigger trigger(String triggerId) {
+        Trigger t = new Trigger("tenant", triggerId, triggerId);
+        t.setEnabled(true);
+        return t;
+    }
+}
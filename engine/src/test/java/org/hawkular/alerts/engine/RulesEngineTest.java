@@ -19,9 +19,14 @@ package org.hawkular.alerts.engine;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashMap;
@@ -70,6 +75,7 @@ import org.hawkular.alerts.api.model.trigger.Trigger;
 import org.hawkular.alerts.engine.impl.DroolsRulesEngineImpl;
 import org.hawkular.alerts.engine.service.RulesEngine;
 import org.hawkular.alerts.engine.util.MissingState;
+import org.hawkular.alerts.engine.util.TriggerState;
 import org.hawkular.commons.log.MsgLogger;
 import org.hawkular.commons.log.MsgLogging;
 import org.junit.After;
@@ -2298,4 +2304,148 @@ public class RulesEngineTest {
         assertEquals(e.getViolations().toString(), 1, e.getViolations().size());
     }
 
+    @Test
+    public void removeTriggerFactsTest() {
+        Trigger t1 = new Trigger("tenant", "trigger-1", "Threshold-GT");
+        ThresholdCondition t1c1 = new ThresholdCondition("tenant", "trigger-1", 1, 1,
+                "NumericData-01", ThresholdCondition.Operator.GT, 10.0);
+        Dampening t1d = Dampening.forStrict("tenant", "trigger-1", Mode.FIRING, 2);
+        MissingCondition t1c2 = new MissingCondition("tenant", "trigger-1", "NumericData-02", 1000L);
+        MissingState t1ms = new MissingState(t1, t1c2);
+
+        Trigger t2 = new Trigger("tenant", "trigger-2", "Threshold-GT");
+        ThresholdCondition t2c1 = new ThresholdCondition("tenant", "trigger-2", 1, 1,
+                "NumericData-01", ThresholdCondition.Operator.GT, 10.0);
+
+        t1.setEnabled(true);
+        t2.setEnabled(true);
+
+        rulesEngine.addFact(t1);
+        rulesEngine.addFact(t1c1);
+        rulesEngine.addFact(t1d);
+        rulesEngine.addFact(t1ms);
+        rulesEngine.addFact(t2);
+        rulesEngine.addFact(t2c1);
+
+        // The Dampening fact is retracted and re-inserted by the rules, the index must follow it
+        datums.add(Data.forNumeric("tenant", "NumericData-01", 1000, 15.0));
+        rulesEngine.addData(datums);
+        rulesEngine.fire();
+        assertEquals(alerts.toString(), 1, alerts.size());
+        assertEquals("trigger-2", alerts.get(0).getTriggerId());
+
+        Collection<Object> removed = rulesEngine.removeTriggerFacts("tenant", "trigger-1");
+        assertEquals(removed.toString(), 4, removed.size());
+        assertTrue(null == rulesEngine.getFact(t1));
+        assertTrue(null == rulesEngine.getFact(t1c1));
+        assertTrue(null == rulesEngine.getFact(t1d));
+        assertTrue(null != rulesEngine.getFact(t2));
+        assertTrue(null != rulesEngine.getFact(t2c1));
+        assertTrue(rulesEngine.removeTriggerFacts("tenant", "trigger-1").isEmpty());
+
+        rulesEngine.removeFacts(f -> f instanceof ThresholdCondition);
+        assertTrue(null == rulesEngine.getFact(t2c1));
+        assertTrue(null != rulesEngine.getFact(t2));
+    }
+
+    @Test
+    public void factsSnapshotTest() {
+        Trigger t1 = new Trigger("tenant-1", "trigger-1", "Threshold-GT");
+        ThresholdCondition t1c1 = new ThresholdCondition("tenant-1", "trigger-1", 1, 1,
+                "NumericData-01", ThresholdCondition.Operator.GT, 10.0);
+        Trigger t2 = new Trigger("tenant-2", "trigger-1", "Rate-GT");
+        RateCondition t2c1 = new RateCondition("tenant-2", "trigger-1", "RateData-01",
+                RateCondition.Direction.INCREASING, RateCondition.Period.SECOND, RateCondition.Operator.GT, 10.0);
+        Dampening t2d = Dampening.forStrict("tenant-2", "trigger-1", Mode.FIRING, 2);
+
+        rulesEngine.addFact(t1);
+        rulesEngine.addFact(t1c1);
+        rulesEngine.addFact(t2);
+        rulesEngine.addFact(t2c1);
+        rulesEngine.addFact(t2d);
+
+        Map<String, Map<String, Long>> snapshot = rulesEngine.getFactsSnapshot();
+        assertEquals(snapshot.toString(), 3, snapshot.size());
+        assertEquals(Long.valueOf(2), snapshot.get(RulesEngine.FACTS_TOTAL).get("Trigger"));
+        assertEquals(Long.valueOf(1), snapshot.get(RulesEngine.FACTS_TOTAL).get("ThresholdCondition"));
+        assertEquals(Long.valueOf(1), snapshot.get("tenant-1").get("Trigger"));
+        assertEquals(Long.valueOf(1), snapshot.get("tenant-1").get("ThresholdCondition"));
+        assertEquals(Long.valueOf(1), snapshot.get("tenant-2").get("RateCondition"));
+        assertEquals(Long.valueOf(1), snapshot.get("tenant-2").get("Dampening"));
+        assertTrue(snapshot.toString(), null == snapshot.get("tenant-1").get("Dampening"));
+    }
+
+    @Test
+    public void triggerStateTest() throws Exception {
+        rulesEngine.addFacts(thresholdTrigger());
+        rulesEngine.addFacts(rateTrigger());
+
+        datums.add(Data.forNumeric("tenant", "NumericData-01", 1000, 15.0));
+        datums.add(Data.forNumeric("tenant", "NumericData-01", 2000, 15.0));
+        datums.add(Data.forNumeric("tenant", "RateData-01", 1000, 10.0));
+        rulesEngine.addData(datums);
+        rulesEngine.fire();
+        assertTrue(alerts.toString(), alerts.isEmpty());
+
+        Map<String, Set<String>> changed = rulesEngine.getAndClearChangedTriggers();
+        assertEquals(changed.toString(), new HashSet<>(Arrays.asList("trigger-1", "trigger-2")),
+                changed.get("tenant"));
+        assertTrue(rulesEngine.getAndClearChangedTriggers().isEmpty());
+        assertTrue(null == rulesEngine.getTriggerState("tenant", "trigger-X"));
+
+        TriggerState state1 = rulesEngine.getTriggerState("tenant", "trigger-1");
+        assertEquals(state1.toString(), 1, state1.getDampenings().size());
+        TriggerState state2 = rulesEngine.getTriggerState("tenant", "trigger-2");
+        assertEquals(state2.toString(), 10.0, Double.valueOf(state2.getRateData().get("RateData-01").getValue()),
+                0.0);
+
+        // Simulate a restart, the states are stored serialized
+        state1 = copy(state1);
+        state2 = copy(state2);
+        rulesEngine.reset();
+        before();
+        rulesEngine.addFacts(thresholdTrigger());
+        rulesEngine.addFacts(rateTrigger());
+        rulesEngine.restoreTriggerState(state1);
+        rulesEngine.restoreTriggerState(state2);
+
+        // Third true eval for the strict dampening, and rate of (100 - 10) / 2 seconds
+        datums.clear();
+        datums.add(Data.forNumeric("tenant", "NumericData-01", 3000, 15.0));
+        datums.add(Data.forNumeric("tenant", "RateData-01", 3000, 100.0));
+        rulesEngine.addData(datums);
+        rulesEngine.fire();
+
+        assertEquals(alerts.toString(), 2, alerts.size());
+        Set<String> alerted = new HashSet<>();
+        alerts.stream().forEach(a -> alerted.add(a.getTriggerId()));
+        assertEquals(new HashSet<>(Arrays.asList("trigger-1", "trigger-2")), alerted);
+    }
+
+    private List<Object> thresholdTrigger() {
+        Trigger t1 = new Trigger("tenant", "trigger-1", "Threshold-GT");
+        ThresholdCondition t1c1 = new ThresholdCondition("tenant", "trigger-1", 1, 1,
+                "NumericData-01", ThresholdCondition.Operator.GT, 10.0);
+        Dampening t1d = Dampening.forStrict("tenant", "trigger-1", Mode.FIRING, 3);
+        t1.setEnabled(true);
+        return Arrays.asList(t1, t1c1, t1d);
+    }
+
+    private List<Object> rateTrigger() {
+        Trigger t2 = new Trigger("tenant", "trigger-2", "Rate-GT");
+        RateCondition t2c1 = new RateCondition("tenant", "trigger-2", "RateData-01",
+                RateCondition.Direction.INCREASING, RateCondition.Period.SECOND, RateCondition.Operator.GT, 10.0);
+        t2.setEnabled(true);
+        return Arrays.asList(t2, t2c1);
+    }
+
+    private TriggerState copy(TriggerState state) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(state);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return (TriggerState) in.readObject();
+        }
+    }
 }
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.alerts.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+import org.hawkular.alerts.api.model.condition.AvailabilityCondition;
+import org.hawkular.alerts.api.model.condition.ConditionEval;
+import org.hawkular.alerts.api.model.condition.EventCondition;
+import org.hawkular.alerts.api.model.condition.ThresholdCondition;
+import org.hawkular.alerts.api.model.condition.ThresholdConditionEval;
+import org.hawkular.alerts.api.model.dampening.Dampening;
+import org.hawkular.alerts.api.model.data.AvailabilityType;
+import org.hawkular.alerts.api.model.data.Data;
+import org.hawkular.alerts.api.model.event.Alert;
+import org.hawkular.alerts.api.model.event.Event;
+import org.hawkular.alerts.api.model.event.EventCategory;
+import org.hawkular.alerts.api.model.event.EventType;
+import org.hawkular.alerts.api.model.trigger.Mode;
+import org.hawkular.alerts.api.model.trigger.Trigger;
+import org.hawkular.alerts.engine.impl.ShardedRulesEngineImpl;
+import org.hawkular.commons.log.MsgLogger;
+import org.hawkular.commons.log.MsgLogging;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Basic test of the sharded RulesEngine implementation.
+ *
+ * @author Jay Shaughnessy
+ * @author Lucas Ponce
+ */
+public class ShardedRulesEngineTest {
+    private static final MsgLogger log = MsgLogging.getMsgLogger(ShardedRulesEngineTest.class);
+
+    ShardedRulesEngineImpl rulesEngine = new ShardedRulesEngineImpl(4);
+    List<Alert> alerts = new ArrayList<>();
+    Set<Dampening> pendingTimeouts = new HashSet<>();
+    Map<Trigger, List<Set<ConditionEval>>> autoResolvedTriggers = new HashMap<>();
+    Set<Trigger> disabledTriggers = new CopyOnWriteArraySet<>();
+    TreeSet<Data> datums = new TreeSet<Data>();
+    TreeSet<Event> inputEvents = new TreeSet<>();
+    List<Event> outputEvents = new ArrayList<>();
+
+    @Before
+    public void before() {
+        rulesEngine.addGlobal("log", log);
+        rulesEngine.addGlobal("alerts", alerts);
+        rulesEngine.addGlobal("events", outputEvents);
+        rulesEngine.addGlobal("pendingTimeouts", pendingTimeouts);
+        rulesEngine.addGlobal("autoResolvedTriggers", autoResolvedTriggers);
+        rulesEngine.addGlobal("disabledTriggers", disabledTriggers);
+    }
+
+    @After
+    public void after() {
+        rulesEngine.reset();
+        alerts.clear();
+        pendingTimeouts.clear();
+        datums.clear();
+        inputEvents.clear();
+        outputEvents.clear();
+    }
+
+    @Test
+    public void thresholdAcrossShardsTest() {
+        int numTenants = 8;
+        int numTriggers = 8;
+        for (int i = 0; i < numTenants; i++) {
+            String tenantId = "tenant-" + i;
+            for (int j = 0; j < numTriggers; j++) {
+                String triggerId = "trigger-" + j;
+                Trigger t = new Trigger(tenantId, triggerId, "Threshold-GT");
+                ThresholdCondition tc = new ThresholdCondition(tenantId, triggerId, 1, 1,
+                        "NumericData-" + j, ThresholdCondition.Operator.GT, 10.0);
+                t.setEnabled(true);
+                rulesEngine.addFact(t);
+                rulesEngine.addFact(tc);
+            }
+            for (int j = 0; j < numTriggers; j++) {
+                datums.add(Data.forNumeric(tenantId, "NumericData-" + j, 1, 5.0));
+                datums.add(Data.forNumeric(tenantId, "NumericData-" + j, 2000, 15.0));
+            }
+        }
+        // Not referenced by any trigger
+        datums.add(Data.forNumeric("tenant-0", "NumericData-X", 1, 15.0));
+
+        rulesEngine.addData(datums);
+        rulesEngine.fire();
+
+        assertEquals(alerts.toString(), numTenants * numTriggers, alerts.size());
+        Set<String> alerted = new HashSet<>();
+        for (Alert a : alerts) {
+            ThresholdConditionEval e = (ThresholdConditionEval) a.getEvalSets().get(0).iterator().next();
+            assertEquals(15.0, e.getValue(), 0.0);
+            alerted.add(a.getTenantId() + "/" + a.getTriggerId());
+        }
+        assertEquals(numTenants * numTriggers, alerted.size());
+    }
+
+    @Test
+    public void chainedEventsAcrossShardsTest() {
+        Trigger t1 = new Trigger("tenant", "trigger-1", "A.war");
+        t1.setEventType(EventType.EVENT);
+        EventCondition t1c1 = new EventCondition("tenant", "trigger-1", Mode.FIRING, "A.war", "text == 'DOWN'");
+
+        Trigger t2 = new Trigger("tenant", "trigger-2", "B.war");
+        t2.setEventType(EventType.EVENT);
+        EventCondition t2c1 = new EventCondition("tenant", "trigger-2", Mode.FIRING, "B.war", "text == 'DOWN'");
+
+        Trigger t3 = new Trigger("tenant", "trigger-3", "A.war and B.war DOWN");
+        EventCondition t3c1 = new EventCondition("tenant", "trigger-3", Mode.FIRING, 2, 1, "trigger-1");
+        EventCondition t3c2 = new EventCondition("tenant", "trigger-3", Mode.FIRING, 2, 2, "trigger-2");
+
+        inputEvents.add(new Event("tenant", UUID.randomUUID().toString(), 1000, "A.war",
+                EventCategory.DEPLOYMENT.name(), "DOWN"));
+        inputEvents.add(new Event("tenant", UUID.randomUUID().toString(), 1000, "B.war",
+                EventCategory.DEPLOYMENT.name(), "DOWN"));
+
+        t1.setEnabled(true);
+        t2.setEnabled(true);
+        t3.setEnabled(true);
+
+        rulesEngine.addFact(t1);
+        rulesEngine.addFact(t1c1);
+        rulesEngine.addFact(t2);
+        rulesEngine.addFact(t2c1);
+        rulesEngine.addFact(t3);
+        rulesEngine.addFact(t3c1);
+        rulesEngine.addFact(t3c2);
+
+        rulesEngine.addEvents(inputEvents);
+        rulesEngine.fire();
+
+        assertEquals(outputEvents.toString(), 2, outputEvents.size());
+        assertEquals(alerts.toString(), 1, alerts.size());
+        assertEquals("trigger-3", alerts.get(0).getTriggerId());
+    }
+
+    @Test
+    public void dampeningStrictTimeoutTest() {
+        Trigger t1 = new Trigger("tenant", "trigger-1", "Avail-DOWN");
+        AvailabilityCondition t1c1 = new AvailabilityCondition("tenant", "trigger-1", 1, 1,
+                "AvailData-01", AvailabilityCondition.Operator.DOWN);
+        Dampening t1d = Dampening.forStrictTimeout("tenant", "trigger-1", Mode.FIRING, 200L);
+
+        t1.setEnabled(true);
+
+        rulesEngine.addFact(t1);
+        rulesEngine.addFact(t1c1);
+        rulesEngine.addFact(t1d);
+
+        datums.add(Data.forAvailability("tenant", "AvailData-01", 1000, AvailabilityType.DOWN));
+        rulesEngine.addData(datums);
+        rulesEngine.fire();
+
+        assertTrue(alerts.isEmpty());
+        assertEquals(String.valueOf(pendingTimeouts), 1, pendingTimeouts.size());
+
+        Dampening pendingTimeout = pendingTimeouts.iterator().next();
+        pendingTimeout.setSatisfied(true);
+        rulesEngine.updateFact(pendingTimeout);
+        pendingTimeouts.remove(pendingTimeout);
+
+        rulesEngine.fireNoData();
+
+        assertEquals(alerts.toString(), 1, alerts.size());
+        assertEquals("trigger-1", alerts.get(0).getTriggerId());
+        assertTrue(String.valueOf(pendingTimeouts), pendingTimeouts.isEmpty());
+    }
+
+    @Test
+    public void removeTriggerStopsRoutingTest() {
+        Trigger t1 = new Trigger("tenant", "trigger-1", "Threshold-GT");
+        ThresholdCondition t1c1 = new ThresholdCondition("tenant", "trigger-1", 1, 1,
+                "NumericData-01", ThresholdCondition.Operator.GT, 10.0);
+        t1.setEnabled(true);
+
+        rulesEngine.addFact(t1);
+        rulesEngine.addFact(t1c1);
+        rulesEngine.removeFact(t1c1);
+        rulesEngine.removeFact(t1);
+
+        datums.add(Data.forNumeric("tenant", "NumericData-01", 1000, 15.0));
+        rulesEngine.addData(datums);
+        rulesEngine.fire();
+
+        assertTrue(alerts.toString(), alerts.isEmpty());
+    }
+}
@@ -16,9 +16,12 @@
  */
 package org.hawkular.alerts.engine.impl;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Map;
+
 import org.hawkular.alerts.engine.impl.AlertsEngineCache.DataEntry;
 import org.junit.Test;
 
@@ -55,4 +58,27 @@ public class AlertsEngineCacheTest {
         assertFalse(cache.isDataIdActive("o1", "d3"));
     }
 
+    @Test
+    public void triggerCostsTest() {
+        AlertsEngineCache cache = new AlertsEngineCache();
+
+        cache.add(new DataEntry("o1", "t1", "d1"));
+        cache.add(new DataEntry("o1", "t1", "d2"));
+        cache.add(new DataEntry("o1", "t2", "d1"));
+
+        for (int i = 0; i < 10; i++) {
+            cache.countData("o1", "d1");
+        }
+        cache.countData("o1", "d2");
+
+        Map<String, Map<String, Long>> costs = cache.pollTriggerCosts();
+        assertEquals(Long.valueOf(13L), costs.get("o1").get("t1"));
+        assertEquals(Long.valueOf(11L), costs.get("o1").get("t2"));
+
+        // Counts are reset on each poll
+        costs = cache.pollTriggerCosts();
+        assertEquals(Long.valueOf(2L), costs.get("o1").get("t1"));
+        assertEquals(Long.valueOf(1L), costs.get("o1").get("t2"));
+    }
+
 }
@@ -23,8 +23,8 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
-import org.hawkular.alerts.engine.impl.PartitionManagerImpl.PartitionEntry;
 import org.junit.Test;
 
 /**
@@ -40,183 +40,123 @@ public class BucketsTest {
 
         PartitionManagerImpl pm = new PartitionManagerImpl();
         try {
-            pm.updateBuckets(null, null);
+            pm.updateBuckets(null, null, 8, new HashMap<>());
             fail("It should faild with null newMembers");
         } catch (Exception expected) {}
 
         try {
-            pm.updateBuckets(null, new ArrayList<>());
+            pm.updateBuckets(null, new ArrayList<>(), 8, new HashMap<>());
             fail("It should faild with empty newMembers");
         } catch (Exception expected) {}
 
-        List<Integer> members = Arrays.asList(2001, 3002, 4003, 5004);
-        Map<Integer, Integer> newBuckets = pm.updateBuckets(null, members);
+        List<Integer> members = Arrays.asList(5004, 3002, 2001, 4003);
+        Map<Integer, Integer> newBuckets = pm.updateBuckets(null, members, 8, new HashMap<>());
+        assertEquals(8, newBuckets.size());
         assertEquals(newBuckets.get(0).intValue(), 2001);
         assertEquals(newBuckets.get(1).intValue(), 3002);
         assertEquals(newBuckets.get(2).intValue(), 4003);
         assertEquals(newBuckets.get(3).intValue(), 5004);
+        assertEquals(newBuckets.get(4).intValue(), 2001);
+        assertEquals(newBuckets.get(7).intValue(), 5004);
     }
 
     @Test
     public void reassignBuckets() {
         PartitionManagerImpl pm = new PartitionManagerImpl();
+        Map<Integer, Long> costs = new HashMap<>();
+
+        List<Integer> members = Arrays.asList(1000, 1001, 1002, 1003);
+        Map<Integer, Integer> oldBuckets = pm.updateBuckets(null, members, 12, costs);
 
         /*
-            Old: {0=server0, 1=server1, 2=server2, 3=server3, 4=server4, 5=server5, 6=server6, 7=server7, 8=server8}
-            Drop server3
-            New: {0=server0, 1=server1, 2=server2, 3=server8, 4=server4, 5=server5, 6=server6, 7=server7}
+            Drop server3, only its buckets are moved
          */
-        Map<Integer, Integer> oldBuckets = new HashMap<>();
-        oldBuckets.put(0, 1000);
-        oldBuckets.put(1, 1001);
-        oldBuckets.put(2, 1002);
-        oldBuckets.put(3, 1003);
-        oldBuckets.put(4, 1004);
-        oldBuckets.put(5, 1005);
-        oldBuckets.put(6, 1006);
-        oldBuckets.put(7, 1007);
-        oldBuckets.put(8, 1008);
-
-        List<Integer> members = Arrays.asList(1000, 1001, 1002, 1004, 1005, 1006, 1007, 1008);
-
-        Map<Integer, Integer> newBuckets = pm.updateBuckets(oldBuckets, members);
-
-        assertEquals(newBuckets.get(0).intValue(), 1000);
-        assertEquals(newBuckets.get(1).intValue(), 1001);
-        assertEquals(newBuckets.get(2).intValue(), 1002);
-        assertEquals(newBuckets.get(3).intValue(), 1008);
-        assertEquals(newBuckets.get(4).intValue(), 1004);
-        assertEquals(newBuckets.get(5).intValue(), 1005);
-        assertEquals(newBuckets.get(6).intValue(), 1006);
-        assertEquals(newBuckets.get(7).intValue(), 1007);
+        members = Arrays.asList(1000, 1001, 1002);
+        Map<Integer, Integer> newBuckets = pm.updateBuckets(oldBuckets, members, 12, costs);
+        assertEquals(3, changes(oldBuckets, newBuckets));
+        for (int bucket = 0; bucket < 12; bucket++) {
+            if (oldBuckets.get(bucket) != 1003) {
+                assertEquals(oldBuckets.get(bucket), newBuckets.get(bucket));
+            }
+        }
+        for (Integer member : members) {
+            assertEquals(4, pm.getNodeBuckets(newBuckets, member).size());
+        }
 
         /*
-            Old: {0=server0, 1=server1, 2=server2, 3=server8, 4=server4, 5=server5, 6=server6, 7=server7}
-            Drop server0
-            New: {0=server7, 1=server1, 2=server2, 3=server8, 4=server4, 5=server5, 6=server6}
+            No changes, but members order is different
+            Result: buckets should not be affected
          */
         oldBuckets = newBuckets;
-        members = Arrays.asList(1001, 1002, 1004, 1005, 1006, 1007, 1008);
-
-        newBuckets = pm.updateBuckets(oldBuckets, members);
-
-        assertEquals(newBuckets.get(0).intValue(), 1007);
-        assertEquals(newBuckets.get(1).intValue(), 1001);
-        assertEquals(newBuckets.get(2).intValue(), 1002);
-        assertEquals(newBuckets.get(3).intValue(), 1008);
-        assertEquals(newBuckets.get(4).intValue(), 1004);
-        assertEquals(newBuckets.get(5).intValue(), 1005);
-        assertEquals(newBuckets.get(6).intValue(), 1006);
+        members = Arrays.asList(1002, 1000, 1001);
+        newBuckets = pm.updateBuckets(oldBuckets, members, 12, costs);
+        assertEquals(oldBuckets, newBuckets);
 
         /*
-            Old: {0=server7, 1=server1, 2=server2, 3=server8, 4=server4, 5=server5, 6=server6}
-            Drops server7, server2, server5
-            New: {0=server4, 1=server1, 2=server6, 3=server8}
+            New node joining, it takes only the buckets needed to balance the nodes
          */
         oldBuckets = newBuckets;
-        members = Arrays.asList(1001, 1004, 1006, 1008);
-
-        newBuckets = pm.updateBuckets(oldBuckets, members);
-
-        assertEquals(newBuckets.get(0).intValue(), 1004);
-        assertEquals(newBuckets.get(1).intValue(), 1001);
-        assertEquals(newBuckets.get(2).intValue(), 1006);
-        assertEquals(newBuckets.get(3).intValue(), 1008);
+        members = Arrays.asList(1002, 1000, 1001, 2001);
+        newBuckets = pm.updateBuckets(oldBuckets, members, 12, costs);
+        assertEquals(3, changes(oldBuckets, newBuckets));
+        for (Integer member : members) {
+            assertEquals(3, pm.getNodeBuckets(newBuckets, member).size());
+        }
 
         /*
             Worst case
-            Old: {0=server4, 1=server1, 2=server6, 3=server8}
             Drops everything with new nodes
-            New: {0=new1, 1=new2, 2=new3}
-         */
-        oldBuckets = newBuckets;
-        members = Arrays.asList(2001, 2002, 2003);
-
-        newBuckets = pm.updateBuckets(oldBuckets, members);
-        assertEquals(newBuckets.get(0).intValue(), 2001);
-        assertEquals(newBuckets.get(1).intValue(), 2002);
-        assertEquals(newBuckets.get(2).intValue(), 2003);
-
-        /*
-            Strange case
-            Old: {0=new1, 1=new2, 2=new3}
-            Drops new1 and server1 is back
-            New: {0=server1, 1=new2, 2=new3}
          */
         oldBuckets = newBuckets;
-        members = Arrays.asList(1001, 2002, 2003);
-
-        newBuckets = pm.updateBuckets(oldBuckets, members);
-        assertEquals(newBuckets.get(0).intValue(), 1001);
-        assertEquals(newBuckets.get(1).intValue(), 2002);
-        assertEquals(newBuckets.get(2).intValue(), 2003);
-
-        /*
-            Strange case
-            Old: {0=server1, 1=new2, 2=new3}
-            Drops new2 and new3 and server2 and server3 are back but in different order
-            New: {0=server1, 1=server3, 2=server2}
-         */
-        oldBuckets = newBuckets;
-        members = Arrays.asList(1001, 1003, 1002);
-
-        newBuckets = pm.updateBuckets(oldBuckets, members);
-        assertEquals(newBuckets.get(0).intValue(), 1001);
-        assertEquals(newBuckets.get(1).intValue(), 1003);
-        assertEquals(newBuckets.get(2).intValue(), 1002);
-
-        /*
-            Strange case
-            No changes, but members order is different
-            Result: bucket should not be affected
-         */
-        oldBuckets = newBuckets;
-        members = Arrays.asList(1003, 1002, 1001);
-
-        newBuckets = pm.updateBuckets(oldBuckets, members);
-        assertEquals(newBuckets.get(0).intValue(), 1001);
-        assertEquals(newBuckets.get(1).intValue(), 1003);
-        assertEquals(newBuckets.get(2).intValue(), 1002);
+        members = Arrays.asList(3001, 3002);
+        newBuckets = pm.updateBuckets(oldBuckets, members, 12, costs);
+        assertEquals(6, pm.getNodeBuckets(newBuckets, 3001).size());
+        assertEquals(6, pm.getNodeBuckets(newBuckets, 3002).size());
 
         /*
-            Normal case
-            New nodes new1, new2, new2 joining
-            New: {0=server1, 1=server3, 2=server2, 3=new1, 4=new2, 5=new3}
+            Buckets are balanced by cost
          */
+        costs.put(0, 11L);
         oldBuckets = newBuckets;
-        members = Arrays.asList(1003, 1002, 1001, 2001, 2002, 2003);
-
-        newBuckets = pm.updateBuckets(oldBuckets, members);
-        assertEquals(newBuckets.get(0).intValue(), 1001);
-        assertEquals(newBuckets.get(1).intValue(), 1003);
-        assertEquals(newBuckets.get(2).intValue(), 1002);
-        assertEquals(newBuckets.get(3).intValue(), 2001);
-        assertEquals(newBuckets.get(4).intValue(), 2002);
-        assertEquals(newBuckets.get(5).intValue(), 2003);
+        members = Arrays.asList(3001, 3002, 3003);
+        newBuckets = pm.updateBuckets(oldBuckets, members, 12, costs);
+        Integer expensive = newBuckets.get(0);
+        assertEquals(1, pm.getNodeBuckets(newBuckets, expensive).size());
     }
 
     @Test
     public void distributeLocalPartitions() {
         PartitionManagerImpl pm = new PartitionManagerImpl();
 
-        PartitionEntry[] entries = new PartitionEntry[10];
-        Map<PartitionEntry, Integer> previous = new HashMap<>();
-        Map<PartitionEntry, Integer> current = new HashMap<>();
-        for (int i = 0; i < entries.length; i++) {
-            entries[i] = new PartitionEntry("tenant", "t" + i);
-            previous.put(entries[i], 1);
+        Map<Integer, Integer> previous = new HashMap<>();
+        Map<Integer, Integer> current = new HashMap<>();
+        for (int i = 0; i < 10; i++) {
+            previous.put(i, 1);
             if (i < 4) {
-                current.put(entries[i], 1);
+                current.put(i, 1);
             } else {
-                current.put(entries[i], 2);
+                current.put(i, 2);
             }
         }
-        Map<String, Map<String, List<String>>> node1 = pm.getAddedRemovedPartition(previous, current, 1);
-        Map<String, Map<String, List<String>>> node2 = pm.getAddedRemovedPartition(previous, current, 2);
+        Map<String, Set<Integer>> node1 = pm.getAddedRemovedBuckets(previous, current, 1);
+        Map<String, Set<Integer>> node2 = pm.getAddedRemovedBuckets(previous, current, 2);
         assertEquals(node1.get("added").size(), 0);
-        assertEquals(node1.get("removed").get("tenant").size(), 6);
+        assertEquals(node1.get("removed").size(), 6);
         assertEquals(node2.get("removed").size(), 0);
-        assertEquals(node2.get("added").get("tenant").size(), 6);
+        assertEquals(node2.get("added").size(), 6);
+
+        Map<String, Set<Integer>> newNode = pm.getAddedRemovedBuckets(null, current, 1);
+        assertEquals(newNode.get("added").size(), 4);
+        assertEquals(newNode.get("removed").size(), 0);
     }
 
+    private static int changes(Map<Integer, Integer> oldBuckets, Map<Integer, Integer> newBuckets) {
+        int changes = 0;
+        for (Integer bucket : oldBuckets.keySet()) {
+            if (!oldBuckets.get(bucket).equals(newBuckets.get(bucket))) {
+                changes++;
+            }
+        }
+        return changes;
+    }
 }
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.alerts.engine.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.hawkular.alerts.api.model.data.Data;
+import org.hawkular.alerts.engine.impl.ClusterMessenger.MessageBatch;
+import org.hawkular.alerts.engine.impl.PartitionManagerImpl.NotifyData;
+import org.hawkular.alerts.engine.impl.PartitionManagerImpl.NotifyTrigger;
+import org.hawkular.alerts.engine.service.PartitionManager.Operation;
+import org.junit.Test;
+
+/**
+ * @author Jay Shaughnessy
+ * @author Lucas Ponce
+ */
+public class ClusterMessengerTest {
+
+    @Test
+    public void encodeDecodeBatch() throws Exception {
+        List<Data> data = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            data.add(Data.forNumeric("tenant_0", "data_" + (i % 10), i, (double) i));
+        }
+        List<Serializable> messages = Arrays.asList(
+                new NotifyTrigger(1001, 1002, Operation.ADD, "tenant_0", "trigger_0"),
+                new NotifyData(1001, data, Data.class),
+                new NotifyTrigger(1001, 1002, Operation.REMOVE, "tenant_0", "trigger_0"));
+
+        MessageBatch plain = ClusterMessenger.encode(messages, Integer.MAX_VALUE);
+        assertFalse(plain.isCompressed());
+        assertEquals(3, plain.getSize());
+
+        MessageBatch compressed = ClusterMessenger.encode(messages, 0);
+        assertTrue(compressed.isCompressed());
+        assertTrue(compressed.toString(), compressed.getPayload().length < plain.getPayload().length);
+
+        for (MessageBatch batch : Arrays.asList(plain, compressed)) {
+            List<Serializable> decoded = ClusterMessenger.decode(batch);
+            assertEquals(3, decoded.size());
+            assertEquals(Operation.ADD, ((NotifyTrigger) decoded.get(0)).getOperation());
+            assertEquals(data, new ArrayList<>(((NotifyData) decoded.get(1)).getDataCollection()));
+            assertEquals(Operation.REMOVE, ((NotifyTrigger) decoded.get(2)).getOperation());
+        }
+    }
+
+    @Test
+    public void discardDuplicatedBatches() throws Exception {
+        ClusterMessenger.DeliveredSequences sequences = new ClusterMessenger.DeliveredSequences();
+        List<String> delivered = new ArrayList<>();
+
+        assertTrue(sequences.deliver("sender_0", "node_0", 1, () -> delivered.add("sender_0-1")));
+        assertTrue(sequences.deliver("sender_0", "node_0", 2, () -> delivered.add("sender_0-2")));
+        // a retry of a batch already delivered
+        assertFalse(sequences.deliver("sender_0", "node_0", 2, () -> delivered.add("sender_0-2")));
+        assertFalse(sequences.deliver("sender_0", "node_0", 1, () -> delivered.add("sender_0-1")));
+        // sequences are tracked by sender, a restarted node uses a new sender id
+        assertTrue(sequences.deliver("sender_1", "node_1", 1, () -> delivered.add("sender_1-1")));
+        assertTrue(sequences.deliver("sender_0", "node_0", 3, () -> delivered.add("sender_0-3")));
+
+        assertEquals(Arrays.asList("sender_0-1", "sender_0-2", "sender_1-1", "sender_0-3"), delivered);
+    }
+
+    @Test
+    public void discardSequencesOfLeftSenders() throws Exception {
+        ClusterMessenger.DeliveredSequences sequences = new ClusterMessenger.DeliveredSequences();
+
+        assertTrue(sequences.deliver("sender_0", "node_0", 1, () -> { }));
+        assertTrue(sequences.deliver("sender_1", "node_1", 1, () -> { }));
+        assertEquals(2, sequences.size());
+
+        // node_1 has left the cluster
+        sequences.retainNodes(Collections.singleton("node_0"));
+        assertEquals(1, sequences.size());
+        assertFalse(sequences.deliver("sender_0", "node_0", 1, () -> { }));
+    }
+}
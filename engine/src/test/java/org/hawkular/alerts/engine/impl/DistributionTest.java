@@ -16,10 +16,19 @@
  */
 package org.hawkular.alerts.engine.impl;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+
+import org.hawkular.alerts.api.model.data.Data;
 
 import org.hawkular.alerts.engine.impl.PartitionManagerImpl.PartitionEntry;
 import org.junit.Test;
@@ -186,5 +195,74 @@ public class DistributionTest {
         }
     }
 
+    @Test
+    public void routeDataToOwners() {
+
+        PartitionManagerImpl pm = new PartitionManagerImpl();
+
+        Map<Integer, Map<String, Set<String>>> nodeDataIds = new HashMap<>();
+        Map<String, Set<String>> node1 = new HashMap<>();
+        node1.put("tenant_0", new HashSet<>(Arrays.asList("data_0", "data_1")));
+        nodeDataIds.put(1001, node1);
+        Map<String, Set<String>> node2 = new HashMap<>();
+        node2.put("tenant_0", new HashSet<>(Arrays.asList("data_1")));
+        node2.put("tenant_1", new HashSet<>(Arrays.asList("data_0")));
+        nodeDataIds.put(1002, node2);
+
+        Map<String, Map<String, Set<Integer>>> owners = pm.calculateOwners(nodeDataIds);
+        assertEquals(new HashSet<>(Arrays.asList(1001)), owners.get("tenant_0").get("data_0"));
+        assertEquals(new HashSet<>(Arrays.asList(1001, 1002)), owners.get("tenant_0").get("data_1"));
+        assertEquals(new HashSet<>(Arrays.asList(1002)), owners.get("tenant_1").get("data_0"));
+
+        Data d0 = Data.forNumeric("tenant_0", "data_0", 1, 1.0);
+        Data d1 = Data.forNumeric("tenant_0", "data_1", 2, 1.0);
+        Data d2 = Data.forNumeric("tenant_1", "data_0", 3, 1.0);
+        Data d3 = Data.forNumeric("tenant_1", "data_1", 4, 1.0);
+
+        Map<Integer, List<Data>> routes = pm.routeByOwner(Arrays.asList(d0, d1, d2, d3), owners,
+                Data::getTenantId, Data::getId);
+        assertEquals(2, routes.size());
+        assertEquals(Arrays.asList(d0, d1), routes.get(1001));
+        assertEquals(Arrays.asList(d1, d2), routes.get(1002));
+        assertNull(routes.get(1003));
+    }
+
+    @Test
+    public void balanceWeightedPartition() {
+
+        PartitionManagerImpl pm = new PartitionManagerImpl();
+
+        List<PartitionEntry> entries = generateTriggers(3, 100);
+        Map<Integer, Integer> buckets = new HashMap<>();
+        buckets.put(0, 1000);
+        buckets.put(1, 1001);
+        buckets.put(2, 1002);
+        Map<PartitionEntry, Integer> partition = pm.calculatePartition(entries, buckets);
+
+        // Uniform costs are balanced by the consistent hash
+        Map<PartitionEntry, Long> costs = new HashMap<>();
+        assertEquals(partition, pm.balancePartition(partition, costs, buckets.values(), 1.5, 100));
+
+        // A few expensive triggers on the same node
+        int heavy = 0;
+        for (PartitionEntry entry : entries) {
+            if (partition.get(entry).equals(1000) && heavy < 10) {
+                costs.put(entry, 100L);
+                heavy++;
+            }
+        }
+        double skew = pm.calculateSkew(partition, costs, buckets.values());
+        assertTrue("Skew " + skew, skew > 1.5);
+
+        Map<PartitionEntry, Integer> balanced = pm.balancePartition(partition, costs, buckets.values(), 1.2, 100);
+        double balancedSkew = pm.calculateSkew(balanced, costs, buckets.values());
+        assertTrue("Skew " + balancedSkew, balancedSkew <= 1.2);
+        assertEquals(partition.keySet(), balanced.keySet());
+
+        // Bounded movement
+        Map<PartitionEntry, Integer> bounded = pm.balancePartition(partition, costs, buckets.values(), 1.0, 2);
+        assertEquals(2, comparePartitions(partition, bounded));
+    }
+
 
 }
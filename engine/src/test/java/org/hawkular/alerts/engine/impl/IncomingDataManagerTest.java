@@ -0,0 +1,158 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.alerts.engine.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hawkular.alerts.api.exception.OverloadedException;
+import org.hawkular.alerts.api.model.data.Data;
+import org.hawkular.alerts.engine.impl.IncomingDataManagerImpl.IncomingData;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Testing admission limits of IncomingDataManagerImpl.
+ *
+ * @author Jay Shaughnessy
+ * @author Lucas Ponce
+ */
+public class IncomingDataManagerTest {
+
+    CountDownLatch blocked;
+    ExecutorService executor;
+
+    @Before
+    public void before() {
+        // Keep the executor busy so buffered requests stay pending
+        blocked = new CountDownLatch(1);
+        executor = Executors.newSingleThreadExecutor();
+        executor.submit(() -> {
+            blocked.await();
+            return null;
+        });
+    }
+
+    @After
+    public void after() {
+        blocked.countDown();
+        executor.shutdownNow();
+        System.clearProperty("hawkular-alerts.incoming-max-pending");
+        System.clearProperty("hawkular-alerts.incoming-max-tenant");
+        System.clearProperty("hawkular-alerts.incoming-max-engine-pending");
+    }
+
+    @Test
+    public void maxPendingTest() {
+        System.setProperty("hawkular-alerts.incoming-max-pending", "2");
+        IncomingDataManagerImpl incoming = new IncomingDataManagerImpl();
+        incoming.setExecutor(executor);
+
+        incoming.bufferData(data("tenant", 1));
+        incoming.bufferData(data("tenant", 1));
+        try {
+            incoming.bufferData(data("tenant", 1));
+            fail("Third request should be rejected");
+        } catch (OverloadedException e) {
+            assertFalse(e.isTenantLimit());
+        }
+
+        Map<String, String> status = incoming.getStatus();
+        assertEquals("2", status.get("incoming-pending-requests"));
+        assertEquals("2", status.get("incoming-accepted-data"));
+        assertEquals("1", status.get("incoming-rejected-data"));
+        assertEquals("1", status.get("incoming-rejected-requests"));
+    }
+
+    @Test
+    public void maxTenantTest() {
+        System.setProperty("hawkular-alerts.incoming-max-pending", "0");
+        System.setProperty("hawkular-alerts.incoming-max-tenant", "3");
+        IncomingDataManagerImpl incoming = new IncomingDataManagerImpl();
+        incoming.setExecutor(executor);
+
+        incoming.bufferData(data("tenant-1", 2));
+        try {
+            incoming.bufferData(data("tenant-1", 2));
+            fail("tenant-1 should be over its limit");
+        } catch (OverloadedException e) {
+            assertTrue(e.isTenantLimit());
+        }
+        // Other tenants are not affected
+        incoming.bufferData(data("tenant-2", 3));
+
+        Map<String, String> status = incoming.getStatus();
+        assertEquals("2", status.get("incoming-pending-requests"));
+        assertEquals("5", status.get("incoming-accepted-data"));
+        assertEquals("2", status.get("incoming-rejected-data"));
+    }
+
+    @Test
+    public void maxEnginePendingTest() {
+        System.setProperty("hawkular-alerts.incoming-max-pending", "0");
+        System.setProperty("hawkular-alerts.incoming-max-engine-pending", "10");
+        AtomicInteger enginePending = new AtomicInteger(0);
+        AlertsEngineImpl engine = new AlertsEngineImpl() {
+            @Override
+            public int getPendingSize() {
+                return enginePending.get();
+            }
+        };
+        try {
+            IncomingDataManagerImpl incoming = new IncomingDataManagerImpl();
+            incoming.setExecutor(executor);
+            incoming.setAlertsEngine(engine);
+
+            incoming.bufferData(data("tenant", 1));
+            // Data handed to the engine and not yet evaluated blocks new requests
+            enginePending.set(11);
+            try {
+                incoming.bufferData(data("tenant", 1));
+                fail("Request should be rejected while the engine backlog is over its limit");
+            } catch (OverloadedException e) {
+                assertFalse(e.isTenantLimit());
+            }
+            enginePending.set(10);
+            incoming.bufferData(data("tenant", 1));
+
+            Map<String, String> status = incoming.getStatus();
+            assertEquals("10", status.get("incoming-engine-pending"));
+            assertEquals("2", status.get("incoming-accepted-data"));
+            assertEquals("1", status.get("incoming-rejected-data"));
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    private IncomingData data(String tenantId, int size) {
+        Data[] data = new Data[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = Data.forNumeric(tenantId, "NumericData-01", i + 1, 10.0);
+        }
+        return new IncomingData(Arrays.asList(data), true);
+    }
+}
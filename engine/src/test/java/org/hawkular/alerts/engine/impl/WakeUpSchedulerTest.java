@@ -0,0 +1,102 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.alerts.engine.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Timer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Jay Shaughnessy
+ * @author Lucas Ponce
+ */
+public class WakeUpSchedulerTest {
+
+    static final int BATCH_SIZE = 100;
+
+    Timer timer;
+    AtomicInteger invocations;
+    CountDownLatch invoked;
+
+    @Before
+    public void before() {
+        timer = new Timer("WakeUpSchedulerTest-Timer", true);
+        invocations = new AtomicInteger(0);
+        invoked = new CountDownLatch(1);
+    }
+
+    @After
+    public void after() {
+        timer.cancel();
+    }
+
+    private WakeUpScheduler scheduler(int batchWindow) {
+        return new WakeUpScheduler(timer, () -> {
+            invocations.incrementAndGet();
+            invoked.countDown();
+        }, batchWindow, BATCH_SIZE);
+    }
+
+    @Test
+    public void immediateWakeUp() throws Exception {
+        WakeUpScheduler scheduler = scheduler(0);
+        scheduler.wakeUp(0);
+        assertFalse(scheduler.isPending());
+
+        scheduler.wakeUp(1);
+        assertTrue(invoked.await(5, TimeUnit.SECONDS));
+        assertEquals(1, invocations.get());
+    }
+
+    @Test
+    public void windowBatching() throws Exception {
+        WakeUpScheduler scheduler = scheduler(500);
+        for (int i = 1; i < BATCH_SIZE; i++) {
+            scheduler.wakeUp(i);
+        }
+        assertTrue(scheduler.isPending());
+        assertTrue(invoked.await(5, TimeUnit.SECONDS));
+        // All the wake ups inside the window are served by a single invocation
+        Thread.sleep(600);
+        assertEquals(1, invocations.get());
+        assertFalse(scheduler.isPending());
+    }
+
+    @Test
+    public void sizeTriggeredWakeUp() throws Exception {
+        WakeUpScheduler scheduler = scheduler(60000);
+        scheduler.wakeUp(1);
+        assertTrue(scheduler.isPending());
+        assertFalse(invoked.await(100, TimeUnit.MILLISECONDS));
+
+        // Reaching the batch size replaces the pending window wake up by an immediate one
+        scheduler.wakeUp(BATCH_SIZE);
+        assertTrue(invoked.await(5, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        assertEquals(1, invocations.get());
+        assertFalse(scheduler.isPending());
+    }
+}
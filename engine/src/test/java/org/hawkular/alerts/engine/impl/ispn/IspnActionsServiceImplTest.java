@@ -21,6 +21,7 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 
 import org.hawkular.alerts.api.model.action.Action;
@@ -122,6 +123,16 @@ public class IspnActionsServiceImplTest extends IspnBaseServiceImplTest {
             assertNotNull(existingActions);
             assertEquals(2, existingActions.size());
 
+            int batchSize = actions.batchSize;
+            actions.batchSize = 1;
+            List<Action> streamedActions = new ArrayList<>();
+            try {
+                assertEquals(2, actions.streamActions("tenant0", null, streamedActions::add));
+            } finally {
+                actions.batchSize = batchSize;
+            }
+            assertEquals(new HashSet<>(existingActions), new HashSet<>(streamedActions));
+
             ActionsCriteria actionsCriteria = new ActionsCriteria();
 
             actionsCriteria.setActionPlugin("xxx");
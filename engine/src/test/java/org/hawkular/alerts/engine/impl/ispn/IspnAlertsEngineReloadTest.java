@@ -0,0 +1,116 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.alerts.engine.impl.ispn;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import org.hawkular.alerts.api.model.condition.ThresholdCondition;
+import org.hawkular.alerts.api.model.dampening.Dampening;
+import org.hawkular.alerts.api.model.trigger.Mode;
+import org.hawkular.alerts.api.model.trigger.Trigger;
+import org.hawkular.alerts.engine.impl.AlertsEngineImpl;
+import org.hawkular.alerts.engine.impl.DroolsRulesEngineImpl;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Test the load of triggers into the AlertsEngine on reload().
+ *
+ * @author Jay Shaughnessy
+ * @author Lucas Ponce
+ */
+public class IspnAlertsEngineReloadTest extends IspnBaseServiceImplTest {
+
+    static final int NUM_TENANTS = 3;
+    static final int NUM_TRIGGERS = 5;
+
+    static AlertsEngineImpl engine;
+    static DroolsRulesEngineImpl rules;
+
+    @BeforeClass
+    public static void init() {
+        System.setProperty("hawkular.data", "./target/ispn");
+        definitions = new IspnDefinitionsServiceImpl();
+        definitions.init();
+        rules = new DroolsRulesEngineImpl();
+        engine = new AlertsEngineImpl();
+        engine.setRules(rules);
+        engine.setDefinitions(definitions);
+    }
+
+    @AfterClass
+    public static void shutdown() throws Exception {
+        engine.shutdown();
+        for (int i = 0; i < NUM_TENANTS; i++) {
+            for (int j = 0; j < NUM_TRIGGERS; j++) {
+                definitions.removeTrigger("reloadTenant" + i, "reloadTrigger" + j);
+            }
+        }
+    }
+
+    @Test
+    public void reloadTest() throws Exception {
+        for (int i = 0; i < NUM_TENANTS; i++) {
+            String tenantId = "reloadTenant" + i;
+            for (int j = 0; j < NUM_TRIGGERS; j++) {
+                String triggerId = "reloadTrigger" + j;
+                Trigger trigger = new Trigger(tenantId, triggerId, "Trigger " + triggerId);
+                trigger.setEnabled(j != 0);
+                definitions.addTrigger(tenantId, trigger);
+                ThresholdCondition condition = new ThresholdCondition(tenantId, triggerId, Mode.FIRING,
+                        "NumericData-" + j, ThresholdCondition.Operator.GT, 10.0);
+                definitions.setConditions(tenantId, triggerId, Mode.FIRING, Arrays.asList(condition));
+                definitions.addDampening(tenantId,
+                        Dampening.forStrict(tenantId, triggerId, Mode.FIRING, 2));
+            }
+        }
+
+        engine.reload();
+
+        long timeout = System.currentTimeMillis() + 10000;
+        Map<String, String> status = engine.getReloadStatus();
+        while (!"LOADED".equals(status.get("reload-status")) && System.currentTimeMillis() < timeout) {
+            Thread.sleep(50);
+            status = engine.getReloadStatus();
+        }
+        assertEquals(status.toString(), "LOADED", status.get("reload-status"));
+        assertEquals(status.get("reload-triggers-total"), status.get("reload-triggers-loaded"));
+        assertEquals(status.get("reload-tenants-total"), status.get("reload-tenants-loaded"));
+        assertTrue(status.toString(), Integer.valueOf(status.get("reload-tenants-total")) >= NUM_TENANTS);
+
+        for (int i = 0; i < NUM_TENANTS; i++) {
+            String tenantId = "reloadTenant" + i;
+            // Disabled triggers are not loaded
+            assertNull(engine.getLoadedTrigger(new Trigger(tenantId, "reloadTrigger0", "")));
+            for (int j = 1; j < NUM_TRIGGERS; j++) {
+                String triggerId = "reloadTrigger" + j;
+                assertNotNull(engine.getLoadedTrigger(new Trigger(tenantId, triggerId, "")));
+                ThresholdCondition condition = new ThresholdCondition(tenantId, triggerId, Mode.FIRING,
+                        "NumericData-" + j, ThresholdCondition.Operator.GT, 10.0);
+                assertNotNull(rules.getFact(condition));
+                assertNotNull(rules.getFact(Dampening.forStrict(tenantId, triggerId, Mode.FIRING, 2)));
+            }
+        }
+    }
+}
@@ -17,21 +17,33 @@
 package org.hawkular.alerts.engine.impl.ispn;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
 
 import org.hawkular.alerts.api.model.Severity;
 import org.hawkular.alerts.api.model.event.Alert;
 import org.hawkular.alerts.api.model.event.Event;
+import org.hawkular.alerts.api.model.event.EventType;
+import org.hawkular.alerts.api.model.event.EventsCount;
+import org.hawkular.alerts.api.model.paging.Order;
+import org.hawkular.alerts.api.model.paging.Page;
+import org.hawkular.alerts.api.model.paging.Pager;
 import org.hawkular.alerts.api.services.AlertsCriteria;
 import org.hawkular.alerts.api.services.EventsCriteria;
+import org.hawkular.alerts.engine.impl.ispn.model.IspnEvent;
 import org.hawkular.commons.log.MsgLogger;
 import org.hawkular.commons.log.MsgLogging;
 import org.junit.BeforeClass;
@@ -343,6 +355,112 @@ public class IspnAlertsServiceImplTest extends IspnBaseServiceImplTest {
         deleteTestAlerts(numTenants);
     }
 
+    @Test
+    public void queryAlertsPaged() throws Exception {
+        int numTenants = 1;
+        int numTriggers = 5;
+        int numAlerts = 5;
+        createTestAlerts(numTenants, numTriggers, numAlerts);
+
+        // The last order is the primary one
+        Pager pager = Pager.builder()
+                .withPageSize(10)
+                .withStartPage(1)
+                .orderBy("trigger.id", Order.Direction.ASCENDING)
+                .orderBy("ctime", Order.Direction.DESCENDING)
+                .build();
+        Page<Alert> page = alerts.getAlerts("tenant0", null, pager);
+        assertEquals(numTriggers * numAlerts, page.getTotalSize());
+        assertEquals(10, page.size());
+        for (int i = 0; i < page.size(); i++) {
+            assertEquals(3 - (i / numTriggers), page.get(i).getCtime());
+            assertEquals("trigger" + (i % numTriggers), page.get(i).getTriggerId());
+        }
+
+        // Severity is sorted in memory
+        pager = Pager.builder().withPageSize(10).withStartPage(2).orderByAscending("severity").build();
+        page = alerts.getAlerts("tenant0", null, pager);
+        assertEquals(numTriggers * numAlerts, page.getTotalSize());
+        assertEquals(5, page.size());
+        assertEquals(Severity.CRITICAL, page.get(0).getSeverity());
+
+        // A page out of range is empty, with the total of the query
+        pager = Pager.builder().withPageSize(10).withStartPage(5).orderByDescending("ctime").build();
+        page = alerts.getAlerts("tenant0", null, pager);
+        assertEquals(numTriggers * numAlerts, page.getTotalSize());
+        assertTrue(page.isEmpty());
+
+        deleteTestAlerts(numTenants);
+    }
+
+    @Test
+    public void deleteAlertsByCriteria() throws Exception {
+        int numTenants = 1;
+        int numTriggers = 5;
+        int numAlerts = 5;
+        createTestAlerts(numTenants, numTriggers, numAlerts);
+
+        AlertsCriteria criteria = new AlertsCriteria();
+        criteria.setTriggerId("trigger0");
+        assertEquals(numAlerts, alerts.deleteAlerts("tenant0", criteria));
+        assertEquals(0, alerts.getAlerts("tenant0", criteria, null).size());
+        assertEquals((numTriggers - 1) * numAlerts, alerts.getAlerts("tenant0", null, null).size());
+
+        deleteTestAlerts(numTenants);
+    }
+
+    @Test
+    public void alertsShareTriggerSnapshot() throws Exception {
+        int numTenants = 1;
+        int numTriggers = 1;
+        int numAlerts = 5;
+        createTestAlerts(numTenants, numTriggers, numAlerts);
+
+        List<Alert> storedAlerts = alerts.getAlerts("tenant0", null, null);
+        assertEquals(numAlerts, storedAlerts.size());
+        Set<String> snapshotIds = new HashSet<>();
+        for (Alert alert : storedAlerts) {
+            IspnEvent ispnEvent = (IspnEvent) alerts.backend.get(IspnPk.pk(alert));
+            assertNull(ispnEvent.getEvent().getTrigger());
+            assertEquals("trigger0", ispnEvent.getTriggerId());
+            snapshotIds.add(ispnEvent.getSnapshotId());
+            assertEquals("Trigger trigger0", alert.getTrigger().getName());
+        }
+        assertEquals(1, snapshotIds.size());
+        String snapshotPk = IspnPk.pkFromTriggerSnapshot("tenant0", snapshotIds.iterator().next());
+        assertNotNull(alerts.backend.get(snapshotPk));
+
+        deleteTestAlerts(numTenants);
+        assertNull(alerts.backend.get(snapshotPk));
+    }
+
+    @Test
+    public void triggerSnapshotSurvivesConcurrentDeletes() throws Exception {
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        Thread deleter = new Thread(() -> {
+            try {
+                for (int i = 0; i < 50; i++) {
+                    deleteTestAlerts(1);
+                }
+            } catch (Exception e) {
+                failure.set(e);
+            }
+        });
+        deleter.start();
+        for (int i = 0; i < 50; i++) {
+            createTestAlerts(1, 1, 1);
+        }
+        deleter.join();
+        assertNull(failure.get());
+
+        createTestAlerts(1, 1, 1);
+        for (Alert alert : alerts.getAlerts("tenant0", null, null)) {
+            assertEquals("Trigger trigger0", alert.getTrigger().getName());
+        }
+
+        deleteTestAlerts(1);
+    }
+
     @Test
     public void queryAlertsByResolvedTime() throws Exception {
         int numTenants = 1;
@@ -514,6 +632,64 @@ public class IspnAlertsServiceImplTest extends IspnBaseServiceImplTest {
         deleteTestAlerts(numTenants);
     }
 
+    @Test
+    public void ackAlertsInBatches() throws Exception {
+        int numTenants = 1;
+        int numTriggers = 5;
+        int numAlerts = 5;
+        createTestAlerts(numTenants, numTriggers, numAlerts);
+
+        int batchSize = alerts.batchSize;
+        alerts.batchSize = 3;
+        try {
+            List<String> alertIds = alerts.getAlerts("tenant0", null, null).stream()
+                    .map(Alert::getAlertId)
+                    .collect(Collectors.toList());
+            alerts.ackAlerts("tenant0", alertIds, "test", "ACK from ackAlertsInBatches() test");
+        } finally {
+            alerts.batchSize = batchSize;
+        }
+
+        AlertsCriteria criteria = new AlertsCriteria();
+        criteria.setStatus(Alert.Status.ACKNOWLEDGED);
+        assertEquals(numTriggers * numAlerts, alerts.getAlerts("tenant0", criteria, null).size());
+
+        deleteTestAlerts(numTenants);
+    }
+
+    @Test
+    public void streamAlertsInBatches() throws Exception {
+        int numTenants = 2;
+        int numTriggers = 3;
+        int numAlerts = 4;
+        createTestAlerts(numTenants, numTriggers, numAlerts);
+
+        Set<String> tenantIds = new HashSet<>(Arrays.asList("tenant0", "tenant1"));
+        List<Alert> streamed = new ArrayList<>();
+        int batchSize = alerts.batchSize;
+        alerts.batchSize = 5;
+        try {
+            assertEquals(numTenants * numTriggers * numAlerts,
+                    alerts.streamAlerts(tenantIds, null, streamed::add));
+        } finally {
+            alerts.batchSize = batchSize;
+        }
+        assertEquals(numTenants * numTriggers * numAlerts, streamed.size());
+        assertEquals(streamed.size(), streamed.stream().map(a -> a.getTenantId() + a.getId()).distinct().count());
+
+        AlertsCriteria criteria = new AlertsCriteria();
+        criteria.setTriggerId("trigger0");
+        assertEquals(numTenants * numAlerts, alerts.streamAlerts(tenantIds, criteria, a -> { }));
+
+        EventsCriteria eventsCriteria = new EventsCriteria();
+        eventsCriteria.setTriggerId("trigger0");
+        List<Event> streamedEvents = new ArrayList<>();
+        assertEquals(numTenants * numAlerts, alerts.streamEvents(tenantIds, eventsCriteria, streamedEvents::add));
+        streamedEvents.forEach(e -> assertEquals("trigger0", e.getTrigger().getId()));
+
+        deleteTestAlerts(numTenants);
+    }
+
     @Test
     public void addNote() throws Exception {
         int numTenants = 1;
@@ -880,6 +1056,211 @@ public class IspnAlertsServiceImplTest extends IspnBaseServiceImplTest {
         deleteTestAlerts(numTenants);
     }
 
+    @Test
+    public void queryEventsWithQuotes() throws Exception {
+        Event event = new Event("tenant0", "event'quote", 1L, "testDataSource", "testDataId", "category'quote",
+                "event with quotes");
+        alerts.addEvents(Arrays.asList(event));
+
+        EventsCriteria criteria = new EventsCriteria();
+        criteria.setEventId("event'quote");
+        criteria.setCategory("category'quote");
+        List<Event> events = alerts.getEvents("tenant0", criteria, null);
+        assertEquals(1, events.size());
+        assertEquals("event'quote", events.get(0).getId());
+
+        assertEquals(1, alerts.deleteEvents("tenant0", criteria));
+        assertEquals(0, alerts.getEvents("tenant0", criteria, null).size());
+    }
+
+    @Test
+    public void dropExpiredBuckets() throws Exception {
+        long day = IspnEvent.BUCKET_SIZE;
+        List<Event> newEvents = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            newEvents.add(new Event("bucketTenant", "old" + i, day + i, "testDataSource", "testDataId", "category",
+                    "event in the old bucket"));
+            newEvents.add(new Event("bucketTenant", "new" + i, 3 * day + i, "testDataSource", "testDataId",
+                    "category", "event in the new bucket"));
+        }
+        alerts.addEvents(newEvents);
+
+        EventsCriteria criteria = new EventsCriteria();
+        criteria.setStartTime(day + 2);
+        criteria.setEndTime(3 * day + 2);
+        assertEquals(6, alerts.getEvents("bucketTenant", criteria, null).size());
+
+        int batchSize = alerts.batchSize;
+        alerts.batchSize = 2;
+        try {
+            assertEquals(0, alerts.dropBuckets(2 * day - 1));
+            assertEquals(5, alerts.dropBuckets(2 * day));
+        } finally {
+            alerts.batchSize = batchSize;
+        }
+
+        List<Event> events = alerts.getEvents("bucketTenant", null, null);
+        assertEquals(5, events.size());
+        events.forEach(e -> assertTrue(e.getId().startsWith("new")));
+
+        alerts.deleteEvents("bucketTenant", new EventsCriteria());
+    }
+
+    @Test
+    public void countAlertsAndEvents() throws Exception {
+        int numTenants = 2;
+        int numTriggers = 3;
+        int numAlerts = 9;
+        createTestAlerts(numTenants, numTriggers, numAlerts);
+        createTestEvents(numTenants, numTriggers, numAlerts);
+
+        Set<String> tenantIds = new HashSet<>(Arrays.asList("tenant0", "tenant1"));
+
+        List<EventsCount> total = alerts.countAlerts(tenantIds, null, null);
+        assertEquals(1, total.size());
+        assertEquals(numTenants * numTriggers * numAlerts, total.get(0).getCount());
+        assertTrue(total.get(0).getGroup().isEmpty());
+
+        List<EventsCount> bySeverity = alerts.countAlerts(tenantIds, null,
+                Arrays.asList(EventsCount.Field.TENANT_ID, EventsCount.Field.SEVERITY));
+        assertEquals(bySeverity.toString(), 6, bySeverity.size());
+        for (EventsCount count : bySeverity) {
+            assertEquals(count.toString(), numTriggers * numAlerts / 3, count.getCount());
+            assertEquals(2, count.getGroup().size());
+        }
+
+        AlertsCriteria criteria = new AlertsCriteria();
+        criteria.setStatus(Alert.Status.RESOLVED);
+        List<EventsCount> byDay = alerts.countAlerts(tenantIds, criteria,
+                Arrays.asList(EventsCount.Field.STATUS, EventsCount.Field.DAY));
+        assertEquals(byDay.toString(), 1, byDay.size());
+        assertEquals("RESOLVED", byDay.get(0).getGroup().get("status"));
+        assertEquals("0", byDay.get(0).getGroup().get("day"));
+        assertEquals(numTenants * numTriggers * numAlerts / 3, byDay.get(0).getCount());
+
+        EventsCriteria eventsCriteria = new EventsCriteria();
+        eventsCriteria.setTriggerId("trigger0");
+        eventsCriteria.setEventType(EventType.EVENT.name());
+        List<EventsCount> byCategory = alerts.countEvents(Collections.singleton("tenant0"), eventsCriteria,
+                Arrays.asList(EventsCount.Field.CATEGORY));
+        Map<String, Long> categories = byCategory.stream()
+                .collect(Collectors.toMap(c -> c.getGroup().get("category"), EventsCount::getCount));
+        assertEquals(2, categories.size());
+        assertEquals(Long.valueOf(5), categories.get("category0"));
+        assertEquals(Long.valueOf(4), categories.get("category1"));
+
+        deleteTestAlerts(numTenants);
+        deleteTestEvents(numTenants);
+    }
+
+    @Test
+    public void pageAlertsWithCursor() throws Exception {
+        int numTenants = 2;
+        int numTriggers = 2;
+        int numAlerts = 5;
+        createTestAlerts(numTenants, numTriggers, numAlerts);
+
+        Set<String> tenantIds = new HashSet<>(Arrays.asList("tenant0", "tenant1"));
+        Pager pager = Pager.builder().withCursor("").withPageSize(6).orderByDescending("ctime").build();
+        Page<Alert> page = alerts.getAlerts(tenantIds, null, pager);
+        assertEquals(numTenants * numTriggers * numAlerts, page.getTotalSize());
+        assertEquals(6, page.size());
+        List<Alert> paged = new ArrayList<>(page);
+
+        // A new alert in the first page does not shift the next ones
+        Alert newAlert = new Alert(page.get(0).getTenantId(), page.get(0).getTrigger(), null);
+        newAlert.setCtime(100);
+        alerts.addAlerts(Collections.singletonList(newAlert));
+
+        while (null != page.getNextCursor()) {
+            page = alerts.getAlerts(tenantIds, null, Pager.builder().withCursor(page.getNextCursor())
+                    .withPageSize(6).orderByDescending("ctime").build());
+            paged.addAll(page);
+        }
+        assertEquals(numTenants * numTriggers * numAlerts, paged.size());
+        assertEquals(paged.size(), paged.stream().map(Alert::getAlertId).distinct().count());
+        for (int i = 1; i < paged.size(); i++) {
+            Alert previous = paged.get(i - 1);
+            Alert current = paged.get(i);
+            assertTrue(previous.getTenantId().compareTo(current.getTenantId()) > 0
+                    || (previous.getTenantId().equals(current.getTenantId())
+                        && previous.getCtime() >= current.getCtime()));
+        }
+
+        EventsCriteria criteria = new EventsCriteria();
+        criteria.setEventType(EventType.ALERT.name());
+        Page<Event> events = alerts.getEvents(tenantIds, criteria, Pager.builder().withCursor("").withPageSize(20)
+                .orderByAscending("id").build());
+        assertEquals(20, events.size());
+        assertNotNull(events.getNextCursor());
+        events = alerts.getEvents(tenantIds, criteria, Pager.builder().withCursor(events.getNextCursor())
+                .withPageSize(20).orderByAscending("id").build());
+        assertEquals(1, events.size());
+        assertEquals(1, events.getTotalSize());
+        assertNull(events.getNextCursor());
+
+        try {
+            alerts.getAlerts(tenantIds, null, Pager.builder().withCursor("").withPageSize(6)
+                    .orderByDescending("severity").build());
+            fail("It should throw an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected, severity is not sortable in the index
+        }
+
+        deleteTestAlerts(numTenants);
+    }
+
+    @Test
+    public void projectAlertsFromIndex() throws Exception {
+        int numTenants = 1;
+        int numTriggers = 2;
+        int numAlerts = 3;
+        createTestAlerts(numTenants, numTriggers, numAlerts);
+
+        Set<String> tenantIds = Collections.singleton("tenant0");
+        List<Alert> full = alerts.getAlerts(tenantIds, null, null);
+        assertEquals(numTriggers * numAlerts, full.size());
+        Map<String, String> tags = new HashMap<>();
+        tags.put("tag1", "value1");
+        alerts.addAlertTags("tenant0", Collections.singletonList(full.get(0).getAlertId()), tags);
+        Map<String, Alert> fullById = alerts.getAlerts(tenantIds, null, null).stream()
+                .collect(Collectors.toMap(Alert::getAlertId, a -> a));
+
+        AlertsCriteria criteria = new AlertsCriteria();
+        criteria.setProjection(true);
+        List<Alert> projected = new ArrayList<>(alerts.getAlerts(tenantIds, criteria, null));
+        assertEquals(fullById.size(), projected.size());
+        projected.addAll(alerts.getAlerts(tenantIds, criteria,
+                Pager.builder().withPageSize(4).orderByAscending("ctime").build()));
+        projected.addAll(alerts.getAlerts(tenantIds, criteria,
+                Pager.builder().withCursor("").withPageSize(4).orderByAscending("ctime").build()));
+        assertEquals(fullById.size(), alerts.streamAlerts(tenantIds, criteria, projected::add));
+        assertEquals(2 * fullById.size() + 8, projected.size());
+        for (Alert alert : projected) {
+            Alert expected = fullById.get(alert.getAlertId());
+            assertNotNull(expected);
+            assertEquals(expected.getTriggerId(), alert.getTriggerId());
+            assertEquals(expected.getStatus(), alert.getStatus());
+            assertEquals(expected.getSeverity(), alert.getSeverity());
+            assertEquals(expected.getCtime(), alert.getCtime());
+            assertEquals(expected.getTags(), alert.getTags());
+            assertNull(alert.getTrigger().getName());
+            assertNull(alert.getEvalSets());
+            assertEquals(1, alert.getLifecycle().size());
+        }
+
+        EventsCriteria eventsCriteria = new EventsCriteria();
+        eventsCriteria.setProjection(true);
+        List<Event> projectedEvents = alerts.getEvents(tenantIds, eventsCriteria, null);
+        assertEquals(fullById.size(), projectedEvents.size());
+        for (Event event : projectedEvents) {
+            assertEquals(fullById.get(event.getId()).getTags(), event.getTags());
+            assertNull(event.getEvalSets());
+        }
+
+        deleteTestAlerts(numTenants);
+    }
+
     @Test
     public void eventTagWithDots() throws Exception {
         int numTenants = 1;
@@ -26,8 +26,10 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 import org.hawkular.alerts.api.exception.FoundException;
 import org.hawkular.alerts.api.exception.NotFoundException;
@@ -36,6 +38,8 @@ import org.hawkular.alerts.api.model.condition.AvailabilityCondition;
 import org.hawkular.alerts.api.model.condition.AvailabilityCondition.Operator;
 import org.hawkular.alerts.api.model.condition.Condition;
 import org.hawkular.alerts.api.model.dampening.Dampening;
+import org.hawkular.alerts.api.model.paging.Page;
+import org.hawkular.alerts.api.model.paging.Pager;
 import org.hawkular.alerts.api.model.trigger.Mode;
 import org.hawkular.alerts.api.model.trigger.Trigger;
 import org.hawkular.alerts.api.model.trigger.TriggerType;
@@ -255,6 +259,47 @@ public class IspnDefinitionsServiceImplTest extends IspnBaseServiceImplTest {
         deleteTestTriggers(numTenants, numTriggers);
     }
 
+    @Test
+    public void getTriggersWithCursor() throws Exception {
+        int numTenants = 1;
+        int numTriggers = 10;
+        createTestTriggers(numTenants, numTriggers);
+
+        Pager pager = Pager.builder().withCursor("").withPageSize(4).orderByAscending("name").build();
+        Page<Trigger> page = definitions.getTriggers("tenant0", null, pager);
+        assertEquals(10, page.getTotalSize());
+        assertEquals(Arrays.asList("trigger0", "trigger1", "trigger2", "trigger3"), ids(page));
+        assertNotNull(page.getNextCursor());
+
+        // A trigger before the cursor does not shift the next pages
+        definitions.addTrigger("tenant0", new Trigger("tenant0", "trigger00", "Trigger trigger00"));
+
+        page = definitions.getTriggers("tenant0", null,
+                Pager.builder().withCursor(page.getNextCursor()).withPageSize(4).orderByAscending("name").build());
+        assertEquals(6, page.getTotalSize());
+        assertEquals(Arrays.asList("trigger4", "trigger5", "trigger6", "trigger7"), ids(page));
+
+        page = definitions.getTriggers("tenant0", null,
+                Pager.builder().withCursor(page.getNextCursor()).withPageSize(4).orderByAscending("name").build());
+        assertEquals(Arrays.asList("trigger8", "trigger9"), ids(page));
+        assertNull(page.getNextCursor());
+
+        try {
+            definitions.getTriggers("tenant0", null,
+                    Pager.builder().withCursor("not-a-cursor").withPageSize(4).orderByAscending("name").build());
+            fail("It should throw an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        definitions.removeTrigger("tenant0", "trigger00");
+        deleteTestTriggers(numTenants, numTriggers);
+    }
+
+    private List<String> ids(Page<Trigger> page) {
+        return page.stream().map(Trigger::getId).collect(Collectors.toList());
+    }
+
     @Test
     public void conditionsTest() throws Exception {
         int numTenants = 1;
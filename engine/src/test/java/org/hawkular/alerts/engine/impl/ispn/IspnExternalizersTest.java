@@ -0,0 +1,173 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.alerts.engine.impl.ispn;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.hawkular.alerts.api.model.Severity;
+import org.hawkular.alerts.api.model.action.Action;
+import org.hawkular.alerts.api.model.condition.ConditionEval;
+import org.hawkular.alerts.api.model.condition.ThresholdCondition;
+import org.hawkular.alerts.api.model.condition.ThresholdConditionEval;
+import org.hawkular.alerts.api.model.dampening.Dampening;
+import org.hawkular.alerts.api.model.data.Data;
+import org.hawkular.alerts.api.model.event.Alert;
+import org.hawkular.alerts.api.model.trigger.Mode;
+import org.hawkular.alerts.api.model.trigger.Trigger;
+import org.hawkular.alerts.engine.impl.ispn.model.IspnAction;
+import org.hawkular.alerts.engine.impl.ispn.model.IspnEvent;
+import org.hawkular.alerts.engine.impl.ispn.model.IspnExternalizers.IspnActionExternalizer;
+import org.hawkular.alerts.engine.impl.ispn.model.IspnExternalizers.IspnEventExternalizer;
+import org.hawkular.commons.log.MsgLogger;
+import org.hawkular.commons.log.MsgLogging;
+import org.junit.Test;
+
+/**
+ * @author Jay Shaughnessy
+ * @author Lucas Ponce
+ */
+public class IspnExternalizersTest {
+    static final MsgLogger log = MsgLogging.getMsgLogger(IspnExternalizersTest.class);
+
+    static final int ITERATIONS = 2000;
+
+    IspnEventExternalizer eventExternalizer = new IspnEventExternalizer();
+    IspnActionExternalizer actionExternalizer = new IspnActionExternalizer();
+
+    @Test
+    public void alertRoundTrip() throws Exception {
+        Alert alert = createAlert(5);
+        IspnEvent read = eventExternalizer.readObject(input(write(new IspnEvent(alert), true)));
+
+        Alert readAlert = (Alert) read.getEvent();
+        assertEquals(alert, readAlert);
+        assertEquals(alert.getTrigger().getName(), readAlert.getTrigger().getName());
+        assertEquals(alert.getSeverity(), readAlert.getSeverity());
+        assertEquals(alert.getStatus(), readAlert.getStatus());
+        assertEquals(alert.getLifecycle().size(), readAlert.getLifecycle().size());
+        assertEquals(alert.getEvalSets().size(), readAlert.getEvalSets().size());
+        assertEquals(alert.getDampening().getDampeningId(), readAlert.getDampening().getDampeningId());
+        assertEquals(alert.getTags(), readAlert.getTags());
+        assertEquals(new IspnEvent(alert), read);
+    }
+
+    @Test
+    public void snapshotRoundTrip() throws Exception {
+        IspnEvent ispnEvent = new IspnEvent(createAlert(2), "snapshot-1");
+        IspnEvent read = eventExternalizer.readObject(input(write(ispnEvent, true)));
+
+        assertEquals(ispnEvent, read);
+        assertEquals("snapshot-1", read.getSnapshotId());
+        assertEquals("trigger", read.getTriggerId());
+    }
+
+    @Test
+    public void actionRoundTrip() throws Exception {
+        Action action = new Action("tenant", "email", "notify-admins", createAlert(1));
+        action.setResult("PROCESSED");
+        IspnAction read = actionExternalizer.readObject(input(write(new IspnAction(action), false)));
+
+        assertEquals(new IspnAction(action), read);
+        assertTrue(read.getAction().getEvent() instanceof Alert);
+    }
+
+    @Test
+    public void sizeAndSpeed() throws Exception {
+        IspnEvent ispnEvent = new IspnEvent(createAlert(10));
+
+        byte[] serialized = serialize(ispnEvent);
+        byte[] externalized = write(ispnEvent, true);
+        log.infof("IspnEvent size: Java serialization [%s] bytes, externalizer [%s] bytes", serialized.length,
+                externalized.length);
+        assertTrue(serialized.length + " " + externalized.length, externalized.length < serialized.length);
+
+        // warm up both paths before measuring
+        for (int i = 0; i < ITERATIONS; i++) {
+            new ObjectInputStream(new ByteArrayInputStream(serialize(ispnEvent))).readObject();
+            eventExternalizer.readObject(input(write(ispnEvent, true)));
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            new ObjectInputStream(new ByteArrayInputStream(serialize(ispnEvent))).readObject();
+        }
+        long serializationTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            eventExternalizer.readObject(input(write(ispnEvent, true)));
+        }
+        long externalizerTime = System.nanoTime() - start;
+
+        log.infof("IspnEvent write+read x%s: Java serialization [%s] ms, externalizer [%s] ms", ITERATIONS,
+                serializationTime / 1000000, externalizerTime / 1000000);
+    }
+
+    private Alert createAlert(int numEvals) {
+        Trigger trigger = new Trigger("tenant", "trigger", "Trigger with a name");
+        trigger.setSeverity(Severity.HIGH);
+        trigger.addTag("app", "frontend");
+        ThresholdCondition condition = new ThresholdCondition("tenant", "trigger", Mode.FIRING, "data-id",
+                ThresholdCondition.Operator.GT, 10.0);
+        List<Set<ConditionEval>> evalSets = new ArrayList<>();
+        for (int i = 0; i < numEvals; i++) {
+            Set<ConditionEval> evalSet = new HashSet<>();
+            evalSet.add(new ThresholdConditionEval(condition, Data.forNumeric("tenant", "data-id", i, 15.0 + i)));
+            evalSets.add(evalSet);
+        }
+        Alert alert = new Alert("tenant", trigger, Dampening.forStrict("tenant", "trigger", Mode.FIRING, numEvals),
+                evalSets);
+        alert.addTag("app", "frontend");
+        alert.addLifecycle(Alert.Status.ACKNOWLEDGED, "user", alert.getCtime() + 1);
+        alert.addNote("user", "Looking into it");
+        return alert;
+    }
+
+    private byte[] write(Object value, boolean event) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+            if (event) {
+                eventExternalizer.writeObject(output, (IspnEvent) value);
+            } else {
+                actionExternalizer.writeObject(output, (IspnAction) value);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private ObjectInputStream input(byte[] bytes) throws Exception {
+        return new ObjectInputStream(new ByteArrayInputStream(bytes));
+    }
+
+    private byte[] serialize(Object value) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+            output.writeObject(value);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.alerts.engine.impl.ispn;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.hawkular.alerts.api.model.condition.ThresholdCondition;
+import org.hawkular.alerts.api.model.condition.ThresholdConditionEval;
+import org.hawkular.alerts.api.model.dampening.Dampening;
+import org.hawkular.alerts.api.model.data.Data;
+import org.hawkular.alerts.api.model.trigger.Match;
+import org.hawkular.alerts.api.model.trigger.Mode;
+import org.hawkular.alerts.engine.util.TriggerState;
+import org.hawkular.alerts.engine.util.TriggerState.DampeningState;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * @author Jay Shaughnessy
+ * @author Lucas Ponce
+ */
+public class IspnTriggerStateServiceImplTest {
+
+    static final int NUM_TENANTS = 2;
+    static final int NUM_TRIGGERS = 3;
+
+    static IspnTriggerStateServiceImpl triggerStates;
+
+    @BeforeClass
+    public static void init() {
+        System.setProperty("hawkular.data", "./target/ispn");
+        triggerStates = new IspnTriggerStateServiceImpl();
+        triggerStates.init();
+    }
+
+    @AfterClass
+    public static void shutdown() throws Exception {
+        triggerStates.removeTriggerStates(triggerIds());
+    }
+
+    @Test
+    public void putGetRemoveTest() throws Exception {
+        List<TriggerState> states = new ArrayList<>();
+        for (int i = 0; i < NUM_TENANTS; i++) {
+            String tenantId = "stateTenant" + i;
+            for (int j = 0; j < NUM_TRIGGERS; j++) {
+                String triggerId = "stateTrigger" + j;
+                ThresholdCondition condition = new ThresholdCondition(tenantId, triggerId, Mode.FIRING,
+                        "NumericData-" + j, ThresholdCondition.Operator.GT, 10.0);
+                Dampening dampening = Dampening.forStrict(tenantId, triggerId, Mode.FIRING, 3);
+                dampening.perform(Match.ALL, new HashSet<>(Arrays.asList(new ThresholdConditionEval(
+                        condition, Data.forNumeric(tenantId, "NumericData-" + j, 1000, 15.0)))));
+                TriggerState state = new TriggerState(tenantId, triggerId);
+                state.getDampenings().put(dampening.getDampeningId(), new DampeningState(dampening));
+                state.getMissingTimes().put("missing-" + j, 1000L);
+                states.add(state);
+            }
+        }
+        triggerStates.putTriggerStates(states);
+
+        Map<String, TriggerState> tenantStates = triggerStates.getTriggerStates("stateTenant0");
+        assertEquals(tenantStates.toString(), NUM_TRIGGERS, tenantStates.size());
+
+        TriggerState state = triggerStates.getTriggerState("stateTenant1", "stateTrigger2");
+        assertEquals(Long.valueOf(1000L), state.getMissingTimes().get("missing-2"));
+        DampeningState dampeningState = state.getDampenings().values().iterator().next();
+        Dampening restored = Dampening.forStrict("stateTenant1", "stateTrigger2", Mode.FIRING, 3);
+        assertTrue(dampeningState.restore(restored));
+        assertEquals(1, restored.getNumTrueEvals());
+        assertEquals(1, restored.getCurrentEvals().size());
+
+        // A dampening with different settings does not take the counters
+        assertTrue(!dampeningState.restore(Dampening.forStrict("stateTenant1", "stateTrigger2", Mode.FIRING, 2)));
+
+        Map<String, Collection<String>> removed = new HashMap<>();
+        removed.put("stateTenant1", Arrays.asList("stateTrigger2"));
+        triggerStates.removeTriggerStates(removed);
+        assertNull(triggerStates.getTriggerState("stateTenant1", "stateTrigger2"));
+        assertEquals(NUM_TRIGGERS - 1, triggerStates.getTriggerStates("stateTenant1").size());
+    }
+
+    private static Map<String, Collection<String>> triggerIds() {
+        Map<String, Collection<String>> triggerIds = new HashMap<>();
+        for (int i = 0; i < NUM_TENANTS; i++) {
+            List<String> tenantTriggerIds = new ArrayList<>();
+            for (int j = 0; j < NUM_TRIGGERS; j++) {
+                tenantTriggerIds.add("stateTrigger" + j);
+            }
+            triggerIds.put("stateTenant" + i, tenantTriggerIds);
+        }
+        return triggerIds;
+    }
+}
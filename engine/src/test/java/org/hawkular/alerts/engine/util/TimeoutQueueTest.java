@@ -0,0 +1,106 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.alerts.engine.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.hawkular.alerts.api.model.dampening.Dampening;
+import org.hawkular.alerts.api.model.trigger.Mode;
+import org.junit.Test;
+
+/**
+ * @author Jay Shaughnessy
+ * @author Lucas Ponce
+ */
+public class TimeoutQueueTest {
+
+    @Test
+    public void pollDueTest() {
+        TimeoutQueue<String> queue = new TimeoutQueue<>();
+        queue.schedule("c", 300L);
+        queue.schedule("a", 100L);
+        queue.schedule("b", 200L);
+
+        assertEquals(100L, queue.nextDueTime());
+        assertTrue(queue.pollDue(99L).isEmpty());
+        assertEquals(Arrays.asList("a", "b"), queue.pollDue(200L));
+        assertEquals(1, queue.size());
+        assertEquals(Collections.singletonList("c"), queue.pollDue(1000L));
+        assertTrue(queue.isEmpty());
+        assertEquals(Long.MAX_VALUE, queue.nextDueTime());
+    }
+
+    @Test
+    public void rescheduleAndCancelTest() {
+        TimeoutQueue<String> queue = new TimeoutQueue<>();
+        queue.schedule("a", 100L);
+        queue.schedule("b", 200L);
+        queue.schedule("a", 300L);
+        assertTrue(queue.cancel("b"));
+        assertFalse(queue.cancel("b"));
+
+        assertEquals(300L, queue.nextDueTime());
+        assertTrue(queue.pollDue(200L).isEmpty());
+        assertEquals(Collections.singletonList("a"), queue.pollDue(300L));
+
+        // Outdated entries are compacted
+        for (int i = 0; i < 1000; i++) {
+            queue.schedule("a", i);
+        }
+        assertEquals(1, queue.size());
+        assertEquals(Collections.singletonList("a"), queue.pollDue(1000L));
+    }
+
+    @Test
+    public void pendingTimeoutsTest() {
+        Dampening d1 = Dampening.forStrictTimeout("tenant", "trigger-1", Mode.FIRING, 1000L);
+        Dampening d2 = Dampening.forStrictTimeout("tenant", "trigger-2", Mode.FIRING, 5000L);
+        d1.setTrueEvalsStartTime(10000L);
+        d2.setTrueEvalsStartTime(10000L);
+
+        PendingTimeouts pendingTimeouts = new PendingTimeouts();
+        assertTrue(pendingTimeouts.add(d1));
+        assertTrue(pendingTimeouts.add(d2));
+        assertFalse(pendingTimeouts.add(d1));
+        assertEquals(new HashSet<>(Arrays.asList(d1, d2)), pendingTimeouts);
+
+        assertTrue(pendingTimeouts.pollTimeouts(10999L).isEmpty());
+
+        // The timer of d1 restarted after it was posted, it is rescheduled
+        d1.setTrueEvalsStartTime(12000L);
+        assertTrue(pendingTimeouts.pollTimeouts(11000L).isEmpty());
+        assertEquals(2, pendingTimeouts.size());
+
+        List<Dampening> timeouts = pendingTimeouts.pollTimeouts(15000L);
+        assertEquals(Arrays.asList(d1, d2), timeouts);
+        assertTrue(pendingTimeouts.isEmpty());
+
+        // Set operations used by the sharded rules engine
+        pendingTimeouts.add(d1);
+        pendingTimeouts.add(d2);
+        pendingTimeouts.retainAll(Collections.singleton(d2));
+        assertEquals(Collections.singleton(d2), pendingTimeouts);
+        assertTrue(pendingTimeouts.pollTimeouts(13000L).isEmpty());
+    }
+}
@@ -16,34 +16,139 @@
  */
 package org.hawkular.alerts.filter;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.hawkular.alerts.api.model.data.Data;
 import org.hawkular.alerts.api.model.event.Event;
+import org.hawkular.commons.properties.HawkularProperties;
 import org.infinispan.Cache;
+import org.infinispan.notifications.Listener;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryCreated;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryRemoved;
+import org.infinispan.notifications.cachelistener.event.CacheEntryCreatedEvent;
+import org.infinispan.notifications.cachelistener.event.CacheEntryRemovedEvent;
 
 /**
  * Provide access to the cache of dataIds in use by the global trigger population (not node specific). It is
  * used to perform front-line filtering of incoming data and events.  Data with dataIds not found in this cache
  * can be immediately discarded as it is not needed for trigger evaluation (on this or or other alerting nodes).
  *
- * The cache is a shared ISPN cache.
+ * The cache is a shared ISPN cache. Once initialized, the front-line filtering does not probe the cache but a local
+ * {@link DataIdFilter} snapshot of its keys. The snapshot is rebuilt and swapped when the keys of the cache change:
+ * asynchronously on each change seen by the cache listener, on this or on other nodes, on demand by
+ * {@link #refresh()}, and periodically as a fallback. Until {@link #init()} is called, {@link #refresh()} does
+ * nothing and the filtering falls back to the cache lookup.
  *
  * @author Lucas Ponce
  * @author Jay Shaughnessy
  */
 public class CacheClient {
 
+    /*
+        PUBLISH_FILTER_PERIOD defined in ms, the local filter is also rebuilt at this period if a change of the
+        publish cache has been missed. 0 disables the periodic rebuild, changes are still applied as they are seen.
+     */
+    private static final String PUBLISH_FILTER_PERIOD = "hawkular-alerts.publish-filter-period";
+    private static final String PUBLISH_FILTER_PERIOD_DEFAULT = "1000";
+
+    /*
+        Add a Bloom filter in front of the local filter, so most of the unused dataIds are discarded with a few bit
+        tests.
+     */
+    private static final String PUBLISH_FILTER_BLOOM = "hawkular-alerts.publish-filter-bloom";
+    private static final String PUBLISH_FILTER_BLOOM_DEFAULT = "true";
+
     // It stores a list of triggerIds used per key (tenantId, dataId).
     // This cache is used by CacheClient to check wich dataIds are published and forwarded from metrics.
     private Cache<CacheKey, Set<String>> cache;
 
+    // Local snapshot of the cache keys, null until init()
+    private volatile DataIdFilter filter = null;
+
+    private final AtomicBoolean changed = new AtomicBoolean(true);
+
+    // A rebuild has been scheduled by the listener and has not started yet
+    private final AtomicBoolean refreshScheduled = new AtomicBoolean(false);
+
+    private volatile boolean initialized = false;
+
+    private boolean useBloom;
+
+    private Timer refreshTimer;
+
     public void setCache(Cache<CacheKey, Set<String>> cache) {
         this.cache = cache;
     }
 
+    public void init() {
+        useBloom = Boolean.parseBoolean(HawkularProperties.getProperty(PUBLISH_FILTER_BLOOM,
+                PUBLISH_FILTER_BLOOM_DEFAULT));
+        int refreshPeriod = Integer.parseInt(HawkularProperties.getProperty(PUBLISH_FILTER_PERIOD,
+                PUBLISH_FILTER_PERIOD_DEFAULT));
+        /*
+            The listener is registered before the first snapshot is built, so the keys changed while it is built are
+            picked by the next refresh. The refreshes requested before init() were ignored, the first one is forced.
+         */
+        refreshTimer = new Timer("CacheClient-Refresh", true);
+        cache.addListener(new PublishKeysListener());
+        changed.set(true);
+        initialized = true;
+        refresh();
+        if (refreshPeriod > 0) {
+            refreshTimer.schedule(new TimerTask() {
+                @Override
+                public void run() {
+                    refresh();
+                }
+            }, refreshPeriod, refreshPeriod);
+        }
+    }
+
+    public void shutdown() {
+        if (null != refreshTimer) {
+            refreshTimer.cancel();
+        }
+    }
+
+    /**
+     * Rebuild and swap the local filter if the keys of the cache have changed since the last refresh. It does
+     * nothing before {@link #init()}.
+     */
+    public synchronized void refresh() {
+        if (null == cache || !initialized || !changed.getAndSet(false)) {
+            return;
+        }
+        // Changes made while building are flagged again and picked by the next refresh
+        filter = DataIdFilter.build(new ArrayList<>(cache.keySet()), useBloom);
+    }
+
+    /*
+        Rebuild the filter on the refresh thread, a burst of changes is applied with a single rebuild.
+     */
+    private void scheduleRefresh() {
+        if (null == refreshTimer || !refreshScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            refreshTimer.schedule(new TimerTask() {
+                @Override
+                public void run() {
+                    refreshScheduled.set(false);
+                    refresh();
+                }
+            }, 0);
+        } catch (IllegalStateException e) {
+            // Timer has been cancelled on shutdown
+            refreshScheduled.set(false);
+        }
+    }
+
     public Set<CacheKey> keySet() {
         return cache.keySet();
     }
@@ -57,17 +162,43 @@ public class CacheClient {
     }
 
     public Collection<Data> filterData(Collection<Data> data) {
-        final CacheKey tester = new CacheKey("", "");
-        return data.stream()
-                .filter(d -> cache.containsKey(fillKey(tester, d)))
-                .collect(Collectors.toList());
+        DataIdFilter current = filter;
+        List<Data> filtered = new ArrayList<>(data.size());
+        if (null == current) {
+            final CacheKey tester = new CacheKey("", "");
+            for (Data d : data) {
+                if (cache.containsKey(fillKey(tester, d))) {
+                    filtered.add(d);
+                }
+            }
+        } else {
+            for (Data d : data) {
+                if (current.contains(d.getTenantId(), d.getId())) {
+                    filtered.add(d);
+                }
+            }
+        }
+        return filtered;
     }
 
     public Collection<Event> filterEvents(Collection<Event> events) {
-        final CacheKey tester = new CacheKey("", "");
-        return events.stream()
-                .filter(e -> cache.containsKey(fillKey(tester, e)))
-                .collect(Collectors.toList());
+        DataIdFilter current = filter;
+        List<Event> filtered = new ArrayList<>(events.size());
+        if (null == current) {
+            final CacheKey tester = new CacheKey("", "");
+            for (Event e : events) {
+                if (cache.containsKey(fillKey(tester, e))) {
+                    filtered.add(e);
+                }
+            }
+        } else {
+            for (Event e : events) {
+                if (current.contains(e.getTenantId(), e.getDataId())) {
+                    filtered.add(e);
+                }
+            }
+        }
+        return filtered;
     }
 
     private CacheKey fillKey(CacheKey key, Data data) {
@@ -82,10 +213,42 @@ public class CacheClient {
         return key;
     }
 
+    /*
+        Current local snapshot, null until init()
+     */
+    DataIdFilter getFilter() {
+        return filter;
+    }
+
     /**
      *  This is here for testing purposes only and should not be called in production code.
      */
     public void addTestKey(CacheKey key, Set<String> value) {
         cache.put(key, value);
+        changed.set(true);
+        refresh();
+    }
+
+    /**
+     * Flag the local filter as stale and schedule its rebuild when a key is added or removed, on this or on other
+     * nodes. Changes of the triggerIds of an existing key do not affect the filter.
+     */
+    @Listener
+    public class PublishKeysListener {
+        @CacheEntryCreated
+        public void onKeyCreated(CacheEntryCreatedEvent event) {
+            if (!event.isPre()) {
+                changed.set(true);
+                scheduleRefresh();
+            }
+        }
+
+        @CacheEntryRemoved
+        public void onKeyRemoved(CacheEntryRemovedEvent event) {
+            if (!event.isPre()) {
+                changed.set(true);
+                scheduleRefresh();
+            }
+        }
     }
 }
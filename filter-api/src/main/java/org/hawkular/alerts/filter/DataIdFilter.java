@@ -0,0 +1,139 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.alerts.filter;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable snapshot of the (tenantId, dataId) keys of the publish cache, used by {@link CacheClient} as a local
+ * front-line filter. A new snapshot is built and swapped when the keys change, so a probe needs no locks and no
+ * allocations.
+ *
+ * An optional Bloom filter answers most of the probes of unused dataIds with a few bit tests, before looking up the
+ * tenant dataIds set.
+ *
+ * @author Jay Shaughnessy
+ * @author Lucas Ponce
+ */
+public class DataIdFilter {
+
+    private static final int BLOOM_BITS_PER_KEY = 16;
+    private static final int BLOOM_HASHES = 4;
+
+    private final Map<String, Set<String>> dataIds;
+    private final long[] bloom;
+    private final int bloomMask;
+    private final int size;
+
+    private DataIdFilter(Map<String, Set<String>> dataIds, long[] bloom, int size) {
+        this.dataIds = dataIds;
+        this.bloom = bloom;
+        this.bloomMask = null == bloom ? 0 : (bloom.length << 6) - 1;
+        this.size = size;
+    }
+
+    /**
+     * @param keys the (tenantId, dataId) keys to accept
+     * @param useBloom true to add a Bloom filter in front of the dataIds sets
+     * @return a new filter accepting only the provided keys
+     */
+    public static DataIdFilter build(Collection<CacheKey> keys, boolean useBloom) {
+        Map<String, Set<String>> dataIds = new HashMap<>();
+        int size = 0;
+        for (CacheKey key : keys) {
+            if (null == key.getTenantId() || null == key.getDataId()) {
+                continue;
+            }
+            if (dataIds.computeIfAbsent(key.getTenantId(), t -> new HashSet<>()).add(key.getDataId())) {
+                size++;
+            }
+        }
+        long[] bloom = null;
+        if (useBloom && size > 0) {
+            int bits = Integer.highestOneBit(Math.max(64, size * BLOOM_BITS_PER_KEY) - 1) << 1;
+            bloom = new long[bits >>> 6];
+            int mask = bits - 1;
+            for (Map.Entry<String, Set<String>> entry : dataIds.entrySet()) {
+                for (String dataId : entry.getValue()) {
+                    int h1 = hash(entry.getKey(), dataId);
+                    int h2 = secondHash(h1);
+                    for (int i = 0; i < BLOOM_HASHES; i++) {
+                        int bit = (h1 + i * h2) & mask;
+                        bloom[bit >>> 6] |= 1L << bit;
+                    }
+                }
+            }
+        }
+        return new DataIdFilter(dataIds, bloom, size);
+    }
+
+    /**
+     * @param tenantId the tenantId of the data or event
+     * @param dataId the dataId of the data or event
+     * @return true if the key is in the snapshot
+     */
+    public boolean contains(String tenantId, String dataId) {
+        if (null == tenantId || null == dataId) {
+            return false;
+        }
+        if (null != bloom) {
+            int h1 = hash(tenantId, dataId);
+            int h2 = secondHash(h1);
+            for (int i = 0; i < BLOOM_HASHES; i++) {
+                int bit = (h1 + i * h2) & bloomMask;
+                if ((bloom[bit >>> 6] & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+        }
+        Set<String> tenantDataIds = dataIds.get(tenantId);
+        return null != tenantDataIds && tenantDataIds.contains(dataId);
+    }
+
+    /**
+     * @return the number of keys in the snapshot
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return true if the snapshot has a Bloom filter
+     */
+    public boolean hasBloom() {
+        return null != bloom;
+    }
+
+    private static int hash(String tenantId, String dataId) {
+        // String hashes are cached, so this does not iterate the strings on repeated probes
+        return 31 * dataId.hashCode() + tenantId.hashCode();
+    }
+
+    private static int secondHash(int h) {
+        // Odd step, derived from a mix of the first hash, for the double hashing of the probes
+        return Integer.rotateLeft(h * 0x9E3779B9, 16) | 1;
+    }
+
+    @Override
+    public String toString() {
+        return "DataIdFilter [size=" + size + ", bloomBits=" + (null == bloom ? 0 : bloom.length << 6) + "]";
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.alerts.filter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+
+import org.hawkular.alerts.api.model.data.Data;
+import org.infinispan.Cache;
+import org.infinispan.configuration.cache.ConfigurationBuilder;
+import org.infinispan.manager.DefaultCacheManager;
+import org.junit.Test;
+
+/**
+ * @author Jay Shaughnessy
+ * @author Lucas Ponce
+ */
+public class CacheClientTest {
+
+    @Test
+    public void refreshBeforeInitTest() throws Exception {
+        DefaultCacheManager cacheManager = new DefaultCacheManager();
+        CacheClient client = new CacheClient();
+        try {
+            cacheManager.defineConfiguration("publish", new ConfigurationBuilder().build());
+            Cache<CacheKey, Set<String>> cache = cacheManager.getCache("publish");
+            client.setCache(cache);
+            Data data0 = Data.forNumeric("tenant0", "dataId0", 1, 1.0);
+            Data data1 = Data.forNumeric("tenant0", "dataId1", 1, 1.0);
+            Data data2 = Data.forNumeric("tenant0", "dataId2", 1, 1.0);
+
+            // A refresh before init() does not build the filter, the cache is probed
+            cache.put(new CacheKey("tenant0", "dataId0"), Collections.singleton("trigger0"));
+            client.refresh();
+            assertNull(client.getFilter());
+            Collection<Data> filtered = client.filterData(Arrays.asList(data0, data1, data2));
+            assertEquals(Collections.singletonList(data0), filtered);
+
+            // A key added between the first refresh and init() is in the filter
+            cache.put(new CacheKey("tenant0", "dataId1"), Collections.singleton("trigger1"));
+            client.init();
+            assertNotNull(client.getFilter());
+            assertTrue(client.getFilter().hasBloom());
+            filtered = client.filterData(Arrays.asList(data0, data1, data2));
+            assertEquals(Arrays.asList(data0, data1), filtered);
+
+            // A key added after init() is in the filter after the next refresh
+            cache.put(new CacheKey("tenant0", "dataId2"), Collections.singleton("trigger2"));
+            client.refresh();
+            filtered = client.filterData(Arrays.asList(data0, data1, data2));
+            assertEquals(Arrays.asList(data0, data1, data2), filtered);
+
+            // A key added without refresh (i.e. on another node) is in the filter once the listener has rebuilt it
+            Data data3 = Data.forNumeric("tenant0", "dataId3", 1, 1.0);
+            cache.put(new CacheKey("tenant0", "dataId3"), Collections.singleton("trigger3"));
+            long timeout = System.currentTimeMillis() + 5000;
+            while (!client.getFilter().contains("tenant0", "dataId3") && System.currentTimeMillis() < timeout) {
+                Thread.sleep(10);
+            }
+            filtered = client.filterData(Arrays.asList(data0, data1, data2, data3));
+            assertEquals(Arrays.asList(data0, data1, data2, data3), filtered);
+        } finally {
+            client.shutdown();
+            cacheManager.stop();
+        }
+    }
+}
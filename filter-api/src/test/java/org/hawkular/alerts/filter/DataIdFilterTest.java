@@ -0,0 +1,62 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.alerts.filter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * @author Jay Shaughnessy
+ * @author Lucas Ponce
+ */
+public class DataIdFilterTest {
+
+    @Test
+    public void containsTest() {
+        List<CacheKey> keys = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            keys.add(new CacheKey("tenant" + (i % 3), "dataId" + i));
+        }
+        keys.add(new CacheKey("tenant0", "dataId0"));
+        keys.add(new CacheKey(null, "dataId0"));
+
+        for (boolean useBloom : new boolean[] { true, false }) {
+            DataIdFilter filter = DataIdFilter.build(keys, useBloom);
+            assertEquals(1000, filter.size());
+            assertEquals(useBloom, filter.hasBloom());
+            for (int i = 0; i < 1000; i++) {
+                assertTrue(filter.contains("tenant" + (i % 3), "dataId" + i));
+                assertFalse(filter.contains("tenant" + ((i + 1) % 3), "dataId" + i));
+                assertFalse(filter.contains("tenant" + (i % 3), "unused" + i));
+            }
+            assertFalse(filter.contains(null, "dataId0"));
+            assertFalse(filter.contains("tenant0", null));
+        }
+
+        DataIdFilter empty = DataIdFilter.build(Collections.emptyList(), true);
+        assertEquals(0, empty.size());
+        assertFalse(empty.hasBloom());
+        assertFalse(empty.contains("tenant0", "dataId0"));
+    }
+}
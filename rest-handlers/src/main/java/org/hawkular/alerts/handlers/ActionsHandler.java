@@ -78,6 +78,7 @@ public class ActionsHandler implements RestHandler {
 
     private static final String DELETE_ACTIONS_HISTORY = "deleteActionsHistory";
     private static final String FIND_ACTIONS_HISTORY = "findActionsHistory";
+    private static final String STREAM_ACTIONS_HISTORY = "streamActionsHistory";
     private static final Map<String, Set<String>> queryParamValidationMap = new HashMap<>();
     static {
         Collection<String> ACTIONS_CRITERIA = Arrays.asList(PARAM_START_TIME,
@@ -89,6 +90,7 @@ public class ActionsHandler implements RestHandler {
                 PARAM_RESULTS);
         queryParamValidationMap.put(FIND_ACTIONS_HISTORY, new HashSet<>(ACTIONS_CRITERIA));
         queryParamValidationMap.get(FIND_ACTIONS_HISTORY).addAll(PARAMS_PAGING);
+        queryParamValidationMap.put(STREAM_ACTIONS_HISTORY, new HashSet<>(ACTIONS_CRITERIA));
         queryParamValidationMap.put(DELETE_ACTIONS_HISTORY, new HashSet<>(ACTIONS_CRITERIA));
     }
 
@@ -107,6 +109,7 @@ public class ActionsHandler implements RestHandler {
         router.post(path).handler(this::createActionDefinition);
         router.put(path).handler(this::updateActionDefinition);
         router.get(path + "/history").handler(this::findActionsHistory);
+        router.get(path + "/history/stream").handler(this::streamActionsHistory);
         router.put(path + "/history/delete").handler(this::deleteActionsHistory);
         router.get(path + "/plugin/:actionPlugin").handler(this::findActionIdsByPlugin);
         router.get(path + "/:actionPlugin/:actionId").handler(this::getActionDefinition);
@@ -314,6 +317,49 @@ public class ActionsHandler implements RestHandler {
                 }, res -> ResponseUtil.result(routing, res));
     }
 
+    @DocPath(method = GET,
+            path = "/history/stream",
+            name = "Stream actions from history with optional filtering.",
+            notes = "Return all the actions matching the criteria as NDJSON, one action per line, ordered by ctime. + \n" +
+                    "Actions are fetched and written in batches, use it instead of paging for large exports. + \n" +
+                    "An error after the first action closes the connection before the end of the stream.")
+    @DocParameters(value = {
+            @DocParameter(name = "startTime",
+                    description = "Filter out actions created before this time.",
+                    allowableValues = "Timestamp in millisecond since epoch."),
+            @DocParameter(name = "endTime",
+                    description = "Filter out actions created after this time.",
+                    allowableValues = "Timestamp in millisecond since epoch."),
+            @DocParameter(name = "actionPlugins",
+                    description = "Filter out actions for unspecified actionPlugin.",
+                    allowableValues = "Comma separated list of plugin names."),
+            @DocParameter(name = "actionIds",
+                    description = "Filter out actions for unspecified actionId.",
+                    allowableValues = "Comma separated list of actions IDs."),
+            @DocParameter(name = "results",
+                    description = "Filter out alerts for unspecified result.",
+                    allowableValues = "Comma separated list of action results.")
+    })
+    @DocResponses(value = {
+            @DocResponse(code = 200, message = "Stream of actions.", response = Action.class),
+            @DocResponse(code = 400, message = "Bad Request/Invalid Parameters.", response = ApiError.class),
+            @DocResponse(code = 500, message = "Internal server error.", response = ApiError.class),
+            @DocResponse(code = 503, message = "Max number of concurrent streams reached.", response = ApiError.class)
+    })
+    public void streamActionsHistory(RoutingContext routing) {
+        ResponseUtil.<Action> streamOk(routing, consumer -> {
+            String tenantId = ResponseUtil.checkTenant(routing);
+            try {
+                checkForUnknownQueryParams(routing.request().params(),
+                        queryParamValidationMap.get(STREAM_ACTIONS_HISTORY));
+                ActionsCriteria criteria = buildCriteria(routing.request().params());
+                return actionsService.streamActions(tenantId, criteria, consumer);
+            } catch (IllegalArgumentException e) {
+                throw new ResponseUtil.BadRequestException("Bad arguments: " + e.getMessage());
+            }
+        });
+    }
+
     @DocPath(method = PUT,
             path = "/history/delete",
             name = "Delete actions from history with optional filtering.",
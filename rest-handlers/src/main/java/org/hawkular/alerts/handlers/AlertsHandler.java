@@ -31,6 +31,7 @@ import static org.hawkular.alerts.handlers.util.ResponseUtil.badRequest;
 import static org.hawkular.alerts.handlers.util.ResponseUtil.checkForUnknownQueryParams;
 import static org.hawkular.alerts.handlers.util.ResponseUtil.checkTenant;
 import static org.hawkular.alerts.handlers.util.ResponseUtil.extractPaging;
+import static org.hawkular.alerts.handlers.util.ResponseUtil.parseGroupBy;
 import static org.hawkular.alerts.handlers.util.ResponseUtil.parseTagQuery;
 import static org.hawkular.alerts.handlers.util.ResponseUtil.parseTags;
 import static org.hawkular.alerts.handlers.util.ResponseUtil.result;
@@ -52,8 +53,10 @@ import org.hawkular.alerts.api.doc.DocParameters;
 import org.hawkular.alerts.api.doc.DocPath;
 import org.hawkular.alerts.api.doc.DocResponse;
 import org.hawkular.alerts.api.doc.DocResponses;
+import org.hawkular.alerts.api.exception.OverloadedException;
 import org.hawkular.alerts.api.model.data.Data;
 import org.hawkular.alerts.api.model.event.Alert;
+import org.hawkular.alerts.api.model.event.EventsCount;
 import org.hawkular.alerts.api.model.paging.Page;
 import org.hawkular.alerts.api.model.paging.Pager;
 import org.hawkular.alerts.api.services.AlertsCriteria;
@@ -65,6 +68,8 @@ import org.hawkular.alerts.handlers.util.ResponseUtil.ApiError;
 import org.hawkular.alerts.handlers.util.ResponseUtil.BadRequestException;
 import org.hawkular.alerts.handlers.util.ResponseUtil.InternalServerException;
 import org.hawkular.alerts.handlers.util.ResponseUtil.NotFoundException;
+import org.hawkular.alerts.handlers.util.ResponseUtil.ServiceUnavailableException;
+import org.hawkular.alerts.handlers.util.ResponseUtil.TooManyRequestsException;
 import org.hawkular.commons.log.MsgLogger;
 import org.hawkular.commons.log.MsgLogging;
 import org.hawkular.handlers.RestEndpoint;
@@ -104,11 +109,15 @@ public class AlertsHandler implements RestHandler {
     private static final String PARAM_TEXT = "text";
     private static final String PARAM_TAG_NAMES = "tagNames";
     private static final String PARAM_THIN = "thin";
+    private static final String PARAM_PROJECTION = "projection";
     private static final String PARAM_RESOLVED_BY = "resolvedBy";
     private static final String PARAM_RESOLVED_NOTES = "resolvedNotes";
+    private static final String PARAM_GROUP_BY = "groupBy";
 
     protected static final String FIND_ALERTS = "findAlerts";
     protected static final String WATCH_ALERTS = "watchAlerts";
+    protected static final String STREAM_ALERTS = "streamAlerts";
+    protected static final String COUNT_ALERTS = "countAlerts";
     private static final String DELETE_ALERTS = "deleteAlerts";
     protected static final Map<String, Set<String>> queryParamValidationMap = new HashMap<>();
     static {
@@ -126,11 +135,15 @@ public class AlertsHandler implements RestHandler {
                 PARAM_END_ACK_TIME,
                 PARAM_START_STATUS_TIME,
                 PARAM_END_STATUS_TIME,
-                PARAM_THIN);
+                PARAM_THIN,
+                PARAM_PROJECTION);
         queryParamValidationMap.put(FIND_ALERTS, new HashSet<>(ALERTS_CRITERIA));
         queryParamValidationMap.get(FIND_ALERTS).addAll(PARAMS_PAGING);
         queryParamValidationMap.put(WATCH_ALERTS, new HashSet<>(ALERTS_CRITERIA));
         queryParamValidationMap.get(WATCH_ALERTS).add(PARAM_WATCH_INTERVAL);
+        queryParamValidationMap.put(STREAM_ALERTS, new HashSet<>(ALERTS_CRITERIA));
+        queryParamValidationMap.put(COUNT_ALERTS, new HashSet<>(ALERTS_CRITERIA));
+        queryParamValidationMap.get(COUNT_ALERTS).add(PARAM_GROUP_BY);
         queryParamValidationMap.put(DELETE_ALERTS, new HashSet<>(ALERTS_CRITERIA));
         queryParamValidationMap.get(DELETE_ALERTS).add(PARAM_ALERT_ID);
     }
@@ -145,6 +158,8 @@ public class AlertsHandler implements RestHandler {
     public void initRoutes(String baseUrl, Router router) {
         router.get(baseUrl).handler(this::findAlerts);
         router.get(baseUrl + "/watch").blockingHandler(this::watchAlerts);
+        router.get(baseUrl + "/stream").handler(this::streamAlerts);
+        router.get(baseUrl + "/stats").handler(this::countAlerts);
         router.put(baseUrl + "/tags").handler(this::addTags);
         router.delete(baseUrl + "/tags").handler(this::removeTags);
         router.put(baseUrl + "/ack").handler(this::ackAlerts);
@@ -226,7 +241,10 @@ public class AlertsHandler implements RestHandler {
                     description = "Filter out alerts with some lifecycle after this time.",
                     allowableValues = "Timestamp in millisecond since epoch."),
             @DocParameter(name = "thin", type = Boolean.class,
-                    description = "Return only thin alerts, do not include: evalSets, resolvedEvalSets.")
+                    description = "Return only thin alerts, do not include: evalSets, resolvedEvalSets."),
+            @DocParameter(name = "projection", type = Boolean.class,
+                    description = "Return only the indexed fields of the alerts, read from the index: the trigger "
+                            + "holds only its id and the lifecycle only the current status.")
     })
     @DocResponses(value = {
             @DocResponse(code = 200, message = "Successfully fetched list of alerts.", response = Alert.class, responseContainer = "List"),
@@ -253,6 +271,118 @@ public class AlertsHandler implements RestHandler {
                 }, res -> result(routing, res));
     }
 
+    @DocPath(method = GET,
+            path = "/stream",
+            name = "Stream alerts with optional filtering",
+            notes = "Return all the alerts matching the criteria as NDJSON, one alert per line, ordered by alertId. + \n" +
+                    "Alerts are fetched and written in batches, use it instead of paging for large exports. + \n" +
+                    "An error after the first alert closes the connection before the end of the stream. + \n" +
+                    "Criteria and tags query language are the same as in Get alerts.")
+    @DocParameters(value = {
+            @DocParameter(name = "startTime", type = Long.class,
+                    description = "Filter out alerts created before this time.",
+                    allowableValues = "Timestamp in millisecond since epoch."),
+            @DocParameter(name = "endTime", type = Long.class,
+                    description = "Filter out alerts created after this time.",
+                    allowableValues = "Timestamp in millisecond since epoch."),
+            @DocParameter(name = "alertIds",
+                    description = "Filter out alerts for unspecified alertIds.",
+                    allowableValues = "Comma separated list of alert IDs."),
+            @DocParameter(name = "triggerIds",
+                    description = "Filter out alerts for unspecified triggers. ",
+                    allowableValues = "Comma separated list of trigger IDs."),
+            @DocParameter(name = "statuses",
+                    description = "Filter out alerts for unspecified lifecycle status.",
+                    allowableValues = "Comma separated list of [OPEN, ACKNOWLEDGED, RESOLVED]"),
+            @DocParameter(name = "severities",
+                    description = "Filter out alerts for unspecified severity. ",
+                    allowableValues = "Comma separated list of [LOW, MEDIUM, HIGH, CRITICAL]"),
+            @DocParameter(name = "tagQuery",
+                    description = "Filter out alerts for unspecified tags.",
+                    allowableValues = "A tag query expression."),
+            @DocParameter(name = "thin", type = Boolean.class,
+                    description = "Return only thin alerts, do not include: evalSets, resolvedEvalSets."),
+            @DocParameter(name = "projection", type = Boolean.class,
+                    description = "Return only the indexed fields of the alerts, read from the index: the trigger "
+                            + "holds only its id and the lifecycle only the current status.")
+    })
+    @DocResponses(value = {
+            @DocResponse(code = 200, message = "Stream of alerts.", response = Alert.class),
+            @DocResponse(code = 400, message = "Bad Request/Invalid Parameters", response = ApiError.class),
+            @DocResponse(code = 500, message = "Internal server error.", response = ApiError.class),
+            @DocResponse(code = 503, message = "Max number of concurrent streams reached.", response = ApiError.class)
+    })
+    public void streamAlerts(RoutingContext routing) {
+        ResponseUtil.<Alert> streamOk(routing, consumer -> {
+            String tenantId = checkTenant(routing);
+            try {
+                checkForUnknownQueryParams(routing.request().params(), queryParamValidationMap.get(STREAM_ALERTS));
+                AlertsCriteria criteria = buildCriteria(routing.request().params());
+                return alertsService.streamAlerts(Collections.singleton(tenantId), criteria, consumer);
+            } catch (IllegalArgumentException e) {
+                throw new BadRequestException("Bad arguments: " + e.getMessage());
+            }
+        });
+    }
+
+    @DocPath(method = GET,
+            path = "/stats",
+            name = "Count alerts with optional filtering and grouping",
+            notes = "Return the number of alerts matching the criteria, grouped by the groupBy fields. + \n" +
+                    "Counts are computed on the alerts index, alerts are not fetched. + \n" +
+                    "Groups without alerts are not returned. The day field is the start of the day (UTC) in " +
+                    "milliseconds since epoch. + \n" +
+                    "Criteria and tags query language are the same as in Get alerts.")
+    @DocParameters(value = {
+            @DocParameter(name = "startTime", type = Long.class,
+                    description = "Filter out alerts created before this time.",
+                    allowableValues = "Timestamp in millisecond since epoch."),
+            @DocParameter(name = "endTime", type = Long.class,
+                    description = "Filter out alerts created after this time.",
+                    allowableValues = "Timestamp in millisecond since epoch."),
+            @DocParameter(name = "triggerIds",
+                    description = "Filter out alerts for unspecified triggers. ",
+                    allowableValues = "Comma separated list of trigger IDs."),
+            @DocParameter(name = "statuses",
+                    description = "Filter out alerts for unspecified lifecycle status.",
+                    allowableValues = "Comma separated list of [OPEN, ACKNOWLEDGED, RESOLVED]"),
+            @DocParameter(name = "severities",
+                    description = "Filter out alerts for unspecified severity. ",
+                    allowableValues = "Comma separated list of [LOW, MEDIUM, HIGH, CRITICAL]"),
+            @DocParameter(name = "tagQuery",
+                    description = "Filter out alerts for unspecified tags.",
+                    allowableValues = "A tag query expression."),
+            @DocParameter(name = "groupBy",
+                    description = "Fields to group the counts by. If not defined a single total is returned.",
+                    allowableValues = "Comma separated list of [tenantId, triggerId, severity, status, day]")
+    })
+    @DocResponses(value = {
+            @DocResponse(code = 200, message = "Successfully counted alerts.", response = EventsCount.class,
+                    responseContainer = "List"),
+            @DocResponse(code = 400, message = "Bad Request/Invalid Parameters", response = ApiError.class),
+            @DocResponse(code = 500, message = "Internal server error.", response = ApiError.class)
+    })
+    public void countAlerts(RoutingContext routing) {
+        routing.vertx()
+                .executeBlocking(future -> {
+                    String tenantId = checkTenant(routing);
+                    try {
+                        checkForUnknownQueryParams(routing.request().params(), queryParamValidationMap.get(COUNT_ALERTS));
+                        AlertsCriteria criteria = buildCriteria(routing.request().params());
+                        List<EventsCount.Field> groupBy = parseGroupBy(routing.request().params().get(PARAM_GROUP_BY));
+                        List<EventsCount> counts = alertsService.countAlerts(Collections.singleton(tenantId), criteria,
+                                groupBy);
+                        log.debugf("Alerts counts: %s", counts);
+                        future.complete(counts);
+                    } catch (IllegalArgumentException e) {
+                        throw new BadRequestException("Bad arguments: " + e.getMessage());
+                    } catch (Exception e) {
+                        log.debug(e.getMessage(), e);
+                        throw new InternalServerException(e.toString());
+                    }
+                }, res -> result(routing, res));
+    }
+
     @DocPath(method = GET,
             path = "/watch",
             name = "Get alerts with optional filtering",
@@ -333,7 +463,10 @@ public class AlertsHandler implements RestHandler {
                     description = "Define interval when watcher notifications will be sent.",
                     allowableValues = "Interval in seconds"),
             @DocParameter(name = "thin", type = Boolean.class,
-                    description = "Return only thin alerts, do not include: evalSets, resolvedEvalSets.")
+                    description = "Return only thin alerts, do not include: evalSets, resolvedEvalSets."),
+            @DocParameter(name = "projection", type = Boolean.class,
+                    description = "Return only the indexed fields of the alerts, read from the index: the trigger "
+                            + "holds only its id and the lifecycle only the current status.")
     })
     @DocResponses(value = {
             @DocResponse(code = 200, message = "Stream of alerts.", response = Alert.class),
@@ -710,7 +843,10 @@ public class AlertsHandler implements RestHandler {
     @DocResponses(value = {
             @DocResponse(code = 200, message = "Success, data added."),
             @DocResponse(code = 400, message = "Bad Request/Invalid Parameters.", response = ApiError.class),
-            @DocResponse(code = 500, message = "Internal server error.", response = ApiError.class)
+            @DocResponse(code = 429, message = "Too many pending data for the tenant, retry later.",
+                    response = ApiError.class),
+            @DocResponse(code = 500, message = "Internal server error.", response = ApiError.class),
+            @DocResponse(code = 503, message = "Service overloaded, retry later.", response = ApiError.class)
     })
     public void sendData(RoutingContext routing) {
         routing.vertx()
@@ -734,6 +870,11 @@ public class AlertsHandler implements RestHandler {
                         future.complete();
                     } catch (IllegalArgumentException e) {
                         throw new BadRequestException("Bad arguments: " + e.getMessage());
+                    } catch (OverloadedException e) {
+                        if (e.isTenantLimit()) {
+                            throw new TooManyRequestsException(e.getMessage());
+                        }
+                        throw new ServiceUnavailableException(e.getMessage());
                     } catch (Exception e) {
                         throw new InternalServerException(e.toString());
                     }
@@ -940,8 +1081,12 @@ public class AlertsHandler implements RestHandler {
         if (params.get(PARAM_THIN) != null) {
             thin = Boolean.valueOf(params.get(PARAM_THIN));
         }
-        return new AlertsCriteria(startTime, endTime, alertIds, triggerIds, statuses, severities,
+        AlertsCriteria criteria = new AlertsCriteria(startTime, endTime, alertIds, triggerIds, statuses, severities,
                 unifiedTagQuery, startResolvedTime, endResolvedTime, startAckTime, endAckTime, startStatusTime,
                 endStatusTime, thin);
+        if (params.get(PARAM_PROJECTION) != null) {
+            criteria.setProjection(Boolean.valueOf(params.get(PARAM_PROJECTION)));
+        }
+        return criteria;
     }
 }
@@ -144,7 +144,10 @@ public class CrossTenantHandler implements RestHandler {
                     description = "Filter out alerts with some lifecycle after this time.",
                     allowableValues = "Timestamp in millisecond since epoch."),
             @DocParameter(name = "thin", type = Boolean.class,
-                    description = "Return only thin alerts, do not include: evalSets, resolvedEvalSets.")
+                    description = "Return only thin alerts, do not include: evalSets, resolvedEvalSets."),
+            @DocParameter(name = "projection", type = Boolean.class,
+                    description = "Return only the indexed fields of the alerts, read from the index: the trigger "
+                            + "holds only its id and the lifecycle only the current status.")
     })
     @DocResponses(value = {
             @DocResponse(code = 200, message = "Successfully fetched list of alerts.", response = Alert.class, responseContainer = "List"),
@@ -222,7 +225,10 @@ public class CrossTenantHandler implements RestHandler {
                     description = "Filter out events for unspecified tags.",
                     allowableValues = "A tag query expression."),
             @DocParameter(name = "thin",
-                    description = "Return only thin events, do not include: evalSets.")
+                    description = "Return only thin events, do not include: evalSets."),
+            @DocParameter(name = "projection", type = Boolean.class,
+                    description = "Return only the indexed fields of the events, read from the index: the trigger "
+                            + "holds only its id.")
     })
     @DocResponses(value = {
             @DocResponse(code = 200, message = "Successfully fetched list of events.", response = Event.class, responseContainer = "List"),
@@ -331,7 +337,10 @@ public class CrossTenantHandler implements RestHandler {
                     description = "Define interval when watcher notifications will be sent.",
                     allowableValues = "Interval in seconds"),
             @DocParameter(name = "thin", type = Boolean.class,
-                    description = "Return only thin alerts, do not include: evalSets, resolvedEvalSets.")
+                    description = "Return only thin alerts, do not include: evalSets, resolvedEvalSets."),
+            @DocParameter(name = "projection", type = Boolean.class,
+                    description = "Return only the indexed fields of the alerts, read from the index: the trigger "
+                            + "holds only its id and the lifecycle only the current status.")
     })
     @DocResponses(value = {
             @DocResponse(code = 200, message = "Stream of alerts.", response = Alert.class),
@@ -431,7 +440,10 @@ public class CrossTenantHandler implements RestHandler {
                     description = "Define interval when watcher notifications will be sent.",
                     allowableValues = "Interval in seconds"),
             @DocParameter(name = "thin", type = Boolean.class,
-                    description = "Return only thin events, do not include: evalSets.")
+                    description = "Return only thin events, do not include: evalSets."),
+            @DocParameter(name = "projection", type = Boolean.class,
+                    description = "Return only the indexed fields of the events, read from the index: the trigger "
+                            + "holds only its id.")
     })
     @DocResponses(value = {
             @DocResponse(code = 200, message = "Stream of events.", response = Event.class),
@@ -44,7 +44,9 @@ import org.hawkular.alerts.api.doc.DocParameters;
 import org.hawkular.alerts.api.doc.DocPath;
 import org.hawkular.alerts.api.doc.DocResponse;
 import org.hawkular.alerts.api.doc.DocResponses;
+import org.hawkular.alerts.api.exception.OverloadedException;
 import org.hawkular.alerts.api.model.event.Event;
+import org.hawkular.alerts.api.model.event.EventsCount;
 import org.hawkular.alerts.api.model.paging.Page;
 import org.hawkular.alerts.api.model.paging.Pager;
 import org.hawkular.alerts.api.services.AlertsService;
@@ -79,12 +81,16 @@ public class EventsHandler implements RestHandler {
     private static final String PARAM_TAGS = "tags";
     private static final String PARAM_TAG_QUERY = "tagQuery";
     private static final String PARAM_THIN = "thin";
+    private static final String PARAM_PROJECTION = "projection";
     private static final String PARAM_WATCH_INTERVAL = "watchInterval";
     private static final String PARAM_TAG_NAMES = "tagNames";
     private static final String PARAM_EVENT_TYPE = "eventType";
+    private static final String PARAM_GROUP_BY = "groupBy";
 
     protected static final String FIND_EVENTS = "findEvents";
     protected static final String WATCH_EVENTS = "watchEvents";
+    protected static final String STREAM_EVENTS = "streamEvents";
+    protected static final String COUNT_EVENTS = "countEvents";
     private static final String DELETE_EVENTS = "deleteEvents";
     protected static final Map<String, Set<String>> queryParamValidationMap = new HashMap<>();
     static {
@@ -96,11 +102,15 @@ public class EventsHandler implements RestHandler {
                 PARAM_TAGS,
                 PARAM_TAG_QUERY,
                 PARAM_EVENT_TYPE,
-                PARAM_THIN);
+                PARAM_THIN,
+                PARAM_PROJECTION);
         queryParamValidationMap.put(FIND_EVENTS, new HashSet<>(EVENTS_CRITERIA));
         queryParamValidationMap.get(FIND_EVENTS).addAll(PARAMS_PAGING);
         queryParamValidationMap.put(WATCH_EVENTS, new HashSet<>(EVENTS_CRITERIA));
         queryParamValidationMap.get(WATCH_EVENTS).add(PARAM_WATCH_INTERVAL);
+        queryParamValidationMap.put(STREAM_EVENTS, new HashSet<>(EVENTS_CRITERIA));
+        queryParamValidationMap.put(COUNT_EVENTS, new HashSet<>(EVENTS_CRITERIA));
+        queryParamValidationMap.get(COUNT_EVENTS).add(PARAM_GROUP_BY);
         queryParamValidationMap.put(DELETE_EVENTS, new HashSet<>(EVENTS_CRITERIA));
         queryParamValidationMap.get(DELETE_EVENTS).add(PARAM_EVENT_ID);
     }
@@ -120,6 +130,8 @@ public class EventsHandler implements RestHandler {
         router.delete(path + "/tags").handler(this::removeTags);
         router.get(path).handler(this::findEvents);
         router.get(path + "/watch").blockingHandler(this::watchEvents);
+        router.get(path + "/stream").handler(this::streamEvents);
+        router.get(path + "/stats").handler(this::countEvents);
         router.put(path + "/delete").handler(this::deleteEvents);
         router.delete(path + "/:eventId").handler(this::deleteEvent);
         router.get(path + "/event/:eventId").handler(this::getEvent);
@@ -198,7 +210,10 @@ public class EventsHandler implements RestHandler {
     @DocResponses(value = {
             @DocResponse(code = 200, message = "Success, Events Sent.", response = Event.class),
             @DocResponse(code = 400, message = "Bad Request/Invalid Parameters.", response = ApiError.class),
-            @DocResponse(code = 500, message = "Internal server error.", response = ApiError.class)
+            @DocResponse(code = 429, message = "Too many pending events for the tenant, retry later.",
+                    response = ApiError.class),
+            @DocResponse(code = 500, message = "Internal server error.", response = ApiError.class),
+            @DocResponse(code = 503, message = "Service overloaded, retry later.", response = ApiError.class)
     })
     public void sendEvents(RoutingContext routing) {
         routing.vertx()
@@ -222,6 +237,11 @@ public class EventsHandler implements RestHandler {
                         future.complete(events);
                     } catch (IllegalArgumentException e) {
                         throw new ResponseUtil.BadRequestException("Bad arguments: " + e.getMessage());
+                    } catch (OverloadedException e) {
+                        if (e.isTenantLimit()) {
+                            throw new ResponseUtil.TooManyRequestsException(e.getMessage());
+                        }
+                        throw new ResponseUtil.ServiceUnavailableException(e.getMessage());
                     } catch (Exception e) {
                         throw new ResponseUtil.InternalServerException(e.toString());
                     }
@@ -366,7 +386,10 @@ public class EventsHandler implements RestHandler {
                     description = "Filter out events for unspecified tags.",
                     allowableValues = "A tag query expression."),
             @DocParameter(name = "thin",
-                    description = "Return only thin events, do not include: evalSets.")
+                    description = "Return only thin events, do not include: evalSets."),
+            @DocParameter(name = "projection", type = Boolean.class,
+                    description = "Return only the indexed fields of the events, read from the index: the trigger "
+                            + "holds only its id.")
     })
     @DocResponses(value = {
             @DocResponse(code = 200, message = "Successfully fetched list of events.", response = Event.class, responseContainer = "List"),
@@ -393,6 +416,119 @@ public class EventsHandler implements RestHandler {
                 }, res -> ResponseUtil.result(routing, res));
     }
 
+    @DocPath(method = GET,
+            path = "/stream",
+            name = "Stream events with optional filtering.",
+            notes = "Return all the events matching the criteria as NDJSON, one event per line, ordered by eventId. + \n" +
+                    "Events are fetched and written in batches, use it instead of paging for large exports. + \n" +
+                    "An error after the first event closes the connection before the end of the stream. + \n" +
+                    "Criteria and tags query language are the same as in Get events.")
+    @DocParameters(value = {
+            @DocParameter(name = "startTime",
+                    description = "Filter out events created before this time.",
+                    allowableValues = "Timestamp in millisecond since epoch."),
+            @DocParameter(name = "endTime",
+                    description = "Filter out events created after this time.",
+                    allowableValues = "Timestamp in millisecond since epoch."),
+            @DocParameter(name = "eventIds",
+                    description = "Filter out events for unspecified eventIds.",
+                    allowableValues = "Comma separated list of event IDs."),
+            @DocParameter(name = "triggerIds",
+                    description = "Filter out events for unspecified triggers.",
+                    allowableValues = "Comma separated list of trigger IDs."),
+            @DocParameter(name = "categories",
+                    description = "Filter out events for unspecified categories.",
+                    allowableValues = "Comma separated list of category values."),
+            @DocParameter(name = "tagQuery",
+                    description = "Filter out events for unspecified tags.",
+                    allowableValues = "A tag query expression."),
+            @DocParameter(name = "eventType",
+                    description = "Filter out events for unspecified event type.",
+                    allowableValues = "ALERT, EVENT"),
+            @DocParameter(name = "thin", type = Boolean.class,
+                    description = "Return only thin events, do not include: evalSets."),
+            @DocParameter(name = "projection", type = Boolean.class,
+                    description = "Return only the indexed fields of the events, read from the index: the trigger "
+                            + "holds only its id.")
+    })
+    @DocResponses(value = {
+            @DocResponse(code = 200, message = "Stream of events.", response = Event.class),
+            @DocResponse(code = 400, message = "Bad Request/Invalid Parameters.", response = ApiError.class),
+            @DocResponse(code = 500, message = "Internal server error.", response = ApiError.class),
+            @DocResponse(code = 503, message = "Max number of concurrent streams reached.", response = ApiError.class)
+    })
+    public void streamEvents(RoutingContext routing) {
+        ResponseUtil.<Event> streamOk(routing, consumer -> {
+            String tenantId = ResponseUtil.checkTenant(routing);
+            try {
+                checkForUnknownQueryParams(routing.request().params(), queryParamValidationMap.get(STREAM_EVENTS));
+                EventsCriteria criteria = buildCriteria(routing.request().params());
+                return alertsService.streamEvents(Collections.singleton(tenantId), criteria, consumer);
+            } catch (IllegalArgumentException e) {
+                throw new ResponseUtil.BadRequestException("Bad arguments: " + e.getMessage());
+            }
+        });
+    }
+
+    @DocPath(method = GET,
+            path = "/stats",
+            name = "Count events with optional filtering and grouping.",
+            notes = "Return the number of events matching the criteria, grouped by the groupBy fields. + \n" +
+                    "Counts are computed on the events index, events are not fetched. + \n" +
+                    "Groups without events are not returned. The day field is the start of the day (UTC) in " +
+                    "milliseconds since epoch. + \n" +
+                    "Criteria and tags query language are the same as in Get events.")
+    @DocParameters(value = {
+            @DocParameter(name = "startTime",
+                    description = "Filter out events created before this time.",
+                    allowableValues = "Timestamp in millisecond since epoch."),
+            @DocParameter(name = "endTime",
+                    description = "Filter out events created after this time.",
+                    allowableValues = "Timestamp in millisecond since epoch."),
+            @DocParameter(name = "triggerIds",
+                    description = "Filter out events for unspecified triggers.",
+                    allowableValues = "Comma separated list of trigger IDs."),
+            @DocParameter(name = "categories",
+                    description = "Filter out events for unspecified categories.",
+                    allowableValues = "Comma separated list of category values."),
+            @DocParameter(name = "tagQuery",
+                    description = "Filter out events for unspecified tags.",
+                    allowableValues = "A tag query expression."),
+            @DocParameter(name = "eventType",
+                    description = "Filter out events for unspecified event type.",
+                    allowableValues = "ALERT, EVENT"),
+            @DocParameter(name = "groupBy",
+                    description = "Fields to group the counts by. If not defined a single total is returned.",
+                    allowableValues = "Comma separated list of [tenantId, triggerId, eventType, category, day]")
+    })
+    @DocResponses(value = {
+            @DocResponse(code = 200, message = "Successfully counted events.", response = EventsCount.class,
+                    responseContainer = "List"),
+            @DocResponse(code = 400, message = "Bad Request/Invalid Parameters.", response = ApiError.class),
+            @DocResponse(code = 500, message = "Internal server error.", response = ApiError.class)
+    })
+    public void countEvents(RoutingContext routing) {
+        routing.vertx()
+                .executeBlocking(future -> {
+                    String tenantId = ResponseUtil.checkTenant(routing);
+                    try {
+                        checkForUnknownQueryParams(routing.request().params(), queryParamValidationMap.get(COUNT_EVENTS));
+                        EventsCriteria criteria = buildCriteria(routing.request().params());
+                        List<EventsCount.Field> groupBy = ResponseUtil.parseGroupBy(routing.request().params()
+                                .get(PARAM_GROUP_BY));
+                        List<EventsCount> counts = alertsService.countEvents(Collections.singleton(tenantId), criteria,
+                                groupBy);
+                        log.debugf("Events counts: %s", counts);
+                        future.complete(counts);
+                    } catch (IllegalArgumentException e) {
+                        throw new ResponseUtil.BadRequestException("Bad arguments: " + e.getMessage());
+                    } catch (Exception e) {
+                        log.debug(e.getMessage(), e);
+                        throw new ResponseUtil.InternalServerException(e.toString());
+                    }
+                }, res -> ResponseUtil.result(routing, res));
+    }
+
     @DocPath(method = GET,
             path = "/watch",
             name = "Watch events with optional filtering.",
@@ -445,7 +581,10 @@ public class EventsHandler implements RestHandler {
                     description = "Define interval when watcher notifications will be sent.",
                     allowableValues = "Interval in seconds"),
             @DocParameter(name = "thin", type = Boolean.class,
-                    description = "Return only thin events, do not include: evalSets.")
+                    description = "Return only thin events, do not include: evalSets."),
+            @DocParameter(name = "projection", type = Boolean.class,
+                    description = "Return only the indexed fields of the events, read from the index: the trigger "
+                            + "holds only its id.")
     })
     @DocResponses(value = {
             @DocResponse(code = 200, message = "Stream of events.", response = Event.class),
@@ -663,6 +802,11 @@ public class EventsHandler implements RestHandler {
         if (params.get(PARAM_EVENT_TYPE) != null) {
             eventType = params.get(PARAM_EVENT_TYPE);
         }
-        return new EventsCriteria(startTime, endTime, eventIds, triggerIds, categories, unifiedTagQuery, eventType, thin);
+        EventsCriteria criteria = new EventsCriteria(startTime, endTime, eventIds, triggerIds, categories,
+                unifiedTagQuery, eventType, thin);
+        if (params.get(PARAM_PROJECTION) != null) {
+            criteria.setProjection(Boolean.valueOf(params.get(PARAM_PROJECTION)));
+        }
+        return criteria;
     }
 }
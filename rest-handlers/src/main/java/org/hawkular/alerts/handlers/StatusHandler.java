@@ -18,10 +18,14 @@ package org.hawkular.alerts.handlers;
 
 import static org.hawkular.alerts.api.doc.DocConstants.GET;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 import org.hawkular.alerts.api.doc.DocEndpoint;
+import org.hawkular.alerts.api.doc.DocParameter;
+import org.hawkular.alerts.api.doc.DocParameters;
 import org.hawkular.alerts.api.doc.DocPath;
 import org.hawkular.alerts.api.doc.DocResponse;
 import org.hawkular.alerts.api.doc.DocResponses;
@@ -50,6 +54,7 @@ public class StatusHandler implements RestHandler {
     static final String STARTED = "STARTED";
     static final String FAILED = "FAILED";
     static final String DISTRIBUTED = "distributed";
+    static final String PARAM_TENANT_IDS = "tenantIds";
 
     StatusService statusService;
     ManifestUtil manifestUtil;
@@ -63,6 +68,7 @@ public class StatusHandler implements RestHandler {
     public void initRoutes(String baseUrl, Router router) {
         String path = baseUrl + "/status";
         router.get(path).handler(this::status);
+        router.get(path + "/facts").handler(this::facts);
     }
 
     @DocPath(method = GET,
@@ -75,7 +81,21 @@ public class StatusHandler implements RestHandler {
                     "\"Implementation-Version\":\"<Version>\", + \n" +
                     "\"Built-From-Git-SHA1\":\"<Git-SHA1>\", + \n" +
                     "\"distributed\":\"<true|false>\", + \n" +
-                    "\"members\":\"<comma list of nodes IDs>\" + \n" +
+                    "\"members\":\"<comma list of nodes IDs>\", + \n" +
+                    "\"incoming-pending-requests\":\"<number of buffered requests>\", + \n" +
+                    "\"incoming-pending-bytes\":\"<estimated bytes of buffered data/events>\", + \n" +
+                    "\"incoming-accepted-data\":\"<number of accepted datums>\", + \n" +
+                    "\"incoming-accepted-events\":\"<number of accepted events>\", + \n" +
+                    "\"incoming-rejected-data\":\"<number of rejected datums>\", + \n" +
+                    "\"incoming-rejected-events\":\"<number of rejected events>\", + \n" +
+                    "\"incoming-rejected-requests\":\"<number of rejected requests>\", + \n" +
+                    "\"reload-status\":\"<NONE|LOADING|LOADED>\", + \n" +
+                    "\"reload-tenants-total\":\"<number of tenants to load>\", + \n" +
+                    "\"reload-tenants-loaded\":\"<number of tenants loaded>\", + \n" +
+                    "\"reload-triggers-total\":\"<number of triggers to load>\", + \n" +
+                    "\"reload-triggers-loaded\":\"<number of triggers loaded>\", + \n" +
+                    "\"reload-elapsed-ms\":\"<time loading triggers>\", + \n" +
+                    "\"reload-eta-ms\":\"<estimated time to finish loading, only while loading>\" + \n" +
                     "}")
     @DocResponses(value = {
             @DocResponse(code = 200, message = "Success, Event Created.", response = String.class, responseContainer = "Map"),
@@ -96,7 +116,50 @@ public class StatusHandler implements RestHandler {
                     if (distributed) {
                         status.putAll(statusService.getDistributedStatus());
                     }
+                    status.putAll(statusService.getIncomingStatus());
+                    status.putAll(statusService.getReloadStatus());
                     future.complete(status);
                 }, res -> ResponseUtil.result(routing, res));
     }
+
+    @DocPath(method = GET,
+            path = "/facts",
+            name = "Get a snapshot of the facts loaded in the engine.",
+            notes = "Diagnostics operation, the cost is proportional to the number of facts in the engine. + \n" +
+                    "Facts are counted by type for each tenant, the \"*\" entry holds the totals. + \n" +
+                    "{ + \n" +
+                    "\"*\":{\"<fact type>\":<count>, ...}, + \n" +
+                    "\"<tenantId>\":{\"<fact type>\":<count>, ...} + \n" +
+                    "}")
+    @DocParameters(value = {
+            @DocParameter(name = "tenantIds",
+                    description = "Filter out facts for unspecified tenants.",
+                    allowableValues = "Comma separated list of tenant IDs.")
+    })
+    @DocResponses(value = {
+            @DocResponse(code = 200, message = "Success.", response = String.class, responseContainer = "Map"),
+            @DocResponse(code = 400, message = "Bad Request/Invalid Parameters.", response = ApiError.class),
+            @DocResponse(code = 500, message = "Internal server error.", response = ApiError.class)
+    })
+    public void facts(RoutingContext routing) {
+        routing.vertx()
+                .executeBlocking(future -> {
+                    try {
+                        ResponseUtil.checkForUnknownQueryParams(routing.request().params(),
+                                Collections.singleton(PARAM_TENANT_IDS));
+                        Map<String, Map<String, Long>> snapshot = statusService.getFactsSnapshot();
+                        String tenantIds = routing.request().getParam(PARAM_TENANT_IDS);
+                        if (tenantIds != null) {
+                            Set<String> tenants = ResponseUtil.getTenants(tenantIds);
+                            snapshot.keySet().removeIf(t -> !"*".equals(t) && !tenants.contains(t));
+                        }
+                        future.complete(snapshot);
+                    } catch (IllegalArgumentException e) {
+                        throw new ResponseUtil.BadRequestException("Bad arguments: " + e.getMessage());
+                    } catch (Exception e) {
+                        log.debug(e.getMessage(), e);
+                        throw new ResponseUtil.InternalServerException(e.toString());
+                    }
+                }, res -> ResponseUtil.result(routing, res));
+    }
 }
@@ -23,6 +23,8 @@ import static io.netty.handler.codec.http.HttpResponseStatus.BAD_REQUEST;
 import static io.netty.handler.codec.http.HttpResponseStatus.INTERNAL_SERVER_ERROR;
 import static io.netty.handler.codec.http.HttpResponseStatus.NOT_FOUND;
 import static io.netty.handler.codec.http.HttpResponseStatus.OK;
+import static io.netty.handler.codec.http.HttpResponseStatus.SERVICE_UNAVAILABLE;
+import static io.netty.handler.codec.http.HttpResponseStatus.TOO_MANY_REQUESTS;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -33,6 +35,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import org.hawkular.alerts.api.doc.DocModel;
@@ -41,16 +46,23 @@ import org.hawkular.alerts.api.json.GroupMemberInfo;
 import org.hawkular.alerts.api.json.UnorphanMemberInfo;
 import org.hawkular.alerts.api.model.dampening.Dampening;
 import org.hawkular.alerts.api.model.event.Event;
+import org.hawkular.alerts.api.model.event.EventsCount;
 import org.hawkular.alerts.api.model.paging.Order;
 import org.hawkular.alerts.api.model.paging.Page;
 import org.hawkular.alerts.api.model.paging.PageContext;
 import org.hawkular.alerts.api.model.paging.Pager;
 import org.hawkular.alerts.api.model.trigger.Trigger;
+import org.hawkular.commons.log.MsgLogger;
+import org.hawkular.commons.log.MsgLogging;
+import org.hawkular.commons.properties.HawkularProperties;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
 
 import io.vertx.core.AsyncResult;
 import io.vertx.core.MultiMap;
+import io.vertx.core.Vertx;
+import io.vertx.core.WorkerExecutor;
+import io.vertx.core.http.HttpServerResponse;
 import io.vertx.ext.web.RoutingContext;
 
 /**
@@ -58,18 +70,42 @@ import io.vertx.ext.web.RoutingContext;
  * @author Lucas Ponce
  */
 public class ResponseUtil {
+    private static final MsgLogger log = MsgLogging.getMsgLogger(ResponseUtil.class);
+
+    /*
+        Max time in milliseconds a stream waits for the drain of the response before checking again if it was closed.
+     */
+    private static final long STREAM_DRAIN_WAIT = 1000;
+
+    /*
+        Max number of streamed responses running at the same time. Each stream holds a thread of a dedicated worker
+        pool of this size, so streams do not take the threads of the shared worker pool. Streams over the limit are
+        rejected with 503.
+     */
+    private static final String REST_MAX_STREAMS = "hawkular-alerts.rest-max-streams";
+    private static final String REST_MAX_STREAMS_ENV = "HAWKULAR_REST_MAX_STREAMS";
+    private static final String REST_MAX_STREAMS_DEFAULT = "8";
+    private static final int MAX_STREAMS = new Integer(HawkularProperties.getProperty(REST_MAX_STREAMS,
+            REST_MAX_STREAMS_ENV, REST_MAX_STREAMS_DEFAULT));
+    private static final String STREAMS_POOL = "hawkular-alerts-streams";
+
+    private static final AtomicInteger activeStreams = new AtomicInteger(0);
+    private static volatile WorkerExecutor streamsExecutor;
+
     public static final String ACCEPT = "Accept";
     public static final String CONTENT_TYPE = "Content-Type";
     public static final String APPLICATION_JSON = "application/json";
+    public static final String APPLICATION_NDJSON = "application/x-ndjson";
     public static final String TENANT_HEADER_NAME = "Hawkular-Tenant";
     public static final String PARAM_PAGE = "page";
     public static final String PARAM_PER_PAGE = "per_page";
     public static final String PARAM_SORT = "sort";
     public static final String PARAM_ORDER = "order";
+    public static final String PARAM_CURSOR = "cursor";
     public static final String PARAM_IGNORE_UNKNOWN_QUERY_PARAMS = "ignoreUnknownQueryParams";
     public static final Collection<String> PARAMS_PAGING;
     static {
-        PARAMS_PAGING = Arrays.asList(PARAM_PAGE, PARAM_PER_PAGE, PARAM_SORT, PARAM_ORDER);
+        PARAMS_PAGING = Arrays.asList(PARAM_PAGE, PARAM_PER_PAGE, PARAM_SORT, PARAM_ORDER, PARAM_CURSOR);
     }
 
     @DocModel(description = "Payload for a REST error response.")
@@ -128,6 +164,22 @@ public class ResponseUtil {
                 .end(toJson(new ApiError(errorMsg)));
     }
 
+    public static void tooManyRequests(RoutingContext routing, String errorMsg) {
+        routing.response()
+                .putHeader(ACCEPT, APPLICATION_JSON)
+                .putHeader(CONTENT_TYPE, APPLICATION_JSON)
+                .setStatusCode(TOO_MANY_REQUESTS.code())
+                .end(toJson(new ApiError(errorMsg)));
+    }
+
+    public static void serviceUnavailable(RoutingContext routing, String errorMsg) {
+        routing.response()
+                .putHeader(ACCEPT, APPLICATION_JSON)
+                .putHeader(CONTENT_TYPE, APPLICATION_JSON)
+                .setStatusCode(SERVICE_UNAVAILABLE.code())
+                .end(toJson(new ApiError(errorMsg)));
+    }
+
     public static void ok(RoutingContext routing, Object o) {
         routing.response()
                 .putHeader(ACCEPT, APPLICATION_JSON)
@@ -153,6 +205,113 @@ public class ResponseUtil {
                 .end(toJson(page));
     }
 
+    /**
+     * Source of the items of a streamed response, it passes the items to the consumer in the calling thread.
+     * @param <T> type of the items
+     */
+    @FunctionalInterface
+    public interface StreamSource<T> {
+        int stream(Consumer<T> consumer) throws Exception;
+    }
+
+    /**
+     * Write the items of the source as NDJSON, one JSON document per line, in a chunked response.
+     *
+     * The source runs in a worker thread that waits while the write queue of the response is full, so the memory
+     * used does not depend on the size of the result. The status is sent with the first item: a failure before it
+     * is returned as a regular error response, a failure after it closes the connection before the end of the
+     * stream. A client closing the connection stops the source. The source runs in a dedicated worker pool of
+     * hawkular-alerts.rest-max-streams threads, a stream over that limit is rejected with 503.
+     *
+     * @param routing the routing context of the request
+     * @param source the source of the items
+     * @param <T> type of the items
+     */
+    public static <T> void streamOk(RoutingContext routing, StreamSource<T> source) {
+        if (activeStreams.incrementAndGet() > MAX_STREAMS) {
+            activeStreams.decrementAndGet();
+            serviceUnavailable(routing, "Max number of concurrent streams [" + MAX_STREAMS + "] reached");
+            return;
+        }
+        HttpServerResponse response = routing.response();
+        AtomicBoolean started = new AtomicBoolean(false);
+        AtomicBoolean closed = new AtomicBoolean(false);
+        Object drained = new Object();
+        response.closeHandler(v -> {
+            closed.set(true);
+            synchronized (drained) {
+                drained.notifyAll();
+            }
+        });
+        response.drainHandler(v -> {
+            synchronized (drained) {
+                drained.notifyAll();
+            }
+        });
+        streamsExecutor(routing.vertx()).executeBlocking(future -> {
+            try {
+                int streamed = source.stream(item -> {
+                    if (closed.get()) {
+                        throw new StreamClosedException();
+                    }
+                    if (started.compareAndSet(false, true)) {
+                        response.putHeader(CONTENT_TYPE, APPLICATION_NDJSON)
+                                .setChunked(true)
+                                .setStatusCode(OK.code());
+                    }
+                    response.write(toJson(item) + "\n");
+                    synchronized (drained) {
+                        while (response.writeQueueFull() && !closed.get()) {
+                            try {
+                                drained.wait(STREAM_DRAIN_WAIT);
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                                throw new StreamClosedException();
+                            }
+                        }
+                    }
+                });
+                future.complete(streamed);
+            } catch (StreamClosedException e) {
+                future.fail(e);
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new InternalServerException(e.toString());
+            }
+        }, false, res -> {
+            activeStreams.decrementAndGet();
+            if (closed.get()) {
+                log.debug("Stream closed by the client");
+                return;
+            }
+            if (res.succeeded()) {
+                if (!started.get()) {
+                    response.putHeader(CONTENT_TYPE, APPLICATION_NDJSON).setStatusCode(OK.code());
+                }
+                response.end();
+                return;
+            }
+            if (started.get()) {
+                log.debugf("Stream failed: %s", res.cause().toString());
+                response.close();
+                return;
+            }
+            result(routing, res);
+        });
+    }
+
+    private static WorkerExecutor streamsExecutor(Vertx vertx) {
+        if (null == streamsExecutor) {
+            synchronized (ResponseUtil.class) {
+                if (null == streamsExecutor) {
+                    streamsExecutor = vertx.createSharedWorkerExecutor(STREAMS_POOL, MAX_STREAMS);
+                }
+            }
+        }
+        return streamsExecutor;
+    }
+
     public static String tenant(RoutingContext routing) {
         return routing.request().getHeader(TENANT_HEADER_NAME);
     }
@@ -166,6 +325,18 @@ public class ResponseUtil {
 
         List<Link> links = new ArrayList<>();
 
+        if (pc.isCursor()) {
+            // Cursors only move forward, and the total of a cursor page does not count the previous pages
+            StringBuilder linkHeader = new StringBuilder(new Link("current", uri).rfc5988String());
+            if (null != resultList.getNextCursor()) {
+                linkHeader.append(", ").append(new Link("next",
+                        replaceQueryParam(uri, PARAM_CURSOR, resultList.getNextCursor())).rfc5988String());
+            }
+            routing.response().headers().remove("Link");
+            routing.response().putHeader("Link", linkHeader.toString());
+            return;
+        }
+
         if (pc.isLimited() && resultList.getTotalSize() > (pc.getPageNumber() + 1) * pc.getPageSize()) {
             int nextPage = page + 1;
             links.add(new Link("next", replaceQueryParam(uri, "page", String.valueOf(nextPage))));
@@ -218,6 +389,7 @@ public class ResponseUtil {
         String perPageS = params.get("per_page") == null ? null : params.get("per_page");
         List<String> sort = params.getAll("sort");
         List<String> order = params.getAll("order");
+        String cursor = params.get(PARAM_CURSOR);
 
         int page = pageS == null ? 0 : Integer.parseInt(pageS);
         int perPage = perPageS == null ? PageContext.UNLIMITED_PAGE_SIZE : Integer.parseInt(perPageS);
@@ -237,7 +409,7 @@ public class ResponseUtil {
                 ordering.add(Order.by(field, dir));
             }
         }
-        return new Pager(page, perPage, ordering);
+        return null == cursor ? new Pager(page, perPage, ordering) : new Pager(cursor, perPage, ordering);
     }
 
     public static Map<String, String> parseTags(String tags) {
@@ -257,6 +429,21 @@ public class ResponseUtil {
         return tagsMap;
     }
 
+    public static List<EventsCount.Field> parseGroupBy(String groupBy) {
+        List<EventsCount.Field> fields = new ArrayList<>();
+        if (isEmpty(groupBy)) {
+            return fields;
+        }
+        for (String token : groupBy.split(",")) {
+            EventsCount.Field field = EventsCount.Field.getField(token.trim());
+            if (null == field) {
+                throw new IllegalArgumentException("Invalid groupBy field [" + token + "]");
+            }
+            fields.add(field);
+        }
+        return fields;
+    }
+
     @SuppressWarnings("unchecked")
     public static String parseTagQuery(Map<String, String> tags) {
         if (isEmpty(tags)) {
@@ -386,10 +573,25 @@ public class ResponseUtil {
                 notFound(routing, result.cause().getMessage());
                 return;
             }
+            if (result.cause() instanceof TooManyRequestsException) {
+                tooManyRequests(routing, result.cause().getMessage());
+                return;
+            }
+            if (result.cause() instanceof ServiceUnavailableException) {
+                serviceUnavailable(routing, result.cause().getMessage());
+                return;
+            }
             internalServerError(routing, result.cause().getMessage());
         }
     }
 
+    private static class StreamClosedException extends RuntimeException {
+
+        StreamClosedException() {
+            super("Stream closed");
+        }
+    }
+
     public static class BadRequestException extends RuntimeException {
 
         public BadRequestException(String message) {
@@ -434,4 +636,34 @@ public class ResponseUtil {
             super(message, cause);
         }
     }
+
+    public static class TooManyRequestsException extends RuntimeException {
+
+        public TooManyRequestsException(String message) {
+            super(message);
+        }
+
+        public TooManyRequestsException(Throwable cause) {
+            super(cause);
+        }
+
+        public TooManyRequestsException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    public static class ServiceUnavailableException extends RuntimeException {
+
+        public ServiceUnavailableException(String message) {
+            super(message);
+        }
+
+        public ServiceUnavailableException(Throwable cause) {
+            super(cause);
+        }
+
+        public ServiceUnavailableException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
 }